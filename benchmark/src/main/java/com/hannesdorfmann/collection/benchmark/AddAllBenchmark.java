@@ -0,0 +1,100 @@
+package com.hannesdorfmann.collection.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hannesdorfmann.collection.ListMap;
+
+/**
+ * Measures adding a batch of elements to a list, that already contains
+ * <code>size</code> elements. Every invocation gets a fresh copy of the list,
+ * which is not measured.
+ * 
+ * @author Hannes Dorfmann
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AddAllBenchmark {
+
+	@Param({ "ArrayListMap", "UniqueArrayListMap", "ArrayList" })
+	String implementation;
+
+	@Param({ "1000", "20000" })
+	int size;
+
+	@Param({ "1", "4" })
+	int valuesPerKey;
+
+	@Param({ "1000" })
+	int batchSize;
+
+	/**
+	 * The ratio of batch elements with a key, that is already in the list
+	 */
+	@Param({ "0", "0.5" })
+	double updateRatio;
+
+	private List<Item> items;
+
+	private List<Item> batch;
+
+	private ListMap<String, Item> list;
+
+	@Setup(Level.Trial)
+	public void createItems() {
+		items = new ArrayList<Item>(size);
+		for (int i = 0; i < size; i++) {
+			items.add(new Item("key" + (i / valuesPerKey)));
+		}
+
+		int updates = (int) (batchSize * updateRatio);
+		batch = new ArrayList<Item>(batchSize);
+		for (int i = 0; i < batchSize; i++) {
+			if (i < updates) {
+				batch.add(new Item(items.get(i * (size / batchSize))
+						.getMapKey()));
+			} else {
+				batch.add(new Item("batch" + i));
+			}
+		}
+	}
+
+	@Setup(Level.Invocation)
+	public void createList() {
+		list = ListMapBenchmark.create(implementation);
+		for (Item item : items) {
+			list.add(item);
+		}
+	}
+
+	@Benchmark
+	public ListMap<String, Item> addAll() {
+		list.addAll(batch);
+		return list;
+	}
+
+	@Benchmark
+	public ListMap<String, Item> addAllAtIndex() {
+		list.addAll(0, batch);
+		return list;
+	}
+}
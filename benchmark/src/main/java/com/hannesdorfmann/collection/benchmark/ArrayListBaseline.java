@@ -0,0 +1,63 @@
+package com.hannesdorfmann.collection.benchmark;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import com.hannesdorfmann.collection.ListMap;
+import com.hannesdorfmann.collection.Mappable;
+
+/**
+ * A plain {@link ArrayList} without a key index. The key operations scan the
+ * whole list. It's used as baseline by {@link ListMapBenchmark}.
+ * 
+ * @author Hannes Dorfmann
+ * 
+ */
+public class ArrayListBaseline<K, V extends Mappable<K>> extends ArrayList<V>
+		implements ListMap<K, V> {
+
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	public Set<V> getByMapKey(K id) {
+		Set<V> found = null;
+		for (V v : this) {
+			if (id.equals(v.getMapKey())) {
+				if (found == null) {
+					found = new LinkedHashSet<V>();
+				}
+				found.add(v);
+			}
+		}
+		return found;
+	}
+
+	@Override
+	public V getFirstByMapKey(K id) {
+		for (V v : this) {
+			if (id.equals(v.getMapKey())) {
+				return v;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public Set<V> removeByMapKey(K id) {
+		Set<V> removed = null;
+		Iterator<V> it = iterator();
+		while (it.hasNext()) {
+			V v = it.next();
+			if (id.equals(v.getMapKey())) {
+				if (removed == null) {
+					removed = new LinkedHashSet<V>();
+				}
+				removed.add(v);
+				it.remove();
+			}
+		}
+		return removed;
+	}
+}
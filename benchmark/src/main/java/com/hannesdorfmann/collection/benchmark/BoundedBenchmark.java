@@ -0,0 +1,103 @@
+package com.hannesdorfmann.collection.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hannesdorfmann.collection.BoundedListMap;
+import com.hannesdorfmann.collection.UniqueArrayListMap;
+
+/**
+ * Measures a full cache: adding a new element, which evicts the oldest one,
+ * and looking up an element by key, also mixed with reading an element by
+ * position. <code>trimmedUniqueArrayListMap</code> trims a
+ * {@link UniqueArrayListMap} with <code>remove(0)</code> as baseline.
+ * 
+ * @author Hannes Dorfmann
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoundedBenchmark {
+
+	@Param({ "1000", "100000" })
+	int maxSize;
+
+	private BoundedListMap<String, Item> insertionOrder;
+
+	private BoundedListMap<String, Item> accessOrder;
+
+	private UniqueArrayListMap<String, Item> unique;
+
+	private Item[] items;
+
+	private int next;
+
+	@Setup(Level.Trial)
+	public void createLists() {
+		insertionOrder = new BoundedListMap<String, Item>(maxSize);
+		accessOrder = new BoundedListMap<String, Item>(maxSize,
+				BoundedListMap.EvictionPolicy.ACCESS_ORDER);
+		unique = new UniqueArrayListMap<String, Item>();
+
+		items = new Item[maxSize * 2];
+		for (int i = 0; i < items.length; i++) {
+			items[i] = new Item("key" + i);
+		}
+
+		for (int i = 0; i < maxSize; i++) {
+			insertionOrder.add(items[i]);
+			accessOrder.add(items[i]);
+			unique.add(items[i]);
+		}
+		next = maxSize;
+	}
+
+	private Item nextItem() {
+		next = (next + 1) % items.length;
+		return items[next];
+	}
+
+	@Benchmark
+	public UniqueArrayListMap<String, Item> trimmedUniqueArrayListMap() {
+		unique.add(nextItem());
+		while (unique.size() > maxSize) {
+			unique.remove(0);
+		}
+		return unique;
+	}
+
+	@Benchmark
+	public BoundedListMap<String, Item> insertionOrder() {
+		insertionOrder.add(nextItem());
+		return insertionOrder;
+	}
+
+	@Benchmark
+	public Item accessOrderGetFirstByMapKey() {
+		next = (next + 7919) % maxSize;
+		return accessOrder.getFirstByMapKey(items[next].getMapKey());
+	}
+
+	@Benchmark
+	public Item accessOrderGetFirstByMapKeyAndGet() {
+		next = (next + 7919) % maxSize;
+		accessOrder.getFirstByMapKey(items[next].getMapKey());
+		return accessOrder.get(next);
+	}
+}
@@ -0,0 +1,116 @@
+package com.hannesdorfmann.collection.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hannesdorfmann.collection.ArrayListMap;
+import com.hannesdorfmann.collection.ChunkedListMap;
+import com.hannesdorfmann.collection.UniqueArrayListMap;
+import com.hannesdorfmann.collection.UniqueChunkedListMap;
+
+/**
+ * Measures inserting at the head of the list followed by removing the element
+ * with the same key, and positional reads, of the chunked lists compared to
+ * {@link ArrayListMap} and {@link UniqueArrayListMap}
+ * 
+ * @author Hannes Dorfmann
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChunkedBenchmark {
+
+	@Param({ "1000", "100000" })
+	int size;
+
+	private ArrayListMap<String, Item> arrayListMap;
+
+	private UniqueArrayListMap<String, Item> uniqueArrayListMap;
+
+	private ChunkedListMap<String, Item> chunkedListMap;
+
+	private UniqueChunkedListMap<String, Item> uniqueChunkedListMap;
+
+	private Item[] items;
+
+	private int next;
+
+	@Setup(Level.Trial)
+	public void createLists() {
+		arrayListMap = new ArrayListMap<String, Item>();
+		uniqueArrayListMap = new UniqueArrayListMap<String, Item>();
+		chunkedListMap = new ChunkedListMap<String, Item>();
+		uniqueChunkedListMap = new UniqueChunkedListMap<String, Item>();
+
+		items = new Item[size];
+		for (int i = 0; i < size; i++) {
+			items[i] = new Item("key" + i);
+			arrayListMap.add(items[i]);
+			uniqueArrayListMap.add(items[i]);
+			chunkedListMap.add(items[i]);
+			uniqueChunkedListMap.add(items[i]);
+		}
+	}
+
+	private Item nextItem() {
+		next = (next + 7919) % size;
+		return items[next];
+	}
+
+	@Benchmark
+	public Object arrayListMapInsertAtHeadAndRemoveByMapKey() {
+		Item item = nextItem();
+		arrayListMap.removeByMapKey(item.getMapKey());
+		arrayListMap.add(0, item);
+		return arrayListMap;
+	}
+
+	@Benchmark
+	public Object chunkedListMapInsertAtHeadAndRemoveByMapKey() {
+		Item item = nextItem();
+		chunkedListMap.removeByMapKey(item.getMapKey());
+		chunkedListMap.add(0, item);
+		return chunkedListMap;
+	}
+
+	@Benchmark
+	public Object uniqueArrayListMapInsertAtHead() {
+		// The element with the same key is removed by add()
+		uniqueArrayListMap.add(0, nextItem());
+		return uniqueArrayListMap;
+	}
+
+	@Benchmark
+	public Object uniqueChunkedListMapInsertAtHead() {
+		uniqueChunkedListMap.add(0, nextItem());
+		return uniqueChunkedListMap;
+	}
+
+	@Benchmark
+	public Item arrayListMapGet() {
+		next = (next + 7919) % size;
+		return arrayListMap.get(next);
+	}
+
+	@Benchmark
+	public Item chunkedListMapGet() {
+		next = (next + 7919) % size;
+		return chunkedListMap.get(next);
+	}
+}
@@ -0,0 +1,111 @@
+package com.hannesdorfmann.collection.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hannesdorfmann.collection.CopyOnWriteListMap;
+import com.hannesdorfmann.collection.UniqueArrayListMap;
+import com.hannesdorfmann.collection.UniqueArrayListMap.DuplicateKeyPolicy;
+
+/**
+ * Three threads read by key and by position while one thread upserts. The
+ * {@link CopyOnWriteListMap} is compared with a {@link UniqueArrayListMap}
+ * where every access is synchronized on the list.
+ * 
+ * @author Hannes Dorfmann
+ * 
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentBenchmark {
+
+	@Param({ "1000", "10000" })
+	int size;
+
+	private CopyOnWriteListMap<String, Item> copyOnWrite;
+
+	private UniqueArrayListMap<String, Item> synchronizedList;
+
+	private String[] keys;
+
+	@State(Scope.Thread)
+	public static class Cursor {
+		int next;
+	}
+
+	@Setup
+	public void setup() {
+		copyOnWrite = new CopyOnWriteListMap<String, Item>(
+				DuplicateKeyPolicy.REPLACE_IN_PLACE);
+		synchronizedList = new UniqueArrayListMap<String, Item>(
+				DuplicateKeyPolicy.REPLACE_IN_PLACE);
+		keys = new String[size];
+
+		for (int i = 0; i < size; i++) {
+			keys[i] = "key" + i;
+			copyOnWrite.add(new Item(keys[i]));
+			synchronizedList.add(new Item(keys[i]));
+		}
+	}
+
+	private int next(Cursor cursor) {
+		if (++cursor.next >= size) {
+			cursor.next = 0;
+		}
+		return cursor.next;
+	}
+
+	@Benchmark
+	@Group("copyOnWrite")
+	@GroupThreads(3)
+	public Item copyOnWriteRead(Cursor cursor) {
+		int i = next(cursor);
+		copyOnWrite.get(i);
+		return copyOnWrite.getFirstByMapKey(keys[i]);
+	}
+
+	@Benchmark
+	@Group("copyOnWrite")
+	@GroupThreads(1)
+	public boolean copyOnWriteUpsert(Cursor cursor) {
+		return copyOnWrite.add(new Item(keys[next(cursor)]));
+	}
+
+	@Benchmark
+	@Group("synchronized")
+	@GroupThreads(3)
+	public Item synchronizedRead(Cursor cursor) {
+		int i = next(cursor);
+		synchronized (synchronizedList) {
+			synchronizedList.get(i);
+			return synchronizedList.getFirstByMapKey(keys[i]);
+		}
+	}
+
+	@Benchmark
+	@Group("synchronized")
+	@GroupThreads(1)
+	public boolean synchronizedUpsert(Cursor cursor) {
+		Item item = new Item(keys[next(cursor)]);
+		synchronized (synchronizedList) {
+			return synchronizedList.add(item);
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package com.hannesdorfmann.collection.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hannesdorfmann.collection.ArrayListMap;
+import com.hannesdorfmann.collection.UniqueArrayListMap;
+
+/**
+ * Measures creating an {@link ArrayListMap} and a {@link UniqueArrayListMap}
+ * from a collection, with and without a lazy key index, and the first lookup
+ * by key afterwards, which builds a lazy key index. <code>copyParallel</code> computes the keys on a
+ * thread pool with one thread per processor.
+ * 
+ * @author Hannes Dorfmann
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CopyBenchmark {
+
+	@Param({ "false", "true" })
+	boolean lazyIndex;
+
+	@Param({ "1000", "20000", "1000000" })
+	int size;
+
+	private List<Item> items;
+
+	private ExecutorService executor;
+
+	@Setup(Level.Trial)
+	public void createItems() {
+		items = new ArrayList<Item>(size);
+		for (int i = 0; i < size; i++) {
+			items.add(new Item("key" + i));
+		}
+
+		executor = Executors.newFixedThreadPool(Runtime.getRuntime()
+				.availableProcessors());
+	}
+
+	@TearDown(Level.Trial)
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	@Benchmark
+	public ArrayListMap<String, Item> copy() {
+		return new ArrayListMap<String, Item>(items, lazyIndex);
+	}
+
+	@Benchmark
+	public ArrayListMap<String, Item> copyParallel() {
+		return new ArrayListMap<String, Item>(items, executor);
+	}
+
+	@Benchmark
+	public Item copyAndGetByMapKey() {
+		return new ArrayListMap<String, Item>(items, lazyIndex)
+				.getFirstByMapKey("key0");
+	}
+
+	@Benchmark
+	public UniqueArrayListMap<String, Item> copyUnique() {
+		return new UniqueArrayListMap<String, Item>(items, lazyIndex);
+	}
+
+	@Benchmark
+	public Item copyUniqueAndGetByMapKey() {
+		return new UniqueArrayListMap<String, Item>(items, lazyIndex)
+				.getFirstByMapKey("key0");
+	}
+}
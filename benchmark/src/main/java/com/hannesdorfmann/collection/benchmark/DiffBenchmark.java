@@ -0,0 +1,172 @@
+package com.hannesdorfmann.collection.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hannesdorfmann.collection.ListMapDiff;
+import com.hannesdorfmann.collection.ObservableListMap;
+import com.hannesdorfmann.collection.UniqueArrayListMap;
+
+/**
+ * Measures the diff between a {@link UniqueArrayListMap} and a refreshed page
+ * of data, where 5% of the elements have been removed, 5% have been inserted,
+ * 10% have been replaced and 1% have been moved. <code>naiveDiff</code> looks
+ * up the old position of every new element by comparing the keys of the old
+ * list. <code>apply</code> applies the diff to a copy of the old list,
+ * <code>clearAndAddAll</code> replaces all elements of a copy of the old list
+ * as baseline. <code>dispatchReversed</code> reports the events of a diff
+ * between the old list and the reversed old list, where every element but one
+ * is moved.
+ * 
+ * @author Hannes Dorfmann
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DiffBenchmark {
+
+	@Param({ "1000", "10000" })
+	int size;
+
+	private UniqueArrayListMap<String, Item> oldList;
+
+	private List<Item> newList;
+
+	private ListMapDiff<String, Item> diff;
+
+	private ListMapDiff<String, Item> reversedDiff;
+
+	/**
+	 * Counts the events
+	 */
+	private static class CountingListener implements
+			ObservableListMap.Listener {
+
+		int events;
+
+		@Override
+		public void onInserted(int position, int count) {
+			events++;
+		}
+
+		@Override
+		public void onRemoved(int position, int count) {
+			events++;
+		}
+
+		@Override
+		public void onMoved(int fromPosition, int toPosition) {
+			events++;
+		}
+
+		@Override
+		public void onChanged(int position, int count) {
+			events++;
+		}
+	}
+
+	private UniqueArrayListMap<String, Item> target;
+
+	@Setup(Level.Trial)
+	public void createLists() {
+		Random random = new Random(42);
+
+		oldList = new UniqueArrayListMap<String, Item>();
+		for (int i = 0; i < size; i++) {
+			oldList.add(new Item("key" + i));
+		}
+
+		newList = new ArrayList<Item>(size);
+		for (int i = 0; i < size; i++) {
+			int r = random.nextInt(20);
+			if (r == 0) {
+				continue;
+			} else if (r < 3) {
+				newList.add(new Item(oldList.get(i).getMapKey()));
+			} else {
+				newList.add(oldList.get(i));
+			}
+
+			if (random.nextInt(20) == 0) {
+				newList.add(new Item("new" + i));
+			}
+		}
+
+		for (int i = 0; i < size / 200; i++) {
+			Collections.swap(newList, random.nextInt(newList.size()),
+					random.nextInt(newList.size()));
+		}
+
+		diff = ListMapDiff.calculate(oldList, newList);
+
+		List<Item> reversed = new ArrayList<Item>(oldList);
+		Collections.reverse(reversed);
+		reversedDiff = ListMapDiff.calculate(oldList, reversed);
+	}
+
+	@Setup(Level.Invocation)
+	public void copyOldList() {
+		target = new UniqueArrayListMap<String, Item>();
+		target.addAll(oldList);
+	}
+
+	@Benchmark
+	public int naiveDiff() {
+		int matched = 0;
+		for (int j = 0; j < newList.size(); j++) {
+			String key = newList.get(j).getMapKey();
+			for (int i = 0; i < oldList.size(); i++) {
+				if (key.equals(oldList.get(i).getMapKey())) {
+					matched++;
+					break;
+				}
+			}
+		}
+		return matched;
+	}
+
+	@Benchmark
+	public ListMapDiff<String, Item> calculate() {
+		return ListMapDiff.calculate(oldList, newList);
+	}
+
+	@Benchmark
+	public UniqueArrayListMap<String, Item> apply() {
+		diff.applyTo(target);
+		return target;
+	}
+
+	@Benchmark
+	public int dispatchReversed() {
+		CountingListener listener = new CountingListener();
+		reversedDiff.dispatchTo(listener);
+		return listener.events;
+	}
+
+	@Benchmark
+	public UniqueArrayListMap<String, Item> clearAndAddAll() {
+		target.clear();
+		target.addAll(newList);
+		return target;
+	}
+}
@@ -0,0 +1,129 @@
+package com.hannesdorfmann.collection.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openjdk.jol.info.GraphLayout;
+
+import com.hannesdorfmann.collection.ArrayListMap;
+import com.hannesdorfmann.collection.ImmutableListMap;
+import com.hannesdorfmann.collection.LongArrayListMap;
+import com.hannesdorfmann.collection.MappedListMap;
+import com.hannesdorfmann.collection.UniqueArrayListMap;
+import com.hannesdorfmann.collection.UniqueLongArrayListMap;
+
+/**
+ * Prints the retained heap per element of the {@link ArrayListMap} and
+ * {@link UniqueArrayListMap} implementations. The elements itself (and their
+ * keys) are not counted, so the numbers show the overhead of the list and the
+ * key index.
+ * 
+ * <p>
+ * As reference the layout of an {@link ArrayList} plus a
+ * <code>HashMap&lt;K, LinkedHashSet&lt;V&gt;&gt;</code> is measured, which is
+ * the index layout {@link ArrayListMap} used before.
+ * </p>
+ * 
+ * @author Hannes Dorfmann
+ * 
+ */
+public class Footprint {
+
+	private static final int SIZE = 100000;
+
+	public static void main(String[] args) {
+
+		System.out.println(String.format("%-45s %15s %15s", "Layout",
+				"values per key", "bytes / element"));
+
+		for (int valuesPerKey : new int[] { 1, 2, 4, 16 }) {
+
+			List<Item> items = createItems(valuesPerKey);
+			long itemsSize = GraphLayout.parseInstance(items.toArray())
+					.totalSize();
+
+			print("ArrayList + HashMap<K, LinkedHashSet<V>>", valuesPerKey,
+					legacyLayout(items), itemsSize);
+
+			print("ArrayListMap", valuesPerKey, new ArrayListMap<String, Item>(
+					items), itemsSize);
+
+			// The first indexOf() starts to track the positions of the values
+			ArrayListMap<String, Item> positioned = new ArrayListMap<String, Item>(
+					items);
+			positioned.indexOf(items.get(0));
+			print("ArrayListMap after indexOf()", valuesPerKey, positioned,
+					itemsSize);
+
+			print("ImmutableListMap", valuesPerKey,
+					new ImmutableListMap<String, Item>(items), itemsSize);
+
+			if (valuesPerKey == 1) {
+				print("UniqueArrayListMap", valuesPerKey,
+						new UniqueArrayListMap<String, Item>(items), itemsSize);
+
+				// Holds no reference to the items, its storage is off heap
+				MappedListMap<String, Item> mapped = new MappedListMap<String, Item>(
+						new ItemCodec());
+				mapped.addAll(items);
+				print("MappedListMap (heap only)", valuesPerKey, mapped, 0);
+			}
+		}
+
+		// Long keys. The boxed keys of the HashMap based implementations are
+		// counted, because the primitive implementations don't need them
+		List<LongItem> longItems = new ArrayList<LongItem>(SIZE);
+		for (int i = 0; i < SIZE; i++) {
+			longItems.add(new LongItem(i));
+		}
+		long longItemsSize = GraphLayout.parseInstance(longItems.toArray())
+				.totalSize();
+
+		print("ArrayListMap<Long, V>", 1, new ArrayListMap<Long, LongItem>(
+				longItems), longItemsSize);
+		print("LongArrayListMap", 1, new LongArrayListMap<LongItem>(longItems),
+				longItemsSize);
+		print("UniqueArrayListMap<Long, V>", 1,
+				new UniqueArrayListMap<Long, LongItem>(longItems),
+				longItemsSize);
+		print("UniqueLongArrayListMap", 1, new UniqueLongArrayListMap<LongItem>(
+				longItems), longItemsSize);
+	}
+
+	private static List<Item> createItems(int valuesPerKey) {
+		List<Item> items = new ArrayList<Item>(SIZE);
+		for (int i = 0; i < SIZE; i++) {
+			items.add(new Item(Integer.toString(i / valuesPerKey)));
+		}
+		return items;
+	}
+
+	private static Object[] legacyLayout(List<Item> items) {
+		List<Item> list = new ArrayList<Item>();
+		Map<String, Set<Item>> index = new HashMap<String, Set<Item>>(
+				items.size());
+
+		for (Item item : items) {
+			Set<Item> values = index.get(item.getMapKey());
+			if (values == null) {
+				values = new LinkedHashSet<Item>(1);
+				index.put(item.getMapKey(), values);
+			}
+			values.add(item);
+			list.add(item);
+		}
+
+		return new Object[] { list, index };
+	}
+
+	private static void print(String layout, int valuesPerKey, Object root,
+			long itemsSize) {
+		long total = GraphLayout.parseInstance(root).totalSize();
+		System.out.println(String.format("%-45s %15d %15.1f", layout,
+				valuesPerKey, (total - itemsSize) / (double) SIZE));
+	}
+}
@@ -0,0 +1,90 @@
+package com.hannesdorfmann.collection.benchmark;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hannesdorfmann.collection.ImmutableListMap;
+import com.hannesdorfmann.collection.ListMap;
+import com.hannesdorfmann.collection.UniqueArrayListMap;
+
+/**
+ * Measures the key lookups of {@link UniqueArrayListMap} and of an
+ * {@link ImmutableListMap} snapshot of it. Run it with <code>-prof gc</code>
+ * to check the allocations per lookup: <code>gc.alloc.rate.norm</code> is
+ * expected to be 0 B/op for both benchmarks of {@link UniqueArrayListMap}.
+ * {@link ImmutableListMap#getByMapKey(Object)} allocates a singleton set for
+ * keys with only one value.
+ * 
+ * @author Hannes Dorfmann
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GetByMapKeyBenchmark {
+
+	@Param({ "UniqueArrayListMap", "ImmutableListMap" })
+	String implementation;
+
+	@Param({ "1000", "100000" })
+	int size;
+
+	private ListMap<String, Item> list;
+
+	private String[] keys;
+
+	private int next;
+
+	@Setup
+	public void setup() {
+		UniqueArrayListMap<String, Item> unique = new UniqueArrayListMap<String, Item>(
+				size);
+		keys = new String[size];
+
+		for (int i = 0; i < size; i++) {
+			keys[i] = Integer.toString(i);
+			unique.add(new Item(keys[i]));
+		}
+
+		list = "ImmutableListMap".equals(implementation) ? unique
+				.toImmutable() : unique;
+
+		// Look the keys up in random order
+		Collections.shuffle(Arrays.asList(keys), new Random(42));
+	}
+
+	private String nextKey() {
+		if (++next == size) {
+			next = 0;
+		}
+		return keys[next];
+	}
+
+	@Benchmark
+	public Set<Item> getByMapKey() {
+		return list.getByMapKey(nextKey());
+	}
+
+	@Benchmark
+	public Item getFirstByMapKey() {
+		return list.getFirstByMapKey(nextKey());
+	}
+}
@@ -0,0 +1,107 @@
+package com.hannesdorfmann.collection.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hannesdorfmann.collection.ArrayListMap;
+import com.hannesdorfmann.collection.IndexKey;
+
+/**
+ * Measures lookups in a secondary index of an {@link ArrayListMap} compared
+ * to filtering the list, and the cost of a secondary index when elements are
+ * added and removed
+ * 
+ * @author Hannes Dorfmann
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IndexBenchmark {
+
+	/**
+	 * Puts the items into 100 groups
+	 */
+	private static final IndexKey<Integer, Item> GROUP = new IndexKey<Integer, Item>() {
+		@Override
+		public Integer getIndexKey(Item value) {
+			return (value.getMapKey().hashCode() & 0x7fffffff) % 100;
+		}
+	};
+
+	@Param({ "1000", "100000" })
+	int size;
+
+	private ArrayListMap<String, Item> plain;
+
+	private ArrayListMap<String, Item> indexed;
+
+	private Item[] items;
+
+	private int next;
+
+	@Setup(Level.Trial)
+	public void createLists() {
+		plain = new ArrayListMap<String, Item>();
+		indexed = new ArrayListMap<String, Item>();
+		indexed.addIndex("group", GROUP);
+
+		items = new Item[size];
+		for (int i = 0; i < size; i++) {
+			items[i] = new Item("key" + i);
+			plain.add(items[i]);
+			indexed.add(items[i]);
+		}
+	}
+
+	@Benchmark
+	public List<Item> filterList() {
+		next = (next + 1) % 100;
+		List<Item> found = new ArrayList<Item>();
+		for (int i = 0; i < plain.size(); i++) {
+			Item item = plain.get(i);
+			if (GROUP.getIndexKey(item) == next) {
+				found.add(item);
+			}
+		}
+		return found;
+	}
+
+	@Benchmark
+	public Set<Item> getByIndex() {
+		next = (next + 1) % 100;
+		return indexed.getByIndex("group", next);
+	}
+
+	@Benchmark
+	public Object addAndRemoveLast() {
+		next = (next + 7919) % size;
+		plain.add(items[next]);
+		return plain.remove(plain.size() - 1);
+	}
+
+	@Benchmark
+	public Object addAndRemoveLastIndexed() {
+		next = (next + 7919) % size;
+		indexed.add(items[next]);
+		return indexed.remove(indexed.size() - 1);
+	}
+}
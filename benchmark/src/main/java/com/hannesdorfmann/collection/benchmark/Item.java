@@ -0,0 +1,33 @@
+package com.hannesdorfmann.collection.benchmark;
+
+import java.io.Serializable;
+
+import com.hannesdorfmann.collection.Mappable;
+
+/**
+ * Simple {@link Mappable} that is used by all benchmarks
+ * 
+ * @author Hannes Dorfmann
+ * 
+ */
+public class Item implements Mappable<String>, Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String id;
+
+	public Item(String id) {
+		this.id = id;
+	}
+
+	@Override
+	public String getMapKey() {
+		return id;
+	}
+
+	@Override
+	public String toString() {
+		return id;
+	}
+
+}
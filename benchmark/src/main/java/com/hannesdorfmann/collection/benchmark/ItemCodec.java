@@ -0,0 +1,27 @@
+package com.hannesdorfmann.collection.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import com.hannesdorfmann.collection.MappedListMap;
+
+/**
+ * Stores the key of an {@link Item} as UTF-8
+ * 
+ * @author Hannes Dorfmann
+ * 
+ */
+public class ItemCodec implements MappedListMap.Codec<Item> {
+
+	@Override
+	public byte[] encode(Item value) {
+		return value.getMapKey().getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public Item decode(ByteBuffer data) {
+		byte[] bytes = new byte[data.remaining()];
+		data.get(bytes);
+		return new Item(new String(bytes, StandardCharsets.UTF_8));
+	}
+}
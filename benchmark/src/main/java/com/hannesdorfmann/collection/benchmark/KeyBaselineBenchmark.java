@@ -0,0 +1,96 @@
+package com.hannesdorfmann.collection.benchmark;
+
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The key operations of a {@link LinkedHashMap}, which is the baseline for the
+ * key operations measured by {@link ListMapBenchmark}. Like a
+ * {@link com.hannesdorfmann.collection.UniqueArrayListMap} it keeps one value
+ * per key in insert order, but has no access by position.
+ * 
+ * @author Hannes Dorfmann
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyBaselineBenchmark {
+
+	@Param({ "1000", "10000", "100000" })
+	int size;
+
+	private LinkedHashMap<String, Item> map;
+
+	private Item[] items;
+
+	private Item missing;
+
+	private int next;
+
+	@Setup(Level.Iteration)
+	public void setup() {
+		map = new LinkedHashMap<String, Item>();
+		items = new Item[size];
+
+		for (int i = 0; i < size; i++) {
+			items[i] = new Item("key" + i);
+			map.put(items[i].getMapKey(), items[i]);
+		}
+
+		missing = new Item("missing");
+		next = 0;
+	}
+
+	private Item nextItem() {
+		if (++next >= size) {
+			next = 0;
+		}
+		return items[next];
+	}
+
+	@Benchmark
+	public Item add() {
+		map.put(missing.getMapKey(), missing);
+		return map.remove(missing.getMapKey());
+	}
+
+	@Benchmark
+	public Item removeByMapKey() {
+		Item item = nextItem();
+		Item removed = map.remove(item.getMapKey());
+		map.put(item.getMapKey(), item);
+		return removed;
+	}
+
+	@Benchmark
+	public Item getFirstByMapKey() {
+		return map.get(nextItem().getMapKey());
+	}
+
+	@Benchmark
+	public boolean containsHit() {
+		return map.containsKey(nextItem().getMapKey());
+	}
+
+	@Benchmark
+	public boolean containsMiss() {
+		return map.containsKey(missing.getMapKey());
+	}
+}
@@ -0,0 +1,219 @@
+package com.hannesdorfmann.collection.benchmark;
+
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hannesdorfmann.collection.ArrayListMap;
+import com.hannesdorfmann.collection.ListMap;
+import com.hannesdorfmann.collection.UniqueArrayListMap;
+
+/**
+ * Measures every {@link ListMap} operation of {@link ArrayListMap} and
+ * {@link UniqueArrayListMap} with a plain {@link ArrayList} (
+ * {@link ArrayListBaseline}) as baseline. See {@link KeyBaselineBenchmark} for
+ * the key operations of a {@link java.util.LinkedHashMap} and
+ * {@link AddAllBenchmark} for inserting many elements at once.
+ * 
+ * <p>
+ * The list initially contains <code>size</code> elements and
+ * <code>valuesPerKey</code> of them share the same key. Since
+ * {@link UniqueArrayListMap} keeps only one element per key, it contains
+ * <code>size / valuesPerKey</code> elements.
+ * </p>
+ * 
+ * <p>
+ * Mutating benchmarks undo their modification in the same invocation (for
+ * example <code>add</code> appends a element and removes the last one), so the
+ * size of the list stays constant.
+ * </p>
+ * 
+ * @author Hannes Dorfmann
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListMapBenchmark {
+
+	@Param({ "ArrayListMap", "UniqueArrayListMap", "ArrayList" })
+	String implementation;
+
+	@Param({ "1000", "10000", "100000" })
+	int size;
+
+	@Param({ "1", "4" })
+	int valuesPerKey;
+
+	private ListMap<String, Item> list;
+
+	private Item[] items;
+
+	private Item[] replacements;
+
+	private String[] keys;
+
+	private Item missing;
+
+	private int next;
+
+	static ListMap<String, Item> create(String implementation) {
+		if ("ArrayListMap".equals(implementation)) {
+			return new ArrayListMap<String, Item>();
+		}
+
+		if ("UniqueArrayListMap".equals(implementation)) {
+			return new UniqueArrayListMap<String, Item>();
+		}
+
+		if ("ArrayList".equals(implementation)) {
+			return new ArrayListBaseline<String, Item>();
+		}
+
+		throw new IllegalArgumentException("Unknown implementation "
+				+ implementation);
+	}
+
+	@Setup(Level.Iteration)
+	public void setup() {
+
+		list = create(implementation);
+		keys = new String[size / valuesPerKey];
+
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = "key" + i;
+		}
+
+		for (int i = 0; i < size; i++) {
+			list.add(new Item(keys[i / valuesPerKey]));
+		}
+
+		items = list.toArray(new Item[list.size()]);
+		replacements = new Item[items.length];
+		for (int i = 0; i < items.length; i++) {
+			replacements[i] = new Item(items[i].getMapKey());
+		}
+
+		missing = new Item("missing");
+		next = 0;
+	}
+
+	/**
+	 * Get the next position in the list
+	 */
+	private int nextPosition() {
+		if (++next >= list.size() || next >= items.length) {
+			next = 0;
+		}
+		return next;
+	}
+
+	private String nextKey() {
+		return items[nextPosition()].getMapKey();
+	}
+
+	@Benchmark
+	public Item add() {
+		list.add(missing);
+		return list.remove(list.size() - 1);
+	}
+
+	@Benchmark
+	public Item addAtIndex() {
+		int index = nextPosition();
+		list.add(index, missing);
+		return list.remove(index);
+	}
+
+	@Benchmark
+	public Item set() {
+		int index = nextPosition();
+		Item replacement = list.get(index) == items[index] ? replacements[index]
+				: items[index];
+		return list.set(index, replacement);
+	}
+
+	@Benchmark
+	public Item removeByIndex() {
+		int index = nextPosition();
+		Item removed = list.remove(index);
+		list.add(index, removed);
+		return removed;
+	}
+
+	@Benchmark
+	public boolean removeByObject() {
+		int index = nextPosition();
+		Item item = list.get(index);
+		boolean removed = list.remove(item);
+		list.add(index, item);
+		return removed;
+	}
+
+	@Benchmark
+	public Set<Item> removeByMapKey() {
+		int index = nextPosition();
+		String key = list.get(index).getMapKey();
+		Set<Item> removed = list.removeByMapKey(key);
+		list.addAll(removed);
+		return removed;
+	}
+
+	@Benchmark
+	public Set<Item> getByMapKey() {
+		return list.getByMapKey(nextKey());
+	}
+
+	@Benchmark
+	public Item getFirstByMapKey() {
+		return list.getFirstByMapKey(nextKey());
+	}
+
+	@Benchmark
+	public boolean containsHit() {
+		return list.contains(list.get(nextPosition()));
+	}
+
+	@Benchmark
+	public boolean containsMiss() {
+		return list.contains(missing);
+	}
+
+	@Benchmark
+	public int indexOfHit() {
+		return list.indexOf(list.get(nextPosition()));
+	}
+
+	@Benchmark
+	public int indexOfMiss() {
+		return list.indexOf(missing);
+	}
+
+	@Benchmark
+	public Item get() {
+		return list.get(nextPosition());
+	}
+
+	@Benchmark
+	public ListMap<String, Item> addAllToEmpty() {
+		ListMap<String, Item> copy = create(implementation);
+		copy.addAll(list);
+		return copy;
+	}
+}
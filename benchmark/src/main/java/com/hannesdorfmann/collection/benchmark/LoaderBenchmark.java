@@ -0,0 +1,70 @@
+package com.hannesdorfmann.collection.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hannesdorfmann.collection.ArrayListMap;
+import com.hannesdorfmann.collection.ListMap;
+import com.hannesdorfmann.collection.ListMapLoader;
+
+/**
+ * Measures loading streamed elements with a {@link ListMapLoader}, that
+ * publishes a prefix every 1000 elements, compared to collecting them in an
+ * {@link ArrayList} and creating an {@link ArrayListMap} at the end
+ * 
+ * @author Hannes Dorfmann
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoaderBenchmark {
+
+	@Param({ "10000", "100000" })
+	int size;
+
+	private List<Item> items;
+
+	@Setup(Level.Trial)
+	public void createItems() {
+		Item[] array = new Item[size];
+		for (int i = 0; i < size; i++) {
+			array[i] = new Item("key" + i);
+		}
+		items = Arrays.asList(array);
+	}
+
+	@Benchmark
+	public ListMap<String, Item> loader() {
+		ListMapLoader<String, Item> loader = new ListMapLoader<String, Item>(size);
+		loader.load(items.iterator(), 1000);
+		return loader.finish();
+	}
+
+	@Benchmark
+	public ListMap<String, Item> collectThenArrayListMap() {
+		List<Item> collected = new ArrayList<Item>();
+		for (Item item : items) {
+			collected.add(item);
+		}
+		return new ArrayListMap<String, Item>(collected);
+	}
+}
@@ -0,0 +1,39 @@
+package com.hannesdorfmann.collection.benchmark;
+
+import java.io.Serializable;
+
+import com.hannesdorfmann.collection.LongMappable;
+
+/**
+ * Simple {@link LongMappable} that is used by the benchmarks of the primitive
+ * key implementations
+ * 
+ * @author Hannes Dorfmann
+ * 
+ */
+public class LongItem implements LongMappable, Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long id;
+
+	public LongItem(long id) {
+		this.id = id;
+	}
+
+	@Override
+	public Long getMapKey() {
+		return id;
+	}
+
+	@Override
+	public long getLongMapKey() {
+		return id;
+	}
+
+	@Override
+	public String toString() {
+		return Long.toString(id);
+	}
+
+}
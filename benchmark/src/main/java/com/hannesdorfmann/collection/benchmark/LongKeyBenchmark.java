@@ -0,0 +1,82 @@
+package com.hannesdorfmann.collection.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hannesdorfmann.collection.LongArrayListMap;
+import com.hannesdorfmann.collection.UniqueArrayListMap;
+import com.hannesdorfmann.collection.UniqueLongArrayListMap;
+
+/**
+ * Compares key lookups of the primitive long key implementations with the
+ * {@link UniqueArrayListMap} with boxed {@link Long} keys.
+ * 
+ * @author Hannes Dorfmann
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LongKeyBenchmark {
+
+	@Param({ "100000" })
+	int size;
+
+	private UniqueArrayListMap<Long, LongItem> boxed;
+
+	private UniqueLongArrayListMap<LongItem> unique;
+
+	private LongArrayListMap<LongItem> multi;
+
+	private long next;
+
+	@Setup
+	public void setup() {
+		boxed = new UniqueArrayListMap<Long, LongItem>(size);
+		unique = new UniqueLongArrayListMap<LongItem>(size);
+		multi = new LongArrayListMap<LongItem>(size);
+
+		for (int i = 0; i < size; i++) {
+			LongItem item = new LongItem(i * 31L);
+			boxed.add(item);
+			unique.add(item);
+			multi.add(item);
+		}
+	}
+
+	private long nextKey() {
+		if (++next == size) {
+			next = 0;
+		}
+		return next * 31L;
+	}
+
+	@Benchmark
+	public LongItem boxedGetFirstByMapKey() {
+		return boxed.getFirstByMapKey(nextKey());
+	}
+
+	@Benchmark
+	public LongItem uniqueLongGetFirstByMapKey() {
+		return unique.getFirstByMapKey(nextKey());
+	}
+
+	@Benchmark
+	public LongItem longGetFirstByMapKey() {
+		return multi.getFirstByMapKey(nextKey());
+	}
+}
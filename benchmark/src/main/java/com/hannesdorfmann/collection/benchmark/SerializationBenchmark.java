@@ -0,0 +1,124 @@
+package com.hannesdorfmann.collection.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hannesdorfmann.collection.LongArrayListMap;
+import com.hannesdorfmann.collection.UniqueLongArrayListMap;
+
+/**
+ * Measures writing a list with java serialization (like saving the instance
+ * state) and reading it back. The size of the written bytes per
+ * implementation is printed by {@link #main(String[])}:
+ * <code>java -cp target/benchmarks.jar com.hannesdorfmann.collection.benchmark.SerializationBenchmark</code>
+ * 
+ * @author Hannes Dorfmann
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+	private static final String[] IMPLEMENTATIONS = { "ArrayListMap",
+			"UniqueArrayListMap", "LongArrayListMap", "UniqueLongArrayListMap",
+			"ArrayList" };
+
+	@Param({ "ArrayListMap", "UniqueArrayListMap", "LongArrayListMap",
+			"UniqueLongArrayListMap", "ArrayList" })
+	String implementation;
+
+	@Param({ "1000", "20000" })
+	int size;
+
+	private List<?> list;
+
+	private byte[] bytes;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		list = create(implementation, size);
+		bytes = write(list);
+	}
+
+	static List<?> create(String implementation, int size) {
+		if ("LongArrayListMap".equals(implementation)) {
+			LongArrayListMap<LongItem> list = new LongArrayListMap<LongItem>();
+			for (int i = 0; i < size; i++) {
+				list.add(new LongItem(i));
+			}
+			return list;
+		}
+
+		if ("UniqueLongArrayListMap".equals(implementation)) {
+			UniqueLongArrayListMap<LongItem> list = new UniqueLongArrayListMap<LongItem>();
+			for (int i = 0; i < size; i++) {
+				list.add(new LongItem(i));
+			}
+			return list;
+		}
+
+		List<Item> list = ListMapBenchmark.create(implementation);
+		for (int i = 0; i < size; i++) {
+			list.add(new Item("key" + i));
+		}
+		return list;
+	}
+
+	static byte[] write(Object object) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(object);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	@Benchmark
+	public byte[] write() throws IOException {
+		return write(list);
+	}
+
+	@Benchmark
+	public Object read() throws IOException, ClassNotFoundException {
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+				bytes));
+		Object result = in.readObject();
+		in.close();
+		return result;
+	}
+
+	public static void main(String[] args) throws IOException {
+
+		int size = 20000;
+
+		System.out.println(String.format("%-25s %15s %15s", "Implementation",
+				"Bytes", "Bytes/element"));
+
+		for (String implementation : IMPLEMENTATIONS) {
+			int bytes = write(create(implementation, size)).length;
+			System.out.println(String.format("%-25s %15d %15.1f",
+					implementation, bytes, (double) bytes / size));
+		}
+	}
+}
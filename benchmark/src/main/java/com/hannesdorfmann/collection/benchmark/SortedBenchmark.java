@@ -0,0 +1,113 @@
+package com.hannesdorfmann.collection.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hannesdorfmann.collection.SortedListMap;
+import com.hannesdorfmann.collection.UniqueArrayListMap;
+
+/**
+ * Measures inserting an element into a sorted list and removing it again.
+ * <code>sortedListMap</code> inserts at the binary searched position,
+ * <code>addAndSort</code> appends to a {@link UniqueArrayListMap} and sorts
+ * the whole list again as baseline. <code>copy</code> creates a
+ * {@link SortedListMap} from an unsorted collection.
+ * 
+ * @author Hannes Dorfmann
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SortedBenchmark {
+
+	private static final Comparator<Item> BY_KEY = new Comparator<Item>() {
+		@Override
+		public int compare(Item lhs, Item rhs) {
+			return lhs.getMapKey().compareTo(rhs.getMapKey());
+		}
+	};
+
+	@Param({ "1000", "10000" })
+	int size;
+
+	private SortedListMap<String, Item> sorted;
+
+	private UniqueArrayListMap<String, Item> unique;
+
+	private List<Item> shuffled;
+
+	private int next;
+
+	@Setup(Level.Trial)
+	public void createLists() {
+		sorted = new SortedListMap<String, Item>(BY_KEY);
+		unique = new UniqueArrayListMap<String, Item>();
+
+		for (int i = 0; i < size; i++) {
+			Item item = new Item("key" + i);
+			sorted.add(item);
+			unique.add(item);
+		}
+
+		List<Item> items = new ArrayList<Item>(unique);
+		Collections.sort(items, BY_KEY);
+		unique.clear();
+		unique.addAll(items);
+
+		shuffled = new ArrayList<Item>(items);
+		Collections.shuffle(shuffled, new Random(42));
+	}
+
+	private String nextKey() {
+		next = (next + 7919) % size;
+		return "key" + next + "x";
+	}
+
+	@Benchmark
+	public SortedListMap<String, Item> sortedListMap() {
+		String key = nextKey();
+		sorted.add(new Item(key));
+		sorted.removeByMapKey(key);
+		return sorted;
+	}
+
+	@Benchmark
+	public UniqueArrayListMap<String, Item> addAndSort() {
+		String key = nextKey();
+		unique.add(new Item(key));
+
+		List<Item> items = new ArrayList<Item>(unique);
+		Collections.sort(items, BY_KEY);
+		unique.clear();
+		unique.addAll(items);
+
+		unique.removeByMapKey(key);
+		return unique;
+	}
+
+	@Benchmark
+	public SortedListMap<String, Item> copy() {
+		return new SortedListMap<String, Item>(BY_KEY, shuffled);
+	}
+}
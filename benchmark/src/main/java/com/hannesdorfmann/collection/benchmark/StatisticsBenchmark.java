@@ -0,0 +1,64 @@
+package com.hannesdorfmann.collection.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hannesdorfmann.collection.UniqueArrayListMap;
+
+/**
+ * Measures the overhead of statistics on the hot path of a
+ * {@link UniqueArrayListMap}: replacing an element by key and looking it up
+ * again
+ * 
+ * @author Hannes Dorfmann
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatisticsBenchmark {
+
+	@Param({ "false", "true" })
+	boolean statistics;
+
+	private UniqueArrayListMap<String, Item> list;
+
+	private Item[] items;
+
+	private int next;
+
+	@Setup(Level.Trial)
+	public void createList() {
+		list = new UniqueArrayListMap<String, Item>(
+				UniqueArrayListMap.DuplicateKeyPolicy.REPLACE_IN_PLACE);
+		list.setStatisticsEnabled(statistics);
+
+		items = new Item[10000];
+		for (int i = 0; i < items.length; i++) {
+			items[i] = new Item("key" + i);
+			list.add(items[i]);
+		}
+	}
+
+	@Benchmark
+	public Item replaceAndGetFirstByMapKey() {
+		next = (next + 7919) % items.length;
+		list.add(items[next]);
+		return list.getFirstByMapKey(items[next].getMapKey());
+	}
+}
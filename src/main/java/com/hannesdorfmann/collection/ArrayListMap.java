@@ -1,11 +1,21 @@
 package com.hannesdorfmann.collection;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.LinkedHashSet;
-import java.util.Map;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
 /**
  * This {@link ListMap} implementation uses {@link ArrayList} and
@@ -24,6 +34,16 @@ import java.util.Set;
  * (index) in the list.
  * </p>
  * 
+ * <p>
+ * The key index is kept compact: A key with just one value maps directly to
+ * the value. Only keys with more values need a {@link ValueBucket}.
+ * </p>
+ * 
+ * <p>
+ * More keys per element can be indexed with named secondary indexes, see
+ * {@link #addIndex(String, IndexKey)} and {@link #getByIndex(String, Object)}.
+ * </p>
+ * 
  * @author Hannes Dorfmann
  * 
  * @param <K>
@@ -35,189 +55,1256 @@ public class ArrayListMap<K, V extends Mappable<K>> extends ArrayList<V>
 		implements ListMap<K, V> {
 
 	/**
-	 * 
+	 * 
+	 */
+	private static final long serialVersionUID = -5229330219090532830L;
+
+	/**
+	 * Maps a key either directly to the value, if there is only one copy of
+	 * one value with this key, or to a {@link ValueBucket} containing all
+	 * values. The key index starts to remember the position of every value
+	 * at the first lookup of a position, see
+	 * {@link #positionOf(Object, boolean)}.
+	 */
+	private transient KeyIndex<K> idMap;
+
+	/**
+	 * The keys of the elements, if key caching is enabled, otherwise null
+	 */
+	private transient KeyArray keys;
+
+	/**
+	 * If true, the key index is built at the first lookup by key
+	 */
+	private boolean lazyIndex;
+
+	/**
+	 * The secondary indexes or null, if there are none
+	 */
+	private transient List<SecondaryIndex<V>> indexes;
+
+	/**
+	 * The counters, if statistics are enabled, otherwise null
+	 */
+	private transient ListMapStatistics statistics;
+
+	/**
+	 * Creates a new empty empty {@link ArrayListMap}
+	 */
+	public ArrayListMap() {
+		super();
+		idMap = new KeyIndex<K>(0);
+	}
+
+	/**
+	 * Constructs a {@link ArrayListMap} containing the elements of the
+	 * specified collection, in the order they are returned by the collection's
+	 * iterator.
+	 * 
+	 * @param c
+	 */
+	public ArrayListMap(Collection<? extends V> c) {
+		this(c, false);
+	}
+
+	/**
+	 * Constructs a {@link ArrayListMap} containing the elements of the
+	 * specified collection. If lazyIndex is true, the elements are copied
+	 * without touching their keys and the key index is built at the first
+	 * lookup by key.
+	 * 
+	 * @param c
+	 * @param lazyIndex
+	 * @see #setLazyIndex(boolean)
+	 */
+	public ArrayListMap(Collection<? extends V> c, boolean lazyIndex) {
+		super(c.size());
+		this.lazyIndex = lazyIndex;
+
+		if (!lazyIndex) {
+			idMap = new KeyIndex<K>(c.size());
+		}
+
+		addAll(c);
+	}
+
+	/**
+	 * Constructs a {@link ArrayListMap} containing the elements of the
+	 * specified collection. The keys of the elements are computed on the
+	 * threads of the given {@link ExecutorService}.
+	 * 
+	 * @param c
+	 * @param executor
+	 * @see #addAll(Collection, ExecutorService)
+	 */
+	public ArrayListMap(Collection<? extends V> c, ExecutorService executor) {
+		this(c.size());
+		addAll(c, executor);
+	}
+
+	public ArrayListMap(int initialCapacity) {
+		super(initialCapacity);
+		idMap = new KeyIndex<K>(initialCapacity);
+	}
+
+	/**
+	 * Writes the elements (the {@link ArrayList} part) and if key caching is
+	 * enabled. The key index is not written, it's rebuilt in one pass when the
+	 * list is read.
+	 * 
+	 * @param out
+	 * @throws IOException
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeBoolean(keys != null);
+	}
+
+	/**
+	 * Reads the list and rebuilds the key index, unless the key index is lazy
+	 * 
+	 * @param in
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		in.defaultReadObject();
+
+		if (in.readBoolean()) {
+			setKeyCaching(true);
+		}
+
+		if (!lazyIndex) {
+			keyIndex();
+		}
+	}
+
+	/**
+	 * Increases the capacity of the list and of the key index, so that both
+	 * can hold at least the given number of elements without growing.
+	 * 
+	 * @param minCapacity
+	 */
+	@Override
+	public void ensureCapacity(int minCapacity) {
+		super.ensureCapacity(minCapacity);
+
+		if (keys != null) {
+			keys.ensureCapacity(minCapacity);
+		}
+
+		if (idMap != null) {
+			// Null if the key index is not built yet or the super class is
+			// constructed
+			idMap.ensureCapacity(minCapacity);
+		}
+	}
+
+	/**
+	 * Enables or disables key caching. If enabled, {@link Mappable#getMapKey()}
+	 * is called only once for every element, when it's inserted. The key is
+	 * stored next to the element and is used to remove or replace the element
+	 * later, so its also safe to use elements whose key changes while they
+	 * are in the list. This costs one more reference per element.
+	 * 
+	 * @param enabled
+	 */
+	public void setKeyCaching(boolean enabled) {
+		if (!enabled) {
+			keys = null;
+		} else if (keys == null) {
+			int size = size();
+			KeyArray cached = new KeyArray(size);
+			for (int i = 0; i < size; i++) {
+				cached.add(super.get(i).getMapKey());
+			}
+			keys = cached;
+		}
+	}
+
+	/**
+	 * Is key caching enabled
+	 * 
+	 * @return
+	 * @see #setKeyCaching(boolean)
+	 */
+	public boolean isKeyCaching() {
+		return keys != null;
+	}
+
+	/**
+	 * Enables or disables the lazy key index. If enabled, the key index is
+	 * dropped and built again at the next lookup by key (
+	 * {@link #getByMapKey(Object)}, {@link #getFirstByMapKey(Object)},
+	 * {@link #removeByMapKey(Object)} or {@link #contains(Object)}). From then
+	 * on it's kept up to date like a not lazy one. Until then, adding and
+	 * removing elements doesn't touch their keys, which makes filling a list
+	 * that is only accessed by position cheaper. If disabled, the key index is
+	 * built immediately.
+	 * 
+	 * @param enabled
+	 */
+	public void setLazyIndex(boolean enabled) {
+		lazyIndex = enabled;
+
+		if (enabled) {
+			idMap = null;
+		} else {
+			keyIndex();
+		}
+	}
+
+	/**
+	 * Is the lazy key index enabled
+	 * 
+	 * @return
+	 * @see #setLazyIndex(boolean)
+	 */
+	public boolean isLazyIndex() {
+		return lazyIndex;
+	}
+
+	/**
+	 * Enables or disables statistics. If enabled, the list counts its
+	 * operations, the lookups in the key index and the elements it has to
+	 * shift or move. If disabled, the counters are dropped and counting costs
+	 * only a null check per operation. Statistics are not serialized.
+	 * 
+	 * @param enabled
+	 * @see #getStatistics()
+	 */
+	public void setStatisticsEnabled(boolean enabled) {
+		if (!enabled) {
+			statistics = null;
+		} else if (statistics == null) {
+			statistics = new ListMapStatistics();
+		}
+	}
+
+	/**
+	 * Are statistics enabled
+	 * 
+	 * @return
+	 * @see #setStatisticsEnabled(boolean)
+	 */
+	public boolean isStatisticsEnabled() {
+		return statistics != null;
+	}
+
+	/**
+	 * Get a snapshot of the statistics, including the key histogram of the
+	 * current key index
+	 * 
+	 * @return
+	 * @throws IllegalStateException
+	 *             if statistics are not enabled
+	 */
+	public ListMapStatistics getStatistics() {
+		if (statistics == null) {
+			throw new IllegalStateException("Statistics are not enabled");
+		}
+		return statistics.snapshot(idMap);
+	}
+
+	/**
+	 * Sets all counters to 0, if statistics are enabled
+	 */
+	public void resetStatistics() {
+		if (statistics != null) {
+			statistics = new ListMapStatistics();
+		}
+	}
+
+	/**
+	 * Get an immutable snapshot of this list. The snapshot has its own, more
+	 * compact key index and can be shared between threads without locking.
+	 * Later changes of this list are not visible in the snapshot. If key
+	 * caching is enabled, the cached keys are used.
+	 * 
+	 * @return
+	 */
+	public ImmutableListMap<K, V> toImmutable() {
+		return new ImmutableListMap<K, V>(toArray(), keys != null ? keys
+				.toArray() : null);
+	}
+
+	/**
+	 * Adds a secondary index. Like the key index, it maps the key computed by
+	 * the given {@link IndexKey} to all values with this key. The index is
+	 * built in one pass over the list and from then on it's kept up to date by
+	 * every operation that adds, removes or replaces elements. Secondary
+	 * indexes are not serialized, they have to be added again after the list
+	 * has been read.
+	 * 
+	 * @param name
+	 *            The name of the index
+	 * @param indexKey
+	 *            Computes the key of a value in this index
+	 * @throws IllegalArgumentException
+	 *             if there is already an index with this name
+	 * @see #getByIndex(String, Object)
+	 */
+	public void addIndex(String name, IndexKey<?, ? super V> indexKey) {
+
+		if (name == null) {
+			throw new NullPointerException("Name is null");
+		}
+
+		if (indexKey == null) {
+			throw new NullPointerException("IndexKey is null");
+		}
+
+		if (secondaryIndex(name) != null) {
+			throw new IllegalArgumentException("There is already an index "
+					+ name);
+		}
+
+		SecondaryIndex<V> index = new SecondaryIndex<V>(name, indexKey);
+		int size = size();
+		for (int i = 0; i < size; i++) {
+			index.add(super.get(i));
+		}
+
+		if (indexes == null) {
+			indexes = new ArrayList<SecondaryIndex<V>>(2);
+		}
+		indexes.add(index);
+	}
+
+	/**
+	 * Removes a secondary index
+	 * 
+	 * @param name
+	 *            The name of the index
+	 * @return false, if there is no index with this name
+	 */
+	public boolean removeIndex(String name) {
+
+		SecondaryIndex<V> index = secondaryIndex(name);
+
+		if (index == null) {
+			return false;
+		}
+
+		indexes.remove(index);
+		if (indexes.isEmpty()) {
+			indexes = null;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Get all values with the given key in a secondary index. The returned
+	 * {@link Set} is read only.
+	 * 
+	 * @param name
+	 *            The name of the index
+	 * @param key
+	 * @return The read only set or null, if there is no element with the given
+	 *         key
+	 * @throws IllegalArgumentException
+	 *             if there is no index with this name
+	 * @see #addIndex(String, IndexKey)
+	 */
+	public Set<V> getByIndex(String name, Object key) {
+
+		SecondaryIndex<V> index = secondaryIndex(name);
+
+		if (index == null) {
+			throw new IllegalArgumentException("There is no index " + name);
+		}
+
+		return index.get(key);
+	}
+
+	/**
+	 * Get the secondary index with the given name
+	 * 
+	 * @param name
+	 * @return The index or null
+	 */
+	private SecondaryIndex<V> secondaryIndex(String name) {
+
+		if (indexes != null) {
+			for (int i = 0; i < indexes.size(); i++) {
+				if (indexes.get(i).name.equals(name)) {
+					return indexes.get(i);
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Adds the value to all secondary indexes
+	 * 
+	 * @param v
+	 */
+	private void indexSecondary(V v) {
+		for (int i = 0; i < indexes.size(); i++) {
+			indexes.get(i).add(v);
+		}
+	}
+
+	/**
+	 * Removes the value from all secondary indexes
+	 * 
+	 * @param v
+	 */
+	private void unindexSecondary(V v) {
+		for (int i = 0; i < indexes.size(); i++) {
+			indexes.get(i).remove(v);
+		}
+	}
+
+	/**
+	 * Replaces the elements by the elements of the new list of the diff. The
+	 * elements are written in one pass, only the key index entries of removed,
+	 * inserted and replaced elements are updated.
+	 * 
+	 * @param diff
+	 *            The diff between this list and the new list
+	 * @see ListMapDiff#applyTo(java.util.List)
+	 */
+	void applyDiff(ListMapDiff<K, V> diff) {
+
+		int size = size();
+		int newSize = diff.newSize();
+
+		if (statistics != null) {
+			int removedCount = diff.removedPositions().length;
+			statistics.removes += removedCount;
+			statistics.adds += newSize - (size - removedCount);
+		}
+
+		if (indexes != null) {
+			int[] removed = diff.removedPositions();
+			for (int r = 0; r < removed.length; r++) {
+				unindexSecondary(super.get(removed[r]));
+			}
+
+			for (int i = 0; i < newSize; i++) {
+				V v = diff.newElement(i);
+				int oldPosition = diff.oldPosition(i);
+
+				if (oldPosition < 0) {
+					indexSecondary(v);
+				} else if (super.get(oldPosition) != v) {
+					unindexSecondary(super.get(oldPosition));
+					indexSecondary(v);
+				}
+			}
+		}
+
+		if (idMap != null) {
+			int[] removed = diff.removedPositions();
+			for (int r = 0; r < removed.length; r++) {
+				K key = keyAt(removed[r]);
+				if (key != null) {
+					unindex(key, super.get(removed[r]));
+				}
+			}
+
+			for (int i = 0; i < newSize; i++) {
+				K key = diff.newKey(i);
+				V v = diff.newElement(i);
+				int oldPosition = diff.oldPosition(i);
+
+				if (oldPosition < 0) {
+					if (key != null) {
+						index(key, v, i);
+					}
+				} else if (super.get(oldPosition) != v) {
+					unindex(key, super.get(oldPosition));
+					index(key, v, i);
+				}
+			}
+		}
+
+		ensureCapacity(newSize);
+		for (int i = 0; i < newSize; i++) {
+			if (i < size) {
+				super.set(i, diff.newElement(i));
+			} else {
+				super.add(diff.newElement(i));
+			}
+		}
+
+		if (newSize < size) {
+			super.removeRange(newSize, size);
+		} else {
+			modCount++;
+		}
+
+		if (keys != null) {
+			keys.clear();
+			for (int i = 0; i < newSize; i++) {
+				keys.add(diff.newKey(i));
+			}
+		}
+	}
+
+	/**
+	 * Get the key index. If it's not built yet, it's built in one pass over
+	 * the list.
+	 * 
+	 * @return
+	 */
+	private KeyIndex<K> keyIndex() {
+
+		if (idMap == null) {
+			int size = size();
+			idMap = new KeyIndex<K>(size);
+
+			for (int i = 0; i < size; i++) {
+				K key = keyAt(i);
+				if (key != null) {
+					index(key, super.get(i), i);
+				}
+			}
+		}
+
+		return idMap;
+	}
+
+	/**
+	 * Are the keys of the elements needed, either for the key index, for the
+	 * cached keys or for the secondary indexes. They are not needed as long as
+	 * a lazy key index is not built, key caching is disabled and there is no
+	 * secondary index.
+	 * 
+	 * @return
+	 */
+	private boolean tracksKeys() {
+		return idMap != null || keys != null || indexes != null;
+	}
+
+	/**
+	 * Get the key of the element at the given position. If key caching is
+	 * enabled, the cached key is returned.
+	 * 
+	 * @param position
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	private K keyAt(int position) {
+		return keys != null ? (K) keys.get(position) : super.get(position)
+				.getMapKey();
+	}
+
+	/**
+	 * Copies the element (and its cached key) at the given position to
+	 * another position
+	 * 
+	 * @param from
+	 * @param to
+	 */
+	private void move(int from, int to) {
+		if (statistics != null) {
+			statistics.movedElements++;
+		}
+		super.set(to, super.get(from));
+		if (keys != null) {
+			keys.set(to, keys.get(from));
+		}
+	}
+
+	/**
+	 * Cuts off the tail of the list (and of the cached keys)
+	 * 
+	 * @param newSize
+	 */
+	private void truncate(int newSize) {
+		if (keys != null) {
+			keys.removeRange(newSize, keys.size());
+		}
+		super.removeRange(newSize, size());
+	}
+
+	/**
+	 * Adds the value to the key index, if the key index is built
+	 * 
+	 * @param key
+	 * @param v
+	 * @param position
+	 *            The position of the value in the list
+	 */
+	@SuppressWarnings("unchecked")
+	private void index(K key, V v, int position) {
+
+		if (idMap == null) {
+			return;
+		}
+
+		int slot = idMap.slot(key);
+
+		if (slot < 0) {
+			slot = idMap.putSlot(key, v);
+			idMap.setPositionAt(slot, position);
+			return;
+		}
+
+		Object indexed = idMap.valueAt(slot);
+		ValueBucket<V> bucket;
+		if (indexed instanceof ValueBucket) {
+			bucket = (ValueBucket<V>) indexed;
+		} else {
+			bucket = new ValueBucket<V>((V) indexed);
+			int hint = idMap.positionAt(slot);
+			if (hint >= 0) {
+				bucket.setPosition((V) indexed, hint);
+			}
+			idMap.setValueAt(slot, bucket);
+		}
+
+		if (bucket.addValue(v) && idMap.tracksPositions()) {
+			bucket.setPosition(v, position);
+		}
+	}
+
+	/**
+	 * Removes the value from the key index, if the key index is built
+	 * 
+	 * @param key
+	 * @param v
+	 */
+	@SuppressWarnings("unchecked")
+	private void unindex(K key, Object v) {
+
+		if (idMap == null) {
+			return;
+		}
+
+		int slot = idMap.slot(key);
+		if (slot < 0) {
+			return;
+		}
+
+		Object indexed = idMap.valueAt(slot);
+
+		if (indexed instanceof ValueBucket) {
+			ValueBucket<V> bucket = (ValueBucket<V>) indexed;
+			Object remaining = bucket.removeValue(v);
+
+			if (remaining == null) {
+				idMap.remove(key);
+			} else if (remaining != bucket) {
+				idMap.setValueAt(slot, remaining);
+				idMap.setPositionAt(slot, bucket.position(remaining));
+			}
+		} else if (indexed.equals(v)) {
+			idMap.remove(key);
+		}
+	}
+
+	/**
+	 * Get the number of copies of the value in an entry of the key index
+	 * 
+	 * @param indexed
+	 *            The value, a {@link ValueBucket} or null
+	 * @param value
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	private int copies(Object indexed, Object value) {
+
+		if (indexed instanceof ValueBucket) {
+			return ((ValueBucket<V>) indexed).count(value);
+		}
+
+		return indexed != null && indexed.equals(value) ? 1 : 0;
+	}
+
+	/**
+	 * Starts to track the positions of the values in the key index. The
+	 * position of every value is remembered in one pass over the list.
+	 * Afterwards the position of a value is remembered, when it's added. This
+	 * is also used to refresh the positions after the list has been sorted.
+	 */
+	@SuppressWarnings("unchecked")
+	private void trackPositions() {
+
+		idMap.trackPositions();
+
+		int size = size();
+		for (int i = 0; i < size; i++) {
+			K key = keyAt(i);
+			int slot = idMap.slot(key);
+			if (slot < 0) {
+				continue;
+			}
+
+			Object indexed = idMap.valueAt(slot);
+
+			if (indexed instanceof ValueBucket) {
+				((ValueBucket<V>) indexed).setPosition(super.get(i), i);
+			} else {
+				idMap.setPositionAt(slot, i);
+			}
+		}
+
+		if (statistics != null) {
+			statistics.linearScans++;
+		}
+	}
+
+	/**
+	 * Get the values of an entry of the key index as {@link Set}
+	 * 
+	 * @param indexed
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	private Set<V> asSet(Object indexed) {
+
+		if (indexed == null) {
+			return null;
+		}
+
+		if (indexed instanceof ValueBucket) {
+			return (ValueBucket<V>) indexed;
+		}
+
+		return Collections.singleton((V) indexed);
+	}
+
+	/**
+	 * Appends the specified element to the end of this list.
+	 * 
+	 * @param e
+	 * @return
+	 */
+	@Override
+	public boolean add(V e) {
+
+		if (statistics != null) {
+			statistics.adds++;
+		}
+
+		if (!tracksKeys()) {
+			return super.add(e);
+		}
+
+		K key = e.getMapKey();
+
+		boolean added = super.add(e);
+
+		if (added && keys != null) {
+			keys.add(key);
+		}
+
+		if (added && key != null) {
+			index(key, e, size() - 1);
+		}
+
+		if (added && indexes != null) {
+			indexSecondary(e);
+		}
+
+		return added;
+	}
+
+	/**
+	 * Inserts the specified element at the specified position in this list.
+	 * 
+	 * @param index
+	 * @param e
+	 */
+	@Override
+	public void add(int index, V e) {
+
+		if (statistics != null && index <= size()) {
+			statistics.adds++;
+			statistics.shiftedElements += size() - index;
+		}
+
+		if (!tracksKeys()) {
+			super.add(index, e);
+			return;
+		}
+
+		K key = e.getMapKey();
+
+		super.add(index, e);
+
+		if (keys != null) {
+			keys.add(index, key);
+		}
+
+		if (key != null) {
+			index(key, e, index);
+		}
+
+		if (indexes != null) {
+			indexSecondary(e);
+		}
+	}
+
+	/**
+	 * Appends all of the elements in the specified collection to the end of
+	 * this list, in the order that they are returned by the specified
+	 * collection's Iterator.
+	 * 
+	 * @param c
+	 * @return
+	 */
+	@Override
+	public boolean addAll(Collection<? extends V> c) {
+		return addAll(size(), c);
+	}
+
+	/**
+	 * Inserts all of the elements in the specified collection into this list,
+	 * starting at the specified position. The list and the key index grow at
+	 * most once and the elements behind the position are shifted only once.
+	 * 
+	 * @param index
+	 * @param c
+	 * @return
+	 */
+	@Override
+	public boolean addAll(int index, Collection<? extends V> c) {
+
+		int oldSize = size();
+		ensureCapacity(oldSize + c.size());
+
+		boolean added = super.addAll(index, c);
+
+		if (statistics != null) {
+			statistics.adds += size() - oldSize;
+			statistics.shiftedElements += oldSize - index;
+		}
+
+		if (!tracksKeys()) {
+			return added;
+		}
+
+		int end = index + size() - oldSize;
+		if (keys != null) {
+			keys.insertGap(index, end - index);
+		}
+
+		for (int i = index; i < end; i++) {
+			V v = super.get(i);
+			K key = v.getMapKey();
+
+			if (keys != null) {
+				keys.set(i, key);
+			}
+
+			if (key != null) {
+				index(key, v, i);
+			}
+
+			if (indexes != null) {
+				indexSecondary(v);
+			}
+		}
+
+		return added;
+	}
+
+	/**
+	 * Appends all of the elements in the specified collection to the end of
+	 * this list. {@link Mappable#getMapKey()} of the elements is called on the
+	 * threads of the given {@link ExecutorService}, large collections are split
+	 * into one chunk per processor. The key index is filled afterwards by the
+	 * calling thread in list order, so all values of a key are in the same
+	 * order as by {@link #addAll(Collection)}. This is useful for very large
+	 * collections, if {@link Mappable#getMapKey()} is expensive or there are
+	 * many processors.
+	 * 
+	 * @param c
+	 * @param executor
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public boolean addAll(Collection<? extends V> c, ExecutorService executor) {
+
+		if (!tracksKeys()) {
+			return addAll(c);
+		}
+
+		Object[] batch = c.toArray();
+		Object[] batchKeys = KeyExtractor.extract(batch, executor);
+
+		if (statistics != null) {
+			statistics.adds += batch.length;
+		}
+
+		ensureCapacity(size() + batch.length);
+
+		for (int i = 0; i < batch.length; i++) {
+			V v = (V) batch[i];
+			K key = (K) batchKeys[i];
+
+			super.add(v);
+
+			if (keys != null) {
+				keys.add(key);
+			}
+
+			if (key != null) {
+				index(key, v, size() - 1);
+			}
+
+			if (indexes != null) {
+				indexSecondary(v);
+			}
+		}
+
+		return batch.length > 0;
+	}
+
+	/**
+	 * Removes all elements
 	 */
-	private static final long serialVersionUID = 4630450968498105177L;
+	@Override
+	public void clear() {
+		if (statistics != null) {
+			statistics.removes += size();
+		}
 
-	private final Map<K, Set<V>> idMap;
+		super.clear();
 
-	/**
-	 * Creates a new empty empty {@link ArrayListMap}
-	 */
-	public ArrayListMap() {
-		super();
-		idMap = new HashMap<K, Set<V>>();
+		if (idMap != null) {
+			idMap.clear();
+		}
+
+		if (keys != null) {
+			keys.clear();
+		}
+
+		if (indexes != null) {
+			for (int i = 0; i < indexes.size(); i++) {
+				indexes.get(i).clear();
+			}
+		}
 	}
 
 	/**
-	 * Constructs a {@link ArrayListMap} containing the elements of the
-	 * specified collection, in the order they are returned by the collection's
-	 * iterator.
+	 * Get all values with the given key. The returned {@link Set} is read only.
 	 * 
-	 * @param c
+	 * @param id
+	 * @return The read only set or null, if there is no element with the given
+	 *         key
 	 */
-	public ArrayListMap(Collection<? extends V> c) {
-		idMap = new HashMap<K, Set<V>>(c.size());
-		for (V v : c) {
-			add(v);
+	@Override
+	public Set<V> getByMapKey(K id) {
+		Object found = keyIndex().get(id);
+
+		if (statistics != null) {
+			statistics.lookup(found != null);
 		}
+
+		return asSet(found);
 	}
 
-	public ArrayListMap(int initialCapacity) {
-		super(initialCapacity);
-		idMap = new HashMap<K, Set<V>>(initialCapacity);
+	@Override
+	public Set<V> removeByMapKey(K id) {
+		Set<V> removed = asSet(keyIndex().remove(id));
+
+		if (statistics != null) {
+			statistics.lookup(removed != null);
+		}
+
+		if (removed != null) {
+			compact(removed);
+		}
+
+		return removed;
 	}
 
 	/**
-	 * Appends the specified element to the end of this list.
+	 * Removes every element that is contained in the given set. This is done
+	 * in a single pass over the list: the remaining elements are moved towards
+	 * the head of the list and the tail is cut off at once, so the backing
+	 * array is shifted only one time, no matter how many elements are removed.
 	 * 
-	 * @param e
-	 * @return
+	 * @param toRemove
+	 *            The elements to remove
 	 */
-	@Override
-	public boolean add(V e) {
+	private void compact(Set<V> toRemove) {
 
-		if (e.getMapKey() != null) {
+		int size = size();
+		int write = 0;
 
-			Set<V> listForKey = idMap.get(e.getMapKey());
+		for (int read = 0; read < size; read++) {
+			V v = super.get(read);
 
-			if (listForKey == null) {
-				listForKey = new LinkedHashSet<V>(1);
-				idMap.put(e.getMapKey(), listForKey);
+			if (!toRemove.contains(v)) {
+				if (write != read) {
+					move(read, write);
+				}
+				write++;
+			} else if (indexes != null) {
+				unindexSecondary(v);
 			}
+		}
 
-			boolean added = super.add(e);
-
-			if (added) {
-				listForKey.add(e);
-			}
+		if (statistics != null) {
+			statistics.linearScans++;
+			statistics.removes += size - write;
+		}
 
-			return added;
-		} else {
-			return super.add(e);
+		if (write < size) {
+			truncate(write);
 		}
 	}
 
 	/**
-	 * Inserts the specified element at the specified position in this list.
+	 * Removes the element at the specified position in this list.
 	 * 
 	 * @param index
-	 * @param element
+	 * @return
 	 */
+	@SuppressWarnings("unchecked")
 	@Override
-	public void add(int index, V e) {
-
-		if (e.getMapKey() != null) {
+	public V remove(int index) {
 
-			Set<V> listForKey = idMap.get(e.getMapKey());
+		if (statistics != null && index < size()) {
+			statistics.removes++;
+			statistics.shiftedElements += size() - index - 1;
+		}
 
-			if (listForKey == null) {
-				listForKey = new LinkedHashSet<V>(1);
-				idMap.put(e.getMapKey(), listForKey);
-			}
+		if (!tracksKeys()) {
+			return super.remove(index);
+		}
 
-			super.add(index, e);
+		V v = super.remove(index);
+		K key = keys != null ? (K) keys.remove(index) : v.getMapKey();
 
-			listForKey.add(e);
+		if (key != null) {
+			unindex(key, v);
+		}
 
-		} else {
-			super.add(index, e);
+		if (indexes != null) {
+			unindexSecondary(v);
 		}
+
+		return v;
 	}
 
 	/**
-	 * Appends all of the elements in the specified collection to the end of
-	 * this list, in the order that they are returned by the specified
-	 * collection's Iterator.
+	 * Removes the elements from fromIndex (inclusive) to toIndex (exclusive)
+	 * from the list and from the key index.
 	 * 
-	 * @param c
-	 * @return
+	 * @param fromIndex
+	 * @param toIndex
 	 */
 	@Override
-	public boolean addAll(Collection<? extends V> c) {
+	protected void removeRange(int fromIndex, int toIndex) {
 
-		for (V v : c) {
-			add(v);
+		if (statistics != null) {
+			statistics.removes += toIndex - fromIndex;
+			statistics.shiftedElements += size() - toIndex;
 		}
 
-		return true;
+		if (idMap != null) {
+			for (int i = fromIndex; i < toIndex; i++) {
+				K key = keyAt(i);
+				if (key != null) {
+					unindex(key, super.get(i));
+				}
+			}
+		}
+
+		if (indexes != null) {
+			for (int i = fromIndex; i < toIndex; i++) {
+				unindexSecondary(super.get(i));
+			}
+		}
+
+		if (keys != null) {
+			keys.removeRange(fromIndex, toIndex);
+		}
+
+		super.removeRange(fromIndex, toIndex);
 	}
 
 	/**
-	 * Inserts all of the elements in the specified collection into this list,
-	 * starting at the specified position.
+	 * Removes all elements that are contained in the specified collection.
+	 * The elements are removed in a single pass over the list.
 	 * 
-	 * @param index
 	 * @param c
 	 * @return
 	 */
 	@Override
-	public boolean addAll(int index, Collection<? extends V> c) {
-
-		for (V v : c) {
-			add(index++, v);
-		}
-
-		return true;
+	public boolean removeAll(Collection<?> c) {
+		return removeMarked(findRemoved(c, false));
 	}
 
 	/**
-	 * Removes all elements
+	 * Retains only the elements that are contained in the specified
+	 * collection. The elements are removed in a single pass over the list.
+	 * 
+	 * @param c
+	 * @return
 	 */
 	@Override
-	public void clear() {
-		super.clear();
-		idMap.clear();
+	public boolean retainAll(Collection<?> c) {
+		return removeMarked(findRemoved(c, true));
 	}
 
+	/**
+	 * Removes all elements that satisfy the predicate. Like
+	 * {@link #removeAll(Collection)} the elements are removed in a single
+	 * pass over the list and the key index is kept up to date. The predicate
+	 * is tested for every element first, so the list is unchanged if it
+	 * throws an exception.
+	 * 
+	 * @param filter
+	 * @return true, if the list has been changed
+	 */
 	@Override
-	public Set<V> getByMapKey(K id) {
-		return idMap.get(id);
+	public boolean removeIf(Predicate<? super V> filter) {
+		return removeMarked(findRemoved(filter));
 	}
 
-	@Override
-	public Set<V> removeByMapKey(K id) {
-		Set<V> removed = idMap.remove(id);
+	/**
+	 * Finds the elements that are (or are not) contained in the given
+	 * collection
+	 * 
+	 * @param c
+	 * @param retain
+	 *            true, if the elements contained in the collection should be
+	 *            kept, false if they should be removed
+	 * @return true for every position, whose element should be removed
+	 */
+	boolean[] findRemoved(Collection<?> c, boolean retain) {
 
-		if (removed != null) {
+		if (c == null) {
+			throw new NullPointerException("Collection is null");
+		}
+
+		boolean[] removed = new boolean[size()];
+		for (int i = 0; i < removed.length; i++) {
+			removed[i] = c.contains(super.get(i)) != retain;
+		}
 
-			int index;
-			for (V v : removed) {
+		return removed;
+	}
 
-				index = -1;
-				while ((index = super.indexOf(v)) >= 0) {
-					super.remove(index);
-				}
-			}
+	/**
+	 * Finds the elements that satisfy the predicate
+	 * 
+	 * @param filter
+	 * @return true for every position, whose element should be removed
+	 */
+	boolean[] findRemoved(Predicate<? super V> filter) {
+
+		if (filter == null) {
+			throw new NullPointerException("Predicate is null");
+		}
+
+		boolean[] removed = new boolean[size()];
+		for (int i = 0; i < removed.length; i++) {
+			removed[i] = filter.test(super.get(i));
 		}
 
 		return removed;
 	}
 
 	/**
-	 * Removes the element at the specified position in this list.
+	 * Removes the elements at the marked positions from the list and from the
+	 * key index. The remaining elements are moved towards the head of the list
+	 * and the tail is cut off at once.
 	 * 
-	 * @param index
-	 * @return
+	 * @param removed
+	 *            true for every position, whose element should be removed
+	 * @return true, if the list has been changed
 	 */
-	@Override
-	public V remove(int index) {
-		V v = super.remove(index);
+	boolean removeMarked(boolean[] removed) {
 
-		if (v != null && v.getMapKey() != null) {
+		int size = size();
+		int write = 0;
 
-			Set<V> removeList = idMap.get(v.getMapKey());
+		for (int read = 0; read < size; read++) {
+			V v = super.get(read);
 
-			if (removeList != null) {
-				removeList.remove(v);
+			if (!removed[read]) {
+				if (write != read) {
+					move(read, write);
+				}
+				write++;
+			} else {
+				if (idMap != null) {
+					K key = keyAt(read);
+					if (key != null) {
+						unindex(key, v);
+					}
+				}
 
-				if (removeList.isEmpty()) {
-					idMap.remove(v.getMapKey());
+				if (indexes != null) {
+					unindexSecondary(v);
 				}
 			}
 		}
 
-		return v;
+		if (statistics != null) {
+			statistics.linearScans++;
+			statistics.removes += size - write;
+		}
+
+		if (write == size) {
+			return false;
+		}
+
+		truncate(write);
+		return true;
+	}
+
+	@Override
+	public Iterator<V> iterator() {
+		return listIterator(0);
+	}
+
+	@Override
+	public ListIterator<V> listIterator() {
+		return listIterator(0);
+	}
+
+	/**
+	 * Get a {@link ListIterator} that keeps the key index up to date, if the
+	 * list is modified through the iterator.
+	 * 
+	 * @param index
+	 * @return
+	 */
+	@Override
+	public ListIterator<V> listIterator(int index) {
+		return new ListMapIterator<V>(this, index) {
+			@Override
+			int modCount() {
+				return modCount;
+			}
+		};
+	}
+
+	/**
+	 * Get a view of the given range of this list. Modifications of the view
+	 * are written through to this list and its key index.
+	 * 
+	 * @param fromIndex
+	 * @param toIndex
+	 * @return
+	 */
+	@Override
+	public List<V> subList(int fromIndex, int toIndex) {
+		return new ListMapSubList<V>(this, fromIndex, toIndex) {
+			@Override
+			int parentModCount() {
+				return ArrayListMap.this.modCount;
+			}
+
+			@Override
+			void parentRemoveRange(int fromIndex, int toIndex) {
+				ArrayListMap.this.removeRange(fromIndex, toIndex);
+			}
+		};
 	}
 
 	/**
@@ -227,56 +1314,217 @@ public class ArrayListMap<K, V extends Mappable<K>> extends ArrayList<V>
 	 * @param element
 	 * @return
 	 */
-	@SuppressWarnings("unchecked")
 	@Override
 	public boolean remove(Object element) {
-		boolean removed = super.remove(element);
+		int index = indexOf(element);
+
+		if (index < 0) {
+			return false;
+		}
+
+		remove(index);
+		return true;
+	}
+
+	/**
+	 * Get the position of the first or last occurrence of the value. The first
+	 * time a position is looked up, the key index starts to remember the
+	 * position of every value (see {@link #trackPositions()}). A value with a
+	 * key, that is contained only once, is searched outwards from its
+	 * remembered position (see {@link PositionHint}), so it's found in O(d),
+	 * if d elements have been inserted or removed in front of it. The list is
+	 * scanned only for values without a key, for values that are contained
+	 * more than once and if key caching is enabled, because then the key of an
+	 * element may have changed since it has been added.
+	 * 
+	 * @param value
+	 * @param last
+	 *            true for the last occurrence, false for the first one
+	 * @return The position or -1, if the value is not in the list
+	 */
+	@SuppressWarnings("unchecked")
+	private int positionOf(Object value, boolean last) {
+
+		if (!(value instanceof Mappable)) {
+			return -1;
+		}
+
+		K key = ((Mappable<K>) value).getMapKey();
 
-		if (removed && element instanceof Mappable<?>
-				&& ((V) element).getMapKey() != null) {
+		if (key != null) {
+			KeyIndex<K> index = keyIndex();
+			int slot = index.slot(key);
+			Object found = slot < 0 ? null : index.valueAt(slot);
+			int copies = copies(found, value);
+
+			if (statistics != null) {
+				statistics.lookup(copies > 0);
+			}
+
+			if (copies == 0 && keys == null) {
+				return -1;
+			}
+
+			if (copies == 1 && keys == null) {
+
+				if (!index.tracksPositions()) {
+					trackPositions();
+				}
 
-			K key = ((V) element).getMapKey();
-			Set<V> toRemove = idMap.get(key);
+				int hint;
+				if (found instanceof ValueBucket) {
+					hint = ((ValueBucket<V>) found).position(value);
+				} else {
+					hint = index.positionAt(slot);
+				}
+
+				int position = PositionHint.findEqual(this, value, hint);
 
-			if (toRemove != null) {
+				if (statistics != null && position != hint) {
+					statistics.linearScans++;
+				}
 
-				toRemove.remove(element);
+				if (position < 0) {
+					return -1;
+				}
 
-				if (toRemove.isEmpty()) {
-					idMap.remove(key);
+				if (found instanceof ValueBucket) {
+					((ValueBucket<V>) found).setPosition(value, position);
+				} else {
+					index.setPositionAt(slot, position);
 				}
-				return true;
+
+				return position;
 			}
+		}
 
+		if (statistics != null) {
+			statistics.linearScans++;
 		}
 
-		return removed;
+		return last ? super.lastIndexOf(value) : super.indexOf(value);
 	}
 
+	/**
+	 * Checks if the list contains the value. For values with a key this is
+	 * answered by the key index, only values without a key are searched in
+	 * the list.
+	 * 
+	 * @param value
+	 * @return
+	 */
 	@SuppressWarnings("unchecked")
 	@Override
 	public boolean contains(Object value) {
 
-		if (value instanceof Mappable && ((V) value).getMapKey() != null) {
+		if (!(value instanceof Mappable)) {
+			return false;
+		}
 
-			Set<V> found = idMap.get(((Mappable<K>) value).getMapKey());
+		Object key = ((Mappable<K>) value).getMapKey();
 
-			if (found != null && !found.isEmpty()) {
-				boolean foundInKeyMap = found.contains(value);
+		if (key != null) {
+			int copies = copies(keyIndex().get(key), value);
 
-				if (foundInKeyMap) {
-					return true;
-				}
+			if (statistics != null) {
+				statistics.lookup(copies > 0);
+			}
 
+			// With key caching the key of an element may have changed
+			if (copies > 0 || keys == null) {
+				return copies > 0;
 			}
 		}
 
+		if (statistics != null) {
+			statistics.linearScans++;
+		}
+
 		return super.contains(value);
+	}
+
+	/**
+	 * Get the position of the first occurrence of the value. If the value has
+	 * a key, that is not in the key index, -1 is returned without searching
+	 * the list.
+	 * 
+	 * @param value
+	 * @return The position or -1
+	 */
+	@Override
+	public int indexOf(Object value) {
+		return positionOf(value, false);
+	}
+
+	/**
+	 * Get the position of the last occurrence of the value. If the value has
+	 * a key, that is not in the key index, -1 is returned without searching
+	 * the list.
+	 * 
+	 * @param value
+	 * @return The position or -1
+	 */
+	@Override
+	public int lastIndexOf(Object value) {
+		return positionOf(value, true);
+	}
+
+	/**
+	 * Replaces every element with the result of the operator. Every element
+	 * is replaced by {@link #set(int, Mappable)}, so the key index is kept up
+	 * to date.
+	 * 
+	 * @param operator
+	 */
+	@Override
+	public void replaceAll(UnaryOperator<V> operator) {
+
+		if (operator == null) {
+			throw new NullPointerException("Operator is null");
+		}
+
+		int size = size();
+		for (int i = 0; i < size; i++) {
+			set(i, operator.apply(super.get(i)));
+		}
+
+		modCount++;
+	}
+
+	/**
+	 * Sorts the list. The cached keys are moved along with their elements and
+	 * the positions remembered by the key index are refreshed afterwards.
+	 * 
+	 * @param c
+	 *            The {@link Comparator} or null for the natural ordering
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public void sort(Comparator<? super V> c) {
 
+		Object[] elements = toArray();
+
+		if (keys != null) {
+			keys.sort(elements, (Comparator<Object>) c);
+		} else {
+			Arrays.sort(elements, (Comparator<Object>) c);
+		}
+
+		for (int i = 0; i < elements.length; i++) {
+			super.set(i, (V) elements[i]);
+		}
+
+		modCount++;
+
+		if (idMap != null && idMap.tracksPositions()) {
+			trackPositions();
+		}
 	}
 
 	/**
-	 * Replaces the item at the current position
+	 * Replaces the item at the current position. This overwrites the slot in
+	 * place, only the key index entries of the old and the new element are
+	 * updated.
 	 * 
 	 * @param position
 	 * @param e
@@ -291,41 +1539,53 @@ public class ArrayListMap<K, V extends Mappable<K>> extends ArrayList<V>
 							+ " but the size of this list is " + size());
 		}
 
-		V previous = get(position);
+		if (statistics != null) {
+			statistics.sets++;
+		}
 
-		K key = previous.getMapKey();
+		if (!tracksKeys()) {
+			return super.set(position, e);
+		}
 
-		if (key != null) {
-			Set<V> prevList = idMap.get(key);
-			if (prevList != null) {
-				prevList.remove(previous);
+		K previousKey = keyAt(position);
+		K key = e.getMapKey();
 
-				if (prevList.isEmpty()) {
-					idMap.remove(key);
-				}
-			}
+		V previous = super.set(position, e);
+
+		if (keys != null) {
+			keys.set(position, key);
 		}
 
-		add(position, e);
-		remove(position + 1);
+		if (previousKey != null) {
+			unindex(previousKey, previous);
+		}
 
-		return previous;
+		if (key != null) {
+			index(key, e, position);
+		}
+
+		if (indexes != null) {
+			unindexSecondary(previous);
+			indexSecondary(e);
+		}
 
+		return previous;
 	}
 
+	@SuppressWarnings("unchecked")
 	@Override
 	public V getFirstByMapKey(K id) {
 
-		Set<V> founds = getByMapKey(id);
+		Object found = keyIndex().get(id);
 
-		if (founds == null || founds.isEmpty()) {
-			return null;
+		if (statistics != null) {
+			statistics.lookup(found != null);
 		}
 
-		for (V v : founds) {
-			return v;
+		if (found instanceof ValueBucket) {
+			return ((ValueBucket<V>) found).first();
 		}
 
-		return null;
+		return (V) found;
 	}
 }
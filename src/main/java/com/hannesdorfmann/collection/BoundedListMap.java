@@ -0,0 +1,689 @@
+package com.hannesdorfmann.collection;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * A {@link ListMap} with unique keys and a maximum size, that can be used as
+ * cache. If an element is added to a full list, the element at the head of
+ * the list is evicted. The elements are ordered by the {@link EvictionPolicy}:
+ * by insertion or by the last access with {@link #getFirstByMapKey(Object)} or
+ * {@link #getByMapKey(Object)}. Adding an element with a key that is already
+ * in the list replaces the old element and moves it to the end of the list.
+ * 
+ * <p>
+ * The elements are stored in a ring buffer. Removing an element or moving it
+ * to the end leaves an empty slot, so eviction, removal and moving are O(1)
+ * and don't shift the elements. The empty slots are removed in one pass, when
+ * the ring buffer is full. If an element is accessed by its position while
+ * there are empty slots, the used slots are counted in a Fenwick tree. It's
+ * built once and then updated by every change in O(log n) until the next
+ * compaction, so mixing lookups by key in
+ * {@link EvictionPolicy#ACCESS_ORDER} with {@link #get(int)} costs O(log n)
+ * per call and not O(n).
+ * </p>
+ * 
+ * <p>
+ * Every element must have a key. {@link #contains(Object)},
+ * {@link #indexOf(Object)} and {@link #remove(Object)} look up the key of the
+ * given element, so they are O(1) too. Elements can only be appended with
+ * {@link #add(Mappable)}.
+ * </p>
+ * 
+ * @author Hannes Dorfmann
+ * 
+ * @param <K>
+ *            The Key
+ * @param <V>
+ *            The Value
+ */
+public class BoundedListMap<K, V extends Mappable<K>> extends AbstractList<V>
+		implements ListMap<K, V>, RandomAccess, Serializable {
+
+	private static final long serialVersionUID = -2092659147396726629L;
+
+	/**
+	 * Defines which element is evicted if the list is full
+	 */
+	public enum EvictionPolicy {
+
+		/**
+		 * The element that has been added first is evicted
+		 */
+		INSERTION_ORDER,
+
+		/**
+		 * The element that has been added or looked up by key least recently
+		 * is evicted. A lookup moves the element to the end of the list.
+		 */
+		ACCESS_ORDER
+	}
+
+	/**
+	 * Gets notified about evicted elements
+	 * 
+	 * @author Hannes Dorfmann
+	 * 
+	 * @param <V>
+	 */
+	public interface EvictionListener<V> {
+
+		/**
+		 * The element has been evicted, because the list was full
+		 * 
+		 * @param evicted
+		 */
+		public void onEvicted(V evicted);
+	}
+
+	/**
+	 * An element and its slot in the ring buffer. It's also an unmodifiable
+	 * {@link Set} view containing just the value, so that
+	 * {@link BoundedListMap#getByMapKey(Object)} doesn't need to allocate a new
+	 * {@link Set} on every call.
+	 */
+	private static class Entry<K, V> extends AbstractSet<V> {
+
+		final K key;
+		V value;
+		int slot;
+
+		Entry(K key, V value) {
+			this.key = key;
+			this.value = value;
+		}
+
+		@Override
+		public Iterator<V> iterator() {
+			return new Iterator<V>() {
+
+				private boolean hasNext = true;
+
+				@Override
+				public boolean hasNext() {
+					return hasNext;
+				}
+
+				@Override
+				public V next() {
+					if (!hasNext) {
+						throw new NoSuchElementException();
+					}
+					hasNext = false;
+					return value;
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException(
+							"The set returned by getByMapKey() is read only");
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return 1;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return value.equals(o);
+		}
+	}
+
+	private static final int MIN_CAPACITY = 16;
+
+	/**
+	 * The ring buffer. Its length is a power of two. A null slot between
+	 * {@link #head} and the last used slot is a removed element.
+	 */
+	private transient Entry<K, V>[] ring;
+
+	/**
+	 * The slot of the first element, it's never an empty slot
+	 */
+	private transient int head;
+
+	/**
+	 * The number of used slots, including the empty slots of removed elements
+	 */
+	private transient int span;
+
+	private transient int size;
+
+	private transient Map<K, Entry<K, V>> idMap;
+
+	/**
+	 * The used slots of the ring buffer, or null if they haven't been counted
+	 * since the last compaction
+	 */
+	private transient SlotCounts usedSlots;
+
+	private int maxSize;
+
+	private EvictionPolicy evictionPolicy;
+
+	private transient EvictionListener<? super V> evictionListener;
+
+	private transient long hitCount;
+
+	private transient long missCount;
+
+	private transient long evictionCount;
+
+	/**
+	 * Creates a new empty {@link BoundedListMap}, that evicts the element that
+	 * has been added first
+	 * 
+	 * @param maxSize
+	 *            The maximum number of elements
+	 */
+	public BoundedListMap(int maxSize) {
+		this(maxSize, EvictionPolicy.INSERTION_ORDER);
+	}
+
+	/**
+	 * Creates a new empty {@link BoundedListMap}
+	 * 
+	 * @param maxSize
+	 *            The maximum number of elements
+	 * @param evictionPolicy
+	 */
+	public BoundedListMap(int maxSize, EvictionPolicy evictionPolicy) {
+		if (evictionPolicy == null) {
+			throw new NullPointerException("EvictionPolicy is null");
+		}
+
+		checkMaxSize(maxSize);
+		this.maxSize = maxSize;
+		this.evictionPolicy = evictionPolicy;
+		init();
+	}
+
+	@SuppressWarnings("unchecked")
+	private void init() {
+		ring = (Entry<K, V>[]) new Entry<?, ?>[MIN_CAPACITY];
+		idMap = new HashMap<K, Entry<K, V>>();
+		usedSlots = null;
+	}
+
+	private static void checkMaxSize(int maxSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("maxSize must be at least 1: "
+					+ maxSize);
+		}
+	}
+
+	/**
+	 * Set the maximum number of elements. If there are more elements, the
+	 * elements at the head of the list are evicted.
+	 * 
+	 * @param maxSize
+	 */
+	public void setMaxSize(int maxSize) {
+		checkMaxSize(maxSize);
+		this.maxSize = maxSize;
+		evictOverflow();
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public EvictionPolicy getEvictionPolicy() {
+		return evictionPolicy;
+	}
+
+	/**
+	 * Set the {@link EvictionListener}
+	 * 
+	 * @param evictionListener
+	 *            The listener or null
+	 */
+	public void setEvictionListener(EvictionListener<? super V> evictionListener) {
+		this.evictionListener = evictionListener;
+	}
+
+	/**
+	 * Get the number of lookups by key, that have found an element
+	 * 
+	 * @return
+	 */
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * Get the number of lookups by key, that haven't found an element
+	 * 
+	 * @return
+	 */
+	public long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Get the number of evicted elements
+	 * 
+	 * @return
+	 */
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * Sets the hit, miss and eviction counters to 0
+	 */
+	public void resetStatistics() {
+		hitCount = 0;
+		missCount = 0;
+		evictionCount = 0;
+	}
+
+	private int mask() {
+		return ring.length - 1;
+	}
+
+	/**
+	 * Removes the empty slots between the used slots
+	 */
+	private void compact() {
+		int mask = mask();
+		int write = 0;
+
+		for (int read = 0; read < span; read++) {
+			int from = (head + read) & mask;
+			Entry<K, V> entry = ring[from];
+
+			if (entry != null) {
+				if (read != write) {
+					int to = (head + write) & mask;
+					ring[to] = entry;
+					ring[from] = null;
+					entry.slot = to;
+				}
+				write++;
+			}
+		}
+
+		span = write;
+		usedSlots = null;
+	}
+
+	/**
+	 * Copies the elements without empty slots into a new ring buffer
+	 * 
+	 * @param capacity
+	 */
+	@SuppressWarnings("unchecked")
+	private void resize(int capacity) {
+		Entry<K, V>[] resized = (Entry<K, V>[]) new Entry<?, ?>[capacity];
+		int mask = mask();
+		int write = 0;
+
+		for (int read = 0; read < span; read++) {
+			Entry<K, V> entry = ring[(head + read) & mask];
+			if (entry != null) {
+				resized[write] = entry;
+				entry.slot = write++;
+			}
+		}
+
+		ring = resized;
+		head = 0;
+		span = write;
+		usedSlots = null;
+	}
+
+	/**
+	 * Counts the used slots of the ring buffer
+	 */
+	private void countUsedSlots() {
+		boolean[] used = new boolean[ring.length];
+		for (int i = 0; i < used.length; i++) {
+			used[i] = ring[i] != null;
+		}
+		usedSlots = new SlotCounts(used);
+	}
+
+	/**
+	 * Appends the entry to the end of the ring buffer. If the ring buffer is
+	 * full, it's compacted, if at most half of the slots are used by
+	 * elements, otherwise it grows.
+	 * 
+	 * @param entry
+	 */
+	private void append(Entry<K, V> entry) {
+		if (span == ring.length) {
+			if (size * 2 <= ring.length) {
+				compact();
+			} else {
+				resize(ring.length * 2);
+			}
+		}
+
+		int slot = (head + span) & mask();
+		ring[slot] = entry;
+		entry.slot = slot;
+		span++;
+		size++;
+
+		if (usedSlots != null) {
+			usedSlots.use(slot);
+		}
+	}
+
+	/**
+	 * Empties the slot of the entry. Empty slots at the head and at the end of
+	 * the ring buffer are released.
+	 * 
+	 * @param entry
+	 */
+	private void release(Entry<K, V> entry) {
+		ring[entry.slot] = null;
+		size--;
+
+		if (usedSlots != null) {
+			usedSlots.release(entry.slot);
+		}
+
+		int mask = mask();
+		while (span > 0 && ring[head] == null) {
+			head = (head + 1) & mask;
+			span--;
+		}
+		while (span > 0 && ring[(head + span - 1) & mask] == null) {
+			span--;
+		}
+	}
+
+	/**
+	 * Get the entry at the given position of the list
+	 * 
+	 * @param index
+	 * @return
+	 */
+	private Entry<K, V> entryAt(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+					+ size);
+		}
+
+		if (span == size) {
+			return ring[(head + index) & mask()];
+		}
+
+		if (usedSlots == null) {
+			countUsedSlots();
+		}
+
+		// The used slots from the head to the end of the array come first,
+		// followed by the used slots at the start of the array
+		int headOffset = usedSlots.usedBefore(head);
+		int tail = size - headOffset;
+
+		return ring[index < tail ? usedSlots.findUsed(headOffset + index + 1)
+				: usedSlots.findUsed(index - tail + 1)];
+	}
+
+	/**
+	 * Evicts the elements at the head of the list, while there are more
+	 * elements than allowed
+	 */
+	private void evictOverflow() {
+		while (size > maxSize) {
+			Entry<K, V> evicted = ring[head];
+			release(evicted);
+			idMap.remove(evicted.key);
+			modCount++;
+			evictionCount++;
+
+			if (evictionListener != null) {
+				evictionListener.onEvicted(evicted.value);
+			}
+		}
+	}
+
+	/**
+	 * Looks up the entry of the key, counts the hit or miss and moves the
+	 * element to the end of the list, if the {@link EvictionPolicy} is
+	 * {@link EvictionPolicy#ACCESS_ORDER}
+	 * 
+	 * @param id
+	 * @return
+	 */
+	private Entry<K, V> access(K id) {
+		Entry<K, V> entry = idMap.get(id);
+
+		if (entry == null) {
+			missCount++;
+			return null;
+		}
+
+		hitCount++;
+
+		if (evictionPolicy == EvictionPolicy.ACCESS_ORDER
+				&& entry.slot != ((head + span - 1) & mask())) {
+			release(entry);
+			append(entry);
+			modCount++;
+		}
+
+		return entry;
+	}
+
+	/**
+	 * Appends the element to the end of the list. If there is already an
+	 * element with the same key, the old element is removed. If the list is
+	 * full afterwards, the element at the head of the list is evicted.
+	 * 
+	 * @param e
+	 * @return
+	 * @throws NullPointerException
+	 *             if the element has no key
+	 */
+	@Override
+	public boolean add(V e) {
+		K key = e.getMapKey();
+
+		if (key == null) {
+			throw new NullPointerException("The key of " + e + " is null");
+		}
+
+		Entry<K, V> entry = idMap.get(key);
+
+		if (entry == null) {
+			entry = new Entry<K, V>(key, e);
+			idMap.put(key, entry);
+		} else {
+			release(entry);
+			entry.value = e;
+		}
+
+		append(entry);
+		modCount++;
+		evictOverflow();
+		return true;
+	}
+
+	@Override
+	public V get(int index) {
+		return entryAt(index).value;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public V remove(int index) {
+		Entry<K, V> entry = entryAt(index);
+		release(entry);
+		idMap.remove(entry.key);
+		modCount++;
+		return entry.value;
+	}
+
+	/**
+	 * Get the entry of the element with the same key as the given element, if
+	 * it's equal to the given element
+	 * 
+	 * @param o
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	private Entry<K, V> entryOf(Object o) {
+		if (!(o instanceof Mappable)) {
+			return null;
+		}
+
+		Entry<K, V> entry = idMap.get(((Mappable<K>) o).getMapKey());
+		return entry != null && entry.value.equals(o) ? entry : null;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return entryOf(o) != null;
+	}
+
+	@Override
+	public int indexOf(Object o) {
+		Entry<K, V> entry = entryOf(o);
+
+		if (entry == null) {
+			return -1;
+		}
+
+		if (span == size) {
+			return (entry.slot - head) & mask();
+		}
+
+		if (usedSlots == null) {
+			countUsedSlots();
+		}
+
+		int headOffset = usedSlots.usedBefore(head);
+		int position = usedSlots.usedBefore(entry.slot) - headOffset;
+		return entry.slot >= head ? position : position + size;
+	}
+
+	@Override
+	public int lastIndexOf(Object o) {
+		return indexOf(o);
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		Entry<K, V> entry = entryOf(o);
+
+		if (entry == null) {
+			return false;
+		}
+
+		release(entry);
+		idMap.remove(entry.key);
+		modCount++;
+		return true;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(ring, null);
+		head = 0;
+		span = 0;
+		size = 0;
+		usedSlots = null;
+		idMap.clear();
+		modCount++;
+	}
+
+	/**
+	 * Get the value by the key. The returned {@link Set} is a read only view
+	 * that contains exactly one element. If the {@link EvictionPolicy} is
+	 * {@link EvictionPolicy#ACCESS_ORDER}, the element is moved to the end of
+	 * the list.
+	 * 
+	 * @param id
+	 * @return The read only set or null, if there is no element with the given
+	 *         key
+	 */
+	@Override
+	public Set<V> getByMapKey(K id) {
+		return access(id);
+	}
+
+	/**
+	 * Get the value by the key. If the {@link EvictionPolicy} is
+	 * {@link EvictionPolicy#ACCESS_ORDER}, the element is moved to the end of
+	 * the list.
+	 * 
+	 * @param id
+	 * @return The value or null
+	 */
+	@Override
+	public V getFirstByMapKey(K id) {
+		Entry<K, V> entry = access(id);
+		return entry == null ? null : entry.value;
+	}
+
+	@Override
+	public Set<V> removeByMapKey(K id) {
+		Entry<K, V> entry = idMap.remove(id);
+
+		if (entry == null) {
+			return null;
+		}
+
+		release(entry);
+		modCount++;
+		return entry;
+	}
+
+	/**
+	 * Writes the maximum size, the {@link EvictionPolicy} and the elements.
+	 * The {@link EvictionListener} and the statistics are not written.
+	 * 
+	 * @param out
+	 * @throws IOException
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeInt(size);
+
+		for (int i = 0; i < size; i++) {
+			out.writeObject(get(i));
+		}
+	}
+
+	/**
+	 * Reads the elements and builds the ring buffer and the key index
+	 * 
+	 * @param in
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		in.defaultReadObject();
+		init();
+
+		int count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			add((V) in.readObject());
+		}
+	}
+}
@@ -0,0 +1,375 @@
+package com.hannesdorfmann.collection;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A list of objects that is split into chunks (a tiered vector). Every chunk
+ * is a small array that knows the position of its first element in the whole
+ * list. Inserting or removing an element shifts only the elements of one
+ * chunk and updates the start positions of the following chunks. The maximum
+ * size of a chunk grows with the square root of the size of the list, so
+ * inserting and removing at any position is O(sqrt(n)). {@link #get(int)}
+ * finds the chunk by binary search, sequential access hits the last used
+ * chunk directly.
+ * 
+ * <p>
+ * If elements are moved to another chunk, because a chunk is split or merged,
+ * {@link #moved(Object, Chunk)} is called for each of them, so that an index
+ * can remember the chunk of an element.
+ * </p>
+ * 
+ * @author Hannes Dorfmann
+ * 
+ */
+class ChunkedArray {
+
+	/**
+	 * A part of the list
+	 */
+	static final class Chunk {
+
+		Object[] elements;
+
+		int count;
+
+		/**
+		 * The position of the first element in the list
+		 */
+		int start;
+
+		Chunk(int capacity, int start) {
+			elements = new Object[capacity];
+			this.start = start;
+		}
+	}
+
+	private static final int MIN_CHUNK_CAPACITY = 32;
+
+	private static final int MAX_CHUNK_CAPACITY = 4096;
+
+	private Chunk[] chunks = new Chunk[4];
+
+	private int chunkCount;
+
+	private int size;
+
+	/**
+	 * The index of the chunk that has been used last
+	 */
+	private int lastChunk;
+
+	/**
+	 * Called for every element that has been moved to another chunk
+	 * 
+	 * @param element
+	 * @param chunk
+	 *            The new chunk of the element
+	 */
+	void moved(Object element, Chunk chunk) {
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Get the maximum capacity of a chunk for the current size, the square
+	 * root of the size rounded up to a power of two
+	 * 
+	 * @return
+	 */
+	private int maxChunkCapacity() {
+		int capacity = MIN_CHUNK_CAPACITY;
+		while (capacity < MAX_CHUNK_CAPACITY && capacity * capacity < size) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+					+ size);
+		}
+	}
+
+	/**
+	 * Get the index of the chunk that contains the given position
+	 * 
+	 * @param index
+	 *            A position between 0 and size - 1
+	 * @return
+	 */
+	private int chunkIndex(int index) {
+
+		if (lastChunk < chunkCount) {
+			Chunk chunk = chunks[lastChunk];
+			if (index >= chunk.start && index < chunk.start + chunk.count) {
+				return lastChunk;
+			}
+		}
+
+		int low = 0;
+		int high = chunkCount - 1;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (chunks[middle].start <= index) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+
+		lastChunk = low;
+		return low;
+	}
+
+	/**
+	 * Get the chunk that contains the given position
+	 * 
+	 * @param index
+	 * @return
+	 */
+	Chunk chunkAt(int index) {
+		checkIndex(index);
+		return chunks[chunkIndex(index)];
+	}
+
+	Object get(int index) {
+		checkIndex(index);
+		Chunk chunk = chunks[chunkIndex(index)];
+		return chunk.elements[index - chunk.start];
+	}
+
+	Object set(int index, Object element) {
+		checkIndex(index);
+		Chunk chunk = chunks[chunkIndex(index)];
+		Object previous = chunk.elements[index - chunk.start];
+		chunk.elements[index - chunk.start] = element;
+		return previous;
+	}
+
+	/**
+	 * Get the position of the element in the given chunk
+	 * 
+	 * @param chunk
+	 * @param element
+	 * @return The position in the list or -1, if the element is not in the
+	 *         chunk (compared by identity)
+	 */
+	int indexOf(Chunk chunk, Object element) {
+		for (int i = 0; i < chunk.count; i++) {
+			if (chunk.elements[i] == element) {
+				return chunk.start + i;
+			}
+		}
+		return -1;
+	}
+
+	private void insertChunk(int at, Chunk chunk) {
+		if (chunkCount == chunks.length) {
+			chunks = Arrays.copyOf(chunks, chunkCount * 2);
+		}
+		System.arraycopy(chunks, at, chunks, at + 1, chunkCount - at);
+		chunks[at] = chunk;
+		chunkCount++;
+	}
+
+	private void removeChunk(int at) {
+		System.arraycopy(chunks, at + 1, chunks, at, chunkCount - at - 1);
+		chunks[--chunkCount] = null;
+	}
+
+	/**
+	 * Moves the second half of a chunk into a new chunk
+	 * 
+	 * @param at
+	 *            The index of the chunk
+	 */
+	private void split(int at) {
+		Chunk chunk = chunks[at];
+		int half = chunk.count / 2;
+		int moved = chunk.count - half;
+
+		Chunk next = new Chunk(chunk.elements.length, chunk.start + half);
+		System.arraycopy(chunk.elements, half, next.elements, 0, moved);
+		Arrays.fill(chunk.elements, half, chunk.count, null);
+		next.count = moved;
+		chunk.count = half;
+		insertChunk(at + 1, next);
+
+		for (int i = 0; i < moved; i++) {
+			moved(next.elements[i], next);
+		}
+	}
+
+	/**
+	 * Inserts the element at the given position
+	 * 
+	 * @param index
+	 * @param element
+	 * @return The chunk the element has been inserted into
+	 */
+	Chunk add(int index, Object element) {
+
+		if (index < 0 || index > size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+					+ size);
+		}
+
+		if (chunkCount == 0) {
+			insertChunk(0, new Chunk(MIN_CHUNK_CAPACITY, 0));
+		}
+
+		int at = index == size ? chunkCount - 1 : chunkIndex(index);
+		Chunk chunk = chunks[at];
+
+		if (chunk.count == chunk.elements.length) {
+			int maxCapacity = maxChunkCapacity();
+
+			if (chunk.elements.length < maxCapacity) {
+				chunk.elements = Arrays.copyOf(chunk.elements, Math.min(
+						chunk.elements.length * 2, maxCapacity));
+			} else if (index == size) {
+				// Appending: start a new chunk instead of leaving two half
+				// full chunks behind
+				chunk = new Chunk(maxCapacity, size);
+				insertChunk(++at, chunk);
+			} else {
+				split(at);
+				if (index - chunk.start > chunk.count) {
+					chunk = chunks[++at];
+				}
+			}
+		}
+
+		int offset = index - chunk.start;
+		System.arraycopy(chunk.elements, offset, chunk.elements, offset + 1,
+				chunk.count - offset);
+		chunk.elements[offset] = element;
+		chunk.count++;
+		size++;
+
+		for (int i = at + 1; i < chunkCount; i++) {
+			chunks[i].start++;
+		}
+
+		lastChunk = at;
+		return chunk;
+	}
+
+	/**
+	 * Removes the element at the given position. A chunk that is less than a
+	 * quarter full is merged with the next chunk, if both fit into one.
+	 * 
+	 * @param index
+	 * @return The removed element
+	 */
+	Object remove(int index) {
+		checkIndex(index);
+
+		int at = chunkIndex(index);
+		Chunk chunk = chunks[at];
+		int offset = index - chunk.start;
+		Object removed = chunk.elements[offset];
+
+		System.arraycopy(chunk.elements, offset + 1, chunk.elements, offset,
+				chunk.count - offset - 1);
+		chunk.elements[--chunk.count] = null;
+		size--;
+
+		for (int i = at + 1; i < chunkCount; i++) {
+			chunks[i].start--;
+		}
+
+		if (chunk.count == 0) {
+			removeChunk(at);
+		} else if (chunk.count < chunk.elements.length / 4
+				&& at + 1 < chunkCount
+				&& chunk.count + chunks[at + 1].count <= chunk.elements.length) {
+			merge(at);
+		}
+
+		return removed;
+	}
+
+	/**
+	 * Moves the elements of the next chunk into the given chunk
+	 * 
+	 * @param at
+	 */
+	private void merge(int at) {
+		Chunk chunk = chunks[at];
+		Chunk next = chunks[at + 1];
+
+		System.arraycopy(next.elements, 0, chunk.elements, chunk.count,
+				next.count);
+		for (int i = 0; i < next.count; i++) {
+			moved(next.elements[i], chunk);
+		}
+		chunk.count += next.count;
+		removeChunk(at + 1);
+	}
+
+	/**
+	 * Removes all elements, that are contained in the given collection, in one
+	 * pass
+	 * 
+	 * @param c
+	 * @return The number of removed elements
+	 */
+	int removeAll(Collection<?> c) {
+		int removed = 0;
+		int write = 0;
+
+		for (int at = 0; at < chunkCount; at++) {
+			Chunk chunk = chunks[at];
+			int kept = 0;
+
+			for (int i = 0; i < chunk.count; i++) {
+				if (!c.contains(chunk.elements[i])) {
+					chunk.elements[kept++] = chunk.elements[i];
+				}
+			}
+
+			Arrays.fill(chunk.elements, kept, chunk.count, null);
+			removed += chunk.count - kept;
+			chunk.count = kept;
+
+			if (kept > 0) {
+				chunks[write++] = chunk;
+			}
+		}
+
+		Arrays.fill(chunks, write, chunkCount, null);
+		chunkCount = write;
+		size -= removed;
+		recomputeStarts();
+		return removed;
+	}
+
+	private void recomputeStarts() {
+		int start = 0;
+		for (int at = 0; at < chunkCount; at++) {
+			chunks[at].start = start;
+			start += chunks[at].count;
+		}
+	}
+
+	void clear() {
+		Arrays.fill(chunks, 0, chunkCount, null);
+		chunkCount = 0;
+		size = 0;
+		lastChunk = 0;
+	}
+
+	Object[] toArray() {
+		Object[] array = new Object[size];
+		for (int at = 0; at < chunkCount; at++) {
+			Chunk chunk = chunks[at];
+			System.arraycopy(chunk.elements, 0, array, chunk.start, chunk.count);
+		}
+		return array;
+	}
+}
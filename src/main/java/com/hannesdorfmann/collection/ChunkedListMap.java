@@ -0,0 +1,472 @@
+package com.hannesdorfmann.collection;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * A {@link ListMap} with the same semantics as {@link ArrayListMap}, that
+ * stores its elements in chunks instead of one array. Inserting and removing
+ * at any position, for example at the head of the list, is O(sqrt(n)) instead
+ * of O(n), because only the elements of one chunk are shifted.
+ * {@link #get(int)} is a little bit slower than the one of
+ * {@link ArrayListMap}, because the chunk has to be found first.
+ * 
+ * <p>
+ * The key index is the same as the one of {@link ArrayListMap}: It maps a key
+ * either directly to its value or to a {@link ValueBucket}.
+ * {@link #removeByMapKey(Object)} removes all values of the key in one pass
+ * over the list. Use {@link UniqueChunkedListMap}, if the keys are unique, it
+ * finds the element of a key without a pass.
+ * </p>
+ * 
+ * @author Hannes Dorfmann
+ * 
+ * @param <K>
+ *            The Key
+ * @param <V>
+ *            The Value
+ */
+public class ChunkedListMap<K, V extends Mappable<K>> extends AbstractList<V>
+		implements ListMap<K, V>, RandomAccess, Serializable {
+
+	private static final long serialVersionUID = -8134494253483901099L;
+
+	private transient ChunkedArray elements;
+
+	/**
+	 * The key index. Like the one of {@link ArrayListMap} it starts to
+	 * remember the position of every value at the first lookup of a position.
+	 */
+	private transient KeyIndex<K> idMap;
+
+	/**
+	 * Creates a new empty {@link ChunkedListMap}
+	 */
+	public ChunkedListMap() {
+		init();
+	}
+
+	/**
+	 * Constructs a {@link ChunkedListMap} containing the elements of the
+	 * specified collection, in the order they are returned by the collection's
+	 * iterator.
+	 * 
+	 * @param c
+	 */
+	public ChunkedListMap(Collection<? extends V> c) {
+		this();
+		addAll(c);
+	}
+
+	private void init() {
+		elements = new ChunkedArray();
+		idMap = new KeyIndex<K>(0);
+	}
+
+	/**
+	 * Adds the value to the key index
+	 * 
+	 * @param key
+	 * @param v
+	 * @param position
+	 *            The position of the value in the list
+	 */
+	@SuppressWarnings("unchecked")
+	private void index(K key, V v, int position) {
+
+		int slot = idMap.slot(key);
+
+		if (slot < 0) {
+			slot = idMap.putSlot(key, v);
+			idMap.setPositionAt(slot, position);
+			return;
+		}
+
+		Object indexed = idMap.valueAt(slot);
+		ValueBucket<V> bucket;
+		if (indexed instanceof ValueBucket) {
+			bucket = (ValueBucket<V>) indexed;
+		} else {
+			bucket = new ValueBucket<V>((V) indexed);
+			int hint = idMap.positionAt(slot);
+			if (hint >= 0) {
+				bucket.setPosition((V) indexed, hint);
+			}
+			idMap.setValueAt(slot, bucket);
+		}
+
+		if (bucket.addValue(v) && idMap.tracksPositions()) {
+			bucket.setPosition(v, position);
+		}
+	}
+
+	/**
+	 * Removes the value from the key index
+	 * 
+	 * @param key
+	 * @param v
+	 */
+	@SuppressWarnings("unchecked")
+	private void unindex(K key, Object v) {
+
+		int slot = idMap.slot(key);
+		if (slot < 0) {
+			return;
+		}
+
+		Object indexed = idMap.valueAt(slot);
+
+		if (indexed instanceof ValueBucket) {
+			ValueBucket<V> bucket = (ValueBucket<V>) indexed;
+			Object remaining = bucket.removeValue(v);
+
+			if (remaining == null) {
+				idMap.remove(key);
+			} else if (remaining != bucket) {
+				idMap.setValueAt(slot, remaining);
+				idMap.setPositionAt(slot, bucket.position(remaining));
+			}
+		} else if (indexed.equals(v)) {
+			idMap.remove(key);
+		}
+	}
+
+	/**
+	 * Get the values of an entry of the key index as {@link Set}
+	 * 
+	 * @param indexed
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	private Set<V> asSet(Object indexed) {
+
+		if (indexed == null) {
+			return null;
+		}
+
+		if (indexed instanceof ValueBucket) {
+			return (ValueBucket<V>) indexed;
+		}
+
+		return Collections.singleton((V) indexed);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V get(int index) {
+		return (V) elements.get(index);
+	}
+
+	@Override
+	public int size() {
+		return elements.size();
+	}
+
+	@Override
+	public boolean add(V e) {
+		add(size(), e);
+		return true;
+	}
+
+	@Override
+	public void add(int index, V e) {
+		elements.add(index, e);
+		modCount++;
+
+		K key = e.getMapKey();
+		if (key != null) {
+			index(key, e, index);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V set(int index, V e) {
+		V previous = (V) elements.set(index, e);
+
+		K previousKey = previous.getMapKey();
+		if (previousKey != null) {
+			unindex(previousKey, previous);
+		}
+
+		K key = e.getMapKey();
+		if (key != null) {
+			index(key, e, index);
+		}
+
+		return previous;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V remove(int index) {
+		V removed = (V) elements.remove(index);
+		modCount++;
+
+		K key = removed.getMapKey();
+		if (key != null) {
+			unindex(key, removed);
+		}
+
+		return removed;
+	}
+
+	@Override
+	public void clear() {
+		elements.clear();
+		idMap.clear();
+		modCount++;
+	}
+
+	@Override
+	public Object[] toArray() {
+		return elements.toArray();
+	}
+
+	/**
+	 * Get the number of copies of the value in an entry of the key index
+	 * 
+	 * @param indexed
+	 *            The value, a {@link ValueBucket} or null
+	 * @param value
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	private int copies(Object indexed, Object value) {
+
+		if (indexed instanceof ValueBucket) {
+			return ((ValueBucket<V>) indexed).count(value);
+		}
+
+		return indexed != null && indexed.equals(value) ? 1 : 0;
+	}
+
+	/**
+	 * Starts to track the positions of the values in the key index. The
+	 * position of every value is remembered in one pass over the list.
+	 * Afterwards the position of a value is remembered, when it's added.
+	 */
+	@SuppressWarnings("unchecked")
+	private void trackPositions() {
+
+		idMap.trackPositions();
+
+		int size = size();
+		for (int i = 0; i < size; i++) {
+			V v = get(i);
+			int slot = idMap.slot(v.getMapKey());
+			if (slot < 0) {
+				continue;
+			}
+
+			Object indexed = idMap.valueAt(slot);
+
+			if (indexed instanceof ValueBucket) {
+				ValueBucket<V> bucket = (ValueBucket<V>) indexed;
+				if (bucket.position(v) < 0) {
+					bucket.setPosition(v, i);
+				}
+			} else if (idMap.positionAt(slot) < 0) {
+				idMap.setPositionAt(slot, i);
+			}
+		}
+	}
+
+	/**
+	 * Get the position of the first or last occurrence of the value. Like in
+	 * {@link ArrayListMap} the key index starts to remember the positions of
+	 * the values, when a position is looked up the first time. A value with a
+	 * key, that is contained only once, is searched outwards from its
+	 * remembered position. The list is scanned only for values without a key
+	 * and for values that are contained more than once.
+	 * 
+	 * @param value
+	 * @param last
+	 *            true for the last occurrence, false for the first one
+	 * @return The position or -1, if the value is not in the list
+	 */
+	@SuppressWarnings("unchecked")
+	private int positionOf(Object value, boolean last) {
+
+		if (!(value instanceof Mappable)) {
+			return -1;
+		}
+
+		K key = ((Mappable<K>) value).getMapKey();
+
+		if (key != null) {
+			int slot = idMap.slot(key);
+			Object found = slot < 0 ? null : idMap.valueAt(slot);
+			int copies = copies(found, value);
+
+			if (copies == 0) {
+				return -1;
+			}
+
+			if (copies == 1) {
+
+				if (!idMap.tracksPositions()) {
+					trackPositions();
+				}
+
+				int hint;
+				if (found instanceof ValueBucket) {
+					hint = ((ValueBucket<V>) found).position(value);
+				} else {
+					hint = idMap.positionAt(slot);
+				}
+
+				int position = PositionHint.findEqual(this, value, hint);
+
+				if (position < 0) {
+					return -1;
+				}
+
+				if (found instanceof ValueBucket) {
+					((ValueBucket<V>) found).setPosition(value, position);
+				} else {
+					idMap.setPositionAt(slot, position);
+				}
+
+				return position;
+			}
+		}
+
+		return last ? super.lastIndexOf(value) : super.indexOf(value);
+	}
+
+	/**
+	 * Checks if the list contains the value. For values with a key this is
+	 * answered by the key index, only values without a key are searched in
+	 * the list.
+	 * 
+	 * @param value
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public boolean contains(Object value) {
+
+		if (!(value instanceof Mappable)) {
+			return false;
+		}
+
+		Object key = ((Mappable<K>) value).getMapKey();
+
+		if (key != null) {
+			return copies(idMap.get(key), value) > 0;
+		}
+
+		return super.contains(value);
+	}
+
+	/**
+	 * Get the position of the first occurrence of the value. If the value has
+	 * a key, that is not in the key index, -1 is returned without searching
+	 * the list.
+	 * 
+	 * @param value
+	 * @return The position or -1
+	 */
+	@Override
+	public int indexOf(Object value) {
+		return positionOf(value, false);
+	}
+
+	/**
+	 * Get the position of the last occurrence of the value. If the value has
+	 * a key, that is not in the key index, -1 is returned without searching
+	 * the list.
+	 * 
+	 * @param value
+	 * @return The position or -1
+	 */
+	@Override
+	public int lastIndexOf(Object value) {
+		return positionOf(value, true);
+	}
+
+	/**
+	 * Get all values with the given key. The returned {@link Set} is read only.
+	 * 
+	 * @param id
+	 * @return The read only set or null, if there is no element with the given
+	 *         key
+	 */
+	@Override
+	public Set<V> getByMapKey(K id) {
+		return asSet(idMap.get(id));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V getFirstByMapKey(K id) {
+
+		Object found = idMap.get(id);
+
+		if (found instanceof ValueBucket) {
+			return ((ValueBucket<V>) found).first();
+		}
+
+		return (V) found;
+	}
+
+	/**
+	 * Removes all values with the given key in one pass over the list
+	 * 
+	 * @param id
+	 * @return The removed values or null
+	 */
+	@Override
+	public Set<V> removeByMapKey(K id) {
+		Set<V> removed = asSet(idMap.remove(id));
+
+		if (removed != null) {
+			elements.removeAll(removed);
+			modCount++;
+		}
+
+		return removed;
+	}
+
+	/**
+	 * Writes the elements, the key index is built again when the list is read
+	 * 
+	 * @param out
+	 * @throws IOException
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeInt(size());
+
+		for (int i = 0; i < size(); i++) {
+			out.writeObject(get(i));
+		}
+	}
+
+	/**
+	 * Reads the elements and builds the key index
+	 * 
+	 * @param in
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		in.defaultReadObject();
+		init();
+
+		int count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			add((V) in.readObject());
+		}
+	}
+}
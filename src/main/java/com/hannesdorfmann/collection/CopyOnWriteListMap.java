@@ -0,0 +1,776 @@
+package com.hannesdorfmann.collection;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+import com.hannesdorfmann.collection.UniqueArrayListMap.DuplicateKeyPolicy;
+
+/**
+ * A thread safe {@link ListMap} for many concurrent readers and a few writers.
+ * Like {@link UniqueArrayListMap} every key is unique in this list.
+ * 
+ * <p>
+ * Like a {@link CopyOnWriteArrayList} the elements are stored in an array,
+ * that is never modified. Every write operation copies the array and publishes
+ * the copy, so a write costs O(n). The key index is a {@link ConcurrentHashMap}
+ * . Reading by position, by key and iterating never blocks, so the read
+ * throughput scales with the number of cores. Write operations are serialized
+ * by a lock.
+ * </p>
+ * 
+ * <p>
+ * The iterators work on the snapshot of the list, that was current when the
+ * iterator has been created. They never throw a
+ * {@link java.util.ConcurrentModificationException} and don't support
+ * modifications. Like the iterators of a {@link ConcurrentHashMap} the key
+ * index is weakly consistent with the list: While a write is in progress a
+ * reader might already see the new element by position but not by key or vice
+ * versa.
+ * </p>
+ * 
+ * @author Hannes Dorfmann
+ * 
+ * @param <K>
+ *            The Key
+ * @param <V>
+ *            The Value
+ */
+public class CopyOnWriteListMap<K, V extends Mappable<K>> extends
+		AbstractList<V> implements ListMap<K, V>, RandomAccess {
+
+	private static final Object[] EMPTY = new Object[0];
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private volatile Object[] elements = EMPTY;
+
+	private final ConcurrentHashMap<K, V> idMap;
+
+	private volatile DuplicateKeyPolicy duplicateKeyPolicy = DuplicateKeyPolicy.MOVE_TO_END;
+
+	/**
+	 * Creates a new empty {@link CopyOnWriteListMap}
+	 */
+	public CopyOnWriteListMap() {
+		idMap = new ConcurrentHashMap<K, V>();
+	}
+
+	/**
+	 * Creates a new empty {@link CopyOnWriteListMap} that uses the given
+	 * {@link DuplicateKeyPolicy}
+	 * 
+	 * @param duplicateKeyPolicy
+	 */
+	public CopyOnWriteListMap(DuplicateKeyPolicy duplicateKeyPolicy) {
+		this();
+		setDuplicateKeyPolicy(duplicateKeyPolicy);
+	}
+
+	/**
+	 * Constructs a {@link CopyOnWriteListMap} containing the elements of the
+	 * specified collection, in the order they are returned by the collection's
+	 * iterator.
+	 * 
+	 * @param c
+	 */
+	public CopyOnWriteListMap(Collection<? extends V> c) {
+		idMap = new ConcurrentHashMap<K, V>(Math.max(16, c.size() * 4 / 3 + 1));
+		addAll(c);
+	}
+
+	/**
+	 * Get the {@link DuplicateKeyPolicy} that is used by
+	 * {@link #add(Mappable)}
+	 * 
+	 * @return
+	 */
+	public DuplicateKeyPolicy getDuplicateKeyPolicy() {
+		return duplicateKeyPolicy;
+	}
+
+	/**
+	 * Set the {@link DuplicateKeyPolicy} that should be used by
+	 * {@link #add(Mappable)}
+	 * 
+	 * @param duplicateKeyPolicy
+	 */
+	public void setDuplicateKeyPolicy(DuplicateKeyPolicy duplicateKeyPolicy) {
+		if (duplicateKeyPolicy == null) {
+			throw new NullPointerException("DuplicateKeyPolicy is null");
+		}
+		this.duplicateKeyPolicy = duplicateKeyPolicy;
+	}
+
+	/**
+	 * Get a read only snapshot of the current elements. The snapshot will
+	 * never change.
+	 * 
+	 * @return
+	 */
+	public List<V> snapshot() {
+		return Collections.unmodifiableList(asList(elements));
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<V> asList(Object[] elements) {
+		return (List<V>) (List<?>) Arrays.asList(elements);
+	}
+
+	private static int indexOf(Object[] elements, Object value) {
+		for (int i = 0; i < elements.length; i++) {
+			if (elements[i] == value) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static Object[] insert(Object[] elements, int index, Object value) {
+		Object[] copy = new Object[elements.length + 1];
+		System.arraycopy(elements, 0, copy, 0, index);
+		copy[index] = value;
+		System.arraycopy(elements, index, copy, index + 1, elements.length
+				- index);
+		return copy;
+	}
+
+	private static Object[] delete(Object[] elements, int index) {
+		Object[] copy = new Object[elements.length - 1];
+		System.arraycopy(elements, 0, copy, 0, index);
+		System.arraycopy(elements, index + 1, copy, index, elements.length
+				- index - 1);
+		return copy;
+	}
+
+	private static void checkPosition(int index, int size) {
+		if (index < 0 || index > size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+					+ size);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V get(int index) {
+		return (V) elements[index];
+	}
+
+	@Override
+	public int size() {
+		return elements.length;
+	}
+
+	/**
+	 * Appends the specified element to the end of this list. If there is
+	 * already an element with the same key, the {@link DuplicateKeyPolicy}
+	 * defines what happens with the old element.
+	 * 
+	 * @param e
+	 * @return
+	 */
+	@Override
+	public boolean add(V e) {
+
+		K key = e.getMapKey();
+
+		lock.lock();
+		try {
+			Object[] current = elements;
+			V old = key == null ? null : idMap.get(key);
+			int position = old == null ? -1 : indexOf(current, old);
+
+			if (position >= 0
+					&& duplicateKeyPolicy == DuplicateKeyPolicy.REPLACE_IN_PLACE) {
+				Object[] copy = current.clone();
+				copy[position] = e;
+				elements = copy;
+			} else {
+				if (position >= 0) {
+					current = delete(current, position);
+				}
+				elements = insert(current, current.length, e);
+			}
+
+			if (key != null) {
+				idMap.put(key, e);
+			}
+
+			modCount++;
+			return true;
+
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Inserts the specified element at the specified position in this list. If
+	 * there is already an element with the same key, the old one will be
+	 * removed before the new one gets inserted.
+	 * 
+	 * @param index
+	 *            The position of the new element. If it's the size of the
+	 *            list, the element is appended, even if the old element has
+	 *            been removed.
+	 * @param e
+	 */
+	@Override
+	public void add(int index, V e) {
+
+		K key = e.getMapKey();
+
+		lock.lock();
+		try {
+			Object[] current = elements;
+			checkPosition(index, current.length);
+
+			V old = key == null ? null : idMap.get(key);
+			int position = old == null ? -1 : indexOf(current, old);
+
+			if (position >= 0) {
+				current = delete(current, position);
+				if (index > current.length) {
+					index = current.length;
+				}
+			}
+
+			elements = insert(current, index, e);
+
+			if (key != null) {
+				idMap.put(key, e);
+			}
+
+			modCount++;
+
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Appends all elements with a single copy of the array.
+	 * 
+	 * @param c
+	 * @return
+	 */
+	@Override
+	public boolean addAll(Collection<? extends V> c) {
+		lock.lock();
+		try {
+			Object[] current = elements;
+			return addAll(current, current.length, c, true);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Inserts all elements with a single copy of the array. Elements in the
+	 * list with a key that is also in the collection are removed.
+	 * 
+	 * @param index
+	 *            The position of the first new element after the old
+	 *            elements with the same keys have been removed, like the
+	 *            index of {@link #add(int, Mappable)}. If it's the size of the
+	 *            list, the elements are appended, even if old elements have
+	 *            been removed.
+	 * @param c
+	 * @return
+	 */
+	@Override
+	public boolean addAll(int index, Collection<? extends V> c) {
+		lock.lock();
+		try {
+			return addAll(elements, index, c, false);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Inserts all elements. Elements with a key, that is already in the list
+	 * or that comes again later in the collection, replace the older ones.
+	 * The elements end up at the same positions as if they were added one by
+	 * one: With {@link DuplicateKeyPolicy#REPLACE_IN_PLACE} a new key is
+	 * placed at its first occurrence in the collection, otherwise at its last
+	 * one. Must be called while holding the lock.
+	 * 
+	 * @param current
+	 *            The elements the collection is inserted into
+	 * @param index
+	 * @param c
+	 * @param append
+	 *            true, if the elements are appended, so the
+	 *            {@link DuplicateKeyPolicy} is used
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	private boolean addAll(Object[] current, int index,
+			Collection<? extends V> c, boolean append) {
+
+		checkPosition(index, current.length);
+
+		if (c.isEmpty()) {
+			return false;
+		}
+
+		Object[] batch = c.toArray();
+		boolean replaceInPlace = append
+				&& duplicateKeyPolicy == DuplicateKeyPolicy.REPLACE_IN_PLACE;
+
+		// The last element of a key in the collection wins
+		Map<K, Integer> lastOfKey = new HashMap<K, Integer>(
+				batch.length * 4 / 3 + 1);
+		for (int i = 0; i < batch.length; i++) {
+			K key = ((V) batch[i]).getMapKey();
+			if (key != null) {
+				lastOfKey.put(key, i);
+			}
+		}
+
+		// Remove or replace the existing elements with the same keys
+		boolean[] replaced = new boolean[batch.length];
+		Object[] kept = new Object[current.length];
+		int keptSize = 0;
+
+		for (int i = 0; i < current.length; i++) {
+			K key = ((V) current[i]).getMapKey();
+			Integer replacement = key == null ? null : lastOfKey.get(key);
+
+			if (replacement == null) {
+				kept[keptSize++] = current[i];
+			} else if (replaceInPlace) {
+				kept[keptSize++] = batch[replacement];
+				replaced[replacement] = true;
+			}
+		}
+
+		// Like add(int, V) the index is a position after the removal
+		int insertAt = Math.min(index, keptSize);
+
+		// Skip the elements that have been replaced in place. Every other key
+		// is added once with its last element.
+		Object[] added = new Object[batch.length];
+		int addedSize = 0;
+		for (int i = 0; i < batch.length; i++) {
+			K key = ((V) batch[i]).getMapKey();
+
+			if (key == null) {
+				added[addedSize++] = batch[i];
+				continue;
+			}
+
+			int last = lastOfKey.get(key);
+			if (replaced[last]) {
+				continue;
+			}
+
+			if (replaceInPlace) {
+				// The later elements of the key replace this one in place
+				added[addedSize++] = batch[last];
+				replaced[last] = true;
+			} else if (last == i) {
+				added[addedSize++] = batch[i];
+			}
+		}
+
+		Object[] copy = new Object[keptSize + addedSize];
+		System.arraycopy(kept, 0, copy, 0, insertAt);
+		System.arraycopy(added, 0, copy, insertAt, addedSize);
+		System.arraycopy(kept, insertAt, copy, insertAt + addedSize, keptSize
+				- insertAt);
+
+		for (Map.Entry<K, Integer> entry : lastOfKey.entrySet()) {
+			idMap.put(entry.getKey(), (V) batch[entry.getValue()]);
+		}
+
+		elements = copy;
+		modCount++;
+		return true;
+	}
+
+	@Override
+	public V set(int index, V e) {
+
+		K key = e.getMapKey();
+
+		lock.lock();
+		try {
+			Object[] current = elements;
+			V previous = get(index);
+			Object[] copy;
+
+			V other = key == null ? null : idMap.get(key);
+			int otherPosition = other == null || other == previous ? -1
+					: indexOf(current, other);
+
+			if (otherPosition >= 0) {
+				// Remove the other element with the same key
+				copy = delete(current, otherPosition);
+				if (otherPosition < index) {
+					index--;
+				}
+			} else {
+				copy = current.clone();
+			}
+
+			copy[index] = e;
+
+			K previousKey = previous.getMapKey();
+			if (previousKey != null && idMap.get(previousKey) == previous) {
+				idMap.remove(previousKey);
+			}
+			if (key != null) {
+				idMap.put(key, e);
+			}
+
+			elements = copy;
+			modCount++;
+			return previous;
+
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public V remove(int index) {
+		lock.lock();
+		try {
+			Object[] current = elements;
+			V removed = get(index);
+
+			K key = removed.getMapKey();
+			if (key != null) {
+				idMap.remove(key);
+			}
+
+			elements = delete(current, index);
+			modCount++;
+			return removed;
+
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		lock.lock();
+		try {
+			int index = indexOf(o);
+			if (index < 0) {
+				return false;
+			}
+
+			remove(index);
+			return true;
+
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes the element with the given key.
+	 * 
+	 * @param id
+	 * @return A set containing the removed element or null, if there was no
+	 *         element with the given key
+	 */
+	@Override
+	public Set<V> removeByMapKey(K id) {
+		lock.lock();
+		try {
+			V removed = idMap.get(id);
+			if (removed == null) {
+				return null;
+			}
+
+			int position = indexOf(elements, removed);
+			if (position >= 0) {
+				remove(position);
+			} else {
+				idMap.remove(id);
+			}
+
+			return Collections.singleton(removed);
+
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void clear() {
+		lock.lock();
+		try {
+			idMap.clear();
+			elements = EMPTY;
+			modCount++;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes the elements from fromIndex (inclusive) to toIndex (exclusive)
+	 * with a single copy of the array.
+	 * 
+	 * @param fromIndex
+	 * @param toIndex
+	 */
+	@Override
+	protected void removeRange(int fromIndex, int toIndex) {
+		lock.lock();
+		try {
+			Object[] current = elements;
+			checkPosition(toIndex, current.length);
+			checkPosition(fromIndex, toIndex);
+
+			Object[] copy = new Object[current.length - (toIndex - fromIndex)];
+			System.arraycopy(current, 0, copy, 0, fromIndex);
+			System.arraycopy(current, toIndex, copy, fromIndex, current.length
+					- toIndex);
+
+			for (int i = fromIndex; i < toIndex; i++) {
+				unindex(current[i]);
+			}
+
+			elements = copy;
+			modCount++;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		return batchRemove(c, false);
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		return batchRemove(c, true);
+	}
+
+	/**
+	 * Removes the elements that are (or are not) contained in the given
+	 * collection with a single copy of the array.
+	 * 
+	 * @param c
+	 * @param retain
+	 *            true, if the elements contained in the collection should be
+	 *            kept, false if they should be removed
+	 * @return true, if the list has been changed
+	 */
+	private boolean batchRemove(final Collection<?> c, final boolean retain) {
+
+		if (c == null) {
+			throw new NullPointerException("Collection is null");
+		}
+
+		return removeIf(new Predicate<V>() {
+			@Override
+			public boolean test(V v) {
+				return c.contains(v) != retain;
+			}
+		});
+	}
+
+	/**
+	 * Removes all elements that satisfy the predicate with a single copy of
+	 * the array. The predicate is tested for every element before anything
+	 * is removed, so the list is unchanged if it throws an exception.
+	 * 
+	 * @param filter
+	 * @return true, if the list has been changed
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public boolean removeIf(Predicate<? super V> filter) {
+
+		if (filter == null) {
+			throw new NullPointerException("Predicate is null");
+		}
+
+		lock.lock();
+		try {
+			Object[] current = elements;
+			boolean[] removed = new boolean[current.length];
+			Object[] kept = new Object[current.length];
+			int size = 0;
+
+			for (int i = 0; i < current.length; i++) {
+				removed[i] = filter.test((V) current[i]);
+				if (!removed[i]) {
+					kept[size++] = current[i];
+				}
+			}
+
+			if (size == current.length) {
+				return false;
+			}
+
+			for (int i = 0; i < current.length; i++) {
+				if (removed[i]) {
+					unindex(current[i]);
+				}
+			}
+
+			elements = Arrays.copyOf(kept, size);
+			modCount++;
+			return true;
+
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Replaces every element with the result of the operator with a single
+	 * copy of the array. Like in
+	 * {@link UniqueArrayListMap#replaceAll(UnaryOperator)} the results are
+	 * placed as if they were added one by one to an empty list, so results with
+	 * the same key are handled according to the {@link DuplicateKeyPolicy}
+	 * and the list may get shorter.
+	 * 
+	 * @param operator
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public void replaceAll(UnaryOperator<V> operator) {
+
+		if (operator == null) {
+			throw new NullPointerException("Operator is null");
+		}
+
+		lock.lock();
+		try {
+			Object[] current = elements;
+			List<V> replaced = new ArrayList<V>(current.length);
+			for (int i = 0; i < current.length; i++) {
+				replaced.add(operator.apply((V) current[i]));
+			}
+
+			if (!addAll(EMPTY, 0, replaced, true)) {
+				return;
+			}
+
+			// Remove the keys, that are not in the list anymore
+			Set<K> keys = new HashSet<K>(replaced.size() * 4 / 3 + 1);
+			for (V v : replaced) {
+				keys.add(v.getMapKey());
+			}
+			for (int i = 0; i < current.length; i++) {
+				K key = ((V) current[i]).getMapKey();
+				if (key != null && !keys.contains(key)) {
+					idMap.remove(key);
+				}
+			}
+
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Sorts a copy of the array and publishes it. The key index is not
+	 * changed, because it doesn't store positions.
+	 * 
+	 * @param c
+	 *            The {@link Comparator} or null for the natural ordering
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public void sort(Comparator<? super V> c) {
+		lock.lock();
+		try {
+			Object[] copy = elements.clone();
+			Arrays.sort(copy, (Comparator<Object>) c);
+			elements = copy;
+			modCount++;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes the removed element from the key index. Must be called while
+	 * holding the lock.
+	 * 
+	 * @param removed
+	 */
+	@SuppressWarnings("unchecked")
+	private void unindex(Object removed) {
+		K key = ((V) removed).getMapKey();
+		if (key != null) {
+			idMap.remove(key);
+		}
+	}
+
+	/**
+	 * Get the value by the key. Use {@link #getFirstByMapKey(Object)} to get the
+	 * value without allocating a {@link Set}.
+	 * 
+	 * @param id
+	 * @return A read only set or null, if there is no element with the given
+	 *         key
+	 */
+	@Override
+	public Set<V> getByMapKey(K id) {
+		V v = getFirstByMapKey(id);
+		return v == null ? null : Collections.singleton(v);
+	}
+
+	@Override
+	public V getFirstByMapKey(K id) {
+		return id == null ? null : idMap.get(id);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public boolean contains(Object value) {
+
+		if (value instanceof Mappable && ((Mappable<K>) value).getMapKey() != null) {
+			V found = idMap.get(((Mappable<K>) value).getMapKey());
+			if (found != null && found.equals(value)) {
+				return true;
+			}
+		}
+
+		return super.contains(value);
+	}
+
+	@Override
+	public Iterator<V> iterator() {
+		return snapshot().iterator();
+	}
+
+	@Override
+	public ListIterator<V> listIterator(int index) {
+		return snapshot().listIterator(index);
+	}
+
+	@Override
+	public Object[] toArray() {
+		return elements.clone();
+	}
+}
@@ -0,0 +1,459 @@
+package com.hannesdorfmann.collection;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * An immutable {@link ListMap}. The elements are stored in a flat array. The
+ * key index is an open addressing hash table (linear probing) made of
+ * parallel arrays for the keys, their hashes and the values, so there are no
+ * entry objects. Like in {@link ArrayListMap}, a key with just one value maps
+ * directly to the value. Only keys with more values need a {@link ValueBucket}.
+ * The key index also knows the position of the first occurrence of every
+ * value, so {@link #indexOf(Object)} doesn't search the list.
+ * 
+ * <p>
+ * Nothing can be changed after the {@link ImmutableListMap} has been
+ * constructed, so it can be shared between threads without any locking. Every
+ * method that would modify the list throws an
+ * {@link UnsupportedOperationException}.
+ * </p>
+ * 
+ * <p>
+ * Use {@link ArrayListMap#toImmutable()} or
+ * {@link UniqueArrayListMap#toImmutable()} to get an immutable snapshot of a
+ * mutable list.
+ * </p>
+ * 
+ * @author Hannes Dorfmann
+ * 
+ * @param <K>
+ *            The Key
+ * @param <V>
+ *            The Value
+ */
+public final class ImmutableListMap<K, V extends Mappable<K>> extends
+		AbstractList<V> implements ListMap<K, V>, RandomAccess, Serializable {
+
+	private static final long serialVersionUID = -2393860264744958312L;
+
+	private final Object[] elements;
+
+	/**
+	 * The keys of the hash table, null marks an empty slot
+	 */
+	private final Object[] tableKeys;
+
+	/**
+	 * The hash of the key in the same slot of {@link #tableKeys}. It's
+	 * compared before {@link Object#equals(Object)} is called.
+	 */
+	private final int[] tableHashes;
+
+	/**
+	 * The value of the key in the same slot of {@link #tableKeys}, either the
+	 * value itself, if there is only one value with this key, or a
+	 * {@link ValueBucket} containing all values
+	 */
+	private final Object[] tableValues;
+
+	/**
+	 * The position of the value in the same slot of {@link #tableValues}. The
+	 * positions of the values in a {@link ValueBucket} are stored in the
+	 * bucket.
+	 */
+	private final int[] tablePositions;
+
+	/**
+	 * Constructs a {@link ImmutableListMap} containing the elements of the
+	 * specified collection, in the order they are returned by the collection's
+	 * iterator.
+	 * 
+	 * @param c
+	 */
+	public ImmutableListMap(Collection<? extends V> c) {
+		this(c.toArray(), null);
+	}
+
+	/**
+	 * Creates a new {@link ImmutableListMap}. The given arrays are not copied.
+	 * 
+	 * @param elements
+	 * @param keys
+	 *            The keys of the elements or null, if the keys should be taken
+	 *            from the elements
+	 */
+	@SuppressWarnings("unchecked")
+	ImmutableListMap(Object[] elements, Object[] keys) {
+
+		this.elements = elements;
+
+		Object[] tk = new Object[tableCapacity(elements.length)];
+		int[] th = new int[tk.length];
+		Object[] tv = new Object[tk.length];
+		int[] tp = new int[tk.length];
+		int keyCount = 0;
+
+		for (int i = 0; i < elements.length; i++) {
+			V v = (V) elements[i];
+			Object key = keys != null ? keys[i] : v.getMapKey();
+
+			if (key == null) {
+				continue;
+			}
+
+			int hash = hash(key);
+			int slot = slot(tk, th, key, hash);
+			Object indexed = tv[slot];
+
+			if (indexed == null) {
+				tk[slot] = key;
+				th[slot] = hash;
+				tv[slot] = v;
+				tp[slot] = i;
+				keyCount++;
+			} else {
+				ValueBucket<V> bucket;
+				if (indexed instanceof ValueBucket) {
+					bucket = (ValueBucket<V>) indexed;
+				} else {
+					bucket = new ValueBucket<V>((V) indexed);
+					bucket.setPosition(indexed, tp[slot]);
+					tv[slot] = bucket;
+				}
+
+				if (bucket.addValue(v)) {
+					bucket.setPosition(v, i);
+				}
+			}
+		}
+
+		// Many values per key: shrink the table to the number of keys
+		int capacity = tableCapacity(keyCount);
+		if (capacity < tk.length) {
+			Object[] shrunkKeys = new Object[capacity];
+			int[] shrunkHashes = new int[capacity];
+			Object[] shrunkValues = new Object[capacity];
+			int[] shrunkPositions = new int[capacity];
+
+			for (int i = 0; i < tk.length; i++) {
+				if (tk[i] != null) {
+					int slot = slot(shrunkKeys, shrunkHashes, tk[i], th[i]);
+					shrunkKeys[slot] = tk[i];
+					shrunkHashes[slot] = th[i];
+					shrunkValues[slot] = tv[i];
+					shrunkPositions[slot] = tp[i];
+				}
+			}
+
+			tk = shrunkKeys;
+			th = shrunkHashes;
+			tv = shrunkValues;
+			tp = shrunkPositions;
+		}
+
+		tableKeys = tk;
+		tableHashes = th;
+		tableValues = tv;
+		tablePositions = tp;
+	}
+
+	/**
+	 * Get the size of a hash table for the given number of keys. The table is
+	 * a power of two and at most half full, so a lookup of a key that is not
+	 * in the table ends after a few slots.
+	 * 
+	 * @param keyCount
+	 * @return
+	 */
+	private static int tableCapacity(int keyCount) {
+		int capacity = 2;
+		while (capacity < keyCount * 2 && capacity < (1 << 30)) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	private static int hash(Object key) {
+		int h = key.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Get the slot of the key in the hash table or the empty slot, where the
+	 * key should be inserted
+	 * 
+	 * @param keys
+	 * @param hashes
+	 * @param key
+	 * @param hash
+	 * @return
+	 */
+	private static int slot(Object[] keys, int[] hashes, Object key, int hash) {
+
+		int mask = keys.length - 1;
+		int slot = hash & mask;
+
+		for (Object k = keys[slot]; k != null; k = keys[slot]) {
+			if (k == key || (hashes[slot] == hash && k.equals(key))) {
+				break;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		return slot;
+	}
+
+	/**
+	 * Get the entry of the key index for the given key
+	 * 
+	 * @param key
+	 * @return The value, a {@link ValueBucket} or null
+	 */
+	private Object lookup(Object key) {
+		return key == null ? null : tableValues[slot(tableKeys, tableHashes,
+				key, hash(key))];
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V get(int index) {
+		if (index >= elements.length) {
+			throw new IndexOutOfBoundsException("Index: " + index
+					+ ", Size: " + elements.length);
+		}
+		return (V) elements[index];
+	}
+
+	@Override
+	public int size() {
+		return elements.length;
+	}
+
+	/**
+	 * Get all values with the given key. The returned {@link Set} is read only.
+	 * 
+	 * @param id
+	 * @return The read only set or null, if there is no element with the given
+	 *         key
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public Set<V> getByMapKey(K id) {
+
+		Object found = lookup(id);
+
+		if (found == null) {
+			return null;
+		}
+
+		if (found instanceof ValueBucket) {
+			return (ValueBucket<V>) found;
+		}
+
+		return Collections.singleton((V) found);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V getFirstByMapKey(K id) {
+
+		Object found = lookup(id);
+
+		if (found instanceof ValueBucket) {
+			return ((ValueBucket<V>) found).first();
+		}
+
+		return (V) found;
+	}
+
+	/**
+	 * Get the position of the first or last occurrence of the value
+	 * 
+	 * @param value
+	 * @param last
+	 *            true for the last occurrence, false for the first one
+	 * @return The position or -1, if the value is not in the list
+	 */
+	@SuppressWarnings("unchecked")
+	private int positionOf(Object value, boolean last) {
+
+		if (!(value instanceof Mappable)) {
+			return -1;
+		}
+
+		Object key = ((Mappable<K>) value).getMapKey();
+
+		if (key == null) {
+			return last ? super.lastIndexOf(value) : super.indexOf(value);
+		}
+
+		int slot = slot(tableKeys, tableHashes, key, hash(key));
+		Object found = tableValues[slot];
+
+		if (found instanceof ValueBucket) {
+			ValueBucket<V> bucket = (ValueBucket<V>) found;
+			int copies = bucket.count(value);
+
+			if (copies == 0) {
+				return -1;
+			}
+
+			// Only the first occurrence is known
+			return last && copies > 1 ? super.lastIndexOf(value) : bucket
+					.position(value);
+		}
+
+		return found != null && found.equals(value) ? tablePositions[slot]
+				: -1;
+	}
+
+	/**
+	 * Checks if the list contains the value. For values with a key this is
+	 * answered by the key index, only values without a key are searched in
+	 * the list.
+	 * 
+	 * @param value
+	 * @return
+	 */
+	@Override
+	public boolean contains(Object value) {
+		return positionOf(value, false) >= 0;
+	}
+
+	/**
+	 * Get the position of the first occurrence of the value. For values with
+	 * a key this is answered by the key index, only values without a key are
+	 * searched in the list.
+	 * 
+	 * @param value
+	 * @return The position or -1
+	 */
+	@Override
+	public int indexOf(Object value) {
+		return positionOf(value, false);
+	}
+
+	/**
+	 * Get the position of the last occurrence of the value. For values with a
+	 * key this is answered by the key index, only values without a key and
+	 * values, that are contained more than once, are searched in the list.
+	 * 
+	 * @param value
+	 * @return The position or -1
+	 */
+	@Override
+	public int lastIndexOf(Object value) {
+		return positionOf(value, true);
+	}
+
+	@Override
+	public Object[] toArray() {
+		return elements.clone();
+	}
+
+	private static UnsupportedOperationException immutable() {
+		return new UnsupportedOperationException(
+				"ImmutableListMap can't be modified");
+	}
+
+	@Override
+	public Set<V> removeByMapKey(K id) {
+		throw immutable();
+	}
+
+	@Override
+	public boolean add(V e) {
+		throw immutable();
+	}
+
+	@Override
+	public void add(int index, V element) {
+		throw immutable();
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends V> c) {
+		throw immutable();
+	}
+
+	@Override
+	public boolean addAll(int index, Collection<? extends V> c) {
+		throw immutable();
+	}
+
+	@Override
+	public V set(int index, V element) {
+		throw immutable();
+	}
+
+	@Override
+	public V remove(int index) {
+		throw immutable();
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		throw immutable();
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		throw immutable();
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		throw immutable();
+	}
+
+	@Override
+	public void clear() {
+		throw immutable();
+	}
+
+	@Override
+	protected void removeRange(int fromIndex, int toIndex) {
+		throw immutable();
+	}
+
+	/**
+	 * Only the elements are written, the key index is built again when the
+	 * list is read
+	 * 
+	 * @return
+	 */
+	private Object writeReplace() {
+		return new SerializedForm(elements);
+	}
+
+	private void readObject(ObjectInputStream in)
+			throws InvalidObjectException {
+		throw new InvalidObjectException("SerializedForm required");
+	}
+
+	/**
+	 * The serialized form of a {@link ImmutableListMap}
+	 */
+	private static class SerializedForm implements Serializable {
+
+		private static final long serialVersionUID = 4196521405470519532L;
+
+		private final Object[] elements;
+
+		SerializedForm(Object[] elements) {
+			this.elements = elements;
+		}
+
+		private Object readResolve() {
+			return new ImmutableListMap<Object, Mappable<Object>>(elements,
+					null);
+		}
+	}
+}
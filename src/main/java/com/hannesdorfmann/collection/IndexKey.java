@@ -0,0 +1,26 @@
+package com.hannesdorfmann.collection;
+
+/**
+ * Computes the key of a value for a secondary index of an
+ * {@link ArrayListMap}, like {@link Mappable#getMapKey()} does for the key
+ * index. The key of a value must not change while the value is in the list.
+ * 
+ * @author Hannes Dorfmann
+ * 
+ * @param <I>
+ *            The key of the index
+ * @param <V>
+ *            The value
+ * @see ArrayListMap#addIndex(String, IndexKey)
+ */
+public interface IndexKey<I, V> {
+
+	/**
+	 * Get the key of the value in the index
+	 * 
+	 * @param value
+	 * @return The key or null, if the value should not be indexed
+	 */
+	public I getIndexKey(V value);
+
+}
@@ -0,0 +1,603 @@
+package com.hannesdorfmann.collection;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * A {@link ArrayListMap} for {@link IntMappable} elements. The key index is a
+ * {@link IntIndex}, a open addressing hash table with primitive int keys, so
+ * the keys are never boxed when adding, removing or searching by key with
+ * {@link #getByMapKey(int)}, {@link #getFirstByMapKey(int)} and
+ * {@link #removeByMapKey(int)}. This implementation is not thread safe.
+ * 
+ * <p>
+ * Like a normal List implementation, every item can be contained multiple times
+ * in the list.
+ * </p>
+ * 
+ * @author Hannes Dorfmann
+ * 
+ * @param <V>
+ *            The Value
+ */
+public class IntArrayListMap<V extends IntMappable> extends ArrayList<V>
+		implements ListMap<Integer, V> {
+
+	private static final long serialVersionUID = -1050751365873589660L;
+
+	/**
+	 * Maps a key either directly to the value, if there is only one value with
+	 * this key, or to a {@link ValueBucket} containing all values
+	 */
+	private transient IntIndex<Object> idMap;
+
+	/**
+	 * Creates a new empty empty {@link IntArrayListMap}
+	 */
+	public IntArrayListMap() {
+		super();
+		idMap = new IntIndex<Object>(0, false);
+	}
+
+	/**
+	 * Constructs a {@link IntArrayListMap} containing the elements of the
+	 * specified collection, in the order they are returned by the collection's
+	 * iterator.
+	 * 
+	 * @param c
+	 */
+	public IntArrayListMap(Collection<? extends V> c) {
+		this(c.size());
+		addAll(c);
+	}
+
+	public IntArrayListMap(int initialCapacity) {
+		super(initialCapacity);
+		idMap = new IntIndex<Object>(initialCapacity, false);
+	}
+
+	/**
+	 * Reads the list and rebuilds the key index in one pass. The key index is
+	 * transient, only the elements (the {@link ArrayList} part) are written.
+	 * 
+	 * @param in
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		in.defaultReadObject();
+
+		int size = size();
+		idMap = new IntIndex<Object>(size, false);
+
+		for (int i = 0; i < size; i++) {
+			V v = super.get(i);
+			index(v.getIntMapKey(), v);
+		}
+	}
+
+	/**
+	 * Increases the capacity of the list and of the key index, so that both
+	 * can hold at least the given number of elements without growing.
+	 * 
+	 * @param minCapacity
+	 */
+	@Override
+	public void ensureCapacity(int minCapacity) {
+		super.ensureCapacity(minCapacity);
+
+		if (idMap != null) {
+			idMap.ensureCapacity(minCapacity);
+		}
+	}
+
+	/**
+	 * Adds the value to the key index
+	 * 
+	 * @param key
+	 * @param v
+	 */
+	@SuppressWarnings("unchecked")
+	private void index(int key, V v) {
+
+		Object indexed = idMap.get(key);
+
+		if (indexed == null) {
+			idMap.put(key, v);
+		} else if (indexed instanceof ValueBucket) {
+			((ValueBucket<V>) indexed).addValue(v);
+		} else {
+			idMap.put(key, new ValueBucket<V>((V) indexed, v));
+		}
+	}
+
+	/**
+	 * Removes the value from the key index
+	 * 
+	 * @param key
+	 * @param v
+	 */
+	@SuppressWarnings("unchecked")
+	private void unindex(int key, Object v) {
+
+		int slot = idMap.slot(key);
+		if (slot < 0) {
+			return;
+		}
+
+		Object indexed = idMap.valueAt(slot);
+
+		if (indexed instanceof ValueBucket) {
+			Object remaining = ((ValueBucket<V>) indexed).removeValue(v);
+
+			if (remaining == null) {
+				idMap.remove(key);
+			} else if (remaining != indexed) {
+				idMap.setValueAt(slot, remaining);
+			}
+		} else if (indexed.equals(v)) {
+			idMap.remove(key);
+		}
+	}
+
+	/**
+	 * Get the values of an entry of the key index as {@link Set}
+	 * 
+	 * @param indexed
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	private Set<V> asSet(Object indexed) {
+
+		if (indexed == null) {
+			return null;
+		}
+
+		if (indexed instanceof ValueBucket) {
+			return (ValueBucket<V>) indexed;
+		}
+
+		return Collections.singleton((V) indexed);
+	}
+
+	/**
+	 * Appends the specified element to the end of this list.
+	 * 
+	 * @param e
+	 * @return
+	 */
+	@Override
+	public boolean add(V e) {
+		super.add(e);
+		index(e.getIntMapKey(), e);
+		return true;
+	}
+
+	/**
+	 * Inserts the specified element at the specified position in this list.
+	 * 
+	 * @param index
+	 * @param e
+	 */
+	@Override
+	public void add(int index, V e) {
+		super.add(index, e);
+		index(e.getIntMapKey(), e);
+	}
+
+	/**
+	 * Appends all of the elements in the specified collection to the end of
+	 * this list, in the order that they are returned by the specified
+	 * collection's Iterator.
+	 * 
+	 * @param c
+	 * @return
+	 */
+	@Override
+	public boolean addAll(Collection<? extends V> c) {
+		return addAll(size(), c);
+	}
+
+	/**
+	 * Inserts all of the elements in the specified collection into this list,
+	 * starting at the specified position. The list and the key index grow at
+	 * most once and the elements behind the position are shifted only once.
+	 * 
+	 * @param index
+	 * @param c
+	 * @return
+	 */
+	@Override
+	public boolean addAll(int index, Collection<? extends V> c) {
+
+		int oldSize = size();
+		ensureCapacity(oldSize + c.size());
+
+		boolean added = super.addAll(index, c);
+
+		int end = index + size() - oldSize;
+		for (int i = index; i < end; i++) {
+			V v = super.get(i);
+			index(v.getIntMapKey(), v);
+		}
+
+		return added;
+	}
+
+	/**
+	 * Removes all elements
+	 */
+	@Override
+	public void clear() {
+		super.clear();
+		idMap.clear();
+	}
+
+	/**
+	 * Get all values with the given key. The returned {@link Set} is read only.
+	 * 
+	 * @param id
+	 * @return The read only set or null, if there is no element with the given
+	 *         key
+	 */
+	public Set<V> getByMapKey(int id) {
+		return asSet(idMap.get(id));
+	}
+
+	@Override
+	public Set<V> getByMapKey(Integer id) {
+		return id == null ? null : getByMapKey(id.intValue());
+	}
+
+	/**
+	 * Get the first value with the given key
+	 * 
+	 * @param id
+	 * @return The value or null, if there is no element with the given key
+	 */
+	@SuppressWarnings("unchecked")
+	public V getFirstByMapKey(int id) {
+
+		Object found = idMap.get(id);
+
+		if (found instanceof ValueBucket) {
+			return ((ValueBucket<V>) found).first();
+		}
+
+		return (V) found;
+	}
+
+	@Override
+	public V getFirstByMapKey(Integer id) {
+		return id == null ? null : getFirstByMapKey(id.intValue());
+	}
+
+	/**
+	 * Remove all items in the list that have this key
+	 * 
+	 * @param id
+	 * @return The removed elements or null, if there is no such element
+	 */
+	public Set<V> removeByMapKey(int id) {
+		Set<V> removed = asSet(idMap.remove(id));
+
+		if (removed != null) {
+			compact(removed);
+		}
+
+		return removed;
+	}
+
+	@Override
+	public Set<V> removeByMapKey(Integer id) {
+		return id == null ? null : removeByMapKey(id.intValue());
+	}
+
+	/**
+	 * Removes every element that is contained in the given set in a single
+	 * pass over the list
+	 * 
+	 * @param toRemove
+	 *            The elements to remove
+	 */
+	private void compact(Set<V> toRemove) {
+
+		int size = size();
+		int write = 0;
+
+		for (int read = 0; read < size; read++) {
+			V v = super.get(read);
+
+			if (!toRemove.contains(v)) {
+				if (write != read) {
+					super.set(write, v);
+				}
+				write++;
+			}
+		}
+
+		if (write < size) {
+			super.removeRange(write, size);
+		}
+	}
+
+	/**
+	 * Removes the element at the specified position in this list.
+	 * 
+	 * @param index
+	 * @return
+	 */
+	@Override
+	public V remove(int index) {
+		V v = super.remove(index);
+		unindex(v.getIntMapKey(), v);
+		return v;
+	}
+
+	/**
+	 * Removes the elements from fromIndex (inclusive) to toIndex (exclusive)
+	 * from the list and from the key index.
+	 * 
+	 * @param fromIndex
+	 * @param toIndex
+	 */
+	@Override
+	protected void removeRange(int fromIndex, int toIndex) {
+
+		for (int i = fromIndex; i < toIndex; i++) {
+			V v = super.get(i);
+			unindex(v.getIntMapKey(), v);
+		}
+
+		super.removeRange(fromIndex, toIndex);
+	}
+
+	/**
+	 * Removes all elements that are contained in the specified collection.
+	 * The elements are removed in a single pass over the list.
+	 * 
+	 * @param c
+	 * @return
+	 */
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		return removeMarked(findRemoved(c, false));
+	}
+
+	/**
+	 * Retains only the elements that are contained in the specified
+	 * collection. The elements are removed in a single pass over the list.
+	 * 
+	 * @param c
+	 * @return
+	 */
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		return removeMarked(findRemoved(c, true));
+	}
+
+	/**
+	 * Removes all elements that satisfy the predicate. Like
+	 * {@link #removeAll(Collection)} the elements are removed in a single
+	 * pass over the list and the key index is kept up to date. The predicate
+	 * is tested for every element first, so the list is unchanged if it
+	 * throws an exception.
+	 * 
+	 * @param filter
+	 * @return true, if the list has been changed
+	 */
+	@Override
+	public boolean removeIf(Predicate<? super V> filter) {
+
+		if (filter == null) {
+			throw new NullPointerException("Predicate is null");
+		}
+
+		boolean[] removed = new boolean[size()];
+		for (int i = 0; i < removed.length; i++) {
+			removed[i] = filter.test(super.get(i));
+		}
+
+		return removeMarked(removed);
+	}
+
+	/**
+	 * Finds the elements that are (or are not) contained in the given
+	 * collection
+	 * 
+	 * @param c
+	 * @param retain
+	 *            true, if the elements contained in the collection should be
+	 *            kept, false if they should be removed
+	 * @return true for every position, whose element should be removed
+	 */
+	private boolean[] findRemoved(Collection<?> c, boolean retain) {
+
+		if (c == null) {
+			throw new NullPointerException("Collection is null");
+		}
+
+		boolean[] removed = new boolean[size()];
+		for (int i = 0; i < removed.length; i++) {
+			removed[i] = c.contains(super.get(i)) != retain;
+		}
+
+		return removed;
+	}
+
+	/**
+	 * Removes the elements at the marked positions from the list and from the
+	 * key index. The remaining elements are moved towards the head of the list
+	 * and the tail is cut off at once.
+	 * 
+	 * @param removed
+	 *            true for every position, whose element should be removed
+	 * @return true, if the list has been changed
+	 */
+	private boolean removeMarked(boolean[] removed) {
+
+		int size = size();
+		int write = 0;
+
+		for (int read = 0; read < size; read++) {
+			V v = super.get(read);
+
+			if (!removed[read]) {
+				if (write != read) {
+					super.set(write, v);
+				}
+				write++;
+			} else {
+				unindex(v.getIntMapKey(), v);
+			}
+		}
+
+		if (write == size) {
+			return false;
+		}
+
+		super.removeRange(write, size);
+		return true;
+	}
+
+	@Override
+	public Iterator<V> iterator() {
+		return listIterator(0);
+	}
+
+	@Override
+	public ListIterator<V> listIterator() {
+		return listIterator(0);
+	}
+
+	/**
+	 * Get a {@link ListIterator} that keeps the key index up to date, if the
+	 * list is modified through the iterator.
+	 * 
+	 * @param index
+	 * @return
+	 */
+	@Override
+	public ListIterator<V> listIterator(int index) {
+		return new ListMapIterator<V>(this, index) {
+			@Override
+			int modCount() {
+				return modCount;
+			}
+		};
+	}
+
+	/**
+	 * Get a view of the given range of this list. Modifications of the view
+	 * are written through to this list and its key index.
+	 * 
+	 * @param fromIndex
+	 * @param toIndex
+	 * @return
+	 */
+	@Override
+	public List<V> subList(int fromIndex, int toIndex) {
+		return new ListMapSubList<V>(this, fromIndex, toIndex) {
+			@Override
+			int parentModCount() {
+				return IntArrayListMap.this.modCount;
+			}
+
+			@Override
+			void parentRemoveRange(int fromIndex, int toIndex) {
+				IntArrayListMap.this.removeRange(fromIndex, toIndex);
+			}
+		};
+	}
+
+	/**
+	 * Removes the first occurrence of the specified element from this list, if
+	 * it is present.
+	 * 
+	 * @param element
+	 * @return
+	 */
+	@Override
+	public boolean remove(Object element) {
+		boolean removed = super.remove(element);
+
+		if (removed && element instanceof IntMappable) {
+			unindex(((IntMappable) element).getIntMapKey(), element);
+		}
+
+		return removed;
+	}
+
+	/**
+	 * Every element is in the key index, so {@link IntMappable} values are
+	 * searched by key only.
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public boolean contains(Object value) {
+
+		if (value instanceof IntMappable) {
+
+			Object found = idMap.get(((IntMappable) value).getIntMapKey());
+
+			if (found == null) {
+				return false;
+			}
+
+			return found instanceof ValueBucket ? ((ValueBucket<V>) found)
+					.contains(value) : found.equals(value);
+		}
+
+		return super.contains(value);
+	}
+
+	/**
+	 * Replaces every element with the result of the operator. Every element
+	 * is replaced by {@link #set(int, IntMappable)}, so the key index is kept
+	 * up to date.
+	 * 
+	 * @param operator
+	 */
+	@Override
+	public void replaceAll(UnaryOperator<V> operator) {
+
+		if (operator == null) {
+			throw new NullPointerException("Operator is null");
+		}
+
+		int size = size();
+		for (int i = 0; i < size; i++) {
+			set(i, operator.apply(super.get(i)));
+		}
+
+		modCount++;
+	}
+
+	/**
+	 * Replaces the item at the current position
+	 * 
+	 * @param position
+	 * @param e
+	 * @return
+	 */
+	@Override
+	public V set(int position, V e) {
+
+		V previous = super.set(position, e);
+
+		unindex(previous.getIntMapKey(), previous);
+		index(e.getIntMapKey(), e);
+
+		return previous;
+	}
+}
@@ -0,0 +1,219 @@
+package com.hannesdorfmann.collection;
+
+import java.util.Arrays;
+
+/**
+ * A open addressing hash table with primitive int keys, that is used as key
+ * index by {@link IntArrayListMap} and {@link UniqueIntArrayListMap}. It uses
+ * linear probing and backward shift deletion, so there are no tombstones.
+ * 
+ * <p>
+ * Beside the value every slot can also store a int (the position of the value
+ * in the list), if the index has been created with positions.
+ * </p>
+ * 
+ * @author Hannes Dorfmann
+ * 
+ * @param <T>
+ *            The type of the values. A value must never be null.
+ */
+class IntIndex<T> {
+
+	private static final int MIN_CAPACITY = 8;
+
+	private int[] keys;
+	private Object[] values;
+	private int[] positions;
+
+	private int size;
+	private int mask;
+
+	IntIndex(int expectedSize, boolean withPositions) {
+		int capacity = capacityFor(expectedSize);
+		keys = new int[capacity];
+		values = new Object[capacity];
+		positions = withPositions ? new int[capacity] : null;
+		mask = capacity - 1;
+	}
+
+	/**
+	 * Get the table size for the given number of elements, so that the load
+	 * factor is not above 0.5
+	 */
+	private static int capacityFor(int expectedSize) {
+		int capacity = MIN_CAPACITY;
+		while (capacity < expectedSize * 2 && capacity < (1 << 30)) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	private int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	/**
+	 * Get the slot of the given key
+	 * 
+	 * @param key
+	 * @return The slot or -1 if the key is not in the index
+	 */
+	int slot(int key) {
+		int i = hash(key);
+		while (values[i] != null) {
+			if (keys[i] == key) {
+				return i;
+			}
+			i = (i + 1) & mask;
+		}
+		return -1;
+	}
+
+	@SuppressWarnings("unchecked")
+	T valueAt(int slot) {
+		return (T) values[slot];
+	}
+
+	void setValueAt(int slot, T value) {
+		values[slot] = value;
+	}
+
+	int positionAt(int slot) {
+		return positions[slot];
+	}
+
+	void setPositionAt(int slot, int position) {
+		positions[slot] = position;
+	}
+
+	T get(int key) {
+		int slot = slot(key);
+		return slot < 0 ? null : valueAt(slot);
+	}
+
+	/**
+	 * Puts the value for the given key
+	 * 
+	 * @param key
+	 * @param value
+	 * @return The slot of the key
+	 */
+	int put(int key, T value) {
+
+		if (value == null) {
+			throw new NullPointerException("Value is null");
+		}
+
+		int i = hash(key);
+		while (values[i] != null) {
+			if (keys[i] == key) {
+				values[i] = value;
+				return i;
+			}
+			i = (i + 1) & mask;
+		}
+
+		keys[i] = key;
+		values[i] = value;
+		size++;
+
+		if (size * 2 > values.length) {
+			resize(values.length * 2);
+			return slot(key);
+		}
+
+		return i;
+	}
+
+	/**
+	 * Removes the given key
+	 * 
+	 * @param key
+	 * @return The value that has been removed or null
+	 */
+	T remove(int key) {
+		int slot = slot(key);
+		if (slot < 0) {
+			return null;
+		}
+
+		T removed = valueAt(slot);
+		removeAt(slot);
+		return removed;
+	}
+
+	private void removeAt(int slot) {
+
+		size--;
+
+		// Move following entries of the same cluster back, if the removed slot
+		// is between their home slot and their current slot
+		int free = slot;
+		int i = (slot + 1) & mask;
+
+		while (values[i] != null) {
+			int home = hash(keys[i]);
+
+			if (((i - home) & mask) >= ((i - free) & mask)) {
+				keys[free] = keys[i];
+				values[free] = values[i];
+				if (positions != null) {
+					positions[free] = positions[i];
+				}
+				free = i;
+			}
+
+			i = (i + 1) & mask;
+		}
+
+		values[free] = null;
+	}
+
+	/**
+	 * Grows the table, so that it can hold the given number of keys without
+	 * growing again
+	 * 
+	 * @param expectedSize
+	 */
+	void ensureCapacity(int expectedSize) {
+		int capacity = capacityFor(expectedSize);
+		if (capacity > values.length) {
+			resize(capacity);
+		}
+	}
+
+	private void resize(int capacity) {
+		int[] oldKeys = keys;
+		Object[] oldValues = values;
+		int[] oldPositions = positions;
+
+		keys = new int[capacity];
+		values = new Object[capacity];
+		positions = oldPositions != null ? new int[capacity] : null;
+		mask = capacity - 1;
+
+		for (int j = 0; j < oldValues.length; j++) {
+			if (oldValues[j] != null) {
+				int i = hash(oldKeys[j]);
+				while (values[i] != null) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+				if (positions != null) {
+					positions[i] = oldPositions[j];
+				}
+			}
+		}
+	}
+
+	int size() {
+		return size;
+	}
+
+	void clear() {
+		Arrays.fill(values, null);
+		size = 0;
+	}
+}
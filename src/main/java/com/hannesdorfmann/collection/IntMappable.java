@@ -0,0 +1,16 @@
+package com.hannesdorfmann.collection;
+
+/**
+ * A {@link Mappable} with a primitive int key. {@link IntArrayListMap} and
+ * {@link UniqueIntArrayListMap} only use {@link #getIntMapKey()}, so the key
+ * is never boxed. {@link #getMapKey()} must return the same key boxed as
+ * {@link Integer}.
+ * 
+ * @author Hannes Dorfmann
+ * 
+ */
+public interface IntMappable extends Mappable<Integer> {
+
+	public int getIntMapKey();
+
+}
@@ -0,0 +1,135 @@
+package com.hannesdorfmann.collection;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Stores the key of every element of a list at the same position as the
+ * element. The {@link ListMap} implementations use it, if key caching is
+ * enabled, so that {@link Mappable#getMapKey()} is called only once, when an
+ * element is inserted.
+ * 
+ * @author Hannes Dorfmann
+ * 
+ */
+final class KeyArray {
+
+	private Object[] keys;
+
+	private int size;
+
+	KeyArray(int initialCapacity) {
+		keys = new Object[Math.max(initialCapacity, 10)];
+	}
+
+	int size() {
+		return size;
+	}
+
+	Object get(int index) {
+		return keys[index];
+	}
+
+	void set(int index, Object key) {
+		keys[index] = key;
+	}
+
+	void ensureCapacity(int minCapacity) {
+		if (minCapacity > keys.length) {
+			int capacity = Math.max(minCapacity, keys.length
+					+ (keys.length >> 1));
+			keys = Arrays.copyOf(keys, capacity);
+		}
+	}
+
+	void add(Object key) {
+		ensureCapacity(size + 1);
+		keys[size++] = key;
+	}
+
+	void add(int index, Object key) {
+		insertGap(index, 1);
+		keys[index] = key;
+	}
+
+	/**
+	 * Inserts count null keys at the given position
+	 * 
+	 * @param index
+	 * @param count
+	 */
+	void insertGap(int index, int count) {
+		ensureCapacity(size + count);
+		System.arraycopy(keys, index, keys, index + count, size - index);
+		Arrays.fill(keys, index, index + count, null);
+		size += count;
+	}
+
+	/**
+	 * Removes the key at the given position
+	 * 
+	 * @param index
+	 * @return The removed key
+	 */
+	Object remove(int index) {
+		Object removed = keys[index];
+		removeRange(index, index + 1);
+		return removed;
+	}
+
+	void removeRange(int fromIndex, int toIndex) {
+		System.arraycopy(keys, toIndex, keys, fromIndex, size - toIndex);
+		int newSize = size - (toIndex - fromIndex);
+		Arrays.fill(keys, newSize, size, null);
+		size = newSize;
+	}
+
+	void clear() {
+		Arrays.fill(keys, 0, size, null);
+		size = 0;
+	}
+
+	/**
+	 * Sorts the elements and moves every key along with its element. The sort
+	 * is stable.
+	 * 
+	 * @param elements
+	 *            The elements at the positions of the keys, they are sorted
+	 *            in place
+	 * @param comparator
+	 *            The {@link Comparator} or null for the natural ordering
+	 */
+	void sort(final Object[] elements, final Comparator<Object> comparator) {
+
+		Integer[] order = new Integer[size];
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+		}
+
+		Arrays.sort(order, new Comparator<Integer>() {
+
+			@SuppressWarnings("unchecked")
+			@Override
+			public int compare(Integer a, Integer b) {
+				if (comparator != null) {
+					return comparator.compare(elements[a], elements[b]);
+				}
+				return ((Comparable<Object>) elements[a]).compareTo(elements[b]);
+			}
+		});
+
+		Object[] sortedElements = new Object[size];
+		Object[] sortedKeys = new Object[size];
+		for (int i = 0; i < size; i++) {
+			sortedElements[i] = elements[order[i]];
+			sortedKeys[i] = keys[order[i]];
+		}
+
+		System.arraycopy(sortedElements, 0, elements, 0, size);
+		System.arraycopy(sortedKeys, 0, keys, 0, size);
+	}
+
+	Object[] toArray() {
+		return Arrays.copyOf(keys, size);
+	}
+}
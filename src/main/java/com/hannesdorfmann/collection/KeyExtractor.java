@@ -0,0 +1,115 @@
+package com.hannesdorfmann.collection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Calls {@link Mappable#getMapKey()} of many elements on the threads of an
+ * {@link ExecutorService}. The elements are split into one chunk per available
+ * processor. The key index itself is still filled by the calling thread in
+ * list order, so the order of the values of a key doesn't depend on the
+ * threads.
+ * 
+ * @author Hannes Dorfmann
+ * 
+ */
+final class KeyExtractor {
+
+	/**
+	 * Chunks with less elements are not worth to be passed to another thread
+	 */
+	private static final int MIN_CHUNK_SIZE = 4096;
+
+	private KeyExtractor() {
+	}
+
+	/**
+	 * Get the keys of the elements. Small batches, or if the current thread
+	 * is interrupted while waiting, are done on the current thread.
+	 * 
+	 * @param elements
+	 *            The {@link Mappable}s
+	 * @param executor
+	 * @return An array containing the key of the element at the same position
+	 */
+	static Object[] extract(final Object[] elements, ExecutorService executor) {
+
+		if (executor == null) {
+			throw new NullPointerException("ExecutorService is null");
+		}
+
+		final Object[] keys = new Object[elements.length];
+
+		int chunks = Math.min(Runtime.getRuntime().availableProcessors(),
+				elements.length / MIN_CHUNK_SIZE);
+
+		if (chunks < 2) {
+			extract(elements, keys, 0, elements.length);
+			return keys;
+		}
+
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(chunks);
+		int chunkSize = (elements.length + chunks - 1) / chunks;
+
+		for (int from = 0; from < elements.length; from += chunkSize) {
+			final int start = from;
+			final int end = Math.min(from + chunkSize, elements.length);
+
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					extract(elements, keys, start, end);
+					return null;
+				}
+			});
+		}
+
+		try {
+			for (Future<Void> future : executor.invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			extract(elements, keys, 0, elements.length);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+
+		return keys;
+	}
+
+	/**
+	 * Get the keys of the given range of elements. The hash code of every key
+	 * is computed too, so keys that cache their hash code (like
+	 * {@link String}) don't compute it again when they are put into the key
+	 * index.
+	 * 
+	 * @param elements
+	 * @param keys
+	 * @param from
+	 * @param to
+	 */
+	@SuppressWarnings("unchecked")
+	private static void extract(Object[] elements, Object[] keys, int from,
+			int to) {
+
+		for (int i = from; i < to; i++) {
+			Object key = ((Mappable<Object>) elements[i]).getMapKey();
+			if (key != null) {
+				key.hashCode();
+			}
+			keys[i] = key;
+		}
+	}
+}
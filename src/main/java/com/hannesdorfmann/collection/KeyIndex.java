@@ -0,0 +1,349 @@
+package com.hannesdorfmann.collection;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An open addressing hash table, that is used as key index by
+ * {@link ArrayListMap} and {@link ChunkedListMap}. Like {@link IntIndex} it
+ * uses linear probing and backward shift deletion, so there are no tombstones
+ * and no entry object per key.
+ *
+ * <p>
+ * Once positions are tracked (see {@link #trackPositions()}), every slot also
+ * stores the position hint (see {@link PositionHint}) of its value in a
+ * parallel int array, so remembering a position doesn't allocate anything.
+ * Keys with more than one value store the positions in their
+ * {@link ValueBucket} instead.
+ * </p>
+ *
+ * <p>
+ * Null keys are not supported. The {@link Map} views are read only.
+ * </p>
+ *
+ * @author Hannes Dorfmann
+ *
+ * @param <K>
+ *            The type of the keys
+ */
+final class KeyIndex<K> extends AbstractMap<K, Object> {
+
+	private static final int MIN_CAPACITY = 8;
+
+	private Object[] keys;
+	private Object[] values;
+
+	/**
+	 * The position hint of the value in the same slot or -1, if it's unknown.
+	 * Null, if positions are not tracked.
+	 */
+	private int[] positions;
+
+	private int size;
+	private int mask;
+
+	KeyIndex(int expectedSize) {
+		int capacity = capacityFor(expectedSize);
+		keys = new Object[capacity];
+		values = new Object[capacity];
+		mask = capacity - 1;
+	}
+
+	/**
+	 * Get the table size for the given number of keys, so that the load factor
+	 * is not above 0.5
+	 */
+	private static int capacityFor(int expectedSize) {
+		int capacity = MIN_CAPACITY;
+		while (capacity < expectedSize * 2 && capacity < (1 << 30)) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	private int hash(Object key) {
+		int h = key.hashCode() * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	/**
+	 * Get the slot of the given key
+	 *
+	 * @param key
+	 * @return The slot or -1 if the key is not in the index
+	 */
+	int slot(Object key) {
+
+		if (key == null) {
+			return -1;
+		}
+
+		int i = hash(key);
+		while (values[i] != null) {
+			if (keys[i].equals(key)) {
+				return i;
+			}
+			i = (i + 1) & mask;
+		}
+		return -1;
+	}
+
+	Object valueAt(int slot) {
+		return values[slot];
+	}
+
+	void setValueAt(int slot, Object value) {
+		values[slot] = value;
+	}
+
+	/**
+	 * Starts to store a position hint for every key. All hints are unknown
+	 * (-1) at first.
+	 */
+	void trackPositions() {
+		if (positions == null) {
+			positions = new int[values.length];
+			Arrays.fill(positions, -1);
+		}
+	}
+
+	/**
+	 * Are positions tracked
+	 *
+	 * @return
+	 * @see #trackPositions()
+	 */
+	boolean tracksPositions() {
+		return positions != null;
+	}
+
+	/**
+	 * Get the position hint of the value in the given slot
+	 *
+	 * @param slot
+	 * @return The position hint or -1, if it's unknown
+	 */
+	int positionAt(int slot) {
+		return positions == null ? -1 : positions[slot];
+	}
+
+	/**
+	 * Remembers the position of the value in the given slot, if positions are
+	 * tracked
+	 *
+	 * @param slot
+	 * @param position
+	 */
+	void setPositionAt(int slot, int position) {
+		if (positions != null) {
+			positions[slot] = position;
+		}
+	}
+
+	@Override
+	public Object get(Object key) {
+		int slot = slot(key);
+		return slot < 0 ? null : values[slot];
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return slot(key) >= 0;
+	}
+
+	@Override
+	public Object put(K key, Object value) {
+		int slot = slot(key);
+
+		if (slot < 0) {
+			putSlot(key, value);
+			return null;
+		}
+
+		Object previous = values[slot];
+		values[slot] = value;
+		return previous;
+	}
+
+	/**
+	 * Puts the value for the given key. The position hint of a new key is
+	 * unknown.
+	 *
+	 * @param key
+	 * @param value
+	 * @return The slot of the key
+	 */
+	int putSlot(K key, Object value) {
+
+		if (key == null || value == null) {
+			throw new NullPointerException("Key or value is null");
+		}
+
+		int i = hash(key);
+		while (values[i] != null) {
+			if (keys[i].equals(key)) {
+				values[i] = value;
+				return i;
+			}
+			i = (i + 1) & mask;
+		}
+
+		keys[i] = key;
+		values[i] = value;
+		if (positions != null) {
+			positions[i] = -1;
+		}
+		size++;
+
+		if (size * 2 > values.length) {
+			resize(values.length * 2);
+			return slot(key);
+		}
+
+		return i;
+	}
+
+	@Override
+	public Object remove(Object key) {
+		int slot = slot(key);
+		if (slot < 0) {
+			return null;
+		}
+
+		Object removed = values[slot];
+		removeAt(slot);
+		return removed;
+	}
+
+	private void removeAt(int slot) {
+
+		size--;
+
+		// Move following entries of the same cluster back, if the removed slot
+		// is between their home slot and their current slot
+		int free = slot;
+		int i = (slot + 1) & mask;
+
+		while (values[i] != null) {
+			int home = hash(keys[i]);
+
+			if (((i - home) & mask) >= ((i - free) & mask)) {
+				keys[free] = keys[i];
+				values[free] = values[i];
+				if (positions != null) {
+					positions[free] = positions[i];
+				}
+				free = i;
+			}
+
+			i = (i + 1) & mask;
+		}
+
+		keys[free] = null;
+		values[free] = null;
+	}
+
+	/**
+	 * Grows the table, so that it can hold the given number of keys without
+	 * growing again
+	 *
+	 * @param expectedSize
+	 */
+	void ensureCapacity(int expectedSize) {
+		int capacity = capacityFor(expectedSize);
+		if (capacity > values.length) {
+			resize(capacity);
+		}
+	}
+
+	private void resize(int capacity) {
+		Object[] oldKeys = keys;
+		Object[] oldValues = values;
+		int[] oldPositions = positions;
+
+		keys = new Object[capacity];
+		values = new Object[capacity];
+		positions = oldPositions != null ? new int[capacity] : null;
+		mask = capacity - 1;
+
+		for (int j = 0; j < oldValues.length; j++) {
+			if (oldValues[j] != null) {
+				int i = hash(oldKeys[j]);
+				while (values[i] != null) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+				if (positions != null) {
+					positions[i] = oldPositions[j];
+				}
+			}
+		}
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(keys, null);
+		Arrays.fill(values, null);
+		size = 0;
+	}
+
+	@Override
+	public Set<Map.Entry<K, Object>> entrySet() {
+		return new AbstractSet<Map.Entry<K, Object>>() {
+
+			@Override
+			public Iterator<Map.Entry<K, Object>> iterator() {
+				return new Iterator<Map.Entry<K, Object>>() {
+
+					private int next = advance(0);
+
+					private int advance(int slot) {
+						while (slot < values.length && values[slot] == null) {
+							slot++;
+						}
+						return slot;
+					}
+
+					@Override
+					public boolean hasNext() {
+						return next < values.length;
+					}
+
+					@SuppressWarnings("unchecked")
+					@Override
+					public Map.Entry<K, Object> next() {
+						if (next >= values.length) {
+							throw new NoSuchElementException();
+						}
+						Map.Entry<K, Object> entry = new SimpleImmutableEntry<K, Object>(
+								(K) keys[next], values[next]);
+						next = advance(next + 1);
+						return entry;
+					}
+
+					@Override
+					public void remove() {
+						throw new UnsupportedOperationException(
+								"The views of the key index are read only");
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+}
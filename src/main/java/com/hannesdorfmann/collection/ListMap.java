@@ -9,7 +9,14 @@ import java.util.Set;
  * simply iterate, like you would do with any {@link List} or get a item by his
  * list position. You can also search for an value by searching for his key
  * (id), like you would do with any {@link Map} implementation (
- * {@link #getByMapKey(Mappable)})
+ * {@link #getByMapKey(Object)})
+ * 
+ * <p>
+ * Elements that are equal must have the same key. The implementations rely on
+ * this to answer {@link #contains(Object)}, {@link #indexOf(Object)} and
+ * {@link #lastIndexOf(Object)} with the key index instead of searching the
+ * whole list.
+ * </p>
  * 
  * @author Hannes Dorfmann
  * 
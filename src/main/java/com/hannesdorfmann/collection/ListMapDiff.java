@@ -0,0 +1,450 @@
+package com.hannesdorfmann.collection;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The difference between an old and a new version of a list of
+ * {@link Mappable}s. Elements are matched by their key: an element of the old
+ * list without an element with the same key in the new list has been removed,
+ * an element of the new list without an element with the same key in the old
+ * list has been inserted. Matched elements have been moved, if their order
+ * differs, and have been changed, if they are not equal.
+ * 
+ * <p>
+ * Calculating the diff takes O(n) for removed, inserted and changed elements.
+ * Moves are found with a longest increasing subsequence in O(n log n), the
+ * positions of the moves are dispatched in O(log n) each. Keys must be unique
+ * in both lists. Elements with a null key are never matched.
+ * </p>
+ * 
+ * <p>
+ * The diff can be reported as a sequence of range events with
+ * {@link #dispatchTo(ObservableListMap.Listener)}, for example to update an
+ * adapter, or applied to the old list with {@link #applyTo(List)}.
+ * </p>
+ * 
+ * @author Hannes Dorfmann
+ * 
+ * @param <K>
+ *            The Key
+ * @param <V>
+ *            The Value
+ */
+public final class ListMapDiff<K, V extends Mappable<K>> {
+
+	/**
+	 * Marks a key of the new list that is not in the old list
+	 */
+	private static final Integer NOT_IN_OLD_LIST = Integer.valueOf(-1);
+
+	private final int oldSize;
+
+	private final Object[] newElements;
+
+	private final Object[] newKeys;
+
+	/**
+	 * The position of the matching element in the old list for every position
+	 * of the new list or -1, if the element has been inserted
+	 */
+	private final int[] oldPositions;
+
+	/**
+	 * The positions in the old list of the removed elements, in ascending
+	 * order
+	 */
+	private final int[] removed;
+
+	/**
+	 * The positions in the new list of the matched elements, that are not
+	 * equal to the old element
+	 */
+	private final boolean[] changed;
+
+	private ListMapDiff(int oldSize, Object[] newElements, Object[] newKeys,
+			int[] oldPositions, int[] removed, boolean[] changed) {
+		this.oldSize = oldSize;
+		this.newElements = newElements;
+		this.newKeys = newKeys;
+		this.oldPositions = oldPositions;
+		this.removed = removed;
+		this.changed = changed;
+	}
+
+	/**
+	 * Calculates the diff between the old and the new list
+	 * 
+	 * @param oldList
+	 * @param newList
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             if a key is contained more than once in one of the lists
+	 */
+	public static <K, V extends Mappable<K>> ListMapDiff<K, V> calculate(
+			List<? extends V> oldList, List<? extends V> newList) {
+
+		int oldSize = oldList.size();
+		Map<K, Integer> positionsByKey = new HashMap<K, Integer>(oldSize
+				+ oldSize / 3 + 1);
+
+		for (int i = 0; i < oldSize; i++) {
+			K key = oldList.get(i).getMapKey();
+			if (key != null && positionsByKey.put(key, i) != null) {
+				throw new IllegalArgumentException("The key " + key
+						+ " is contained more than once in the old list");
+			}
+		}
+
+		Object[] newElements = newList.toArray();
+		Object[] newKeys = new Object[newElements.length];
+		int[] oldPositions = new int[newElements.length];
+		boolean[] matched = new boolean[oldSize];
+		boolean[] changed = new boolean[newElements.length];
+
+		for (int j = 0; j < newElements.length; j++) {
+			@SuppressWarnings("unchecked")
+			V v = (V) newElements[j];
+			K key = v.getMapKey();
+			newKeys[j] = key;
+			oldPositions[j] = -1;
+
+			if (key == null) {
+				continue;
+			}
+
+			Integer position = positionsByKey.put(key, NOT_IN_OLD_LIST);
+
+			if (position == NOT_IN_OLD_LIST) {
+				throw new IllegalArgumentException("The key " + key
+						+ " is contained more than once in the new list");
+			}
+
+			if (position != null) {
+				int i = position;
+				oldPositions[j] = i;
+				matched[i] = true;
+				changed[j] = !v.equals(oldList.get(i));
+			}
+		}
+
+		int[] removed = new int[oldSize];
+		int removedCount = 0;
+		for (int i = 0; i < oldSize; i++) {
+			if (!matched[i]) {
+				removed[removedCount++] = i;
+			}
+		}
+
+		return new ListMapDiff<K, V>(oldSize, newElements, newKeys,
+				oldPositions, Arrays.copyOf(removed, removedCount), changed);
+	}
+
+	int oldSize() {
+		return oldSize;
+	}
+
+	int newSize() {
+		return newElements.length;
+	}
+
+	@SuppressWarnings("unchecked")
+	V newElement(int position) {
+		return (V) newElements[position];
+	}
+
+	@SuppressWarnings("unchecked")
+	K newKey(int position) {
+		return (K) newKeys[position];
+	}
+
+	/**
+	 * Get the position in the old list of the element with the same key as
+	 * the element at the given position in the new list
+	 * 
+	 * @param position
+	 * @return The position or -1, if the element has been inserted
+	 */
+	int oldPosition(int position) {
+		return oldPositions[position];
+	}
+
+	/**
+	 * Get the positions of the removed elements in the old list
+	 * 
+	 * @return The positions in ascending order
+	 */
+	int[] removedPositions() {
+		return removed;
+	}
+
+	/**
+	 * Is there no difference between the old and the new list
+	 * 
+	 * @return
+	 */
+	public boolean isEmpty() {
+		if (removed.length > 0 || oldSize != newElements.length) {
+			return false;
+		}
+
+		for (int j = 0; j < newElements.length; j++) {
+			if (oldPositions[j] != j || changed[j]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Reports the diff as a sequence of events. Applying the events in the
+	 * given order to the old list results in the new list: first the removed
+	 * ranges, then the moves, then the inserted ranges and finally the changed
+	 * ranges. Every position is relative to the list after the previous
+	 * events. The positions of inserted and changed elements are the positions
+	 * in the new list.
+	 * 
+	 * @param listener
+	 */
+	public void dispatchTo(ObservableListMap.Listener listener) {
+
+		// Removed ranges
+		int removedBefore = 0;
+		for (int r = 0; r < removed.length;) {
+			int start = r;
+			while (r + 1 < removed.length && removed[r + 1] == removed[r] + 1) {
+				r++;
+			}
+			r++;
+			listener.onRemoved(removed[start] - removedBefore, r - start);
+			removedBefore += r - start;
+		}
+
+		// The new positions of the matched elements in the old order
+		int[] current = new int[oldSize - removed.length];
+		int[] newPositionsByOld = new int[oldSize];
+		Arrays.fill(newPositionsByOld, -1);
+		for (int j = 0; j < oldPositions.length; j++) {
+			if (oldPositions[j] >= 0) {
+				newPositionsByOld[oldPositions[j]] = j;
+			}
+		}
+		int count = 0;
+		for (int i = 0; i < oldSize; i++) {
+			if (newPositionsByOld[i] >= 0) {
+				current[count++] = newPositionsByOld[i];
+			}
+		}
+
+		// Moves: every element that is not in the longest increasing
+		// subsequence is moved behind its predecessor in the new list
+		boolean[] stays = longestIncreasingSubsequence(current);
+		dispatchMoves(current, stays, listener);
+
+		// Inserted ranges
+		for (int j = 0; j < oldPositions.length;) {
+			if (oldPositions[j] >= 0) {
+				j++;
+				continue;
+			}
+			int start = j;
+			while (j < oldPositions.length && oldPositions[j] < 0) {
+				j++;
+			}
+			listener.onInserted(start, j - start);
+		}
+
+		// Changed ranges
+		for (int j = 0; j < changed.length;) {
+			if (!changed[j]) {
+				j++;
+				continue;
+			}
+			int start = j;
+			while (j < changed.length && changed[j]) {
+				j++;
+			}
+			listener.onChanged(start, j - start);
+		}
+	}
+
+	/**
+	 * Reports the moves of the elements, that are not in the longest
+	 * increasing subsequence. Such an element is moved behind its predecessor
+	 * in the new list, so the moved elements behind the same staying element
+	 * (or at the head of the list) form a chain in the order of the new list.
+	 * Every old position and every position in a chain gets a slot, the
+	 * position of an element in the list is the number of used slots in front
+	 * of its slot. So every move is O(log n).
+	 * 
+	 * @param current
+	 *            The new positions of the matched elements in the old order
+	 * @param stays
+	 *            true for the elements of the longest increasing subsequence
+	 * @param listener
+	 */
+	private void dispatchMoves(int[] current, boolean[] stays,
+			ObservableListMap.Listener listener) {
+
+		int[] currentByNew = new int[newElements.length];
+		for (int c = 0; c < current.length; c++) {
+			currentByNew[current[c]] = c;
+		}
+
+		// chainStarts[a]: the length and later the first slot of the chain
+		// behind the staying element current[a - 1], 0 is the head
+		int[] chainStarts = new int[current.length + 1];
+		int anchor = 0;
+		for (int j = 0; j < oldPositions.length; j++) {
+			if (oldPositions[j] >= 0) {
+				int c = currentByNew[j];
+				if (stays[c]) {
+					anchor = c + 1;
+				} else {
+					chainStarts[anchor]++;
+				}
+			}
+		}
+
+		int[] oldSlots = new int[current.length];
+		int slotCount = 0;
+		for (int a = 0; a <= current.length; a++) {
+			if (a > 0) {
+				oldSlots[a - 1] = slotCount++;
+			}
+			int length = chainStarts[a];
+			chainStarts[a] = slotCount;
+			slotCount += length;
+		}
+
+		boolean[] used = new boolean[slotCount];
+		for (int c = 0; c < current.length; c++) {
+			used[oldSlots[c]] = true;
+		}
+		SlotCounts slots = new SlotCounts(used);
+
+		anchor = 0;
+		for (int j = 0; j < oldPositions.length; j++) {
+			if (oldPositions[j] < 0) {
+				continue;
+			}
+
+			int c = currentByNew[j];
+			if (stays[c]) {
+				anchor = c + 1;
+				continue;
+			}
+
+			int from = slots.usedBefore(oldSlots[c]);
+			slots.release(oldSlots[c]);
+
+			int slot = chainStarts[anchor]++;
+			int to = slots.usedBefore(slot);
+			slots.use(slot);
+
+			listener.onMoved(from, to);
+		}
+	}
+
+	/**
+	 * Finds a longest strictly increasing subsequence
+	 * 
+	 * @param values
+	 * @return true for every value that is part of the subsequence
+	 */
+	private static boolean[] longestIncreasingSubsequence(int[] values) {
+
+		// tails[l]: the index of the smallest tail of all subsequences with
+		// length l + 1
+		int[] tails = new int[values.length];
+		int[] predecessors = new int[values.length];
+		int length = 0;
+
+		for (int i = 0; i < values.length; i++) {
+			int low = 0;
+			int high = length;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (values[tails[middle]] < values[i]) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+
+			predecessors[i] = low > 0 ? tails[low - 1] : -1;
+			tails[low] = i;
+			if (low == length) {
+				length++;
+			}
+		}
+
+		boolean[] inSubsequence = new boolean[values.length];
+		for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = predecessors[i]) {
+			inSubsequence[i] = true;
+		}
+
+		return inSubsequence;
+	}
+
+	/**
+	 * Changes the old list, so that it's equal to the new list.
+	 * {@link ArrayListMap}, {@link UniqueArrayListMap} (and their subclasses)
+	 * write the new elements in a single pass and update only the key index
+	 * entries of removed, inserted and replaced elements. Any other list is
+	 * changed by the events of {@link #dispatchTo(ObservableListMap.Listener)}
+	 * 
+	 * @param oldList
+	 *            The list, that the diff has been calculated for. It must not
+	 *            have been modified since.
+	 */
+	@SuppressWarnings("unchecked")
+	public void applyTo(final List<V> oldList) {
+
+		if (oldList.size() != oldSize) {
+			throw new IllegalStateException("The list has " + oldList.size()
+					+ " elements, but the diff has been calculated for "
+					+ oldSize + " elements");
+		}
+
+		if (oldList instanceof ArrayListMap) {
+			((ArrayListMap<K, V>) oldList).applyDiff(this);
+			return;
+		}
+
+		if (oldList instanceof UniqueArrayListMap) {
+			((UniqueArrayListMap<K, V>) oldList).applyDiff(this);
+			return;
+		}
+
+		dispatchTo(new ObservableListMap.Listener() {
+
+			@Override
+			public void onInserted(int position, int count) {
+				List<?> inserted = Arrays.asList(newElements).subList(
+						position, position + count);
+				oldList.addAll(position, (List<V>) inserted);
+			}
+
+			@Override
+			public void onRemoved(int position, int count) {
+				oldList.subList(position, position + count).clear();
+			}
+
+			@Override
+			public void onMoved(int fromPosition, int toPosition) {
+				oldList.add(toPosition, oldList.remove(fromPosition));
+			}
+
+			@Override
+			public void onChanged(int position, int count) {
+				for (int i = position; i < position + count; i++) {
+					oldList.set(i, newElement(i));
+				}
+			}
+		});
+	}
+}
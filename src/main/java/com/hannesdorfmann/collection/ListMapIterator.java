@@ -0,0 +1,146 @@
+package com.hannesdorfmann.collection;
+
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A {@link ListIterator} for the {@link ListMap} implementations that are
+ * based on {@link java.util.ArrayList}. Every modification goes through
+ * {@link List#add(int, Object)}, {@link List#set(int, Object)} and
+ * {@link List#remove(int)} of the list, so the key index is updated too. The
+ * iterators of {@link java.util.ArrayList} (at least on some platforms) modify
+ * the backing array directly and would leave the key index stale.
+ * 
+ * @author Hannes Dorfmann
+ * 
+ * @param <V>
+ */
+abstract class ListMapIterator<V> implements ListIterator<V> {
+
+	private final List<V> list;
+
+	private int cursor;
+
+	private int lastReturned = -1;
+
+	private int expectedModCount;
+
+	ListMapIterator(List<V> list, int index) {
+		if (index < 0 || index > list.size()) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+					+ list.size());
+		}
+
+		this.list = list;
+		this.cursor = index;
+		this.expectedModCount = modCount();
+	}
+
+	/**
+	 * Get the modification count of the list
+	 * 
+	 * @return
+	 */
+	abstract int modCount();
+
+	private void checkForComodification() {
+		if (modCount() != expectedModCount) {
+			throw new ConcurrentModificationException();
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		return cursor < list.size();
+	}
+
+	@Override
+	public V next() {
+		checkForComodification();
+
+		if (cursor >= list.size()) {
+			throw new NoSuchElementException();
+		}
+
+		lastReturned = cursor++;
+		return list.get(lastReturned);
+	}
+
+	@Override
+	public boolean hasPrevious() {
+		return cursor > 0;
+	}
+
+	@Override
+	public V previous() {
+		checkForComodification();
+
+		if (cursor <= 0) {
+			throw new NoSuchElementException();
+		}
+
+		lastReturned = --cursor;
+		return list.get(lastReturned);
+	}
+
+	@Override
+	public int nextIndex() {
+		return cursor;
+	}
+
+	@Override
+	public int previousIndex() {
+		return cursor - 1;
+	}
+
+	@Override
+	public void remove() {
+		if (lastReturned < 0) {
+			throw new IllegalStateException();
+		}
+		checkForComodification();
+
+		list.remove(lastReturned);
+		cursor = lastReturned;
+		lastReturned = -1;
+		expectedModCount = modCount();
+	}
+
+	@Override
+	public void set(V e) {
+		if (lastReturned < 0) {
+			throw new IllegalStateException();
+		}
+		checkForComodification();
+
+		int size = list.size();
+		list.set(lastReturned, e);
+
+		if (list.size() != size) {
+			// Another element with the same key has been removed
+			int position = PositionHint.find(list, e, lastReturned);
+			cursor += position - lastReturned;
+			lastReturned = position;
+		}
+
+		expectedModCount = modCount();
+	}
+
+	/**
+	 * Inserts the element in front of the cursor. The unique {@link ListMap}
+	 * implementations remove an element with the same key first, so the
+	 * cursor is moved behind the position the element has been inserted at.
+	 */
+	@Override
+	public void add(V e) {
+		checkForComodification();
+
+		list.add(cursor, e);
+
+		cursor = PositionHint.find(list, e, cursor) + 1;
+		lastReturned = -1;
+		expectedModCount = modCount();
+	}
+}
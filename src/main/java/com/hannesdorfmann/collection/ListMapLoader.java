@@ -0,0 +1,380 @@
+package com.hannesdorfmann.collection;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Builds a read only {@link ListMap} incrementally, while the elements arrive
+ * one by one, for example from a streaming parser that calls
+ * {@link #add(Mappable)} for every parsed element. Every element is indexed
+ * when it's added, so there is no intermediate list that has to be copied and
+ * indexed after the whole input has been read.
+ * 
+ * <p>
+ * The elements are appended to fixed size chunks, that are never copied or
+ * changed afterwards. The key index maps a key to a chain of immutable nodes,
+ * that know the position of their value. So {@link #publish()} is O(1): it
+ * returns a read only view of the elements added so far (a prefix of the final
+ * list). A published prefix never changes, even though the loader keeps adding
+ * elements. Like in {@link ArrayListMap}, a key can have more values.
+ * </p>
+ * 
+ * <p>
+ * One thread (the producer) calls {@link #add(Mappable)},
+ * {@link #load(Iterator, int)}, {@link #publish()} and {@link #finish()}. The
+ * published prefixes can be read by any number of other threads without
+ * locking, {@link #getPublished()} returns the last one.
+ * </p>
+ * 
+ * @author Hannes Dorfmann
+ * 
+ * @param <K>
+ *            The Key
+ * @param <V>
+ *            The Value
+ */
+public final class ListMapLoader<K, V extends Mappable<K>> {
+
+	private static final int CHUNK_SHIFT = 10;
+
+	private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	/**
+	 * A value in the key index. The nodes of a key are chained from the last
+	 * added value to the first one.
+	 */
+	private static final class Node<V> {
+
+		final V value;
+
+		final int position;
+
+		final Node<V> previous;
+
+		Node(V value, int position, Node<V> previous) {
+			this.value = value;
+			this.position = position;
+			this.previous = previous;
+		}
+	}
+
+	/**
+	 * A read only view of the first elements of the loader
+	 */
+	private static final class Prefix<K, V extends Mappable<K>> extends
+			AbstractList<V> implements ListMap<K, V>, RandomAccess {
+
+		private final Object[][] chunks;
+
+		private final int size;
+
+		private final ConcurrentHashMap<K, Node<V>> index;
+
+		Prefix(Object[][] chunks, int size,
+				ConcurrentHashMap<K, Node<V>> index) {
+			this.chunks = chunks;
+			this.size = size;
+			this.index = index;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public V get(int index) {
+			if (index < 0 || index >= size) {
+				throw new IndexOutOfBoundsException("Index: " + index
+						+ ", Size: " + size);
+			}
+			return (V) chunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * Get the last node of the key, that belongs to this prefix
+		 * 
+		 * @param key
+		 * @return
+		 */
+		private Node<V> lastNode(Object key) {
+			Node<V> node = key == null ? null : index.get(key);
+			while (node != null && node.position >= size) {
+				node = node.previous;
+			}
+			return node;
+		}
+
+		/**
+		 * Get all values with the given key. The returned {@link Set} is read
+		 * only.
+		 * 
+		 * @param id
+		 * @return The read only set or null, if there is no element with the
+		 *         given key
+		 */
+		@Override
+		public Set<V> getByMapKey(K id) {
+
+			Node<V> node = lastNode(id);
+
+			if (node == null) {
+				return null;
+			}
+
+			if (node.previous == null) {
+				return Collections.singleton(node.value);
+			}
+
+			List<V> values = new ArrayList<V>();
+			for (; node != null; node = node.previous) {
+				values.add(node.value);
+			}
+
+			// The chain starts with the last value
+			Collections.reverse(values);
+			return Collections.unmodifiableSet(new LinkedHashSet<V>(values));
+		}
+
+		@Override
+		public V getFirstByMapKey(K id) {
+
+			Node<V> node = lastNode(id);
+
+			if (node == null) {
+				return null;
+			}
+
+			while (node.previous != null) {
+				node = node.previous;
+			}
+
+			return node.value;
+		}
+
+		@Override
+		public Set<V> removeByMapKey(K id) {
+			throw new UnsupportedOperationException(
+					"A published prefix is read only");
+		}
+
+		/**
+		 * Get the position of the first or last occurrence of the value
+		 * 
+		 * @param value
+		 * @param last
+		 * @return The position, -1 if the value is not in the prefix or -2, if
+		 *         the value has no key, so that the key index can't tell
+		 */
+		@SuppressWarnings("unchecked")
+		private int lookupPosition(Object value, boolean last) {
+
+			if (!(value instanceof Mappable)) {
+				return -1;
+			}
+
+			Object key = ((Mappable<K>) value).getMapKey();
+
+			if (key == null) {
+				return -2;
+			}
+
+			int position = -1;
+			for (Node<V> node = lastNode(key); node != null; node = node.previous) {
+				if (node.value.equals(value)) {
+					position = node.position;
+					if (last) {
+						break;
+					}
+				}
+			}
+
+			return position;
+		}
+
+		@Override
+		public boolean contains(Object value) {
+			return indexOf(value) >= 0;
+		}
+
+		@Override
+		public int indexOf(Object value) {
+			int position = lookupPosition(value, false);
+			return position != -2 ? position : super.indexOf(value);
+		}
+
+		@Override
+		public int lastIndexOf(Object value) {
+			int position = lookupPosition(value, true);
+			return position != -2 ? position : super.lastIndexOf(value);
+		}
+	}
+
+	private final ConcurrentHashMap<K, Node<V>> index;
+
+	private Object[][] chunks = new Object[16][];
+
+	private int size;
+
+	private boolean finished;
+
+	private volatile Prefix<K, V> published;
+
+	/**
+	 * Creates a new {@link ListMapLoader}
+	 */
+	public ListMapLoader() {
+		this(16);
+	}
+
+	/**
+	 * Creates a new {@link ListMapLoader}, whose key index can hold the given
+	 * number of keys without growing
+	 * 
+	 * @param expectedSize
+	 */
+	public ListMapLoader(int expectedSize) {
+		index = new ConcurrentHashMap<K, Node<V>>(Math.max(16, expectedSize
+				+ expectedSize / 3 + 1));
+		published = new Prefix<K, V>(chunks, 0, index);
+	}
+
+	/**
+	 * Appends the element and adds it to the key index. It's not visible in a
+	 * published prefix until {@link #publish()} is called.
+	 * 
+	 * @param e
+	 * @throws IllegalStateException
+	 *             if {@link #finish()} has already been called
+	 */
+	public void add(V e) {
+
+		if (finished) {
+			throw new IllegalStateException("The loader has been finished");
+		}
+
+		int chunk = size >>> CHUNK_SHIFT;
+
+		if (chunk == chunks.length) {
+			// Only the table is copied, the chunks are shared with the
+			// published prefixes
+			chunks = Arrays.copyOf(chunks, chunks.length * 2);
+		}
+
+		if (chunks[chunk] == null) {
+			chunks[chunk] = new Object[CHUNK_SIZE];
+		}
+
+		chunks[chunk][size & CHUNK_MASK] = e;
+
+		K key = e.getMapKey();
+		if (key != null) {
+			// Only one lookup for a new key, there is just one producer, so
+			// nobody else can add a node between the two calls
+			Node<V> previous = index.putIfAbsent(key, new Node<V>(e, size,
+					null));
+			if (previous != null) {
+				index.put(key, new Node<V>(e, size, previous));
+			}
+		}
+
+		size++;
+	}
+
+	/**
+	 * Adds all elements of the iterator and publishes a new prefix after
+	 * every publishInterval elements and at the end
+	 * 
+	 * @param elements
+	 * @param publishInterval
+	 *            The number of elements between two published prefixes
+	 * @return The number of added elements
+	 */
+	public int load(Iterator<? extends V> elements, int publishInterval) {
+
+		if (publishInterval < 1) {
+			throw new IllegalArgumentException("publishInterval < 1");
+		}
+
+		int count = 0;
+		while (elements.hasNext()) {
+			add(elements.next());
+			count++;
+
+			if (count % publishInterval == 0) {
+				publish();
+			}
+		}
+
+		publish();
+		return count;
+	}
+
+	/**
+	 * Get the number of added elements, including the ones that are not
+	 * published yet
+	 * 
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Publishes the elements added so far
+	 * 
+	 * @return A read only {@link ListMap} containing the elements added so
+	 *         far. It doesn't change, when more elements are added.
+	 */
+	public ListMap<K, V> publish() {
+		Prefix<K, V> prefix = published;
+
+		if (prefix.size != size) {
+			prefix = new Prefix<K, V>(chunks, size, index);
+			published = prefix;
+		}
+
+		return prefix;
+	}
+
+	/**
+	 * Get the prefix, that has been published last. This can be called from
+	 * any thread.
+	 * 
+	 * @return A read only {@link ListMap}, empty if nothing has been published
+	 *         yet
+	 */
+	public ListMap<K, V> getPublished() {
+		return published;
+	}
+
+	/**
+	 * Publishes all elements. No more elements can be added afterwards.
+	 * 
+	 * @return A read only {@link ListMap} containing all elements
+	 */
+	public ListMap<K, V> finish() {
+		finished = true;
+		return publish();
+	}
+
+	/**
+	 * Has {@link #finish()} been called
+	 * 
+	 * @return
+	 */
+	public boolean isFinished() {
+		return finished;
+	}
+}
@@ -0,0 +1,239 @@
+package com.hannesdorfmann.collection;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A snapshot of the statistics of an {@link ArrayListMap} or a
+ * {@link UniqueArrayListMap}. The list counts its operations only while
+ * statistics are enabled (see
+ * {@link ArrayListMap#setStatisticsEnabled(boolean)}). A snapshot doesn't
+ * change anymore, when the list is changed.
+ * 
+ * <p>
+ * The key histogram shows how many values the keys have: The number at
+ * position i is the number of keys with 2^i up to 2^(i+1) - 1 values. So the
+ * first number is the number of keys with just one value.
+ * </p>
+ * 
+ * @author Hannes Dorfmann
+ * 
+ */
+public final class ListMapStatistics {
+
+	long adds;
+
+	long removes;
+
+	long sets;
+
+	long lookups;
+
+	long indexHits;
+
+	long indexMisses;
+
+	long linearScans;
+
+	long shiftedElements;
+
+	long movedElements;
+
+	long duplicateKeys;
+
+	private int keyCount;
+
+	private int[] keyHistogram = new int[0];
+
+	ListMapStatistics() {
+	}
+
+	/**
+	 * Counts a lookup in the key index
+	 * 
+	 * @param found
+	 *            true, if an element has been found
+	 */
+	void lookup(boolean found) {
+		lookups++;
+		if (found) {
+			indexHits++;
+		} else {
+			indexMisses++;
+		}
+	}
+
+	/**
+	 * Get a copy of the counters with the key histogram of the given key
+	 * index
+	 * 
+	 * @param index
+	 *            The key index, that maps a key either to its value or to a
+	 *            {@link ValueBucket}, or null if the key index is not built
+	 * @return
+	 */
+	ListMapStatistics snapshot(Map<?, ?> index) {
+
+		ListMapStatistics snapshot = new ListMapStatistics();
+		snapshot.adds = adds;
+		snapshot.removes = removes;
+		snapshot.sets = sets;
+		snapshot.lookups = lookups;
+		snapshot.indexHits = indexHits;
+		snapshot.indexMisses = indexMisses;
+		snapshot.linearScans = linearScans;
+		snapshot.shiftedElements = shiftedElements;
+		snapshot.movedElements = movedElements;
+		snapshot.duplicateKeys = duplicateKeys;
+
+		if (index != null) {
+			int[] histogram = new int[32];
+			int length = 0;
+
+			for (Object indexed : index.values()) {
+				int values = indexed instanceof ValueBucket ? ((ValueBucket<?>) indexed)
+						.size() : 1;
+				int bin = 31 - Integer.numberOfLeadingZeros(values);
+				histogram[bin]++;
+				length = Math.max(length, bin + 1);
+			}
+
+			snapshot.keyCount = index.size();
+			snapshot.keyHistogram = Arrays.copyOf(histogram, length);
+		}
+
+		return snapshot;
+	}
+
+	/**
+	 * Get the number of added elements, including the elements of bulk
+	 * operations
+	 * 
+	 * @return
+	 */
+	public long getAddCount() {
+		return adds;
+	}
+
+	/**
+	 * Get the number of removed elements, including the elements of bulk
+	 * operations
+	 * 
+	 * @return
+	 */
+	public long getRemoveCount() {
+		return removes;
+	}
+
+	/**
+	 * Get the number of replaced elements
+	 * 
+	 * @return
+	 */
+	public long getSetCount() {
+		return sets;
+	}
+
+	/**
+	 * Get the number of lookups in the key index by getByMapKey(),
+	 * getFirstByMapKey(), removeByMapKey() and contains()
+	 * 
+	 * @return
+	 */
+	public long getLookupCount() {
+		return lookups;
+	}
+
+	/**
+	 * Get the number of lookups in the key index that have found an element
+	 * 
+	 * @return
+	 */
+	public long getIndexHitCount() {
+		return indexHits;
+	}
+
+	/**
+	 * Get the number of lookups in the key index that haven't found an element
+	 * 
+	 * @return
+	 */
+	public long getIndexMissCount() {
+		return indexMisses;
+	}
+
+	/**
+	 * Get the number of searches in the list that couldn't be answered by the
+	 * key index: passes over the whole list and, for a
+	 * {@link UniqueArrayListMap}, searches for an element that is not at its
+	 * remembered position anymore
+	 * 
+	 * @return
+	 */
+	public long getLinearScanCount() {
+		return linearScans;
+	}
+
+	/**
+	 * Get the number of elements that have been shifted by one or more
+	 * positions, because elements have been inserted or removed in front of
+	 * them
+	 * 
+	 * @return
+	 */
+	public long getShiftedElementCount() {
+		return shiftedElements;
+	}
+
+	/**
+	 * Get the number of elements that have been moved towards the head of the
+	 * list by a bulk removal
+	 * 
+	 * @return
+	 */
+	public long getMovedElementCount() {
+		return movedElements;
+	}
+
+	/**
+	 * Get the number of added elements, whose key has already been in a
+	 * {@link UniqueArrayListMap}. The old element has been replaced or
+	 * removed.
+	 * 
+	 * @return
+	 */
+	public long getDuplicateKeyCount() {
+		return duplicateKeys;
+	}
+
+	/**
+	 * Get the number of keys in the key index at the time of the snapshot, 0
+	 * if a lazy key index hasn't been built
+	 * 
+	 * @return
+	 */
+	public int getKeyCount() {
+		return keyCount;
+	}
+
+	/**
+	 * Get the key histogram at the time of the snapshot
+	 * 
+	 * @return A copy of the histogram
+	 */
+	public int[] getKeyHistogram() {
+		return keyHistogram.clone();
+	}
+
+	@Override
+	public String toString() {
+		return "ListMapStatistics [adds=" + adds + ", removes=" + removes
+				+ ", sets=" + sets + ", lookups=" + lookups + ", indexHits="
+				+ indexHits + ", indexMisses=" + indexMisses
+				+ ", linearScans=" + linearScans + ", shiftedElements="
+				+ shiftedElements + ", movedElements=" + movedElements
+				+ ", duplicateKeys=" + duplicateKeys + ", keyCount="
+				+ keyCount + ", keyHistogram=" + Arrays.toString(keyHistogram)
+				+ "]";
+	}
+}
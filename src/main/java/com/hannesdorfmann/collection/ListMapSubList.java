@@ -0,0 +1,186 @@
+package com.hannesdorfmann.collection;
+
+import java.util.AbstractList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.ListIterator;
+
+/**
+ * A view of a range of a {@link ListMap} implementation that is based on
+ * {@link java.util.ArrayList}. Like {@link ListMapIterator} every
+ * modification goes through the list, so the key index is kept up to date.
+ * {@link #clear()} removes the whole range at once.
+ * 
+ * @author Hannes Dorfmann
+ * 
+ * @param <V>
+ */
+abstract class ListMapSubList<V> extends AbstractList<V> {
+
+	private final List<V> parent;
+
+	private int offset;
+
+	private int size;
+
+	private int expectedModCount;
+
+	ListMapSubList(List<V> parent, int fromIndex, int toIndex) {
+		if (fromIndex < 0) {
+			throw new IndexOutOfBoundsException("fromIndex = " + fromIndex);
+		}
+		if (toIndex > parent.size()) {
+			throw new IndexOutOfBoundsException("toIndex = " + toIndex);
+		}
+		if (fromIndex > toIndex) {
+			throw new IllegalArgumentException("fromIndex(" + fromIndex
+					+ ") > toIndex(" + toIndex + ")");
+		}
+
+		this.parent = parent;
+		this.offset = fromIndex;
+		this.size = toIndex - fromIndex;
+		this.expectedModCount = parentModCount();
+	}
+
+	/**
+	 * Get the modification count of the list
+	 * 
+	 * @return
+	 */
+	abstract int parentModCount();
+
+	/**
+	 * Removes the given range of the list and from the key index
+	 * 
+	 * @param fromIndex
+	 * @param toIndex
+	 */
+	abstract void parentRemoveRange(int fromIndex, int toIndex);
+
+	private void checkForComodification() {
+		if (parentModCount() != expectedModCount) {
+			throw new ConcurrentModificationException();
+		}
+	}
+
+	private void checkIndex(int index, int max) {
+		if (index < 0 || index > max) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+					+ size);
+		}
+	}
+
+	/**
+	 * Remembers the structural modification of the list, that has been done
+	 * by this view
+	 * 
+	 * @param parentSize
+	 *            The size of the list before the modification
+	 */
+	private void modified(int parentSize) {
+		size += parent.size() - parentSize;
+		expectedModCount = parentModCount();
+		modCount++;
+	}
+
+	@Override
+	public V get(int index) {
+		checkIndex(index, size - 1);
+		checkForComodification();
+		return parent.get(offset + index);
+	}
+
+	/**
+	 * Replaces the element. A list with unique keys removes another element
+	 * with the same key as the new one, so the range of this view is adjusted,
+	 * if the removed element has been in front of or within the range.
+	 * 
+	 * @param index
+	 * @param element
+	 * @return
+	 */
+	@Override
+	public V set(int index, V element) {
+		checkIndex(index, size - 1);
+		checkForComodification();
+
+		int parentSize = parent.size();
+		int end = offset + size;
+		V before = offset > 0 ? parent.get(offset - 1) : null;
+		V after = end < parentSize ? parent.get(end) : null;
+
+		V previous = parent.set(offset + index, element);
+
+		if (parent.size() == parentSize) {
+			expectedModCount = parentModCount();
+			return previous;
+		}
+
+		// Find out where the other element has been removed
+		boolean removedInFront = offset + index >= parent.size()
+				|| parent.get(offset + index) != element;
+
+		if (removedInFront && offset > 0 && parent.get(offset - 1) != before) {
+			// In front of the range
+			offset--;
+		} else if (removedInFront || after == null
+				|| parent.get(end - 1) == after) {
+			// Within the range
+			size--;
+		}
+
+		expectedModCount = parentModCount();
+		modCount++;
+		return previous;
+	}
+
+	@Override
+	public int size() {
+		checkForComodification();
+		return size;
+	}
+
+	@Override
+	public void add(int index, V element) {
+		checkIndex(index, size);
+		checkForComodification();
+
+		int parentSize = parent.size();
+		parent.add(offset + index, element);
+		modified(parentSize);
+	}
+
+	@Override
+	public V remove(int index) {
+		checkIndex(index, size - 1);
+		checkForComodification();
+
+		int parentSize = parent.size();
+		V removed = parent.remove(offset + index);
+		modified(parentSize);
+		return removed;
+	}
+
+	@Override
+	protected void removeRange(int fromIndex, int toIndex) {
+		checkForComodification();
+
+		int parentSize = parent.size();
+		parentRemoveRange(offset + fromIndex, offset + toIndex);
+		modified(parentSize);
+	}
+
+	@Override
+	public ListIterator<V> listIterator(int index) {
+		checkIndex(index, size);
+		checkForComodification();
+
+		return new ListMapIterator<V>(this, index) {
+			@Override
+			int modCount() {
+				return modCount;
+			}
+		};
+	}
+}
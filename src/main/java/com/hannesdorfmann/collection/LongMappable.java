@@ -0,0 +1,16 @@
+package com.hannesdorfmann.collection;
+
+/**
+ * A {@link Mappable} with a primitive long key. {@link LongArrayListMap} and
+ * {@link UniqueLongArrayListMap} only use {@link #getLongMapKey()}, so the key
+ * is never boxed. {@link #getMapKey()} must return the same key boxed as
+ * {@link Long}.
+ * 
+ * @author Hannes Dorfmann
+ * 
+ */
+public interface LongMappable extends Mappable<Long> {
+
+	public long getLongMapKey();
+
+}
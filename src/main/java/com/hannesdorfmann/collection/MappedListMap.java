@@ -0,0 +1,726 @@
+package com.hannesdorfmann.collection;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * A {@link ListMap} that keeps its elements and its key index outside of the
+ * java heap, either in direct {@link ByteBuffer}s or in memory mapped files.
+ * This is meant for very large lists (like offline caches with millions of
+ * elements), that would otherwise cause long garbage collection pauses.
+ * 
+ * <p>
+ * The elements are written through a {@link Codec} and decoded lazily, every
+ * time they are read by {@link #get(int)}, {@link #getByMapKey(Object)} and so
+ * on. So the returned objects are new instances and changing them doesn't
+ * change the list. Elements are compared by {@link Object#equals(Object)}.
+ * </p>
+ * 
+ * <p>
+ * If the list is backed by a file, every change is written to the memory
+ * mapped file (the operating system decides when). Call {@link #flush()} to
+ * force the changes to disk and {@link #close()} when the list is not used
+ * anymore. Opening the file again gives you the list without reading or
+ * decoding any element. The file and the two index files next to it
+ * (".positions" and ".keys") must be kept together.
+ * </p>
+ * 
+ * <p>
+ * The key index stores the {@link Object#hashCode()} of the keys. So if the
+ * list is backed by a file, the keys must have a hash code that doesn't
+ * change between two runs of the application, like the ones of
+ * {@link String}, {@link Integer} and {@link Long}. Enums and keys that
+ * inherit the identity hash code of {@link Object} can't be used. Opening a
+ * file checks the hash code of one key and fails, if it has changed.
+ * </p>
+ * 
+ * <p>
+ * Elements are appended to the storage and never moved. If an element is
+ * removed or replaced, its bytes are not reused until {@link #clear()} is
+ * called. Every storage file (and every direct buffer) is limited to 2 GB.
+ * This implementation is not thread safe.
+ * </p>
+ * 
+ * @author Hannes Dorfmann
+ * 
+ * @param <K>
+ *            The Key
+ * @param <V>
+ *            The Value
+ */
+public class MappedListMap<K, V extends Mappable<K>> extends AbstractList<V>
+		implements ListMap<K, V>, RandomAccess, Closeable {
+
+	/**
+	 * Converts the elements of a {@link MappedListMap} to bytes and back
+	 * 
+	 * @param <V>
+	 */
+	public interface Codec<V> {
+
+		/**
+		 * Get the bytes of the value
+		 * 
+		 * @param value
+		 * @return
+		 */
+		byte[] encode(V value);
+
+		/**
+		 * Creates the value from the bytes, that have been returned by
+		 * {@link #encode(Object)}.
+		 * 
+		 * @param data
+		 *            A read only buffer, that contains exactly the bytes of
+		 *            the value (from position to limit). The buffer must not
+		 *            be used after this method has returned.
+		 * @return
+		 */
+		V decode(ByteBuffer data);
+	}
+
+	private static final int MAGIC = 0x4c4d4150;
+
+	private static final int VERSION = 1;
+
+	/*
+	 * The header of the data storage
+	 */
+	private static final int MAGIC_AT = 0;
+	private static final int VERSION_AT = 4;
+	private static final int DATA_END_AT = 8;
+	private static final int SIZE_AT = 12;
+	private static final int TABLE_CAPACITY_AT = 16;
+	private static final int TABLE_COUNT_AT = 20;
+	private static final int HEADER_SIZE = 32;
+
+	/*
+	 * Every element is stored as record: the length of the encoded bytes, the
+	 * hash code of the key, a flag if the element has a key and the bytes
+	 */
+	private static final int RECORD_LENGTH_AT = 0;
+	private static final int RECORD_HASH_AT = 4;
+	private static final int RECORD_HAS_KEY_AT = 8;
+	private static final int RECORD_HEADER_SIZE = 12;
+
+	/*
+	 * Every slot of the key index contains the hash code of the key and the
+	 * offset of the record. A offset of 0 marks a free slot.
+	 */
+	private static final int SLOT_SIZE = 8;
+
+	private static final int MIN_TABLE_CAPACITY = 16;
+
+	private final Codec<V> codec;
+
+	/**
+	 * The header and the records
+	 */
+	private final OffHeapStorage data;
+
+	/**
+	 * The record offset of every position in the list
+	 */
+	private final OffHeapStorage positions;
+
+	/**
+	 * The key index: An open addressing hash table with linear probing, that
+	 * maps the hash code of a key to the records with this key.
+	 */
+	private final OffHeapStorage table;
+
+	private int size;
+
+	private int dataEnd;
+
+	private int tableCapacity;
+
+	private int tableCount;
+
+	/**
+	 * Creates a new empty {@link MappedListMap} that keeps the elements in
+	 * direct {@link ByteBuffer}s
+	 * 
+	 * @param codec
+	 */
+	public MappedListMap(Codec<V> codec) {
+		if (codec == null) {
+			throw new NullPointerException("Codec is null");
+		}
+
+		this.codec = codec;
+		data = new OffHeapStorage(HEADER_SIZE);
+		positions = new OffHeapStorage(0);
+		table = new OffHeapStorage(MIN_TABLE_CAPACITY * SLOT_SIZE);
+
+		create();
+	}
+
+	/**
+	 * Opens the {@link MappedListMap} that has been stored in the given file
+	 * before, or creates a new empty one, if the file doesn't exist.
+	 * 
+	 * @param file
+	 * @param codec
+	 * @throws IOException
+	 *             If the file is not a {@link MappedListMap} or if the hash
+	 *             code of the keys has changed since the file has been
+	 *             written
+	 */
+	public MappedListMap(File file, Codec<V> codec) throws IOException {
+		if (codec == null) {
+			throw new NullPointerException("Codec is null");
+		}
+
+		this.codec = codec;
+		data = new OffHeapStorage(file, HEADER_SIZE);
+		positions = new OffHeapStorage(new File(file.getPath() + ".positions"),
+				0);
+		table = new OffHeapStorage(new File(file.getPath() + ".keys"),
+				MIN_TABLE_CAPACITY * SLOT_SIZE);
+
+		ByteBuffer header = data.buffer();
+		int magic = header.getInt(MAGIC_AT);
+
+		if (magic == 0) {
+			create();
+		} else if (magic != MAGIC) {
+			close();
+			throw new IOException("Not a MappedListMap: " + file);
+		} else if (header.getInt(VERSION_AT) != VERSION) {
+			close();
+			throw new IOException("Unsupported version "
+					+ header.getInt(VERSION_AT) + ": " + file);
+		} else {
+			dataEnd = header.getInt(DATA_END_AT);
+			size = header.getInt(SIZE_AT);
+			tableCapacity = header.getInt(TABLE_CAPACITY_AT);
+			tableCount = header.getInt(TABLE_COUNT_AT);
+
+			if (!isKeyHashStable()) {
+				close();
+				throw new IOException("The hash code of the keys has changed "
+						+ "since the file has been written: " + file);
+			}
+		}
+	}
+
+	/**
+	 * Checks if the first element with a key still has the hash code, that is
+	 * stored in its record. Only one element is decoded.
+	 * 
+	 * @return
+	 */
+	private boolean isKeyHashStable() {
+		ByteBuffer buffer = data.buffer();
+
+		for (int i = 0; i < size; i++) {
+			int offset = offsetAt(i);
+			if (buffer.getInt(offset + RECORD_HAS_KEY_AT) != 0) {
+				K key = decode(offset).getMapKey();
+				return key != null
+						&& key.hashCode() == buffer.getInt(offset
+								+ RECORD_HASH_AT);
+			}
+		}
+
+		return true;
+	}
+
+	private void create() {
+		ByteBuffer header = data.buffer();
+		header.putInt(MAGIC_AT, MAGIC);
+		header.putInt(VERSION_AT, VERSION);
+
+		size = 0;
+		dataEnd = HEADER_SIZE;
+		tableCapacity = MIN_TABLE_CAPACITY;
+		tableCount = 0;
+		writeHeader();
+	}
+
+	private void writeHeader() {
+		ByteBuffer header = data.buffer();
+		header.putInt(DATA_END_AT, dataEnd);
+		header.putInt(SIZE_AT, size);
+		header.putInt(TABLE_CAPACITY_AT, tableCapacity);
+		header.putInt(TABLE_COUNT_AT, tableCount);
+	}
+
+	/**
+	 * Writes all changes to the files, if this list is backed by files
+	 */
+	public void flush() {
+		data.force();
+		positions.force();
+		table.force();
+	}
+
+	/**
+	 * Writes all changes to the files and closes them. The list must not be
+	 * used afterwards.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			data.close();
+		} finally {
+			try {
+				positions.close();
+			} finally {
+				table.close();
+			}
+		}
+	}
+
+	/*
+	 * Records
+	 */
+
+	/**
+	 * Appends the record of the given value
+	 * 
+	 * @param v
+	 * @return The offset of the record
+	 */
+	private int append(V v) {
+
+		byte[] bytes = codec.encode(v);
+		K key = v.getMapKey();
+
+		int offset = dataEnd;
+		data.ensureCapacity((long) offset + RECORD_HEADER_SIZE + bytes.length);
+
+		ByteBuffer buffer = data.buffer();
+		buffer.putInt(offset + RECORD_LENGTH_AT, bytes.length);
+		buffer.putInt(offset + RECORD_HASH_AT, key == null ? 0 : key.hashCode());
+		buffer.putInt(offset + RECORD_HAS_KEY_AT, key == null ? 0 : 1);
+
+		ByteBuffer target = buffer.duplicate();
+		target.position(offset + RECORD_HEADER_SIZE);
+		target.put(bytes);
+
+		dataEnd = offset + RECORD_HEADER_SIZE + bytes.length;
+
+		if (key != null) {
+			tablePut(key.hashCode(), offset);
+		}
+
+		return offset;
+	}
+
+	/**
+	 * Decodes the record at the given offset
+	 * 
+	 * @param offset
+	 * @return
+	 */
+	private V decode(int offset) {
+		ByteBuffer buffer = data.buffer().asReadOnlyBuffer();
+		int length = buffer.getInt(offset + RECORD_LENGTH_AT);
+
+		buffer.limit(offset + RECORD_HEADER_SIZE + length);
+		buffer.position(offset + RECORD_HEADER_SIZE);
+
+		return codec.decode(buffer.slice());
+	}
+
+	/**
+	 * Removes the record at the given offset from the key index
+	 * 
+	 * @param offset
+	 */
+	private void unindex(int offset) {
+		ByteBuffer buffer = data.buffer();
+		if (buffer.getInt(offset + RECORD_HAS_KEY_AT) != 0) {
+			tableRemove(buffer.getInt(offset + RECORD_HASH_AT), offset);
+		}
+	}
+
+	/*
+	 * Positions
+	 */
+
+	private int offsetAt(int index) {
+		return positions.buffer().getInt(index * 4);
+	}
+
+	private void setOffsetAt(int index, int offset) {
+		positions.buffer().putInt(index * 4, offset);
+	}
+
+	/**
+	 * Moves the positions from index to the end of the list by the given
+	 * distance. The size is not changed.
+	 * 
+	 * @param index
+	 * @param distance
+	 *            Positive to move towards the end, negative to move towards
+	 *            the head of the list
+	 */
+	private void shift(int index, int distance) {
+		ByteBuffer buffer = positions.buffer();
+
+		if (distance > 0) {
+			for (int i = size - 1; i >= index; i--) {
+				buffer.putInt((i + distance) * 4, buffer.getInt(i * 4));
+			}
+		} else {
+			for (int i = index; i < size; i++) {
+				buffer.putInt((i + distance) * 4, buffer.getInt(i * 4));
+			}
+		}
+	}
+
+	private void checkIndex(int index, int max) {
+		if (index < 0 || index > max) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+					+ size);
+		}
+	}
+
+	/*
+	 * Key index
+	 */
+
+	private int home(int hash) {
+		int h = hash * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & (tableCapacity - 1);
+	}
+
+	private int next(int slot) {
+		return (slot + 1) & (tableCapacity - 1);
+	}
+
+	private int slotHash(int slot) {
+		return table.buffer().getInt(slot * SLOT_SIZE);
+	}
+
+	private int slotOffset(int slot) {
+		return table.buffer().getInt(slot * SLOT_SIZE + 4);
+	}
+
+	private void setSlot(int slot, int hash, int offset) {
+		ByteBuffer buffer = table.buffer();
+		buffer.putInt(slot * SLOT_SIZE, hash);
+		buffer.putInt(slot * SLOT_SIZE + 4, offset);
+	}
+
+	private void tablePut(int hash, int offset) {
+
+		if ((tableCount + 1) * 2 > tableCapacity) {
+			rehash(tableCapacity * 2);
+		}
+
+		int slot = home(hash);
+		while (slotOffset(slot) != 0) {
+			slot = next(slot);
+		}
+
+		setSlot(slot, hash, offset);
+		tableCount++;
+	}
+
+	private void tableRemove(int hash, int offset) {
+
+		int slot = home(hash);
+		while (slotOffset(slot) != offset) {
+			if (slotOffset(slot) == 0) {
+				return;
+			}
+			slot = next(slot);
+		}
+
+		tableCount--;
+
+		// Move following slots of the same cluster back, if the removed slot
+		// is between their home slot and their current slot
+		int mask = tableCapacity - 1;
+		int free = slot;
+		int i = next(slot);
+
+		while (slotOffset(i) != 0) {
+			int home = home(slotHash(i));
+
+			if (((i - home) & mask) >= ((i - free) & mask)) {
+				setSlot(free, slotHash(i), slotOffset(i));
+				free = i;
+			}
+
+			i = next(i);
+		}
+
+		setSlot(free, 0, 0);
+	}
+
+	private void rehash(int newCapacity) {
+
+		int[] hashes = new int[tableCount];
+		int[] offsets = new int[tableCount];
+		int count = 0;
+
+		for (int slot = 0; slot < tableCapacity; slot++) {
+			int offset = slotOffset(slot);
+			if (offset != 0) {
+				hashes[count] = slotHash(slot);
+				offsets[count] = offset;
+				count++;
+			}
+		}
+
+		table.ensureCapacity((long) newCapacity * SLOT_SIZE);
+		clearTable(newCapacity);
+
+		tableCapacity = newCapacity;
+		tableCount = 0;
+
+		for (int i = 0; i < count; i++) {
+			tablePut(hashes[i], offsets[i]);
+		}
+	}
+
+	private void clearTable(int capacity) {
+		ByteBuffer buffer = table.buffer();
+		for (int i = 0; i < capacity * SLOT_SIZE; i += 8) {
+			buffer.putLong(i, 0);
+		}
+	}
+
+	/**
+	 * Get the offsets of the records with the given key
+	 * 
+	 * @param key
+	 * @param values
+	 *            The values of the records are added to this set, if not
+	 *            null
+	 * @param first
+	 *            true, if only the first record is needed
+	 * @return
+	 */
+	private Set<Integer> find(Object key, Set<V> values, boolean first) {
+
+		Set<Integer> found = new LinkedHashSet<Integer>();
+		int hash = key.hashCode();
+
+		for (int slot = home(hash); slotOffset(slot) != 0; slot = next(slot)) {
+
+			if (slotHash(slot) != hash) {
+				continue;
+			}
+
+			int offset = slotOffset(slot);
+			V v = decode(offset);
+
+			if (key.equals(v.getMapKey())) {
+				found.add(offset);
+				if (values != null) {
+					values.add(v);
+				}
+				if (first) {
+					break;
+				}
+			}
+		}
+
+		return found;
+	}
+
+	/*
+	 * List
+	 */
+
+	@Override
+	public V get(int index) {
+		checkIndex(index, size - 1);
+		return decode(offsetAt(index));
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean add(V e) {
+		add(size, e);
+		return true;
+	}
+
+	@Override
+	public void add(int index, V e) {
+		checkIndex(index, size);
+
+		int offset = append(e);
+
+		positions.ensureCapacity((long) (size + 1) * 4);
+		shift(index, 1);
+		setOffsetAt(index, offset);
+		size++;
+
+		modCount++;
+		writeHeader();
+	}
+
+	@Override
+	public V set(int index, V e) {
+		checkIndex(index, size - 1);
+
+		int previousOffset = offsetAt(index);
+		V previous = decode(previousOffset);
+
+		// Encoded first, so a failing codec doesn't change the key index
+		int offset = append(e);
+		unindex(previousOffset);
+		setOffsetAt(index, offset);
+
+		writeHeader();
+		return previous;
+	}
+
+	@Override
+	public V remove(int index) {
+		checkIndex(index, size - 1);
+
+		int offset = offsetAt(index);
+		V removed = decode(offset);
+
+		unindex(offset);
+		shift(index + 1, -1);
+		size--;
+
+		modCount++;
+		writeHeader();
+		return removed;
+	}
+
+	/**
+	 * Removes the elements from fromIndex (inclusive) to toIndex (exclusive)
+	 * without decoding them
+	 */
+	@Override
+	protected void removeRange(int fromIndex, int toIndex) {
+		for (int i = fromIndex; i < toIndex; i++) {
+			unindex(offsetAt(i));
+		}
+
+		shift(toIndex, fromIndex - toIndex);
+		size -= toIndex - fromIndex;
+
+		modCount++;
+		writeHeader();
+	}
+
+	/**
+	 * Removes all elements and frees the space of the removed elements in the
+	 * storage.
+	 */
+	@Override
+	public void clear() {
+		clearTable(tableCapacity);
+		size = 0;
+		dataEnd = HEADER_SIZE;
+		tableCount = 0;
+
+		modCount++;
+		writeHeader();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public boolean contains(Object o) {
+
+		Object key = o instanceof Mappable ? ((Mappable<K>) o).getMapKey()
+				: null;
+
+		if (key == null) {
+			return super.contains(o);
+		}
+
+		Set<V> values = new LinkedHashSet<V>();
+		find(key, values, false);
+		return values.contains(o);
+	}
+
+	/*
+	 * ListMap
+	 */
+
+	/**
+	 * Get all values with the given key. The values are decoded from the
+	 * storage.
+	 * 
+	 * @param id
+	 * @return A read only set or null, if there is no element with the given
+	 *         key
+	 */
+	@Override
+	public Set<V> getByMapKey(K id) {
+		if (id == null) {
+			return null;
+		}
+
+		Set<V> values = new LinkedHashSet<V>();
+		find(id, values, false);
+
+		return values.isEmpty() ? null : Collections.unmodifiableSet(values);
+	}
+
+	@Override
+	public V getFirstByMapKey(K id) {
+		if (id == null) {
+			return null;
+		}
+
+		Set<V> values = new LinkedHashSet<V>();
+		find(id, values, true);
+
+		return values.isEmpty() ? null : values.iterator().next();
+	}
+
+	/**
+	 * Removes all elements with the given key. The list is compacted in a
+	 * single pass.
+	 * 
+	 * @param id
+	 * @return A read only set with the removed elements or null, if there was
+	 *         no element with the given key
+	 */
+	@Override
+	public Set<V> removeByMapKey(K id) {
+		if (id == null) {
+			return null;
+		}
+
+		Set<V> values = new LinkedHashSet<V>();
+		Set<Integer> offsets = new HashSet<Integer>(find(id, values, false));
+
+		if (offsets.isEmpty()) {
+			return null;
+		}
+
+		for (Integer offset : offsets) {
+			unindex(offset);
+		}
+
+		int write = 0;
+		for (int read = 0; read < size; read++) {
+			int offset = offsetAt(read);
+			if (!offsets.contains(offset)) {
+				setOffsetAt(write++, offset);
+			}
+		}
+		size = write;
+
+		modCount++;
+		writeHeader();
+		return Collections.unmodifiableSet(values);
+	}
+}
@@ -0,0 +1,547 @@
+package com.hannesdorfmann.collection;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * An {@link ArrayListMap} that tells {@link Listener}s which positions of the
+ * list have been changed, so that for example an adapter of a list view can
+ * apply the changes incrementally instead of comparing the whole list.
+ * 
+ * <p>
+ * Every modification is reported as ranges of positions: bulk operations like
+ * {@link #addAll(Collection)} or {@link #removeByMapKey(Object)} are reported
+ * as few range events, not as one event per element. The positions of every
+ * event are relative to the list after all previous events have been applied.
+ * </p>
+ * 
+ * <p>
+ * Modifications between {@link #beginBatchedUpdates()} and
+ * {@link #endBatchedUpdates()} are reported when the batch ends. Consecutive
+ * events of the same kind that touch adjacent positions are coalesced into
+ * one event.
+ * </p>
+ * 
+ * @author Hannes Dorfmann
+ * 
+ * @param <K>
+ *            The Key
+ * @param <V>
+ *            The Value
+ */
+public class ObservableListMap<K, V extends Mappable<K>> extends
+		ArrayListMap<K, V> {
+
+	/**
+	 * Gets notified about changes of an {@link ObservableListMap}
+	 * 
+	 * @author Hannes Dorfmann
+	 * 
+	 */
+	public interface Listener {
+
+		/**
+		 * Elements have been inserted
+		 * 
+		 * @param position
+		 *            The position of the first inserted element
+		 * @param count
+		 */
+		public void onInserted(int position, int count);
+
+		/**
+		 * Elements have been removed
+		 * 
+		 * @param position
+		 *            The position of the first removed element
+		 * @param count
+		 */
+		public void onRemoved(int position, int count);
+
+		/**
+		 * An element has been moved
+		 * 
+		 * @param fromPosition
+		 * @param toPosition
+		 */
+		public void onMoved(int fromPosition, int toPosition);
+
+		/**
+		 * Elements have been replaced
+		 * 
+		 * @param position
+		 *            The position of the first replaced element
+		 * @param count
+		 */
+		public void onChanged(int position, int count);
+	}
+
+	private static final long serialVersionUID = -6815311658396733020L;
+
+	private static final int INSERTED = 0;
+	private static final int REMOVED = 1;
+	private static final int MOVED = 2;
+	private static final int CHANGED = 3;
+
+	/**
+	 * A change, that has not been reported yet
+	 */
+	private static class Event {
+
+		final int type;
+		int position;
+		int count;
+
+		Event(int type, int position, int count) {
+			this.type = type;
+			this.position = position;
+			this.count = count;
+		}
+	}
+
+	private transient List<Listener> listeners;
+
+	/**
+	 * The events of the current batch
+	 */
+	private transient List<Event> pending;
+
+	/**
+	 * The number of {@link #beginBatchedUpdates()} calls without
+	 * {@link #endBatchedUpdates()}
+	 */
+	private transient int batchDepth;
+
+	/**
+	 * Creates a new empty empty {@link ObservableListMap}
+	 */
+	public ObservableListMap() {
+		super();
+	}
+
+	/**
+	 * Constructs a {@link ObservableListMap} containing the elements of the
+	 * specified collection, in the order they are returned by the collection's
+	 * iterator.
+	 * 
+	 * @param c
+	 */
+	public ObservableListMap(Collection<? extends V> c) {
+		super(c);
+	}
+
+	public ObservableListMap(int initialCapacity) {
+		super(initialCapacity);
+	}
+
+	/**
+	 * Registers a {@link Listener}
+	 * 
+	 * @param listener
+	 */
+	public void addListener(Listener listener) {
+		if (listener == null) {
+			throw new NullPointerException("Listener is null");
+		}
+
+		if (listeners == null) {
+			listeners = new ArrayList<Listener>(2);
+		}
+		listeners.add(listener);
+	}
+
+	/**
+	 * Unregisters a {@link Listener}
+	 * 
+	 * @param listener
+	 */
+	public void removeListener(Listener listener) {
+		if (listeners != null) {
+			listeners.remove(listener);
+		}
+	}
+
+	/**
+	 * Starts a batch: The changes are not reported until
+	 * {@link #endBatchedUpdates()} is called. Batches can be nested, the
+	 * changes are reported when the outermost batch ends.
+	 */
+	public void beginBatchedUpdates() {
+		batchDepth++;
+	}
+
+	/**
+	 * Ends a batch and reports the coalesced changes of the batch
+	 * 
+	 * @see #beginBatchedUpdates()
+	 */
+	public void endBatchedUpdates() {
+		if (batchDepth == 0) {
+			throw new IllegalStateException(
+					"endBatchedUpdates() called without beginBatchedUpdates()");
+		}
+
+		if (--batchDepth == 0 && pending != null) {
+			List<Event> events = pending;
+			pending = null;
+
+			for (int i = 0; i < events.size(); i++) {
+				dispatch(events.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Reports the event or adds it to the current batch. If it's the same kind
+	 * of event as the last one of the batch and the positions are adjacent,
+	 * both are merged.
+	 * 
+	 * @param type
+	 * @param position
+	 * @param count
+	 */
+	private void report(int type, int position, int count) {
+
+		if (!observed() || (type != MOVED && count == 0)) {
+			return;
+		}
+
+		if (batchDepth == 0) {
+			dispatch(new Event(type, position, count));
+			return;
+		}
+
+		if (pending == null) {
+			pending = new ArrayList<Event>();
+		} else if (!pending.isEmpty()) {
+			Event last = pending.get(pending.size() - 1);
+
+			if (last.type == type && merge(last, position, count)) {
+				return;
+			}
+		}
+
+		pending.add(new Event(type, position, count));
+	}
+
+	/**
+	 * Merges an event into the previous event of the same kind
+	 * 
+	 * @param last
+	 *            The previous event
+	 * @param position
+	 * @param count
+	 * @return true, if the event has been merged
+	 */
+	private static boolean merge(Event last, int position, int count) {
+
+		switch (last.type) {
+		case INSERTED:
+			// Inserted within or right behind the last inserted range
+			if (position >= last.position
+					&& position <= last.position + last.count) {
+				last.count += count;
+				return true;
+			}
+			return false;
+
+		case REMOVED:
+			// The last removed range starts within or right behind this one
+			if (last.position >= position && last.position <= position + count) {
+				last.position = position;
+				last.count += count;
+				return true;
+			}
+			return false;
+
+		case CHANGED:
+			// Overlapping or adjacent ranges
+			if (position <= last.position + last.count
+					&& last.position <= position + count) {
+				int end = Math.max(last.position + last.count, position + count);
+				last.position = Math.min(last.position, position);
+				last.count = end - last.position;
+				return true;
+			}
+			return false;
+
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Is there any {@link Listener}
+	 * 
+	 * @return
+	 */
+	private boolean observed() {
+		return listeners != null && !listeners.isEmpty();
+	}
+
+	private void dispatch(Event event) {
+		for (int i = 0; i < listeners.size(); i++) {
+			Listener listener = listeners.get(i);
+
+			switch (event.type) {
+			case INSERTED:
+				listener.onInserted(event.position, event.count);
+				break;
+			case REMOVED:
+				listener.onRemoved(event.position, event.count);
+				break;
+			case MOVED:
+				listener.onMoved(event.position, event.count);
+				break;
+			default:
+				listener.onChanged(event.position, event.count);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Removes the elements at the marked positions and reports their removal
+	 * as ranges in one batch
+	 * 
+	 * @param marked
+	 *            true for every position, whose element should be removed
+	 * @return true, if the list has been changed
+	 */
+	private boolean removeAndReport(boolean[] marked) {
+
+		beginBatchedUpdates();
+		try {
+			reportRemoved(marked);
+			return removeMarked(marked);
+		} finally {
+			endBatchedUpdates();
+		}
+	}
+
+	/**
+	 * Reports the removal of the elements at the marked positions as ranges.
+	 * This must be called within a batch before the elements are removed, so
+	 * the listeners are notified after the elements have been removed.
+	 * 
+	 * @param marked
+	 *            true for every position, whose element is removed
+	 */
+	private void reportRemoved(boolean[] marked) {
+
+		if (!observed()) {
+			return;
+		}
+
+		int size = marked.length;
+		int removedBefore = 0;
+		int runStart = -1;
+
+		for (int i = 0; i <= size; i++) {
+			boolean removed = i < size && marked[i];
+
+			if (removed && runStart < 0) {
+				runStart = i;
+			} else if (!removed && runStart >= 0) {
+				report(REMOVED, runStart - removedBefore, i - runStart);
+				removedBefore += i - runStart;
+				runStart = -1;
+			}
+		}
+	}
+
+	/**
+	 * Moves the element from one position to another one. This is reported as
+	 * a single move.
+	 * 
+	 * @param fromPosition
+	 * @param toPosition
+	 *            The position of the element after it has been moved
+	 */
+	public void move(int fromPosition, int toPosition) {
+
+		if (toPosition < 0 || toPosition >= size()) {
+			throw new IndexOutOfBoundsException("Index: " + toPosition
+					+ ", Size: " + size());
+		}
+
+		V v = super.remove(fromPosition);
+		super.add(toPosition, v);
+
+		report(MOVED, fromPosition, toPosition);
+	}
+
+	@Override
+	public boolean add(V e) {
+		boolean added = super.add(e);
+		report(INSERTED, size() - 1, 1);
+		return added;
+	}
+
+	@Override
+	public void add(int index, V e) {
+		super.add(index, e);
+		report(INSERTED, index, 1);
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends V> c) {
+		return addAll(size(), c);
+	}
+
+	@Override
+	public boolean addAll(int index, Collection<? extends V> c) {
+		int oldSize = size();
+		boolean added = super.addAll(index, c);
+		report(INSERTED, index, size() - oldSize);
+		return added;
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends V> c, ExecutorService executor) {
+		int oldSize = size();
+		boolean added = super.addAll(c, executor);
+		report(INSERTED, oldSize, size() - oldSize);
+		return added;
+	}
+
+	@Override
+	public V set(int position, V e) {
+		V previous = super.set(position, e);
+		report(CHANGED, position, 1);
+		return previous;
+	}
+
+	@Override
+	public V remove(int index) {
+		V removed = super.remove(index);
+		report(REMOVED, index, 1);
+		return removed;
+	}
+
+	@Override
+	public boolean remove(Object element) {
+		int index = indexOf(element);
+
+		if (index < 0) {
+			return false;
+		}
+
+		remove(index);
+		return true;
+	}
+
+	@Override
+	protected void removeRange(int fromIndex, int toIndex) {
+		super.removeRange(fromIndex, toIndex);
+		report(REMOVED, fromIndex, toIndex - fromIndex);
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		return removeAndReport(findRemoved(c, false));
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		return removeAndReport(findRemoved(c, true));
+	}
+
+	@Override
+	public boolean removeIf(Predicate<? super V> filter) {
+		return removeAndReport(findRemoved(filter));
+	}
+
+	/**
+	 * The replaced elements are reported as one batch
+	 */
+	@Override
+	public void replaceAll(UnaryOperator<V> operator) {
+		beginBatchedUpdates();
+		try {
+			super.replaceAll(operator);
+		} finally {
+			endBatchedUpdates();
+		}
+	}
+
+	/**
+	 * Sorting is reported as a change of the whole list
+	 */
+	@Override
+	public void sort(Comparator<? super V> c) {
+		super.sort(c);
+		report(CHANGED, 0, size());
+	}
+
+	@Override
+	public Set<V> removeByMapKey(K id) {
+		Set<V> values = getByMapKey(id);
+
+		if (values == null) {
+			return null;
+		}
+
+		beginBatchedUpdates();
+		try {
+			reportRemoved(findRemoved(values, false));
+			return super.removeByMapKey(id);
+		} finally {
+			endBatchedUpdates();
+		}
+	}
+
+	@Override
+	public void clear() {
+		int size = size();
+		super.clear();
+		report(REMOVED, 0, size);
+	}
+
+	/**
+	 * The diff is reported as one batch with the events of
+	 * {@link ListMapDiff#dispatchTo(Listener)}
+	 */
+	@Override
+	void applyDiff(ListMapDiff<K, V> diff) {
+		super.applyDiff(diff);
+
+		if (!observed()) {
+			return;
+		}
+
+		beginBatchedUpdates();
+		try {
+			diff.dispatchTo(new Listener() {
+
+				@Override
+				public void onInserted(int position, int count) {
+					report(INSERTED, position, count);
+				}
+
+				@Override
+				public void onRemoved(int position, int count) {
+					report(REMOVED, position, count);
+				}
+
+				@Override
+				public void onMoved(int fromPosition, int toPosition) {
+					report(MOVED, fromPosition, toPosition);
+				}
+
+				@Override
+				public void onChanged(int position, int count) {
+					report(CHANGED, position, count);
+				}
+			});
+		} finally {
+			endBatchedUpdates();
+		}
+	}
+}
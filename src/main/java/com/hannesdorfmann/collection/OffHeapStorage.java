@@ -0,0 +1,149 @@
+package com.hannesdorfmann.collection;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A growable {@link ByteBuffer} that lives outside of the java heap. It's
+ * either a direct {@link ByteBuffer} or a memory mapped file. Used by
+ * {@link MappedListMap}.
+ * 
+ * <p>
+ * Since a {@link ByteBuffer} is indexed by int, the storage can't grow above
+ * 2 GB.
+ * </p>
+ * 
+ * @author Hannes Dorfmann
+ * 
+ */
+final class OffHeapStorage implements Closeable {
+
+	private static final int MIN_CAPACITY = 4096;
+
+	private final RandomAccessFile file;
+
+	private final FileChannel channel;
+
+	private ByteBuffer buffer;
+
+	/**
+	 * Creates a storage that is backed by a direct {@link ByteBuffer}
+	 * 
+	 * @param initialCapacity
+	 *            The initial capacity in bytes
+	 */
+	OffHeapStorage(int initialCapacity) {
+		file = null;
+		channel = null;
+		buffer = ByteBuffer.allocateDirect(Math.max(initialCapacity,
+				MIN_CAPACITY));
+	}
+
+	/**
+	 * Creates a storage that is backed by the given file. If the file exists,
+	 * its content is mapped, otherwise the file is created.
+	 * 
+	 * @param path
+	 * @param initialCapacity
+	 *            The initial capacity in bytes, if the file is empty
+	 * @throws IOException
+	 */
+	OffHeapStorage(File path, int initialCapacity) throws IOException {
+		file = new RandomAccessFile(path, "rw");
+		channel = file.getChannel();
+
+		long length = channel.size();
+		if (length > Integer.MAX_VALUE) {
+			file.close();
+			throw new IOException("File is too large: " + path);
+		}
+
+		buffer = map(Math.max((int) length,
+				Math.max(initialCapacity, MIN_CAPACITY)));
+	}
+
+	private MappedByteBuffer map(int capacity) throws IOException {
+		return channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+	}
+
+	/**
+	 * Is this storage backed by a file
+	 * 
+	 * @return
+	 */
+	boolean isPersistent() {
+		return channel != null;
+	}
+
+	/**
+	 * Get the buffer. The bytes of a new file or a new direct buffer are zero.
+	 * 
+	 * @return
+	 */
+	ByteBuffer buffer() {
+		return buffer;
+	}
+
+	int capacity() {
+		return buffer.capacity();
+	}
+
+	/**
+	 * Grows the storage, so that it can hold at least the given number of
+	 * bytes. The {@link ByteBuffer} returned by {@link #buffer()} before
+	 * must not be used anymore.
+	 * 
+	 * @param minCapacity
+	 */
+	void ensureCapacity(long minCapacity) {
+
+		int capacity = buffer.capacity();
+		if (minCapacity <= capacity) {
+			return;
+		}
+
+		if (minCapacity > Integer.MAX_VALUE) {
+			throw new IllegalStateException("Off heap storage is full");
+		}
+
+		long grown = Math.max(minCapacity, (long) capacity * 2);
+		int newCapacity = (int) Math.min(grown, Integer.MAX_VALUE);
+
+		if (channel != null) {
+			try {
+				buffer = map(newCapacity);
+			} catch (IOException e) {
+				throw new IllegalStateException("Could not grow "
+						+ "the memory mapped file", e);
+			}
+		} else {
+			ByteBuffer grownBuffer = ByteBuffer.allocateDirect(newCapacity);
+			ByteBuffer old = buffer.duplicate();
+			old.clear();
+			grownBuffer.put(old);
+			buffer = grownBuffer;
+		}
+	}
+
+	/**
+	 * Writes the changes to the file, if this storage is backed by a file
+	 */
+	void force() {
+		if (buffer instanceof MappedByteBuffer) {
+			((MappedByteBuffer) buffer).force();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (channel != null) {
+			force();
+			file.close();
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package com.hannesdorfmann.collection;
+
+import java.util.List;
+
+/**
+ * The key indexes of the unique {@link ListMap} implementations remember the
+ * position of every value in the list. These positions are only hints: if
+ * elements have been inserted or removed in front of a value, the value has
+ * been shifted by that many positions, but the hint is not updated.
+ * 
+ * @author Hannes Dorfmann
+ * 
+ */
+final class PositionHint {
+
+	private PositionHint() {
+	}
+
+	/**
+	 * Searches the value (by identity) in the list. The search starts at the
+	 * hint and moves outwards in both directions, so it's O(1) if the hint is
+	 * correct and O(d) if the value has been shifted by d positions.
+	 * 
+	 * @param list
+	 * @param value
+	 * @param hint
+	 *            The position where the value has been seen the last time
+	 * @return The position of the value or -1, if its not in the list
+	 */
+	static int find(List<?> list, Object value, int hint) {
+
+		int size = list.size();
+
+		if (hint >= size) {
+			hint = size - 1;
+		}
+		if (hint < 0) {
+			hint = 0;
+		}
+
+		for (int lower = hint, upper = hint + 1; lower >= 0 || upper < size; lower--, upper++) {
+
+			if (lower >= 0 && list.get(lower) == value) {
+				return lower;
+			}
+
+			if (upper < size && list.get(upper) == value) {
+				return upper;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Searches an element, that is equal to the value, in the list. Like
+	 * {@link #find(List, Object, int)} the search starts at the hint and moves
+	 * outwards in both directions. This is used for values that are contained
+	 * only once, but maybe not as the same instance.
+	 * 
+	 * @param list
+	 * @param value
+	 * @param hint
+	 *            The position where the value has been seen the last time
+	 * @return The position of the value or -1, if its not in the list
+	 */
+	static int findEqual(List<?> list, Object value, int hint) {
+
+		int size = list.size();
+
+		if (hint >= size) {
+			hint = size - 1;
+		}
+		if (hint < 0) {
+			hint = 0;
+		}
+
+		for (int lower = hint, upper = hint + 1; lower >= 0 || upper < size; lower--, upper++) {
+
+			if (lower >= 0 && value.equals(list.get(lower))) {
+				return lower;
+			}
+
+			if (upper < size && value.equals(list.get(upper))) {
+				return upper;
+			}
+		}
+
+		return -1;
+	}
+}
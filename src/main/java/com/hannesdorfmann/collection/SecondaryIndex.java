@@ -0,0 +1,110 @@
+package com.hannesdorfmann.collection;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A secondary index of an {@link ArrayListMap}. Like the key index it maps a
+ * key either directly to the value, if there is only one value with this key,
+ * or to a {@link ValueBucket} containing all values.
+ * 
+ * @author Hannes Dorfmann
+ * 
+ * @param <V>
+ *            The value
+ */
+final class SecondaryIndex<V> {
+
+	final String name;
+
+	private final IndexKey<?, ? super V> indexKey;
+
+	private final Map<Object, Object> map = new HashMap<Object, Object>();
+
+	SecondaryIndex(String name, IndexKey<?, ? super V> indexKey) {
+		this.name = name;
+		this.indexKey = indexKey;
+	}
+
+	/**
+	 * Adds the value to the index
+	 * 
+	 * @param v
+	 */
+	@SuppressWarnings("unchecked")
+	void add(V v) {
+
+		Object key = indexKey.getIndexKey(v);
+
+		if (key == null) {
+			return;
+		}
+
+		Object indexed = map.get(key);
+
+		if (indexed == null) {
+			map.put(key, v);
+		} else if (indexed instanceof ValueBucket) {
+			((ValueBucket<V>) indexed).addValue(v);
+		} else {
+			map.put(key, new ValueBucket<V>((V) indexed, v));
+		}
+	}
+
+	/**
+	 * Removes the value from the index
+	 * 
+	 * @param v
+	 */
+	@SuppressWarnings("unchecked")
+	void remove(V v) {
+
+		Object key = indexKey.getIndexKey(v);
+
+		if (key == null) {
+			return;
+		}
+
+		Object indexed = map.get(key);
+
+		if (indexed instanceof ValueBucket) {
+			Object remaining = ((ValueBucket<V>) indexed).removeValue(v);
+
+			if (remaining == null) {
+				map.remove(key);
+			} else if (remaining != indexed) {
+				map.put(key, remaining);
+			}
+		} else if (indexed != null && indexed.equals(v)) {
+			map.remove(key);
+		}
+	}
+
+	/**
+	 * Get all values with the given key as read only {@link Set}
+	 * 
+	 * @param key
+	 * @return The values or null, if there is no value with the given key
+	 */
+	@SuppressWarnings("unchecked")
+	Set<V> get(Object key) {
+
+		Object indexed = map.get(key);
+
+		if (indexed == null) {
+			return null;
+		}
+
+		if (indexed instanceof ValueBucket) {
+			return (ValueBucket<V>) indexed;
+		}
+
+		return Collections.singleton((V) indexed);
+	}
+
+	void clear() {
+		map.clear();
+	}
+}
@@ -0,0 +1,95 @@
+package com.hannesdorfmann.collection;
+
+/**
+ * Counts the used slots of an array in a Fenwick tree (binary indexed tree).
+ * Marking a slot as used or empty, counting the used slots in front of a slot
+ * and finding the n-th used slot are O(log n), so it can translate between
+ * slots with gaps and positions in a list.
+ * 
+ * @author Hannes Dorfmann
+ * 
+ */
+final class SlotCounts {
+
+	/**
+	 * tree[i] is the number of used slots from i - (i & -i) to i - 1
+	 */
+	private final int[] tree;
+
+	/**
+	 * Builds the counts in O(n)
+	 * 
+	 * @param used
+	 *            true for every used slot
+	 */
+	SlotCounts(boolean[] used) {
+		tree = new int[used.length + 1];
+
+		for (int i = 1; i < tree.length; i++) {
+			if (used[i - 1]) {
+				tree[i]++;
+			}
+			int parent = i + (i & -i);
+			if (parent < tree.length) {
+				tree[parent] += tree[i];
+			}
+		}
+	}
+
+	/**
+	 * Marks the slot as used
+	 * 
+	 * @param slot
+	 */
+	void use(int slot) {
+		for (int i = slot + 1; i < tree.length; i += i & -i) {
+			tree[i]++;
+		}
+	}
+
+	/**
+	 * Marks the slot as empty
+	 * 
+	 * @param slot
+	 */
+	void release(int slot) {
+		for (int i = slot + 1; i < tree.length; i += i & -i) {
+			tree[i]--;
+		}
+	}
+
+	/**
+	 * Get the number of used slots in front of the given slot
+	 * 
+	 * @param slot
+	 * @return
+	 */
+	int usedBefore(int slot) {
+		int count = 0;
+		for (int i = slot; i > 0; i -= i & -i) {
+			count += tree[i];
+		}
+		return count;
+	}
+
+	/**
+	 * Get the n-th used slot
+	 * 
+	 * @param n
+	 *            Starts with 1
+	 * @return
+	 */
+	int findUsed(int n) {
+		int slot = 0;
+		int step = Integer.highestOneBit(tree.length - 1);
+
+		for (; step > 0; step >>= 1) {
+			if (slot + step < tree.length && tree[slot + step] < n) {
+				slot += step;
+				n -= tree[slot];
+			}
+		}
+
+		return slot;
+	}
+}
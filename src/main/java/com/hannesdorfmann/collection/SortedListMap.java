@@ -0,0 +1,349 @@
+package com.hannesdorfmann.collection;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * A {@link UniqueArrayListMap} that keeps its elements sorted by a
+ * {@link Comparator}. {@link #add(Mappable)} inserts the element at the
+ * position found by binary search. If there is already an element with the
+ * same key, it's replaced: in place, if the new element belongs to the same
+ * position, otherwise the old element is removed and the new one is inserted
+ * at its sorted position. New elements are inserted behind the elements that
+ * compare equal.
+ * 
+ * <p>
+ * If the sort order of an element changes because the element itself has been
+ * changed, call {@link #relocate(Mappable)} to move it to its new position.
+ * </p>
+ * 
+ * <p>
+ * The positions are defined by the {@link Comparator}, so
+ * {@link #add(int, Mappable)}, {@link #addAll(int, Collection)},
+ * {@link #set(int, Mappable)} and {@link #sort(Comparator)} throw an
+ * {@link UnsupportedOperationException}. {@link #replaceAll(UnaryOperator)}
+ * adds the replacements like {@link #addAll(Collection)}, so they are sorted.
+ * The {@link UniqueArrayListMap.DuplicateKeyPolicy} has no effect. Ranges of
+ * the list can be queried with {@link #headList(Mappable)},
+ * {@link #tailList(Mappable)} and {@link #subList(Mappable, Mappable)}.
+ * </p>
+ * 
+ * @author Hannes Dorfmann
+ * 
+ * @param <K>
+ *            The Key
+ * @param <V>
+ *            The Value
+ */
+public class SortedListMap<K, V extends Mappable<K>> extends
+		UniqueArrayListMap<K, V> {
+
+	private static final long serialVersionUID = -5309846020172424195L;
+
+	private final Comparator<? super V> comparator;
+
+	/**
+	 * Creates a new empty {@link SortedListMap}
+	 * 
+	 * @param comparator
+	 *            The comparator that defines the order of the elements
+	 */
+	public SortedListMap(Comparator<? super V> comparator) {
+		super();
+
+		if (comparator == null) {
+			throw new NullPointerException("Comparator is null");
+		}
+
+		this.comparator = comparator;
+	}
+
+	/**
+	 * Constructs a {@link SortedListMap} containing the elements of the
+	 * specified collection, sorted by the given {@link Comparator}
+	 * 
+	 * @param comparator
+	 *            The comparator that defines the order of the elements
+	 * @param c
+	 */
+	public SortedListMap(Comparator<? super V> comparator,
+			Collection<? extends V> c) {
+		this(comparator);
+		addAll(c);
+	}
+
+	/**
+	 * Get the {@link Comparator} that defines the order of the elements
+	 * 
+	 * @return
+	 */
+	public Comparator<? super V> comparator() {
+		return comparator;
+	}
+
+	/**
+	 * Get the position of the first element, that is not less than the given
+	 * one
+	 * 
+	 * @param v
+	 * @return
+	 */
+	private int lowerBound(V v) {
+		int low = 0;
+		int high = size();
+
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (comparator.compare(get(middle), v) < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Get the position of the first element, that is greater than the given
+	 * one
+	 * 
+	 * @param v
+	 * @return
+	 */
+	private int upperBound(V v) {
+		int low = 0;
+		int high = size();
+
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (comparator.compare(get(middle), v) <= 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Checks if the element can be stored at the given position without
+	 * breaking the order, if the element at this position is replaced by it
+	 * 
+	 * @param position
+	 * @param v
+	 * @return
+	 */
+	private boolean fitsAt(int position, V v) {
+		return (position == 0 || comparator.compare(get(position - 1), v) <= 0)
+				&& (position == size() - 1 || comparator.compare(v,
+						get(position + 1)) <= 0);
+	}
+
+	/**
+	 * Get the position of the given element
+	 * 
+	 * @param v
+	 * @return The position or -1, if the element is not in the list
+	 */
+	private int positionOfElement(V v) {
+		K key = v.getMapKey();
+
+		if (key == null) {
+			return indexOf(v);
+		}
+
+		int position = positionOfKey(key);
+		return position >= 0 && get(position) == v ? position : -1;
+	}
+
+	/**
+	 * Inserts the element at its sorted position. If there is already an
+	 * element with the same key, the old element is replaced.
+	 * 
+	 * @param e
+	 * @return
+	 */
+	@Override
+	public boolean add(V e) {
+
+		K key = e.getMapKey();
+		int position = key == null ? -1 : positionOfKey(key);
+
+		if (position >= 0) {
+			if (fitsAt(position, e)) {
+				super.set(position, e);
+				return true;
+			}
+
+			super.remove(position);
+		}
+
+		super.add(upperBound(e), e);
+		return true;
+	}
+
+	/**
+	 * Adds all elements of the collection. If the collection contains more
+	 * elements with the same key, the last one wins. Like in
+	 * {@link #add(Mappable)} an element replaces the old element with the
+	 * same key in place, if it fits at the position of the old element. All
+	 * other elements are sorted and merged into the list in one pass, so this
+	 * takes O(n + m log m) instead of O(n * m) for m new elements. They are
+	 * inserted behind the elements that compare equal, in the order of the
+	 * collection. So the result is sorted like after adding the elements one
+	 * by one, only the order of equal elements may differ.
+	 * 
+	 * @param c
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public boolean addAll(Collection<? extends V> c) {
+
+		Object[] batch = c.toArray();
+
+		Map<K, Integer> lastOfKey = new HashMap<K, Integer>(
+				batch.length * 4 / 3 + 1);
+		for (int i = 0; i < batch.length; i++) {
+			K key = ((V) batch[i]).getMapKey();
+			if (key != null) {
+				lastOfKey.put(key, i);
+			}
+		}
+
+		// Replace in place, the others are merged
+		List<Object> merged = new ArrayList<Object>(batch.length);
+		for (int i = 0; i < batch.length; i++) {
+			V v = (V) batch[i];
+			K key = v.getMapKey();
+
+			if (key != null && lastOfKey.get(key) != i) {
+				continue;
+			}
+
+			int position = key == null ? -1 : positionOfKey(key);
+			if (position >= 0 && fitsAt(position, v)) {
+				super.set(position, v);
+			} else {
+				merged.add(v);
+			}
+		}
+
+		mergeAll(merged.toArray(), comparator);
+		return batch.length > 0;
+	}
+
+	/**
+	 * Moves the element to its sorted position. Call this method after the
+	 * element has been changed in a way that changes its order.
+	 * 
+	 * @param element
+	 *            An element of this list
+	 * @return false, if the element is not in the list
+	 */
+	public boolean relocate(V element) {
+
+		int position = positionOfElement(element);
+
+		if (position < 0) {
+			return false;
+		}
+
+		if (!fitsAt(position, element)) {
+			super.remove(position);
+			super.add(upperBound(element), element);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Get a view of the elements that are less than the given one
+	 * 
+	 * @param toElement
+	 *            The (exclusive) upper bound, doesn't need to be in the list
+	 * @return
+	 */
+	public List<V> headList(V toElement) {
+		return subList(0, lowerBound(toElement));
+	}
+
+	/**
+	 * Get a view of the elements that are greater than or equal to the given
+	 * one
+	 * 
+	 * @param fromElement
+	 *            The (inclusive) lower bound, doesn't need to be in the list
+	 * @return
+	 */
+	public List<V> tailList(V fromElement) {
+		return subList(lowerBound(fromElement), size());
+	}
+
+	/**
+	 * Get a view of the elements from fromElement (inclusive) to toElement
+	 * (exclusive)
+	 * 
+	 * @param fromElement
+	 * @param toElement
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             if fromElement is greater than toElement
+	 */
+	public List<V> subList(V fromElement, V toElement) {
+
+		if (comparator.compare(fromElement, toElement) > 0) {
+			throw new IllegalArgumentException("fromElement > toElement");
+		}
+
+		return subList(lowerBound(fromElement), lowerBound(toElement));
+	}
+
+	private static UnsupportedOperationException positionDefinedByComparator() {
+		return new UnsupportedOperationException(
+				"The position of an element is defined by the comparator");
+	}
+
+	@Override
+	public void add(int index, V e) {
+		throw positionDefinedByComparator();
+	}
+
+	@Override
+	public boolean addAll(int index, Collection<? extends V> c) {
+		throw positionDefinedByComparator();
+	}
+
+	@Override
+	public V set(int position, V e) {
+		throw positionDefinedByComparator();
+	}
+
+	@Override
+	public void sort(Comparator<? super V> c) {
+		throw positionDefinedByComparator();
+	}
+
+	/**
+	 * The new list of the diff must be sorted by the comparator
+	 */
+	@Override
+	void applyDiff(ListMapDiff<K, V> diff) {
+
+		for (int i = 1; i < diff.newSize(); i++) {
+			if (comparator.compare(diff.newElement(i - 1), diff.newElement(i)) > 0) {
+				throw new IllegalArgumentException(
+						"The new list is not sorted by the comparator");
+			}
+		}
+
+		super.applyDiff(diff);
+	}
+}
@@ -1,11 +1,23 @@
 package com.hannesdorfmann.collection;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.LinkedHashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
 /**
  * This {@link ListMap} implementation uses {@link ArrayList} and
@@ -25,6 +37,17 @@ import java.util.Set;
  * (index) in the list.
  * </p>
  * 
+ * <p>
+ * Every key is mapped to the slot (position) of its value in the list. Adding
+ * an element with a key that is already in the list will therefore not scan
+ * the whole list, but only the distance the old element has been shifted
+ * since the slot has been seen the last time. What happens with the old element is defined by the
+ * {@link DuplicateKeyPolicy}: By default the old element is removed and the new
+ * one is appended to the end of the list ({@link DuplicateKeyPolicy#MOVE_TO_END}
+ * ). With {@link DuplicateKeyPolicy#REPLACE_IN_PLACE} the new element simply
+ * overwrites the slot of the old one, which is O(1).
+ * </p>
+ * 
  * @author Hannes Dorfmann
  * 
  * @param <K>
@@ -38,181 +61,1460 @@ public class UniqueArrayListMap<K, V extends Mappable<K>> extends ArrayList<V>
 	/**
 	 * 
 	 */
-	private static final long serialVersionUID = 4630450968498105177L;
+	private static final long serialVersionUID = 2961307412538681458L;
+
+	/**
+	 * Defines what {@link UniqueArrayListMap#add(Mappable)} does, if there is
+	 * already an element with the same key in the list.
+	 */
+	public enum DuplicateKeyPolicy {
+
+		/**
+		 * The old element is removed and the new element is appended to the
+		 * end of the list
+		 */
+		MOVE_TO_END,
+
+		/**
+		 * The new element replaces the old one at the position of the old one
+		 */
+		REPLACE_IN_PLACE
+	}
+
+	/**
+	 * The index entry of a key. It holds the value and the position where the
+	 * value has been seen in the list the last time. It's also an unmodifiable
+	 * {@link Set} view containing just the value, so that
+	 * {@link UniqueArrayListMap#getByMapKey(Object)} doesn't need to allocate a
+	 * new {@link Set} on every call.
+	 */
+	private static class Entry<V> extends AbstractSet<V> {
+
+		V value;
+		int position;
+
+		Entry(V value, int position) {
+			this.value = value;
+			this.position = position;
+		}
+
+		@Override
+		public Iterator<V> iterator() {
+			return new Iterator<V>() {
+
+				private boolean hasNext = true;
+
+				@Override
+				public boolean hasNext() {
+					return hasNext;
+				}
+
+				@Override
+				public V next() {
+					if (!hasNext) {
+						throw new NoSuchElementException();
+					}
+					hasNext = false;
+					return value;
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException(
+							"The set returned by getByMapKey() is read only");
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return 1;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return value == null ? o == null : value.equals(o);
+		}
+	}
+
+	private transient Map<K, Entry<V>> idMap;
+
+	/**
+	 * The number of keys the key index can hold without growing
+	 */
+	private transient int indexCapacity;
+
+	/**
+	 * The keys of the elements, if key caching is enabled, otherwise null
+	 */
+	private transient KeyArray keys;
+
+	private DuplicateKeyPolicy duplicateKeyPolicy = DuplicateKeyPolicy.MOVE_TO_END;
+
+	/**
+	 * If true, the key index is built at the first lookup by key
+	 */
+	private boolean lazyIndex;
+
+	/**
+	 * The counters, if statistics are enabled, otherwise null
+	 */
+	private transient ListMapStatistics statistics;
+
+	/**
+	 * Creates a new empty empty {@link ArrayListMap}
+	 */
+	public UniqueArrayListMap() {
+		super();
+		idMap = new HashMap<K, Entry<V>>();
+	}
+
+	/**
+	 * Creates a new empty {@link UniqueArrayListMap} that uses the given
+	 * {@link DuplicateKeyPolicy}
+	 * 
+	 * @param duplicateKeyPolicy
+	 */
+	public UniqueArrayListMap(DuplicateKeyPolicy duplicateKeyPolicy) {
+		this();
+		setDuplicateKeyPolicy(duplicateKeyPolicy);
+	}
+
+	/**
+	 * Constructs a {@link ArrayListMap} containing the elements of the
+	 * specified collection, in the order they are returned by the collection's
+	 * iterator.
+	 * 
+	 * @param c
+	 */
+	public UniqueArrayListMap(Collection<? extends V> c) {
+		this(c, false);
+	}
+
+	/**
+	 * Constructs a {@link UniqueArrayListMap} containing the elements of the
+	 * specified collection. If lazyIndex is true, the elements are copied
+	 * without touching their keys and the key index is built at the first
+	 * lookup by key. If the collection contains more elements with the same
+	 * key, the last one wins like in {@link #addAll(Collection)}, but with a
+	 * lazy key index the older ones are removed only when the key index is
+	 * built.
+	 * 
+	 * @param c
+	 * @param lazyIndex
+	 * @see #setLazyIndex(boolean)
+	 */
+	public UniqueArrayListMap(Collection<? extends V> c, boolean lazyIndex) {
+		super(c.size());
+		this.lazyIndex = lazyIndex;
+
+		if (lazyIndex) {
+			super.addAll(c);
+		} else {
+			idMap = new HashMap<K, Entry<V>>(hashMapCapacity(c.size()));
+			indexCapacity = c.size();
+			addAll(c);
+		}
+	}
+
+	public UniqueArrayListMap(int initialCapacity) {
+		super(initialCapacity);
+		idMap = new HashMap<K, Entry<V>>(hashMapCapacity(initialCapacity));
+		indexCapacity = initialCapacity;
+	}
+
+	/**
+	 * Writes the {@link DuplicateKeyPolicy}, the elements (the
+	 * {@link ArrayList} part) and if key caching is enabled. The key index is
+	 * not written, it's rebuilt in one pass when the list is read.
+	 * 
+	 * @param out
+	 * @throws IOException
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeBoolean(keys != null);
+	}
+
+	/**
+	 * Reads the list and rebuilds the key index, unless the key index is lazy
+	 * 
+	 * @param in
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		in.defaultReadObject();
+
+		if (in.readBoolean()) {
+			setKeyCaching(true);
+		}
+
+		if (!lazyIndex) {
+			keyIndex();
+		}
+	}
+
+	/**
+	 * Get the initial capacity of a {@link HashMap} that can hold the given
+	 * number of keys without growing
+	 * 
+	 * @param size
+	 * @return
+	 */
+	private static int hashMapCapacity(int size) {
+		return size + size / 3 + 1;
+	}
+
+	/**
+	 * Get the number of keys a {@link HashMap} with the given number of keys
+	 * can hold at least, before it has to grow. A {@link HashMap} keeps its
+	 * table size a power of two and grows when it is filled to 75 percent.
+	 * 
+	 * @param size
+	 * @return
+	 */
+	private static int hashMapThreshold(int size) {
+		int table = 16;
+		while (table / 4 * 3 < size && table < (1 << 30)) {
+			table <<= 1;
+		}
+		return table / 4 * 3;
+	}
+
+	/**
+	 * Increases the capacity of the list and of the key index, so that both
+	 * can hold at least the given number of elements without growing.
+	 * 
+	 * @param minCapacity
+	 */
+	@Override
+	public void ensureCapacity(int minCapacity) {
+		super.ensureCapacity(minCapacity);
+
+		if (keys != null) {
+			keys.ensureCapacity(minCapacity);
+		}
+
+		if (idMap == null) {
+			// The key index is not built yet or the super class is constructed
+			return;
+		}
+
+		indexCapacity = Math.max(indexCapacity,
+				hashMapThreshold(idMap.size()));
+
+		if (minCapacity > indexCapacity) {
+			int capacity = Math.max(minCapacity, indexCapacity * 2);
+			Map<K, Entry<V>> grown = new HashMap<K, Entry<V>>(
+					hashMapCapacity(capacity));
+			grown.putAll(idMap);
+			idMap = grown;
+			indexCapacity = capacity;
+		}
+	}
+
+	/**
+	 * Get the {@link DuplicateKeyPolicy} that is used by
+	 * {@link #add(Mappable)}
+	 * 
+	 * @return
+	 */
+	public DuplicateKeyPolicy getDuplicateKeyPolicy() {
+		return duplicateKeyPolicy;
+	}
+
+	/**
+	 * Set the {@link DuplicateKeyPolicy} that should be used by
+	 * {@link #add(Mappable)}
+	 * 
+	 * @param duplicateKeyPolicy
+	 */
+	public void setDuplicateKeyPolicy(DuplicateKeyPolicy duplicateKeyPolicy) {
+		if (duplicateKeyPolicy == null) {
+			throw new NullPointerException("DuplicateKeyPolicy is null");
+		}
+		this.duplicateKeyPolicy = duplicateKeyPolicy;
+	}
+
+	/**
+	 * Enables or disables key caching. If enabled, {@link Mappable#getMapKey()}
+	 * is called only once for every element, when it's inserted. The key is
+	 * stored next to the element and is used to remove or replace the element
+	 * later, so its also safe to use elements whose key changes while they
+	 * are in the list. This costs one more reference per element.
+	 * 
+	 * @param enabled
+	 */
+	public void setKeyCaching(boolean enabled) {
+		if (!enabled) {
+			keys = null;
+		} else if (keys == null) {
+			int size = size();
+			KeyArray cached = new KeyArray(size);
+			for (int i = 0; i < size; i++) {
+				cached.add(super.get(i).getMapKey());
+			}
+			keys = cached;
+		}
+	}
+
+	/**
+	 * Is key caching enabled
+	 * 
+	 * @return
+	 * @see #setKeyCaching(boolean)
+	 */
+	public boolean isKeyCaching() {
+		return keys != null;
+	}
+
+	/**
+	 * Enables or disables the lazy key index. If enabled, the key index is
+	 * dropped and built again, when it's needed the next time: at a lookup by
+	 * key or when an element with a key is added or set, because the key index
+	 * is needed to find the element with the same key. Until then, removing
+	 * elements doesn't touch their keys. This makes restoring a serialized list
+	 * cheaper, if it's only accessed by position. If disabled, the key index
+	 * is built immediately.
+	 * 
+	 * @param enabled
+	 */
+	public void setLazyIndex(boolean enabled) {
+		lazyIndex = enabled;
+
+		if (enabled) {
+			idMap = null;
+			indexCapacity = 0;
+		} else {
+			keyIndex();
+		}
+	}
+
+	/**
+	 * Is the lazy key index enabled
+	 * 
+	 * @return
+	 * @see #setLazyIndex(boolean)
+	 */
+	public boolean isLazyIndex() {
+		return lazyIndex;
+	}
+
+	/**
+	 * Enables or disables statistics. If enabled, the list counts its
+	 * operations, the lookups in the key index, the added elements with a key
+	 * that is already in the list and the elements it has to shift or move.
+	 * If disabled, the counters are dropped and counting costs only a null
+	 * check per operation. Statistics are not serialized.
+	 * 
+	 * @param enabled
+	 * @see #getStatistics()
+	 */
+	public void setStatisticsEnabled(boolean enabled) {
+		if (!enabled) {
+			statistics = null;
+		} else if (statistics == null) {
+			statistics = new ListMapStatistics();
+		}
+	}
+
+	/**
+	 * Are statistics enabled
+	 * 
+	 * @return
+	 * @see #setStatisticsEnabled(boolean)
+	 */
+	public boolean isStatisticsEnabled() {
+		return statistics != null;
+	}
+
+	/**
+	 * Get a snapshot of the statistics, including the key histogram of the
+	 * current key index
+	 * 
+	 * @return
+	 * @throws IllegalStateException
+	 *             if statistics are not enabled
+	 */
+	public ListMapStatistics getStatistics() {
+		if (statistics == null) {
+			throw new IllegalStateException("Statistics are not enabled");
+		}
+		return statistics.snapshot(idMap);
+	}
+
+	/**
+	 * Sets all counters to 0, if statistics are enabled
+	 */
+	public void resetStatistics() {
+		if (statistics != null) {
+			statistics = new ListMapStatistics();
+		}
+	}
+
+	/**
+	 * Get an immutable snapshot of this list. The snapshot has its own, more
+	 * compact key index and can be shared between threads without locking.
+	 * Later changes of this list are not visible in the snapshot. If key
+	 * caching is enabled, the cached keys are used.
+	 * 
+	 * @return
+	 */
+	public ImmutableListMap<K, V> toImmutable() {
+		return new ImmutableListMap<K, V>(toArray(), keys != null ? keys
+				.toArray() : null);
+	}
+
+	/**
+	 * Replaces the elements by the elements of the new list of the diff. The
+	 * elements are written in one pass. The key index entries of elements
+	 * that are in both lists are updated in place, only removed and inserted
+	 * elements are removed from or added to the key index.
+	 * 
+	 * @param diff
+	 *            The diff between this list and the new list
+	 * @see ListMapDiff#applyTo(java.util.List)
+	 */
+	void applyDiff(ListMapDiff<K, V> diff) {
+
+		int size = size();
+		int newSize = diff.newSize();
+
+		if (statistics != null) {
+			int removedCount = diff.removedPositions().length;
+			statistics.removes += removedCount;
+			statistics.adds += newSize - (size - removedCount);
+		}
+
+		if (idMap != null) {
+			int[] removed = diff.removedPositions();
+			for (int r = 0; r < removed.length; r++) {
+				K key = keyAt(removed[r]);
+				if (key != null) {
+					idMap.remove(key);
+				}
+			}
+
+			for (int i = 0; i < newSize; i++) {
+				K key = diff.newKey(i);
+
+				if (key == null) {
+					continue;
+				}
+
+				Entry<V> entry = diff.oldPosition(i) < 0 ? null : idMap
+						.get(key);
+
+				if (entry == null) {
+					idMap.put(key, new Entry<V>(diff.newElement(i), i));
+				} else {
+					entry.value = diff.newElement(i);
+					entry.position = i;
+				}
+			}
+		}
+
+		ensureCapacity(newSize);
+		for (int i = 0; i < newSize; i++) {
+			if (i < size) {
+				super.set(i, diff.newElement(i));
+			} else {
+				super.add(diff.newElement(i));
+			}
+		}
+
+		if (newSize < size) {
+			super.removeRange(newSize, size);
+		} else {
+			modCount++;
+		}
+
+		if (keys != null) {
+			keys.clear();
+			for (int i = 0; i < newSize; i++) {
+				keys.add(diff.newKey(i));
+			}
+		}
+	}
+
+	/**
+	 * Get the key index. If it's not built yet, it's built in one pass over
+	 * the list. If the list contains more elements with the same key, because
+	 * it has been constructed with a lazy key index (see
+	 * {@link #UniqueArrayListMap(Collection, boolean)}), the last one wins and
+	 * the others are removed in one more pass.
+	 * 
+	 * @return
+	 */
+	private Map<K, Entry<V>> keyIndex() {
+
+		if (idMap == null) {
+			int size = size();
+			idMap = new HashMap<K, Entry<V>>(hashMapCapacity(size));
+			indexCapacity = size;
+
+			int[] duplicates = null;
+			int duplicateCount = 0;
+
+			for (int i = 0; i < size; i++) {
+				K key = keyAt(i);
+				if (key != null) {
+					Entry<V> old = idMap.put(key, new Entry<V>(super.get(i), i));
+					if (old != null) {
+						if (duplicates == null) {
+							duplicates = new int[size];
+						}
+						duplicates[duplicateCount++] = old.position;
+					}
+				}
+			}
+
+			if (duplicateCount > 0) {
+				if (statistics != null) {
+					statistics.duplicateKeys += duplicateCount;
+				}
+
+				// The remembered positions are hints, so they stay valid
+				Arrays.sort(duplicates, 0, duplicateCount);
+				removePositions(duplicates, duplicateCount);
+				modCount++;
+			}
+		}
+
+		return idMap;
+	}
+
+	/**
+	 * Removes the key from the key index, if the key index is built
+	 * 
+	 * @param key
+	 */
+	private void unindex(K key) {
+		if (idMap != null) {
+			idMap.remove(key);
+		}
+	}
+
+	/**
+	 * Get the key of the element at the given position. If key caching is
+	 * enabled, the cached key is returned.
+	 * 
+	 * @param position
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	private K keyAt(int position) {
+		return keys != null ? (K) keys.get(position) : super.get(position)
+				.getMapKey();
+	}
+
+	/**
+	 * Inserts the element into the list (but not into the key index)
+	 * 
+	 * @param index
+	 * @param v
+	 * @param key
+	 *            The key of the element
+	 */
+	private void listAdd(int index, V v, K key) {
+		if (statistics != null && index <= size()) {
+			statistics.shiftedElements += size() - index;
+		}
+		super.add(index, v);
+		if (keys != null) {
+			keys.add(index, key);
+		}
+	}
+
+	/**
+	 * Replaces the element in the list (but not in the key index)
+	 * 
+	 * @param index
+	 * @param v
+	 * @param key
+	 *            The key of the element
+	 */
+	private void listSet(int index, V v, K key) {
+		super.set(index, v);
+		if (keys != null) {
+			keys.set(index, key);
+		}
+	}
+
+	/**
+	 * Removes the element from the list (but not from the key index)
+	 * 
+	 * @param index
+	 */
+	private void listRemove(int index) {
+		if (statistics != null) {
+			statistics.shiftedElements += size() - index - 1;
+		}
+		super.remove(index);
+		if (keys != null) {
+			keys.remove(index);
+		}
+	}
+
+	/**
+	 * Copies the element (and its cached key) at the given position to
+	 * another position
+	 * 
+	 * @param from
+	 * @param to
+	 */
+	private void move(int from, int to) {
+		if (statistics != null) {
+			statistics.movedElements++;
+		}
+		super.set(to, super.get(from));
+		if (keys != null) {
+			keys.set(to, keys.get(from));
+		}
+	}
+
+	/**
+	 * Cuts off the tail of the list (and of the cached keys)
+	 * 
+	 * @param newSize
+	 */
+	private void truncate(int newSize) {
+		if (keys != null) {
+			keys.removeRange(newSize, keys.size());
+		}
+		super.removeRange(newSize, size());
+	}
+
+	/**
+	 * Get the current position of the value of the given entry and updates
+	 * the remembered position
+	 * 
+	 * @param entry
+	 * @return The position or -1, if the value is not in the list anymore
+	 */
+	private int positionOf(Entry<V> entry) {
+
+		int position = PositionHint.find(this, entry.value, entry.position);
+
+		if (statistics != null && position != entry.position) {
+			statistics.linearScans++;
+		}
+
+		if (position >= 0) {
+			entry.position = position;
+		}
+
+		return position;
+	}
+
+	/**
+	 * Get the position of the element with the given key
+	 * 
+	 * @param key
+	 * @return The position or -1, if there is no element with the given key
+	 */
+	int positionOfKey(K key) {
+		Entry<V> entry = keyIndex().get(key);
+		return entry == null ? -1 : positionOf(entry);
+	}
+
+	/**
+	 * Appends the specified element to the end of this list.
+	 * 
+	 * @param e
+	 * @return
+	 */
+	@Override
+	public boolean add(V e) {
+
+		if (statistics != null) {
+			statistics.adds++;
+		}
+
+		K key = e.getMapKey();
+
+		if (key != null) {
+
+			Entry<V> entry = keyIndex().get(key);
+			if (entry != null) {
+
+				if (statistics != null) {
+					statistics.duplicateKeys++;
+				}
+
+				int position = positionOf(entry);
+
+				if (duplicateKeyPolicy == DuplicateKeyPolicy.REPLACE_IN_PLACE
+						&& position >= 0) {
+					listSet(position, e, key);
+					entry.value = e;
+					return true;
+				}
+
+				if (position >= 0) {
+					listRemove(position);
+				}
+			}
+
+			listAdd(size(), e, key);
+
+			if (entry == null) {
+				idMap.put(key, new Entry<V>(e, size() - 1));
+			} else {
+				entry.value = e;
+				entry.position = size() - 1;
+			}
+
+			return true;
+
+		} else {
+			listAdd(size(), e, null);
+			return true;
+		}
+	}
+
+	/**
+	 * Inserts the specified element at the specified position in this list. If
+	 * there is already an element with the same key, the old one will be
+	 * removed before the new one gets inserted, regardless of the
+	 * {@link DuplicateKeyPolicy}. The index is checked before anything is
+	 * removed, so an invalid index doesn't change the list.
+	 * 
+	 * @param index
+	 *            The position of the new element. If it's the size of the
+	 *            list, the element is appended, even if the old element has
+	 *            been removed.
+	 * @param e
+	 */
+	@Override
+	public void add(int index, V e) {
+
+		if (index < 0 || index > size()) {
+			throw new IndexOutOfBoundsException("Index: " + index
+					+ ", Size: " + size());
+		}
+
+		if (statistics != null) {
+			statistics.adds++;
+		}
+
+		K key = e.getMapKey();
+
+		if (key != null) {
+			Entry<V> entry = keyIndex().get(key);
+			if (entry != null) {
+				if (statistics != null) {
+					statistics.duplicateKeys++;
+				}
+				// there is already an elemenet with the same id
+				int position = positionOf(entry);
+				if (position >= 0) {
+					listRemove(position);
+					if (index > size()) {
+						index = size();
+					}
+				}
+			}
+
+			listAdd(index, e, key);
+
+			if (entry == null) {
+				idMap.put(key, new Entry<V>(e, index));
+			} else {
+				entry.value = e;
+				entry.position = index;
+			}
+
+		} else {
+			listAdd(index, e, null);
+		}
+	}
+
+	/**
+	 * Appends all of the elements in the specified collection to the end of
+	 * this list, in the order that they are returned by the specified
+	 * collection's Iterator. Elements with a key that is already in the list
+	 * are handled according to the {@link DuplicateKeyPolicy}. If the
+	 * collection contains more elements with the same key, the last one wins.
+	 * 
+	 * @param c
+	 * @return
+	 */
+	@Override
+	public boolean addAll(Collection<? extends V> c) {
+
+		if (duplicateKeyPolicy == DuplicateKeyPolicy.REPLACE_IN_PLACE) {
+			return upsertAll(c.toArray());
+		}
+
+		return insertAll(size(), c.toArray());
+	}
+
+	/**
+	 * Inserts all of the elements in the specified collection into this list,
+	 * starting at the specified position. Elements in the list with a key that
+	 * is also in the collection are removed, regardless of the
+	 * {@link DuplicateKeyPolicy}. If the collection contains more elements
+	 * with the same key, only the last one is inserted.
+	 * 
+	 * @param index
+	 *            The position of the first new element after the old
+	 *            elements with the same keys have been removed, like the
+	 *            index of {@link #add(int, Mappable)}. If it's the size of the
+	 *            list, the elements are appended, even if old elements have
+	 *            been removed.
+	 * @param c
+	 * @return
+	 */
+	@Override
+	public boolean addAll(int index, Collection<? extends V> c) {
+
+		if (index < 0 || index > size()) {
+			throw new IndexOutOfBoundsException("Index: " + index
+					+ ", Size: " + size());
+		}
+
+		return insertAll(index, c.toArray());
+	}
+
+	/**
+	 * Marks an {@link Entry} as belonging to the element at the given position
+	 * in the batch that is currently added. Marked entries have a negative
+	 * position, so they can't be confused with a position hint.
+	 * 
+	 * @param batchPosition
+	 * @return
+	 */
+	private static int mark(int batchPosition) {
+		return -batchPosition - 2;
+	}
+
+	/**
+	 * The elements of a batch, that are inserted into the list: the last
+	 * element of every key and all elements without a key, in the order of the
+	 * batch. Their key index entries (null for elements without a key) still
+	 * need a position.
+	 */
+	private static class Insertion<V> {
+
+		final List<V> elements;
+
+		/**
+		 * The keys of the elements, if key caching is enabled, otherwise null
+		 */
+		final List<Object> keys;
+
+		final List<Entry<V>> entries;
+
+		Insertion(int capacity, boolean withKeys) {
+			elements = new ArrayList<V>(capacity);
+			keys = withKeys ? new ArrayList<Object>(capacity) : null;
+			entries = new ArrayList<Entry<V>>(capacity);
+		}
+	}
+
+	/**
+	 * Adds the keys of the batch to the key index and removes the elements of
+	 * the list with the same keys in a single pass over the list. Every key is
+	 * looked up only once in the key index. Used by
+	 * {@link #insertAll(int, Object[])} and
+	 * {@link #mergeAll(Object[], Comparator)}.
+	 * 
+	 * @param batch
+	 * @return The elements that have to be inserted
+	 */
+	@SuppressWarnings("unchecked")
+	private Insertion<V> removeKeysOf(Object[] batch) {
+
+		List<Entry<V>> entries = new ArrayList<Entry<V>>(batch.length);
+		Object[] batchKeys = keys != null ? new Object[batch.length] : null;
+		int[] removed = new int[batch.length];
+		int removedCount = 0;
+
+		if (statistics != null) {
+			statistics.adds += batch.length;
+		}
+
+		for (int i = 0; i < batch.length; i++) {
+			V v = (V) batch[i];
+			K key = v.getMapKey();
+
+			if (batchKeys != null) {
+				batchKeys[i] = key;
+			}
+
+			if (key == null) {
+				entries.add(null);
+				continue;
+			}
+
+			Entry<V> entry = keyIndex().get(key);
+			if (entry == null) {
+				entry = new Entry<V>(v, mark(i));
+				idMap.put(key, entry);
+			} else {
+				if (entry.position >= 0) {
+					// In the list before the batch has been added
+					int position = positionOf(entry);
+					if (position >= 0) {
+						removed[removedCount++] = position;
+						if (statistics != null) {
+							statistics.duplicateKeys++;
+						}
+					}
+				}
+				entry.value = v;
+				entry.position = mark(i);
+			}
+			entries.add(entry);
+		}
+
+		// Remove the elements with the same keys from the list
+		if (removedCount > 0) {
+			Arrays.sort(removed, 0, removedCount);
+			removePositions(removed, removedCount);
+		}
+
+		// Only the last element of every key is inserted
+		Insertion<V> insertion = new Insertion<V>(batch.length,
+				batchKeys != null);
+
+		for (int i = 0; i < batch.length; i++) {
+			Entry<V> entry = entries.get(i);
+
+			if (entry == null || entry.position == mark(i)) {
+				insertion.elements.add((V) batch[i]);
+				insertion.entries.add(entry);
+				if (batchKeys != null) {
+					insertion.keys.add(batchKeys[i]);
+				}
+			}
+		}
+
+		return insertion;
+	}
+
+	/**
+	 * Inserts the elements at the given position. Elements of the list with
+	 * the same keys are removed with a single pass over the list and the
+	 * elements behind the position are shifted only once.
+	 * 
+	 * @param index
+	 *            The position after the elements with the same keys have
+	 *            been removed
+	 * @param batch
+	 * @return
+	 */
+	private boolean insertAll(int index, Object[] batch) {
+
+		Insertion<V> insertion = removeKeysOf(batch);
+		List<V> inserted = insertion.elements;
+
+		if (index > size()) {
+			index = size();
+		}
+
+		for (int i = 0; i < inserted.size(); i++) {
+			Entry<V> entry = insertion.entries.get(i);
+			if (entry != null) {
+				entry.position = index + i;
+			}
+		}
+
+		if (statistics != null) {
+			statistics.shiftedElements += size() - index;
+		}
+
+		ensureCapacity(size() + inserted.size());
+		super.addAll(index, inserted);
+
+		if (insertion.keys != null) {
+			keys.insertGap(index, inserted.size());
+			for (int i = 0; i < inserted.size(); i++) {
+				keys.set(index + i, insertion.keys.get(i));
+			}
+		}
+
+		return !inserted.isEmpty();
+	}
+
+	/**
+	 * Merges the elements into the list, that must be sorted by the given
+	 * {@link Comparator}. Elements of the list with the same keys are removed
+	 * first, like in {@link #insertAll(int, Object[])}. Then the new elements
+	 * are sorted and merged into the list from its end, so every element of
+	 * the list is moved at most once. New elements are inserted behind the
+	 * elements that compare equal and keep the order of the batch among
+	 * themselves. Used by {@link SortedListMap}.
+	 * 
+	 * @param batch
+	 * @param comparator
+	 * @return
+	 */
+	boolean mergeAll(Object[] batch, final Comparator<? super V> comparator) {
+
+		Insertion<V> insertion = removeKeysOf(batch);
+		final List<V> inserted = insertion.elements;
+		int count = inserted.size();
+
+		if (count == 0) {
+			return false;
+		}
+
+		// Sorting is stable, so equal elements keep the order of the batch
+		Integer[] order = new Integer[count];
+		for (int i = 0; i < count; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+
+			@Override
+			public int compare(Integer a, Integer b) {
+				return comparator.compare(inserted.get(a), inserted.get(b));
+			}
+		});
+
+		int size = size();
+		ensureCapacity(size + count);
+		super.addAll(Collections.<V> nCopies(count, null));
+		if (keys != null) {
+			keys.insertGap(size, count);
+		}
+
+		int read = size - 1;
+		int write = size + count - 1;
+
+		for (int j = count - 1; j >= 0; j--) {
+			int i = order[j];
+			V v = inserted.get(i);
+
+			while (read >= 0 && comparator.compare(super.get(read), v) > 0) {
+				move(read--, write--);
+			}
+
+			super.set(write, v);
+			if (keys != null) {
+				keys.set(write, insertion.keys.get(i));
+			}
+
+			Entry<V> entry = insertion.entries.get(i);
+			if (entry != null) {
+				entry.position = write;
+			}
+
+			write--;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Adds the elements according to
+	 * {@link DuplicateKeyPolicy#REPLACE_IN_PLACE}: Elements with a key that is
+	 * already in the list replace the old element, all others are appended at
+	 * once.
+	 * 
+	 * @param batch
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	private boolean upsertAll(Object[] batch) {
 
-	private final Map<K, V> idMap;
+		int index = size();
+		List<V> appended = new ArrayList<V>(batch.length);
+		List<Entry<V>> appendedEntries = new ArrayList<Entry<V>>(batch.length);
+		List<Object> appendedKeys = keys != null ? new ArrayList<Object>(
+				batch.length) : null;
 
-	/**
-	 * Creates a new empty empty {@link ArrayListMap}
-	 */
-	public UniqueArrayListMap() {
-		super();
-		idMap = new HashMap<K, V>();
+		if (statistics != null) {
+			statistics.adds += batch.length;
+		}
+
+		for (int i = 0; i < batch.length; i++) {
+			V v = (V) batch[i];
+			K key = v.getMapKey();
+
+			if (key == null) {
+				appended.add(v);
+				appendedEntries.add(null);
+				if (appendedKeys != null) {
+					appendedKeys.add(null);
+				}
+				continue;
+			}
+
+			Entry<V> entry = keyIndex().get(key);
+			if (entry == null) {
+				entry = new Entry<V>(v, mark(appended.size()));
+				idMap.put(key, entry);
+				appended.add(v);
+				appendedEntries.add(entry);
+				if (appendedKeys != null) {
+					appendedKeys.add(key);
+				}
+			} else if (entry.position < 0) {
+				// Appended by this batch before
+				appended.set(-entry.position - 2, v);
+				entry.value = v;
+			} else {
+				int position = positionOf(entry);
+				if (position >= 0) {
+					listSet(position, v, key);
+					if (statistics != null) {
+						statistics.duplicateKeys++;
+					}
+				} else {
+					entry.position = mark(appended.size());
+					appended.add(v);
+					appendedEntries.add(entry);
+					if (appendedKeys != null) {
+						appendedKeys.add(key);
+					}
+				}
+				entry.value = v;
+			}
+		}
+
+		ensureCapacity(index + appended.size());
+		super.addAll(appended);
+
+		if (appendedKeys != null) {
+			for (int i = 0; i < appendedKeys.size(); i++) {
+				keys.add(appendedKeys.get(i));
+			}
+		}
+
+		for (int i = 0; i < appendedEntries.size(); i++) {
+			Entry<V> entry = appendedEntries.get(i);
+			if (entry != null) {
+				entry.position = index + i;
+			}
+		}
+
+		return batch.length > 0;
 	}
 
 	/**
-	 * Constructs a {@link ArrayListMap} containing the elements of the
-	 * specified collection, in the order they are returned by the collection's
-	 * iterator.
+	 * Removes the elements at the given positions from the list (but not from
+	 * the key index) in a single pass
 	 * 
-	 * @param c
+	 * @param positions
+	 *            The sorted positions
+	 * @param count
+	 *            The number of positions
 	 */
-	public UniqueArrayListMap(Collection<? extends V> c) {
-		idMap = new HashMap<K, V>(c.size());
-		for (V v : c) {
-			add(v);
+	private void removePositions(int[] positions, int count) {
+
+		int size = size();
+		int write = positions[0];
+		int next = 0;
+
+		for (int read = positions[0]; read < size; read++) {
+			if (next < count && positions[next] == read) {
+				next++;
+			} else {
+				move(read, write++);
+			}
 		}
+
+		truncate(write);
 	}
 
-	public UniqueArrayListMap(int initialCapacity) {
-		super(initialCapacity);
-		idMap = new HashMap<K, V>(initialCapacity);
+	/**
+	 * Removes all elements
+	 */
+	@Override
+	public void clear() {
+		if (statistics != null) {
+			statistics.removes += size();
+		}
+
+		super.clear();
+
+		if (idMap != null) {
+			idMap.clear();
+		}
+
+		if (keys != null) {
+			keys.clear();
+		}
 	}
 
 	/**
-	 * Appends the specified element to the end of this list.
+	 * Get the value by the key. The returned {@link Set} is a read only view
+	 * that contains exactly one element and is not allocated on each call. If
+	 * you just want the element, use {@link #getFirstByMapKey(Object)}.
 	 * 
-	 * @param e
-	 * @return
+	 * @param id
+	 * @return The read only set or null, if there is no element with the given
+	 *         key
 	 */
 	@Override
-	public boolean add(V e) {
+	public Set<V> getByMapKey(K id) {
+		Entry<V> entry = keyIndex().get(id);
 
-		if (e.getMapKey() != null) {
+		if (statistics != null) {
+			statistics.lookup(entry != null);
+		}
 
-			V oldValue = idMap.get(e.getMapKey());
-			if (oldValue != null) {
-				super.remove(oldValue);
-			}
+		return entry;
+	}
 
-			boolean added = super.add(e);
+	/**
+	 * Removes the element with the given key.
+	 * 
+	 * @param id
+	 * @return A read only set containing the removed element or null, if there
+	 *         was no element with the given key
+	 */
+	@Override
+	public Set<V> removeByMapKey(K id) {
+		Entry<V> entry = keyIndex().get(id);
 
-			if (added) {
-				idMap.put(e.getMapKey(), e);
-			} else {
-				idMap.put(oldValue.getMapKey(), oldValue);
+		if (statistics != null) {
+			statistics.lookup(entry != null);
+		}
+
+		if (entry != null) {
+
+			int position = positionOf(entry);
+			if (position >= 0) {
+				listRemove(position);
+				if (statistics != null) {
+					statistics.removes++;
+				}
 			}
 
-			return added;
-		} else {
-			return super.add(e);
+			idMap.remove(id);
 		}
+
+		return entry;
 	}
 
 	/**
-	 * Inserts the specified element at the specified position in this list.
+	 * Removes the element at the specified position in this list.
 	 * 
 	 * @param index
-	 * @param element
+	 * @return
 	 */
+	@SuppressWarnings("unchecked")
 	@Override
-	public void add(int index, V e) {
+	public V remove(int index) {
 
-		if (e.getMapKey() != null) {
-			V oldValue = idMap.get(e.getMapKey());
-			if (oldValue != null) {
-				// there is already an elemenet with the same id
-				super.remove(oldValue);
-			}
+		if (statistics != null && index < size()) {
+			statistics.removes++;
+			statistics.shiftedElements += size() - index - 1;
+		}
 
-			super.add(index, e);
+		if (idMap == null && keys == null) {
+			return super.remove(index);
+		}
 
-			idMap.put(e.getMapKey(), e);
-		} else {
-			super.add(index, e);
+		V v = super.remove(index);
+		K key = keys != null ? (K) keys.remove(index) : v.getMapKey();
+
+		if (key != null) {
+			unindex(key);
 		}
+
+		return v;
 	}
 
 	/**
-	 * Appends all of the elements in the specified collection to the end of
-	 * this list, in the order that they are returned by the specified
-	 * collection's Iterator.
+	 * Removes the elements from fromIndex (inclusive) to toIndex (exclusive)
+	 * from the list and from the key index.
 	 * 
-	 * @param c
-	 * @return
+	 * @param fromIndex
+	 * @param toIndex
 	 */
 	@Override
-	public boolean addAll(Collection<? extends V> c) {
+	protected void removeRange(int fromIndex, int toIndex) {
 
-		for (V v : c) {
-			add(v);
+		if (statistics != null) {
+			statistics.removes += toIndex - fromIndex;
+			statistics.shiftedElements += size() - toIndex;
 		}
 
-		return true;
+		if (idMap != null) {
+			for (int i = fromIndex; i < toIndex; i++) {
+				K key = keyAt(i);
+				if (key != null) {
+					idMap.remove(key);
+				}
+			}
+		}
+
+		if (keys != null) {
+			keys.removeRange(fromIndex, toIndex);
+		}
+
+		super.removeRange(fromIndex, toIndex);
 	}
 
 	/**
-	 * Inserts all of the elements in the specified collection into this list,
-	 * starting at the specified position.
+	 * Removes all elements that are contained in the specified collection.
+	 * The elements are removed in a single pass over the list.
 	 * 
-	 * @param index
 	 * @param c
 	 * @return
 	 */
 	@Override
-	public boolean addAll(int index, Collection<? extends V> c) {
-
-		for (V v : c) {
-			add(index++, v);
-		}
-
-		return true;
+	public boolean removeAll(Collection<?> c) {
+		return removeMarked(findRemoved(c, false));
 	}
 
 	/**
-	 * Removes all elements
+	 * Retains only the elements that are contained in the specified
+	 * collection. The elements are removed in a single pass over the list.
+	 * 
+	 * @param c
+	 * @return
 	 */
 	@Override
-	public void clear() {
-		super.clear();
-		idMap.clear();
+	public boolean retainAll(Collection<?> c) {
+		return removeMarked(findRemoved(c, true));
 	}
 
+	/**
+	 * Removes all elements that satisfy the predicate. Like
+	 * {@link #removeAll(Collection)} the elements are removed in a single
+	 * pass over the list and the key index is kept up to date. The predicate
+	 * is tested for every element first, so the list is unchanged if it
+	 * throws an exception.
+	 * 
+	 * @param filter
+	 * @return true, if the list has been changed
+	 */
 	@Override
-	public Set<V> getByMapKey(K id) {
-		V value = idMap.get(id);
-		if (value == null) {
-			return null;
+	public boolean removeIf(Predicate<? super V> filter) {
+
+		if (filter == null) {
+			throw new NullPointerException("Predicate is null");
+		}
+
+		boolean[] removed = new boolean[size()];
+		for (int i = 0; i < removed.length; i++) {
+			removed[i] = filter.test(super.get(i));
 		}
 
-		Set<V> set = new LinkedHashSet<V>();
-		set.add(value);
+		return removeMarked(removed);
+	}
+
+	/**
+	 * Finds the elements that are (or are not) contained in the given
+	 * collection
+	 * 
+	 * @param c
+	 * @param retain
+	 *            true, if the elements contained in the collection should be
+	 *            kept, false if they should be removed
+	 * @return true for every position, whose element should be removed
+	 */
+	private boolean[] findRemoved(Collection<?> c, boolean retain) {
+
+		if (c == null) {
+			throw new NullPointerException("Collection is null");
+		}
 
-		return set;
+		boolean[] removed = new boolean[size()];
+		for (int i = 0; i < removed.length; i++) {
+			removed[i] = c.contains(super.get(i)) != retain;
+		}
 
+		return removed;
 	}
 
-	@Override
-	public Set<V> removeByMapKey(K id) {
-		V removed = idMap.remove(id);
+	/**
+	 * Removes the elements at the marked positions from the list and from the
+	 * key index. The remaining elements are moved towards the head of the list
+	 * and the tail is cut off at once.
+	 * 
+	 * @param removed
+	 *            true for every position, whose element should be removed
+	 * @return true, if the list has been changed
+	 */
+	private boolean removeMarked(boolean[] removed) {
 
-		if (removed != null) {
-			int index;
-			while ((index = super.indexOf(removed)) >= 0) {
-				super.remove(index);
+		int size = size();
+		int write = 0;
+
+		for (int read = 0; read < size; read++) {
+			if (!removed[read]) {
+				if (write != read) {
+					move(read, write);
+				}
+				write++;
+			} else if (idMap != null) {
+				K key = keyAt(read);
+				if (key != null) {
+					idMap.remove(key);
+				}
 			}
 		}
 
-		Set<V> set = new LinkedHashSet<V>();
-		set.add(removed);
-		return set;
+		if (statistics != null) {
+			statistics.linearScans++;
+			statistics.removes += size - write;
+		}
+
+		if (write == size) {
+			return false;
+		}
+
+		truncate(write);
+		return true;
+	}
+
+	@Override
+	public Iterator<V> iterator() {
+		return listIterator(0);
+	}
+
+	@Override
+	public ListIterator<V> listIterator() {
+		return listIterator(0);
 	}
 
 	/**
-	 * Removes the element at the specified position in this list.
+	 * Get a {@link ListIterator} that keeps the key index up to date, if the
+	 * list is modified through the iterator.
 	 * 
 	 * @param index
 	 * @return
 	 */
 	@Override
-	public V remove(int index) {
-		V v = super.remove(index);
+	public ListIterator<V> listIterator(int index) {
+		return new ListMapIterator<V>(this, index) {
+			@Override
+			int modCount() {
+				return modCount;
+			}
+		};
+	}
 
-		if (v != null && v.getMapKey() != null) {
-			idMap.remove(v.getMapKey());
-		}
+	/**
+	 * Get a view of the given range of this list. Modifications of the view
+	 * are written through to this list and its key index.
+	 * 
+	 * @param fromIndex
+	 * @param toIndex
+	 * @return
+	 */
+	@Override
+	public List<V> subList(int fromIndex, int toIndex) {
+		return new ListMapSubList<V>(this, fromIndex, toIndex) {
+			@Override
+			int parentModCount() {
+				return UniqueArrayListMap.this.modCount;
+			}
 
-		return v;
+			@Override
+			void parentRemoveRange(int fromIndex, int toIndex) {
+				UniqueArrayListMap.this.removeRange(fromIndex, toIndex);
+			}
+		};
 	}
 
 	/**
@@ -222,36 +1524,215 @@ public class UniqueArrayListMap<K, V extends Mappable<K>> extends ArrayList<V>
 	 * @param element
 	 * @return
 	 */
-	@SuppressWarnings("unchecked")
 	@Override
 	public boolean remove(Object element) {
-		boolean removed = super.remove(element);
+		int index = indexOf(element);
 
-		if (removed && element instanceof Mappable<?>
-				&& ((V) element).getMapKey() != null) {
-			idMap.remove(((V) element).getMapKey());
+		if (index < 0) {
+			return false;
 		}
 
-		return removed;
+		remove(index);
+		return true;
+	}
+
+	/**
+	 * Get the position of the value with the key index. The remembered
+	 * position of the {@link Entry} is checked first.
+	 * 
+	 * @param value
+	 * @return The position, -1 if the value is not in the list or -2, if the
+	 *         key index can't tell, because the value has no key or because
+	 *         key caching is enabled and the key of an element may have
+	 *         changed since it has been added
+	 */
+	@SuppressWarnings("unchecked")
+	private int lookupPosition(Object value) {
+
+		if (!(value instanceof Mappable)) {
+			return -1;
+		}
+
+		Object key = ((Mappable<K>) value).getMapKey();
+
+		if (key == null) {
+			return -2;
+		}
+
+		Entry<V> found = keyIndex().get(key);
+		boolean hit = found != null && found.value.equals(value);
+
+		if (statistics != null) {
+			statistics.lookup(hit);
+		}
+
+		if (hit) {
+			int position = positionOf(found);
+			if (position >= 0) {
+				return position;
+			}
+		}
+
+		return keys != null ? -2 : -1;
 	}
 
+	/**
+	 * Checks if the list contains the value. For values with a key this is
+	 * answered by the key index in O(1), without looking up the position of
+	 * the value. The list is searched only for values without a key and, if
+	 * key caching is enabled, for values that are not in the key index,
+	 * because the key of an element may have changed since it has been
+	 * added.
+	 * 
+	 * @param value
+	 * @return
+	 */
 	@SuppressWarnings("unchecked")
 	@Override
 	public boolean contains(Object value) {
 
-		if (value instanceof Mappable && ((V) value).getMapKey() != null) {
-			V found = idMap.get(((Mappable<K>) value).getMapKey());
-			if (found == value) {
-				return true;
+		if (!(value instanceof Mappable)) {
+			return false;
+		}
+
+		Object key = ((Mappable<K>) value).getMapKey();
+
+		if (key != null) {
+			Entry<V> found = keyIndex().get(key);
+			boolean hit = found != null && found.value.equals(value);
+
+			if (statistics != null) {
+				statistics.lookup(hit);
+			}
+
+			if (hit || keys == null) {
+				return hit;
 			}
 		}
 
-		return super.contains(value);
+		if (statistics != null) {
+			statistics.linearScans++;
+		}
+
+		return super.indexOf(value) >= 0;
+	}
+
+	/**
+	 * Get the position of the value. For values with a key this is answered
+	 * by the key index, only values without a key are searched in the list.
+	 * 
+	 * @param value
+	 * @return The position or -1
+	 */
+	@Override
+	public int indexOf(Object value) {
+
+		int position = lookupPosition(value);
+
+		if (position != -2) {
+			return position;
+		}
+
+		if (statistics != null) {
+			statistics.linearScans++;
+		}
+
+		return super.indexOf(value);
+	}
+
+	/**
+	 * Get the position of the last occurrence of the value. There is at most
+	 * one element per key, so for values with a key this is the same as
+	 * {@link #indexOf(Object)}.
+	 * 
+	 * @param value
+	 * @return The position or -1
+	 */
+	@Override
+	public int lastIndexOf(Object value) {
+
+		int position = lookupPosition(value);
+
+		if (position != -2) {
+			return position;
+		}
+
+		if (statistics != null) {
+			statistics.linearScans++;
+		}
+
+		return super.lastIndexOf(value);
+	}
+
+	/**
+	 * Replaces every element with the result of the operator. The results are
+	 * computed first, then the list is cleared and the results are added with
+	 * {@link #addAll(Collection)}. So if the operator returns elements with
+	 * the same key, they are handled according to the
+	 * {@link DuplicateKeyPolicy} and the list may get shorter.
+	 * 
+	 * @param operator
+	 */
+	@Override
+	public void replaceAll(UnaryOperator<V> operator) {
+
+		if (operator == null) {
+			throw new NullPointerException("Operator is null");
+		}
+
+		int size = size();
+		List<V> replaced = new ArrayList<V>(size);
+		for (int i = 0; i < size; i++) {
+			replaced.add(operator.apply(super.get(i)));
+		}
+
+		clear();
+		addAll(replaced);
+	}
+
+	/**
+	 * Sorts the list. The cached keys are moved along with their elements and
+	 * the positions in the key index are updated afterwards.
+	 * 
+	 * @param c
+	 *            The {@link Comparator} or null for the natural ordering
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public void sort(Comparator<? super V> c) {
+
+		Object[] elements = toArray();
+
+		if (keys != null) {
+			keys.sort(elements, (Comparator<Object>) c);
+		} else {
+			Arrays.sort(elements, (Comparator<Object>) c);
+		}
+
+		for (int i = 0; i < elements.length; i++) {
+			super.set(i, (V) elements[i]);
+		}
+
+		modCount++;
+
+		if (idMap == null) {
+			return;
+		}
 
+		for (int i = 0; i < elements.length; i++) {
+			K key = keyAt(i);
+			Entry<V> entry = key == null ? null : idMap.get(key);
+			if (entry != null) {
+				entry.position = i;
+			}
+		}
 	}
 
 	/**
-	 * Replaces the
+	 * Replaces the element at the given position. The slot is overwritten in
+	 * place. If there is another element with the same key as the new one, the
+	 * other element will be removed, so the elements behind it move one
+	 * position towards the head of the list.
 	 * 
 	 * @param position
 	 * @param e
@@ -266,20 +1747,56 @@ public class UniqueArrayListMap<K, V extends Mappable<K>> extends ArrayList<V>
 							+ " but the size of this list is " + size());
 		}
 
-		V previous = get(position);
+		if (statistics != null) {
+			statistics.sets++;
+		}
+
+		K previousKey = keyAt(position);
+		K key = e.getMapKey();
+
+		Entry<V> entry = key == null ? null : keyIndex().get(key);
 
-		if (e.getMapKey() != null) {
-			idMap.remove(previous.getMapKey());
+		if (entry != null && !key.equals(previousKey)) {
+			// Another element has the same key
+			if (statistics != null) {
+				statistics.duplicateKeys++;
+			}
+			int other = positionOf(entry);
+			if (other >= 0) {
+				listRemove(other);
+				if (other < position) {
+					position--;
+				}
+			}
 		}
 
-		add(position, e);
+		V previous = super.get(position);
+		listSet(position, e, key);
 
-		return previous;
+		if (previousKey != null && !previousKey.equals(key)) {
+			unindex(previousKey);
+		}
 
+		if (key != null) {
+			if (entry == null) {
+				idMap.put(key, new Entry<V>(e, position));
+			} else {
+				entry.value = e;
+				entry.position = position;
+			}
+		}
+
+		return previous;
 	}
 
 	@Override
 	public V getFirstByMapKey(K id) {
-		return idMap.get(id);
+		Entry<V> entry = keyIndex().get(id);
+
+		if (statistics != null) {
+			statistics.lookup(entry != null);
+		}
+
+		return entry == null ? null : entry.value;
 	}
 }
\ No newline at end of file
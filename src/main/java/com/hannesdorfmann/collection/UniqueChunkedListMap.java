@@ -0,0 +1,571 @@
+package com.hannesdorfmann.collection;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+import com.hannesdorfmann.collection.UniqueArrayListMap.DuplicateKeyPolicy;
+
+/**
+ * A {@link ListMap} with the same semantics as {@link UniqueArrayListMap},
+ * that stores its elements in chunks instead of one array. Inserting and
+ * removing at any position, for example at the head of the list, is
+ * O(sqrt(n)) instead of O(n), because only the elements of one chunk are
+ * shifted. The key index remembers the chunk of every element, so
+ * {@link #removeByMapKey(Object)} and {@link #indexOf(Object)} only search
+ * one chunk.
+ * 
+ * @author Hannes Dorfmann
+ * 
+ * @param <K>
+ *            The Key
+ * @param <V>
+ *            The Value
+ */
+public class UniqueChunkedListMap<K, V extends Mappable<K>> extends
+		AbstractList<V> implements ListMap<K, V>, RandomAccess, Serializable {
+
+	private static final long serialVersionUID = 5639724924787317654L;
+
+	/**
+	 * The index entry of a key. It holds the value and the chunk that contains
+	 * the value. It's also an unmodifiable {@link Set} view containing just the
+	 * value, so that {@link UniqueChunkedListMap#getByMapKey(Object)} doesn't
+	 * need to allocate a new {@link Set} on every call.
+	 */
+	private static class Entry<V> extends AbstractSet<V> {
+
+		V value;
+		ChunkedArray.Chunk chunk;
+
+		Entry(V value, ChunkedArray.Chunk chunk) {
+			this.value = value;
+			this.chunk = chunk;
+		}
+
+		@Override
+		public Iterator<V> iterator() {
+			return new Iterator<V>() {
+
+				private boolean hasNext = true;
+
+				@Override
+				public boolean hasNext() {
+					return hasNext;
+				}
+
+				@Override
+				public V next() {
+					if (!hasNext) {
+						throw new NoSuchElementException();
+					}
+					hasNext = false;
+					return value;
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException(
+							"The set returned by getByMapKey() is read only");
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return 1;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return value == null ? o == null : value.equals(o);
+		}
+	}
+
+	private transient ChunkedArray elements;
+
+	private transient Map<K, Entry<V>> idMap;
+
+	private DuplicateKeyPolicy duplicateKeyPolicy = DuplicateKeyPolicy.MOVE_TO_END;
+
+	/**
+	 * Creates a new empty {@link UniqueChunkedListMap}
+	 */
+	public UniqueChunkedListMap() {
+		init();
+	}
+
+	/**
+	 * Constructs a {@link UniqueChunkedListMap} containing the elements of the
+	 * specified collection, in the order they are returned by the collection's
+	 * iterator.
+	 * 
+	 * @param c
+	 */
+	public UniqueChunkedListMap(Collection<? extends V> c) {
+		this();
+		addAll(c);
+	}
+
+	private void init() {
+		idMap = new HashMap<K, Entry<V>>();
+		elements = new ChunkedArray() {
+			@SuppressWarnings("unchecked")
+			@Override
+			void moved(Object element, Chunk chunk) {
+				K key = ((V) element).getMapKey();
+				if (key != null) {
+					Entry<V> entry = idMap.get(key);
+					if (entry != null && entry.value == element) {
+						entry.chunk = chunk;
+					}
+				}
+			}
+		};
+	}
+
+	/**
+	 * Set the {@link DuplicateKeyPolicy} that is used by
+	 * {@link #add(Mappable)}
+	 * 
+	 * @param duplicateKeyPolicy
+	 */
+	public void setDuplicateKeyPolicy(DuplicateKeyPolicy duplicateKeyPolicy) {
+		if (duplicateKeyPolicy == null) {
+			throw new NullPointerException("DuplicateKeyPolicy is null");
+		}
+		this.duplicateKeyPolicy = duplicateKeyPolicy;
+	}
+
+	public DuplicateKeyPolicy getDuplicateKeyPolicy() {
+		return duplicateKeyPolicy;
+	}
+
+	/**
+	 * Get the current position of the value of the given entry
+	 * 
+	 * @param entry
+	 * @return
+	 */
+	private int positionOf(Entry<V> entry) {
+		return elements.indexOf(entry.chunk, entry.value);
+	}
+
+	/**
+	 * Inserts the element and adds it to the key index
+	 * 
+	 * @param index
+	 * @param e
+	 * @param key
+	 * @param entry
+	 *            The entry of the key or null
+	 */
+	private void insert(int index, V e, K key, Entry<V> entry) {
+		ChunkedArray.Chunk chunk = elements.add(index, e);
+		modCount++;
+
+		if (key == null) {
+			return;
+		}
+
+		if (entry == null) {
+			idMap.put(key, new Entry<V>(e, chunk));
+		} else {
+			entry.value = e;
+			entry.chunk = chunk;
+		}
+	}
+
+	/**
+	 * Appends the specified element to the end of this list. If there is
+	 * already an element with the same key, it's handled according to the
+	 * {@link DuplicateKeyPolicy}.
+	 * 
+	 * @param e
+	 * @return
+	 */
+	@Override
+	public boolean add(V e) {
+
+		K key = e.getMapKey();
+		Entry<V> entry = key == null ? null : idMap.get(key);
+
+		if (entry != null) {
+			int position = positionOf(entry);
+
+			if (duplicateKeyPolicy == DuplicateKeyPolicy.REPLACE_IN_PLACE) {
+				elements.set(position, e);
+				entry.value = e;
+				return true;
+			}
+
+			elements.remove(position);
+		}
+
+		insert(size(), e, key, entry);
+		return true;
+	}
+
+	/**
+	 * Inserts the specified element at the specified position in this list. If
+	 * there is already an element with the same key, the old one will be
+	 * removed before the new one gets inserted, regardless of the
+	 * {@link DuplicateKeyPolicy}. The index is checked before anything is
+	 * removed, so an invalid index doesn't change the list.
+	 * 
+	 * @param index
+	 *            The position of the new element. If it's the size of the
+	 *            list, the element is appended, even if the old element has
+	 *            been removed.
+	 * @param e
+	 */
+	@Override
+	public void add(int index, V e) {
+
+		if (index < 0 || index > size()) {
+			throw new IndexOutOfBoundsException("Index: " + index
+					+ ", Size: " + size());
+		}
+
+		K key = e.getMapKey();
+		Entry<V> entry = key == null ? null : idMap.get(key);
+
+		if (entry != null) {
+			elements.remove(positionOf(entry));
+			if (index > size()) {
+				index = size();
+			}
+		}
+
+		insert(index, e, key, entry);
+	}
+
+	/**
+	 * Inserts all of the elements in the specified collection into this list,
+	 * starting at the specified position. Elements in the list with a key that
+	 * is also in the collection are removed.
+	 * 
+	 * @param index
+	 *            The position of the first new element after the old
+	 *            elements with the same keys have been removed, like the
+	 *            index of {@link #add(int, Mappable)}. If it's the size of the
+	 *            list, the elements are appended, even if old elements have
+	 *            been removed.
+	 * @param c
+	 * @return
+	 */
+	@Override
+	public boolean addAll(int index, Collection<? extends V> c) {
+
+		if (index < 0 || index > size()) {
+			throw new IndexOutOfBoundsException("Index: " + index
+					+ ", Size: " + size());
+		}
+
+		// Remove the old elements with the same keys first
+		for (V e : c) {
+			K key = e.getMapKey();
+			Entry<V> entry = key == null ? null : idMap.remove(key);
+
+			if (entry != null) {
+				elements.remove(positionOf(entry));
+				modCount++;
+			}
+		}
+
+		if (index > size()) {
+			index = size();
+		}
+
+		for (V e : c) {
+			K key = e.getMapKey();
+			Entry<V> entry = key == null ? null : idMap.get(key);
+
+			if (entry != null) {
+				// Inserted by this call before, so it's in front of the index
+				elements.remove(positionOf(entry));
+				index--;
+			}
+
+			insert(index++, e, key, entry);
+		}
+
+		return !c.isEmpty();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V get(int index) {
+		return (V) elements.get(index);
+	}
+
+	@Override
+	public int size() {
+		return elements.size();
+	}
+
+	/**
+	 * Replaces the element at the given position. If there is another element
+	 * with the same key as the new one, the other element will be removed, so
+	 * the elements behind it move one position towards the head of the list.
+	 * 
+	 * @param position
+	 * @param e
+	 * @return
+	 */
+	@Override
+	public V set(int position, V e) {
+
+		V previous = get(position);
+		K previousKey = previous.getMapKey();
+		K key = e.getMapKey();
+
+		Entry<V> entry = key == null ? null : idMap.get(key);
+
+		if (entry != null && !key.equals(previousKey)) {
+			// Another element has the same key
+			int other = positionOf(entry);
+			elements.remove(other);
+			modCount++;
+			if (other < position) {
+				position--;
+			}
+		}
+
+		elements.set(position, e);
+
+		if (previousKey != null && !previousKey.equals(key)) {
+			idMap.remove(previousKey);
+		}
+
+		if (key != null) {
+			ChunkedArray.Chunk chunk = elements.chunkAt(position);
+
+			if (entry == null) {
+				idMap.put(key, new Entry<V>(e, chunk));
+			} else {
+				entry.value = e;
+				entry.chunk = chunk;
+			}
+		}
+
+		return previous;
+	}
+
+	/**
+	 * Replaces every element with the result of the operator. Like in
+	 * {@link UniqueArrayListMap#replaceAll(UnaryOperator)} the results are
+	 * computed first, then the list is cleared and the results are added with
+	 * {@link #add(Mappable)}. So if the operator returns elements with the
+	 * same key, they are handled according to the {@link DuplicateKeyPolicy}
+	 * and the list may get shorter.
+	 * 
+	 * @param operator
+	 */
+	@Override
+	public void replaceAll(UnaryOperator<V> operator) {
+
+		if (operator == null) {
+			throw new NullPointerException("Operator is null");
+		}
+
+		int size = size();
+		List<V> replaced = new ArrayList<V>(size);
+		for (int i = 0; i < size; i++) {
+			replaced.add(operator.apply(get(i)));
+		}
+
+		clear();
+		addAll(replaced);
+	}
+
+	/**
+	 * Sorts the list. The elements are written back in place, so no element
+	 * is removed, and the chunks in the key index are updated.
+	 * 
+	 * @param c
+	 *            The {@link Comparator} or null for the natural ordering
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public void sort(Comparator<? super V> c) {
+
+		Object[] sorted = elements.toArray();
+		Arrays.sort(sorted, (Comparator<Object>) c);
+
+		for (int i = 0; i < sorted.length; i++) {
+			V v = (V) sorted[i];
+			elements.set(i, v);
+
+			K key = v.getMapKey();
+			Entry<V> entry = key == null ? null : idMap.get(key);
+			if (entry != null) {
+				entry.chunk = elements.chunkAt(i);
+			}
+		}
+
+		modCount++;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V remove(int index) {
+		V removed = (V) elements.remove(index);
+		modCount++;
+
+		K key = removed.getMapKey();
+		if (key != null) {
+			Entry<V> entry = idMap.get(key);
+			if (entry != null && entry.value == removed) {
+				idMap.remove(key);
+			}
+		}
+
+		return removed;
+	}
+
+	/**
+	 * Get the position of the value. For values with a key this is answered
+	 * by the key index, that knows the chunk of the element. Only values
+	 * without a key are searched in the list.
+	 * 
+	 * @param o
+	 * @return The position or -1
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public int indexOf(Object o) {
+
+		if (!(o instanceof Mappable)) {
+			return -1;
+		}
+
+		Object key = ((Mappable<K>) o).getMapKey();
+
+		if (key == null) {
+			return super.indexOf(o);
+		}
+
+		Entry<V> found = idMap.get(key);
+		return found != null && found.value.equals(o) ? positionOf(found) : -1;
+	}
+
+	/**
+	 * There is at most one element per key, so for values with a key this is
+	 * the same as {@link #indexOf(Object)}
+	 * 
+	 * @param o
+	 * @return The position or -1
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public int lastIndexOf(Object o) {
+
+		if (o instanceof Mappable && ((Mappable<K>) o).getMapKey() == null) {
+			return super.lastIndexOf(o);
+		}
+
+		return indexOf(o);
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return indexOf(o) >= 0;
+	}
+
+	@Override
+	public void clear() {
+		elements.clear();
+		idMap.clear();
+		modCount++;
+	}
+
+	@Override
+	public Object[] toArray() {
+		return elements.toArray();
+	}
+
+	/**
+	 * Get the value by the key. The returned {@link Set} is a read only view
+	 * that contains exactly one element and is not allocated on each call.
+	 * 
+	 * @param id
+	 * @return The read only set or null, if there is no element with the given
+	 *         key
+	 */
+	@Override
+	public Set<V> getByMapKey(K id) {
+		return idMap.get(id);
+	}
+
+	@Override
+	public V getFirstByMapKey(K id) {
+		Entry<V> entry = idMap.get(id);
+		return entry == null ? null : entry.value;
+	}
+
+	@Override
+	public Set<V> removeByMapKey(K id) {
+		Entry<V> entry = idMap.remove(id);
+
+		if (entry == null) {
+			return null;
+		}
+
+		elements.remove(positionOf(entry));
+		modCount++;
+		return entry;
+	}
+
+	/**
+	 * Writes the {@link DuplicateKeyPolicy} and the elements, the key index is
+	 * built again when the list is read
+	 * 
+	 * @param out
+	 * @throws IOException
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeInt(size());
+
+		for (int i = 0; i < size(); i++) {
+			out.writeObject(get(i));
+		}
+	}
+
+	/**
+	 * Reads the elements and builds the key index
+	 * 
+	 * @param in
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		in.defaultReadObject();
+		init();
+
+		int count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			V v = (V) in.readObject();
+			K key = v.getMapKey();
+			insert(size(), v, key, null);
+		}
+	}
+}
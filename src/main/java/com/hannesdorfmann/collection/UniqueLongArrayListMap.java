@@ -0,0 +1,798 @@
+package com.hannesdorfmann.collection;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+import com.hannesdorfmann.collection.UniqueArrayListMap.DuplicateKeyPolicy;
+
+/**
+ * A {@link UniqueArrayListMap} for {@link LongMappable} elements. The key index
+ * is a {@link LongIndex}, a open addressing hash table with primitive long
+ * keys, that stores the value and its position in the list. So the keys are
+ * never boxed when adding, removing or searching by key with
+ * {@link #getFirstByMapKey(long)} and {@link #removeByMapKey(long)}. This
+ * implementation is not thread safe.
+ * 
+ * <p>
+ * Unlike a normal List implementation, every item is unique ( proved by
+ * {@link LongMappable#getLongMapKey()} in this list. What happens if an element
+ * with an already existing key is added is defined by the
+ * {@link DuplicateKeyPolicy}.
+ * </p>
+ * 
+ * @author Hannes Dorfmann
+ * 
+ * @param <V>
+ *            The Value
+ */
+public class UniqueLongArrayListMap<V extends LongMappable> extends
+		ArrayList<V> implements ListMap<Long, V> {
+
+	private static final long serialVersionUID = -4396610759673363237L;
+
+	private transient LongIndex<V> idMap;
+
+	private DuplicateKeyPolicy duplicateKeyPolicy = DuplicateKeyPolicy.MOVE_TO_END;
+
+	/**
+	 * Creates a new empty empty {@link UniqueLongArrayListMap}
+	 */
+	public UniqueLongArrayListMap() {
+		super();
+		idMap = new LongIndex<V>(0, true);
+	}
+
+	/**
+	 * Creates a new empty {@link UniqueLongArrayListMap} that uses the given
+	 * {@link DuplicateKeyPolicy}
+	 * 
+	 * @param duplicateKeyPolicy
+	 */
+	public UniqueLongArrayListMap(DuplicateKeyPolicy duplicateKeyPolicy) {
+		this();
+		setDuplicateKeyPolicy(duplicateKeyPolicy);
+	}
+
+	/**
+	 * Constructs a {@link UniqueLongArrayListMap} containing the elements of
+	 * the specified collection, in the order they are returned by the
+	 * collection's iterator.
+	 * 
+	 * @param c
+	 */
+	public UniqueLongArrayListMap(Collection<? extends V> c) {
+		this(c.size());
+		addAll(c);
+	}
+
+	public UniqueLongArrayListMap(int initialCapacity) {
+		super(initialCapacity);
+		idMap = new LongIndex<V>(initialCapacity, true);
+	}
+
+	/**
+	 * Reads the list and rebuilds the key index in one pass. The key index is
+	 * transient, only the elements (the {@link ArrayList} part) are written.
+	 * 
+	 * @param in
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		in.defaultReadObject();
+
+		int size = size();
+		idMap = new LongIndex<V>(size, true);
+
+		for (int i = 0; i < size; i++) {
+			V v = super.get(i);
+			putIndex(v.getLongMapKey(), v, i);
+		}
+	}
+
+	/**
+	 * Increases the capacity of the list and of the key index, so that both
+	 * can hold at least the given number of elements without growing.
+	 * 
+	 * @param minCapacity
+	 */
+	@Override
+	public void ensureCapacity(int minCapacity) {
+		super.ensureCapacity(minCapacity);
+
+		if (idMap != null) {
+			idMap.ensureCapacity(minCapacity);
+		}
+	}
+
+	/**
+	 * Get the {@link DuplicateKeyPolicy} that is used by
+	 * {@link #add(LongMappable)}
+	 * 
+	 * @return
+	 */
+	public DuplicateKeyPolicy getDuplicateKeyPolicy() {
+		return duplicateKeyPolicy;
+	}
+
+	/**
+	 * Set the {@link DuplicateKeyPolicy} that should be used by
+	 * {@link #add(LongMappable)}
+	 * 
+	 * @param duplicateKeyPolicy
+	 */
+	public void setDuplicateKeyPolicy(DuplicateKeyPolicy duplicateKeyPolicy) {
+		if (duplicateKeyPolicy == null) {
+			throw new NullPointerException("DuplicateKeyPolicy is null");
+		}
+		this.duplicateKeyPolicy = duplicateKeyPolicy;
+	}
+
+	/**
+	 * Get the current position of the value with the given key and updates the
+	 * remembered position
+	 * 
+	 * @param key
+	 * @return The position or -1, if there is no such value in the list
+	 */
+	private int positionOf(long key) {
+
+		int slot = idMap.slot(key);
+		if (slot < 0) {
+			return -1;
+		}
+
+		int position = PositionHint.find(this, idMap.valueAt(slot),
+				idMap.positionAt(slot));
+		if (position >= 0) {
+			idMap.setPositionAt(slot, position);
+		}
+
+		return position;
+	}
+
+	private void putIndex(long key, V v, int position) {
+		int slot = idMap.put(key, v);
+		idMap.setPositionAt(slot, position);
+	}
+
+	/**
+	 * Removes the value with the given key from the list, but not from the key
+	 * index
+	 * 
+	 * @param key
+	 * @return The position of the removed value or -1
+	 */
+	private int removeFromList(long key) {
+		int position = positionOf(key);
+		if (position >= 0) {
+			super.remove(position);
+		}
+		return position;
+	}
+
+	/**
+	 * Appends the specified element to the end of this list.
+	 * 
+	 * @param e
+	 * @return
+	 */
+	@Override
+	public boolean add(V e) {
+
+		long key = e.getLongMapKey();
+
+		if (duplicateKeyPolicy == DuplicateKeyPolicy.REPLACE_IN_PLACE) {
+			int position = positionOf(key);
+			if (position >= 0) {
+				super.set(position, e);
+				putIndex(key, e, position);
+				return true;
+			}
+		} else {
+			removeFromList(key);
+		}
+
+		super.add(e);
+		putIndex(key, e, size() - 1);
+
+		return true;
+	}
+
+	/**
+	 * Inserts the specified element at the specified position in this list. If
+	 * there is already an element with the same key, the old one will be
+	 * removed before the new one gets inserted, regardless of the
+	 * {@link DuplicateKeyPolicy}. The index is checked before anything is
+	 * removed, so an invalid index doesn't change the list.
+	 * 
+	 * @param index
+	 *            The position of the new element. If it's the size of the
+	 *            list, the element is appended, even if the old element has
+	 *            been removed.
+	 * @param e
+	 */
+	@Override
+	public void add(int index, V e) {
+
+		if (index < 0 || index > size()) {
+			throw new IndexOutOfBoundsException("Index: " + index
+					+ ", Size: " + size());
+		}
+
+		long key = e.getLongMapKey();
+
+		if (removeFromList(key) >= 0 && index > size()) {
+			index = size();
+		}
+
+		super.add(index, e);
+		putIndex(key, e, index);
+	}
+
+	/**
+	 * Appends all of the elements in the specified collection to the end of
+	 * this list, in the order that they are returned by the specified
+	 * collection's Iterator. Elements with a key that is already in the list
+	 * are handled according to the {@link DuplicateKeyPolicy}. If the
+	 * collection contains more elements with the same key, the last one wins.
+	 * 
+	 * @param c
+	 * @return
+	 */
+	@Override
+	public boolean addAll(Collection<? extends V> c) {
+
+		if (duplicateKeyPolicy == DuplicateKeyPolicy.REPLACE_IN_PLACE) {
+			return upsertAll(c.toArray());
+		}
+
+		return insertAll(size(), c.toArray());
+	}
+
+	/**
+	 * Inserts all of the elements in the specified collection into this list,
+	 * starting at the specified position. Elements in the list with a key that
+	 * is also in the collection are removed, regardless of the
+	 * {@link DuplicateKeyPolicy}. If the collection contains more elements
+	 * with the same key, only the last one is inserted.
+	 * 
+	 * @param index
+	 *            The position of the first new element after the old
+	 *            elements with the same keys have been removed, like the
+	 *            index of {@link #add(int, LongMappable)}. If it's the size of the
+	 *            list, the elements are appended, even if old elements have
+	 *            been removed.
+	 * @param c
+	 * @return
+	 */
+	@Override
+	public boolean addAll(int index, Collection<? extends V> c) {
+
+		if (index < 0 || index > size()) {
+			throw new IndexOutOfBoundsException("Index: " + index
+					+ ", Size: " + size());
+		}
+
+		return insertAll(index, c.toArray());
+	}
+
+	/**
+	 * Maps every key to the last element with this key and the position of
+	 * this element in the batch
+	 * 
+	 * @param batch
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	private LongIndex<V> lastOccurrences(Object[] batch) {
+		LongIndex<V> last = new LongIndex<V>(batch.length, true);
+		for (int i = 0; i < batch.length; i++) {
+			V v = (V) batch[i];
+			last.setPositionAt(last.put(v.getLongMapKey(), v), i);
+		}
+		return last;
+	}
+
+	/**
+	 * Inserts the elements at the given position. Elements of the list with
+	 * the same keys are removed with a single pass over the list and the
+	 * elements behind the position are shifted only once.
+	 * 
+	 * @param index
+	 * @param batch
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	private boolean insertAll(int index, Object[] batch) {
+
+		LongIndex<V> lastOfKey = lastOccurrences(batch);
+
+		// Only the last element of every key is inserted
+		List<V> inserted = new ArrayList<V>(lastOfKey.size());
+		int[] removed = new int[lastOfKey.size()];
+		int removedCount = 0;
+
+		for (int i = 0; i < batch.length; i++) {
+			V v = (V) batch[i];
+			long key = v.getLongMapKey();
+
+			if (lastOfKey.positionAt(lastOfKey.slot(key)) == i) {
+				inserted.add(v);
+
+				int position = positionOf(key);
+				if (position >= 0) {
+					removed[removedCount++] = position;
+				}
+			}
+		}
+
+		// Remove the elements with the same keys from the list
+		if (removedCount > 0) {
+			Arrays.sort(removed, 0, removedCount);
+			removePositions(removed, removedCount);
+
+			if (index > size()) {
+				index = size();
+			}
+		}
+
+		ensureCapacity(size() + inserted.size());
+		super.addAll(index, inserted);
+
+		for (int i = 0; i < inserted.size(); i++) {
+			V v = inserted.get(i);
+			putIndex(v.getLongMapKey(), v, index + i);
+		}
+
+		return !inserted.isEmpty();
+	}
+
+	/**
+	 * Adds the elements according to
+	 * {@link DuplicateKeyPolicy#REPLACE_IN_PLACE}: Elements with a key that is
+	 * already in the list replace the old element, all others are appended at
+	 * once.
+	 * 
+	 * @param batch
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	private boolean upsertAll(Object[] batch) {
+
+		LongIndex<V> lastOfKey = lastOccurrences(batch);
+
+		List<V> appended = new ArrayList<V>(lastOfKey.size());
+		for (int i = 0; i < batch.length; i++) {
+
+			// The first occurrence of a key handles the last element of the
+			// key, all further occurrences are skipped
+			V v = lastOfKey.remove(((V) batch[i]).getLongMapKey());
+			if (v == null) {
+				continue;
+			}
+
+			long key = v.getLongMapKey();
+			int position = positionOf(key);
+
+			if (position >= 0) {
+				super.set(position, v);
+				putIndex(key, v, position);
+			} else {
+				appended.add(v);
+			}
+		}
+
+		int index = size();
+		ensureCapacity(index + appended.size());
+		super.addAll(appended);
+
+		for (int i = 0; i < appended.size(); i++) {
+			V v = appended.get(i);
+			putIndex(v.getLongMapKey(), v, index + i);
+		}
+
+		return batch.length > 0;
+	}
+
+	/**
+	 * Removes the elements at the given positions from the list (but not from
+	 * the key index) in a single pass
+	 * 
+	 * @param positions
+	 *            The sorted positions
+	 * @param count
+	 *            The number of positions
+	 */
+	private void removePositions(int[] positions, int count) {
+
+		int size = size();
+		int write = positions[0];
+		int next = 0;
+
+		for (int read = positions[0]; read < size; read++) {
+			if (next < count && positions[next] == read) {
+				next++;
+			} else {
+				super.set(write++, super.get(read));
+			}
+		}
+
+		super.removeRange(write, size);
+	}
+
+	/**
+	 * Removes all elements
+	 */
+	@Override
+	public void clear() {
+		super.clear();
+		idMap.clear();
+	}
+
+	/**
+	 * Get the value by the key. Use {@link #getFirstByMapKey(long)} to get the
+	 * value without allocating a {@link Set}.
+	 * 
+	 * @param id
+	 * @return A read only set or null, if there is no element with the given
+	 *         key
+	 */
+	public Set<V> getByMapKey(long id) {
+		V value = idMap.get(id);
+		return value == null ? null : Collections.singleton(value);
+	}
+
+	@Override
+	public Set<V> getByMapKey(Long id) {
+		return id == null ? null : getByMapKey(id.longValue());
+	}
+
+	/**
+	 * Get the value by the key
+	 * 
+	 * @param id
+	 * @return The value or null, if there is no element with the given key
+	 */
+	public V getFirstByMapKey(long id) {
+		return idMap.get(id);
+	}
+
+	@Override
+	public V getFirstByMapKey(Long id) {
+		return id == null ? null : getFirstByMapKey(id.longValue());
+	}
+
+	/**
+	 * Removes the element with the given key.
+	 * 
+	 * @param id
+	 * @return A read only set containing the removed element or null, if there
+	 *         was no element with the given key
+	 */
+	public Set<V> removeByMapKey(long id) {
+
+		removeFromList(id);
+		V removed = idMap.remove(id);
+
+		return removed == null ? null : Collections.singleton(removed);
+	}
+
+	@Override
+	public Set<V> removeByMapKey(Long id) {
+		return id == null ? null : removeByMapKey(id.longValue());
+	}
+
+	/**
+	 * Removes the element at the specified position in this list.
+	 * 
+	 * @param index
+	 * @return
+	 */
+	@Override
+	public V remove(int index) {
+		V v = super.remove(index);
+		idMap.remove(v.getLongMapKey());
+		return v;
+	}
+
+	/**
+	 * Removes the elements from fromIndex (inclusive) to toIndex (exclusive)
+	 * from the list and from the key index.
+	 * 
+	 * @param fromIndex
+	 * @param toIndex
+	 */
+	@Override
+	protected void removeRange(int fromIndex, int toIndex) {
+
+		for (int i = fromIndex; i < toIndex; i++) {
+			V v = super.get(i);
+			idMap.remove(v.getLongMapKey());
+		}
+
+		super.removeRange(fromIndex, toIndex);
+	}
+
+	/**
+	 * Removes all elements that are contained in the specified collection.
+	 * The elements are removed in a single pass over the list.
+	 * 
+	 * @param c
+	 * @return
+	 */
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		return removeMarked(findRemoved(c, false));
+	}
+
+	/**
+	 * Retains only the elements that are contained in the specified
+	 * collection. The elements are removed in a single pass over the list.
+	 * 
+	 * @param c
+	 * @return
+	 */
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		return removeMarked(findRemoved(c, true));
+	}
+
+	/**
+	 * Removes all elements that satisfy the predicate. Like
+	 * {@link #removeAll(Collection)} the elements are removed in a single
+	 * pass over the list and the key index is kept up to date. The predicate
+	 * is tested for every element first, so the list is unchanged if it
+	 * throws an exception.
+	 * 
+	 * @param filter
+	 * @return true, if the list has been changed
+	 */
+	@Override
+	public boolean removeIf(Predicate<? super V> filter) {
+
+		if (filter == null) {
+			throw new NullPointerException("Predicate is null");
+		}
+
+		boolean[] removed = new boolean[size()];
+		for (int i = 0; i < removed.length; i++) {
+			removed[i] = filter.test(super.get(i));
+		}
+
+		return removeMarked(removed);
+	}
+
+	/**
+	 * Finds the elements that are (or are not) contained in the given
+	 * collection
+	 * 
+	 * @param c
+	 * @param retain
+	 *            true, if the elements contained in the collection should be
+	 *            kept, false if they should be removed
+	 * @return true for every position, whose element should be removed
+	 */
+	private boolean[] findRemoved(Collection<?> c, boolean retain) {
+
+		if (c == null) {
+			throw new NullPointerException("Collection is null");
+		}
+
+		boolean[] removed = new boolean[size()];
+		for (int i = 0; i < removed.length; i++) {
+			removed[i] = c.contains(super.get(i)) != retain;
+		}
+
+		return removed;
+	}
+
+	/**
+	 * Removes the elements at the marked positions from the list and from the
+	 * key index. The remaining elements are moved towards the head of the list
+	 * and the tail is cut off at once.
+	 * 
+	 * @param removed
+	 *            true for every position, whose element should be removed
+	 * @return true, if the list has been changed
+	 */
+	private boolean removeMarked(boolean[] removed) {
+
+		int size = size();
+		int write = 0;
+
+		for (int read = 0; read < size; read++) {
+			V v = super.get(read);
+
+			if (!removed[read]) {
+				if (write != read) {
+					super.set(write, v);
+				}
+				write++;
+			} else {
+				idMap.remove(v.getLongMapKey());
+			}
+		}
+
+		if (write == size) {
+			return false;
+		}
+
+		super.removeRange(write, size);
+		return true;
+	}
+
+	@Override
+	public Iterator<V> iterator() {
+		return listIterator(0);
+	}
+
+	@Override
+	public ListIterator<V> listIterator() {
+		return listIterator(0);
+	}
+
+	/**
+	 * Get a {@link ListIterator} that keeps the key index up to date, if the
+	 * list is modified through the iterator.
+	 * 
+	 * @param index
+	 * @return
+	 */
+	@Override
+	public ListIterator<V> listIterator(int index) {
+		return new ListMapIterator<V>(this, index) {
+			@Override
+			int modCount() {
+				return modCount;
+			}
+		};
+	}
+
+	/**
+	 * Get a view of the given range of this list. Modifications of the view
+	 * are written through to this list and its key index.
+	 * 
+	 * @param fromIndex
+	 * @param toIndex
+	 * @return
+	 */
+	@Override
+	public List<V> subList(int fromIndex, int toIndex) {
+		return new ListMapSubList<V>(this, fromIndex, toIndex) {
+			@Override
+			int parentModCount() {
+				return UniqueLongArrayListMap.this.modCount;
+			}
+
+			@Override
+			void parentRemoveRange(int fromIndex, int toIndex) {
+				UniqueLongArrayListMap.this.removeRange(fromIndex, toIndex);
+			}
+		};
+	}
+
+	/**
+	 * Removes the first occurrence of the specified element from this list, if
+	 * it is present.
+	 * 
+	 * @param element
+	 * @return
+	 */
+	@Override
+	public boolean remove(Object element) {
+		int index = indexOf(element);
+
+		if (index < 0) {
+			return false;
+		}
+
+		remove(index);
+		return true;
+	}
+
+	/**
+	 * Every element is in the key index, so {@link LongMappable} values are
+	 * searched by key only.
+	 */
+	@Override
+	public boolean contains(Object value) {
+
+		if (value instanceof LongMappable) {
+			V found = idMap.get(((LongMappable) value).getLongMapKey());
+			return found != null && found.equals(value);
+		}
+
+		return super.contains(value);
+	}
+
+	/**
+	 * Replaces every element with the result of the operator. The results are
+	 * computed first, then the list is cleared and the results are added with
+	 * {@link #addAll(Collection)}. So if the operator returns elements with
+	 * the same key, they are handled according to the
+	 * {@link DuplicateKeyPolicy} and the list may get shorter.
+	 * 
+	 * @param operator
+	 */
+	@Override
+	public void replaceAll(UnaryOperator<V> operator) {
+
+		if (operator == null) {
+			throw new NullPointerException("Operator is null");
+		}
+
+		int size = size();
+		List<V> replaced = new ArrayList<V>(size);
+		for (int i = 0; i < size; i++) {
+			replaced.add(operator.apply(super.get(i)));
+		}
+
+		clear();
+		addAll(replaced);
+	}
+
+	/**
+	 * Sorts the list and updates the positions in the key index afterwards
+	 * 
+	 * @param c
+	 *            The {@link Comparator} or null for the natural ordering
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public void sort(Comparator<? super V> c) {
+
+		Object[] elements = toArray();
+		Arrays.sort(elements, (Comparator<Object>) c);
+
+		for (int i = 0; i < elements.length; i++) {
+			V v = (V) elements[i];
+			super.set(i, v);
+			idMap.setPositionAt(idMap.slot(v.getLongMapKey()), i);
+		}
+
+		modCount++;
+	}
+
+	/**
+	 * Replaces the element at the given position. If there is another element
+	 * with the same key as the new one, the other element will be removed.
+	 * 
+	 * @param position
+	 * @param e
+	 * @return
+	 */
+	@Override
+	public V set(int position, V e) {
+
+		V previous = super.get(position);
+
+		long key = e.getLongMapKey();
+		long previousKey = previous.getLongMapKey();
+
+		if (key != previousKey) {
+			int other = removeFromList(key);
+			if (other >= 0 && other < position) {
+				position--;
+			}
+			idMap.remove(previousKey);
+		}
+
+		super.set(position, e);
+		putIndex(key, e, position);
+
+		return previous;
+	}
+}
@@ -0,0 +1,374 @@
+package com.hannesdorfmann.collection;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A compact, insertion ordered {@link Set} that is used by the key index of
+ * {@link ArrayListMap} for keys with more than one value. The values are stored
+ * in a small array, which is scanned linearly. Only if there are more than
+ * {@link #MAX_ARRAY_SIZE} values a {@link LinkedHashMap} is used.
+ * 
+ * <p>
+ * A list can contain equal values more than once, but the set contains them
+ * only once. So the bucket counts the copies of every value, and a value is
+ * removed from the set only when its last copy has been removed from the list.
+ * For every value the bucket can also remember a position hint (see
+ * {@link PositionHint}).
+ * </p>
+ * 
+ * <p>
+ * The {@link Set} interface is read only. The index uses
+ * {@link #addValue(Object)} and {@link #removeValue(Object)}.
+ * </p>
+ * 
+ * @author Hannes Dorfmann
+ * 
+ * @param <V>
+ */
+class ValueBucket<V> extends AbstractSet<V> {
+
+	/**
+	 * The max number of values that are stored in the array
+	 */
+	static final int MAX_ARRAY_SIZE = 8;
+
+	private Object[] values;
+
+	/**
+	 * The number of copies of the value in the same slot of {@link #values},
+	 * or null if every value is contained only once
+	 */
+	private int[] counts;
+
+	/**
+	 * The position hint of the value in the same slot of {@link #values} or
+	 * -1, if the position is unknown. Null, if no position is known.
+	 */
+	private int[] positions;
+
+	private int size;
+
+	/**
+	 * Maps a value to its number of copies and its position hint, or to null
+	 * if it's contained once and its position is unknown
+	 */
+	private LinkedHashMap<V, int[]> hashed;
+
+	/**
+	 * Creates a bucket containing one copy of the value
+	 * 
+	 * @param first
+	 */
+	ValueBucket(V first) {
+		values = new Object[2];
+		values[0] = first;
+		size = 1;
+	}
+
+	/**
+	 * Creates a bucket containing the two values, or two copies of the value
+	 * if they are equal
+	 * 
+	 * @param first
+	 * @param second
+	 */
+	ValueBucket(V first, V second) {
+		this(first);
+		addValue(second);
+	}
+
+	private static boolean equal(Object a, Object b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	private int indexOf(Object o) {
+		for (int i = 0; i < size; i++) {
+			if (equal(values[i], o)) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	private int countAt(int index) {
+		return counts == null ? 1 : counts[index];
+	}
+
+	private int positionAt(int index) {
+		return positions == null ? -1 : positions[index];
+	}
+
+	/**
+	 * Get the number of copies and the position hint of a value, that is
+	 * contained in {@link #hashed}
+	 * 
+	 * @param v
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	private int[] hashedEntry(Object v) {
+		int[] entry = hashed.get(v);
+		if (entry == null) {
+			entry = new int[] { 1, -1 };
+			hashed.put((V) v, entry);
+		}
+		return entry;
+	}
+
+	/**
+	 * Adds a copy of the value
+	 * 
+	 * @param v
+	 * @return true if the value has not been contained before
+	 */
+	boolean addValue(V v) {
+
+		if (hashed != null) {
+			if (hashed.containsKey(v)) {
+				hashedEntry(v)[0]++;
+				return false;
+			}
+			hashed.put(v, null);
+			return true;
+		}
+
+		int index = indexOf(v);
+		if (index >= 0) {
+			if (counts == null) {
+				counts = new int[values.length];
+				Arrays.fill(counts, 1);
+			}
+			counts[index]++;
+			return false;
+		}
+
+		if (size == MAX_ARRAY_SIZE) {
+			hashed = new LinkedHashMap<V, int[]>(MAX_ARRAY_SIZE * 4);
+			for (int i = 0; i < size; i++) {
+				int[] entry = countAt(i) == 1 && positionAt(i) < 0 ? null
+						: new int[] { countAt(i), positionAt(i) };
+				hashed.put(valueAt(i), entry);
+			}
+			hashed.put(v, null);
+			values = null;
+			counts = null;
+			positions = null;
+			size = 0;
+			return true;
+		}
+
+		if (size == values.length) {
+			int capacity = Math.min(size * 2, MAX_ARRAY_SIZE);
+			values = Arrays.copyOf(values, capacity);
+			if (counts != null) {
+				counts = Arrays.copyOf(counts, capacity);
+			}
+			if (positions != null) {
+				positions = Arrays.copyOf(positions, capacity);
+			}
+		}
+
+		values[size] = v;
+		if (counts != null) {
+			counts[size] = 1;
+		}
+		if (positions != null) {
+			positions[size] = -1;
+		}
+		size++;
+		return true;
+	}
+
+	/**
+	 * Removes one copy of the value
+	 * 
+	 * @param v
+	 * @return What the key index should map the key to afterwards: null if
+	 *         the bucket is empty, the remaining value if there is just one
+	 *         copy of one value left (its position hint can still be read by
+	 *         {@link #position(Object)}), otherwise this bucket
+	 */
+	Object removeValue(Object v) {
+
+		if (hashed != null) {
+			int[] entry = hashed.get(v);
+			if (entry != null && entry[0] > 1) {
+				entry[0]--;
+			} else {
+				hashed.remove(v);
+			}
+		} else {
+			int index = indexOf(v);
+			if (index >= 0 && countAt(index) > 1) {
+				counts[index]--;
+			} else if (index >= 0) {
+				size--;
+				int moved = size - index;
+				System.arraycopy(values, index + 1, values, index, moved);
+				if (counts != null) {
+					System.arraycopy(counts, index + 1, counts, index, moved);
+				}
+				if (positions != null) {
+					System.arraycopy(positions, index + 1, positions, index,
+							moved);
+				}
+				values[size] = null;
+			}
+		}
+
+		if (size() == 0) {
+			return null;
+		}
+
+		V remaining = first();
+		if (size() > 1 || count(remaining) > 1) {
+			return this;
+		}
+
+		return remaining;
+	}
+
+	/**
+	 * Get the number of copies of the value
+	 * 
+	 * @param v
+	 * @return The number of copies, 0 if the value is not contained
+	 */
+	int count(Object v) {
+
+		if (hashed != null) {
+			int[] entry = hashed.get(v);
+			return entry != null ? entry[0] : hashed.containsKey(v) ? 1 : 0;
+		}
+
+		int index = indexOf(v);
+		return index < 0 ? 0 : countAt(index);
+	}
+
+	/**
+	 * Get the position hint of the value
+	 * 
+	 * @param v
+	 * @return The position hint or -1, if it's unknown
+	 */
+	int position(Object v) {
+
+		if (hashed != null) {
+			int[] entry = hashed.get(v);
+			return entry == null ? -1 : entry[1];
+		}
+
+		int index = indexOf(v);
+		return index < 0 ? -1 : positionAt(index);
+	}
+
+	/**
+	 * Remembers the position, where a contained value has been found
+	 * 
+	 * @param v
+	 * @param position
+	 */
+	void setPosition(Object v, int position) {
+
+		if (hashed != null) {
+			if (hashed.containsKey(v)) {
+				hashedEntry(v)[1] = position;
+			}
+			return;
+		}
+
+		int index = indexOf(v);
+		if (index >= 0) {
+			if (positions == null) {
+				positions = new int[values.length];
+				Arrays.fill(positions, -1);
+			}
+			positions[index] = position;
+		}
+	}
+
+	/**
+	 * Get the first value (the one that has been added first)
+	 * 
+	 * @return
+	 */
+	V first() {
+		if (hashed != null) {
+			return hashed.isEmpty() ? null : hashed.keySet().iterator().next();
+		}
+
+		return size == 0 ? null : valueAt(0);
+	}
+
+	@SuppressWarnings("unchecked")
+	private V valueAt(int index) {
+		return (V) values[index];
+	}
+
+	@Override
+	public int size() {
+		return hashed != null ? hashed.size() : size;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return hashed != null ? hashed.containsKey(o) : indexOf(o) >= 0;
+	}
+
+	@Override
+	public Iterator<V> iterator() {
+
+		if (hashed != null) {
+			final Iterator<V> it = hashed.keySet().iterator();
+
+			return new Iterator<V>() {
+
+				@Override
+				public boolean hasNext() {
+					return it.hasNext();
+				}
+
+				@Override
+				public V next() {
+					return it.next();
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException(
+							"The set returned by getByMapKey() is read only");
+				}
+			};
+		}
+
+		return new Iterator<V>() {
+
+			private int next;
+
+			@Override
+			public boolean hasNext() {
+				return next < size;
+			}
+
+			@Override
+			public V next() {
+				if (next >= size) {
+					throw new NoSuchElementException();
+				}
+				return valueAt(next++);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException(
+						"The set returned by getByMapKey() is read only");
+			}
+		};
+	}
+}
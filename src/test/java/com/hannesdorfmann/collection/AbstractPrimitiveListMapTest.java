@@ -0,0 +1,191 @@
+package com.hannesdorfmann.collection;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+import org.junit.Test;
+
+/**
+ * The tests of the {@link ListMap} implementations with primitive keys, like
+ * {@link IntArrayListMap} and {@link LongArrayListMap}. The subclasses call the
+ * primitive key methods, this class only works with long ids.
+ *
+ * @author Hannes Dorfmann
+ *
+ * @param <K>
+ *            The boxed key type
+ * @param <D>
+ *            The test data type
+ * @param <L>
+ *            The tested list type
+ */
+public abstract class AbstractPrimitiveListMapTest<K, D extends Mappable<K>,
+		L extends ListMap<K, D>> {
+
+	protected abstract L newList();
+
+	protected abstract D newData(long id);
+
+	protected abstract long id(D d);
+
+	/**
+	 * The distance between the generated keys, so that also large keys are
+	 * tested
+	 */
+	protected abstract long keyStep();
+
+	protected abstract Set<D> getByMapKey(L list, long id);
+
+	protected abstract D getFirstByMapKey(L list, long id);
+
+	protected abstract Set<D> removeByMapKey(L list, long id);
+
+	@Test
+	public void test() {
+
+		L list = newList();
+		List<D> inserted = new ArrayList<D>();
+
+		int tests = 10000;
+		// Insert, also negative and large keys
+		for (int i = 0; i < tests; i++) {
+
+			D d = newData(i * 7919L - 5000L * keyStep());
+			list.add(d);
+			inserted.add(d);
+			assertTrue(list.contains(d));
+			assertTrue(getByMapKey(list, id(d)).contains(d));
+			assertTrue(getFirstByMapKey(list, id(d)) == d);
+			assertTrue(list.getFirstByMapKey(d.getMapKey()) == d);
+		}
+
+		assertTrue(list.size() == tests);
+
+		// remove every second one
+		for (int i = 0; i < tests; i += 2) {
+			D d = inserted.get(i);
+			Set<D> removed = removeByMapKey(list, id(d));
+			assertTrue(removed.size() == 1);
+			assertFalse(list.contains(d));
+			assertNull(getByMapKey(list, id(d)));
+		}
+
+		// the others must still be found
+		for (int i = 1; i < tests; i += 2) {
+			D d = inserted.get(i);
+			assertTrue(getFirstByMapKey(list, id(d)) == d);
+			assertTrue(list.get(i / 2) == d);
+		}
+
+		list.clear();
+		assertTrue(list.isEmpty());
+		assertNull(getFirstByMapKey(list, id(inserted.get(1))));
+
+		// Multiple values per key
+		D a = newData(1);
+		D b = newData(1);
+		D c = newData(2);
+		list.add(a);
+		list.add(c);
+		list.add(0, b);
+
+		assertTrue(getByMapKey(list, 1).size() == 2);
+		assertTrue(getFirstByMapKey(list, 1) == a);
+
+		list.remove(a);
+		assertTrue(getFirstByMapKey(list, 1) == b);
+		assertTrue(getByMapKey(list, 1).size() == 1);
+
+		// set
+		D d = newData(3);
+		assertTrue(list.set(0, d) == b);
+		assertNull(getByMapKey(list, 1));
+		assertTrue(getFirstByMapKey(list, 3) == d);
+		assertTrue(list.get(0) == d);
+		assertTrue(list.size() == 2);
+
+		list.remove(1);
+		assertNull(getFirstByMapKey(list, 2));
+		assertTrue(list.size() == 1);
+		assertNull(removeByMapKey(list, 2));
+
+		// The same element twice
+		list.add(d);
+		assertTrue(list.remove(d));
+		assertTrue(list.contains(d));
+		assertTrue(getFirstByMapKey(list, 3) == d);
+		assertTrue(list.remove(d));
+		assertFalse(list.contains(d));
+		assertNull(getByMapKey(list, 3));
+	}
+
+	@Test
+	public void serialization() throws Exception {
+
+		L list = newList();
+		for (int i = 0; i < 1000; i++) {
+			list.add(newData(i % 100 - 50L * keyStep()));
+		}
+
+		L read = TestUtils.serializeAndRead(list);
+		assertTrue(read.size() == list.size());
+		for (int i = 0; i < list.size(); i++) {
+			assertTrue(id(read.get(i)) == id(list.get(i)));
+		}
+		long key = 7 - 50L * keyStep();
+		assertTrue(getByMapKey(read, key).size() == 10);
+		assertTrue(getFirstByMapKey(read, key) == read.get(7));
+		read.remove(7);
+		assertTrue(getByMapKey(read, key).size() == 9);
+	}
+
+	@Test
+	public void removeIfReplaceAllAndSort() {
+
+		L list = newList();
+		for (int i = 0; i < 10; i++) {
+			list.add(newData(i % 5));
+		}
+
+		assertTrue(list.removeIf(new Predicate<D>() {
+			@Override
+			public boolean test(D d) {
+				return id(d) == 1;
+			}
+		}));
+		assertTrue(list.size() == 8);
+		assertNull(getByMapKey(list, 1));
+
+		list.replaceAll(new UnaryOperator<D>() {
+			@Override
+			public D apply(D d) {
+				return newData(id(d) + 10);
+			}
+		});
+		assertNull(getByMapKey(list, 0));
+		assertTrue(getByMapKey(list, 10).size() == 2);
+		for (D d : list) {
+			assertTrue(getByMapKey(list, id(d)).contains(d));
+		}
+
+		list.sort(new Comparator<D>() {
+			@Override
+			public int compare(D lhs, D rhs) {
+				return id(lhs) < id(rhs) ? 1 : (id(lhs) == id(rhs) ? 0 : -1);
+			}
+		});
+		assertTrue(id(list.get(0)) == 14);
+		list.remove(0);
+		list.remove(0);
+		assertNull(getByMapKey(list, 14));
+		assertTrue(getByMapKey(list, 13).size() == 2);
+	}
+}
@@ -0,0 +1,272 @@
+package com.hannesdorfmann.collection;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+import org.junit.Test;
+
+import com.hannesdorfmann.collection.UniqueArrayListMap.DuplicateKeyPolicy;
+
+/**
+ * The tests of the unique {@link ListMap} implementations with primitive keys,
+ * like {@link UniqueIntArrayListMap} and {@link UniqueLongArrayListMap}. Like
+ * {@link AbstractPrimitiveListMapTest} it only works with long ids.
+ *
+ * @author Hannes Dorfmann
+ *
+ * @param <K>
+ *            The boxed key type
+ * @param <D>
+ *            The test data type
+ * @param <L>
+ *            The tested list type
+ */
+public abstract class AbstractUniquePrimitiveListMapTest<K,
+		D extends Mappable<K>, L extends ListMap<K, D>> {
+
+	protected abstract L newList();
+
+	protected abstract D newData(long id);
+
+	protected abstract long id(D d);
+
+	/**
+	 * The distance between the generated keys, so that also large keys are
+	 * tested
+	 */
+	protected abstract long keyStep();
+
+	protected abstract Set<D> getByMapKey(L list, long id);
+
+	protected abstract D getFirstByMapKey(L list, long id);
+
+	protected abstract Set<D> removeByMapKey(L list, long id);
+
+	protected abstract void setDuplicateKeyPolicy(L list,
+			DuplicateKeyPolicy policy);
+
+
+	@Test
+	public void test() {
+
+		L list = newList();
+		List<D> inserted = new ArrayList<D>();
+
+		int tests = 10000;
+		// Insert
+		for (int i = 0; i < tests; i++) {
+
+			D d = newData(i * 7919L - 5000L * keyStep());
+			list.add(d);
+			inserted.add(d);
+			assertTrue(list.contains(d));
+			assertTrue(getByMapKey(list, id(d)).contains(d));
+			assertTrue(getFirstByMapKey(list, id(d)) == d);
+		}
+
+		// remove inserted
+		for (D d : inserted) {
+			assertTrue(removeByMapKey(list, id(d)).contains(d));
+			assertFalse(list.contains(d));
+			assertNull(getByMapKey(list, id(d)));
+		}
+
+		assertTrue(list.isEmpty());
+		inserted.clear();
+
+		// Try to insert items with same key
+		for (int i = 0; i < tests; i++) {
+
+			D d = newData(i);
+			list.add(d);
+
+			D d2 = newData(i);
+			list.add(d2);
+
+			assertFalse(list.contains(d));
+			assertTrue(list.contains(d2));
+			assertTrue(getFirstByMapKey(list, i) == d2);
+			assertTrue(list.size() == i + 1);
+		}
+
+		list.clear();
+
+		for (int i = 0; i < 10; i++) {
+			list.add(newData(i));
+		}
+
+		// Move to end
+		D d = newData(3);
+		list.add(d);
+		assertTrue(list.size() == 10);
+		assertTrue(list.get(9) == d);
+		assertTrue(id(list.get(3)) == 4);
+
+		// Replace in place
+		setDuplicateKeyPolicy(list, DuplicateKeyPolicy.REPLACE_IN_PLACE);
+		D d2 = newData(5);
+		list.add(d2);
+		assertTrue(list.size() == 10);
+		assertTrue(list.get(4) == d2);
+
+		// Shifted positions
+		list.add(0, newData(100));
+		list.add(0, newData(101));
+		D d3 = newData(9);
+		list.add(d3);
+		assertTrue(list.get(10) == d3);
+
+		// set() replaces and removes the other element with the same key
+		D d4 = newData(100);
+		assertTrue(id(list.set(0, d4)) == 101);
+		assertTrue(list.size() == 11);
+		assertTrue(list.get(0) == d4);
+		assertTrue(getFirstByMapKey(list, 100) == d4);
+		assertNull(getFirstByMapKey(list, 101));
+
+		assertTrue(list.remove(d4));
+		assertNull(getFirstByMapKey(list, 100));
+		assertTrue(list.size() == 10);
+		assertTrue(list.get(8) == d3);
+
+		// addAll resolves duplicate keys in one pass
+		List<D> batch = new ArrayList<D>();
+		D d6 = newData(6);
+		D d7 = newData(7);
+		batch.add(newData(6));
+		batch.add(d7);
+		batch.add(newData(200));
+		batch.add(d6);
+		list.addAll(batch);
+		assertTrue(list.size() == 11);
+		assertTrue(getFirstByMapKey(list, 6) == d6);
+		assertTrue(getFirstByMapKey(list, 7) == d7);
+		assertTrue(id(list.get(10)) == 200);
+
+		setDuplicateKeyPolicy(list, DuplicateKeyPolicy.MOVE_TO_END);
+		list.addAll(0, batch);
+		assertTrue(list.size() == 11);
+		assertTrue(list.get(0) == d7);
+		assertTrue(id(list.get(1)) == 200);
+		assertTrue(list.get(2) == d6);
+		for (int i = 0; i < list.size(); i++) {
+			assertTrue(getFirstByMapKey(list, id(list.get(i))) == list.get(i));
+		}
+
+		// All elements of the list are removed in front of the index
+		list.clear();
+		list.add(newData(0));
+		list.add(newData(8));
+		batch.clear();
+		D b5 = newData(5);
+		D b8 = newData(8);
+		D b0 = newData(0);
+		batch.add(b5);
+		batch.add(b8);
+		batch.add(b0);
+		list.addAll(batch);
+		assertTrue(list.size() == 3);
+		assertTrue(list.get(0) == b5);
+		assertTrue(list.get(1) == b8);
+		assertTrue(list.get(2) == b0);
+
+		// add() at the end, with the old element in front of the index
+		D a5 = newData(5);
+		list.add(3, a5);
+		assertTrue(list.size() == 3);
+		assertTrue(list.get(2) == a5);
+
+		try {
+			list.add(4, newData(8));
+			assertTrue(false);
+		} catch (IndexOutOfBoundsException e) {
+		}
+		assertTrue(list.size() == 3);
+		assertTrue(list.get(0) == b8);
+		for (int i = 0; i < list.size(); i++) {
+			assertTrue(getFirstByMapKey(list, id(list.get(i))) == list.get(i));
+		}
+	}
+
+	@Test
+	public void serialization() throws Exception {
+
+		L list = newList();
+		for (int i = 0; i < 1000; i++) {
+			list.add(newData(i * 7919L - 5000L * keyStep()));
+		}
+
+		L read = TestUtils.serializeAndRead(list);
+		assertTrue(read.size() == 1000);
+		for (int i = 0; i < read.size(); i++) {
+			assertTrue(id(read.get(i)) == id(list.get(i)));
+			assertTrue(getFirstByMapKey(read, id(read.get(i))) == read.get(i));
+		}
+
+		D d = newData(id(list.get(5)));
+		read.add(d);
+		assertTrue(read.size() == 1000);
+		assertTrue(read.get(999) == d);
+		assertTrue(id(read.get(5)) == id(list.get(6)));
+	}
+
+	@Test
+	public void removeIfReplaceAllAndSort() {
+
+		L list = newList();
+		for (int i = 0; i < 10; i++) {
+			list.add(newData(i));
+		}
+
+		assertTrue(list.removeIf(new Predicate<D>() {
+			@Override
+			public boolean test(D d) {
+				return id(d) % 2 == 1;
+			}
+		}));
+		assertTrue(list.size() == 5);
+		for (int i = 0; i < 10; i++) {
+			assertTrue((getFirstByMapKey(list, i) == null) == (i % 2 == 1));
+		}
+
+		// Elements with the same key are moved to the end
+		list.replaceAll(new UnaryOperator<D>() {
+			@Override
+			public D apply(D d) {
+				return newData(id(d) / 4);
+			}
+		});
+		assertTrue(list.size() == 3);
+		for (int i = 0; i < list.size(); i++) {
+			assertTrue(id(list.get(i)) == i);
+			assertTrue(getFirstByMapKey(list, i) == list.get(i));
+		}
+
+		list.sort(new Comparator<D>() {
+			@Override
+			public int compare(D lhs, D rhs) {
+				return id(lhs) < id(rhs) ? 1 : (id(lhs) == id(rhs) ? 0 : -1);
+			}
+		});
+		for (int i = 0; i < list.size(); i++) {
+			D d = list.get(i);
+			assertTrue(id(d) == 2 - i);
+			assertTrue(list.indexOf(d) == i);
+			assertTrue(getFirstByMapKey(list, id(d)) == d);
+		}
+
+		list.remove(list.get(0));
+		assertNull(getByMapKey(list, 2));
+		assertTrue(removeByMapKey(list, 0).size() == 1);
+		assertTrue(list.size() == 1);
+		assertTrue(id(list.get(0)) == 1);
+	}
+}
@@ -3,10 +3,21 @@ package com.hannesdorfmann.collection;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.ListIterator;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
 import org.junit.Test;
 
@@ -148,4 +159,790 @@ public class ArrayListMapTest {
 		}
 
 	}
+
+	@Test
+	public void removeByMapKey() {
+
+		ArrayListMap<String, Data<String>> list = new ArrayListMap<String, Data<String>>();
+
+		// every third element shares the key "x"
+		for (int i = 0; i < 300; i++) {
+			if (i % 3 == 0) {
+				list.add(new Data<String>("x"));
+			} else {
+				list.add(new Data<String>(Integer.toString(i)));
+			}
+		}
+
+		Set<Data<String>> removed = list.removeByMapKey("x");
+		assertTrue(removed.size() == 100);
+		assertTrue(list.size() == 200);
+		assertNull(list.getByMapKey("x"));
+
+		// the order of the remaining elements must be kept
+		int index = 0;
+		for (int i = 0; i < 300; i++) {
+			if (i % 3 != 0) {
+				assertTrue(list.get(index).getMapKey().equals(
+						Integer.toString(i)));
+				assertTrue(list.getFirstByMapKey(Integer.toString(i)) == list
+						.get(index));
+				index++;
+			}
+		}
+
+		assertNull(list.removeByMapKey("x"));
+		assertTrue(list.size() == 200);
+	}
+
+	@Test
+	public void manyValuesPerKey() {
+
+		ArrayListMap<String, Data<String>> list = new ArrayListMap<String, Data<String>>();
+		List<Data<String>> inserted = new ArrayList<Data<String>>();
+
+		// grows from a single value to the array and to the hashed bucket
+		for (int i = 0; i < 3 * ValueBucket.MAX_ARRAY_SIZE; i++) {
+			Data<String> d = new Data<String>("x");
+			list.add(d);
+			inserted.add(d);
+
+			Set<Data<String>> found = list.getByMapKey("x");
+			assertTrue(found.size() == i + 1);
+			assertTrue(found.containsAll(inserted));
+			assertTrue(list.getFirstByMapKey("x") == inserted.get(0));
+		}
+
+		// the values are returned in insert order
+		int i = 0;
+		for (Data<String> d : list.getByMapKey("x")) {
+			assertTrue(d == inserted.get(i++));
+		}
+
+		try {
+			list.getByMapKey("x").iterator().remove();
+			assertTrue(false);
+		} catch (UnsupportedOperationException e) {
+		}
+
+		// and shrinks back
+		while (inserted.size() > 1) {
+			Data<String> d = inserted.remove(0);
+			list.remove(d);
+			assertFalse(list.contains(d));
+			assertTrue(list.getByMapKey("x").size() == inserted.size());
+			assertTrue(list.getFirstByMapKey("x") == inserted.get(0));
+		}
+
+		list.remove(0);
+		assertNull(list.getByMapKey("x"));
+		assertNull(list.getFirstByMapKey("x"));
+		assertTrue(list.isEmpty());
+	}
+
+	@Test
+	public void addAll() {
+
+		ArrayListMap<Integer, Data<Integer>> list = new ArrayListMap<Integer, Data<Integer>>();
+		for (int i = 0; i < 5; i++) {
+			list.add(new Data<Integer>(i));
+		}
+
+		List<Data<Integer>> batch = new ArrayList<Data<Integer>>();
+		for (int i = 0; i < 100; i++) {
+			batch.add(new Data<Integer>(i % 10));
+		}
+
+		assertTrue(list.addAll(2, batch));
+		assertTrue(list.size() == 105);
+		assertTrue(list.get(0).id == 0);
+		assertTrue(list.get(1).id == 1);
+		assertTrue(list.get(2) == batch.get(0));
+		assertTrue(list.get(101) == batch.get(99));
+		assertTrue(list.get(102).id == 2);
+		assertTrue(list.getByMapKey(3).size() == 11);
+		assertTrue(list.getByMapKey(7).size() == 10);
+
+		batch.clear();
+		for (int i = 0; i < 100; i++) {
+			batch.add(new Data<Integer>(i % 10));
+		}
+
+		assertTrue(list.addAll(batch));
+		assertTrue(list.size() == 205);
+		assertTrue(list.getByMapKey(3).size() == 21);
+		assertTrue(list.get(204) == batch.get(99));
+		assertFalse(list.addAll(new ArrayList<Data<Integer>>()));
+	}
+
+	@Test
+	public void bulkRemoval() {
+
+		ArrayListMap<Integer, Data<Integer>> list = new ArrayListMap<Integer, Data<Integer>>();
+		List<Data<Integer>> odd = new ArrayList<Data<Integer>>();
+		for (int i = 0; i < 100; i++) {
+			Data<Integer> d = new Data<Integer>(i);
+			list.add(d);
+			if (i % 2 == 1) {
+				odd.add(d);
+			}
+		}
+
+		// removeAll and retainAll
+		assertTrue(list.removeAll(new HashSet<Data<Integer>>(odd)));
+		assertFalse(list.removeAll(odd));
+		assertTrue(list.size() == 50);
+		assertNull(list.getByMapKey(1));
+		assertTrue(list.getFirstByMapKey(2) == list.get(1));
+
+		assertTrue(list.retainAll(list.subList(0, 40)));
+		assertTrue(list.size() == 40);
+		assertNull(list.getByMapKey(80));
+		assertTrue(list.getFirstByMapKey(78) == list.get(39));
+
+		// Iterator
+		Iterator<Data<Integer>> it = list.iterator();
+		while (it.hasNext()) {
+			if (it.next().id % 4 == 0) {
+				it.remove();
+			}
+		}
+		assertTrue(list.size() == 20);
+		assertNull(list.getByMapKey(0));
+		assertNull(list.getByMapKey(76));
+
+		ListIterator<Data<Integer>> listIt = list.listIterator();
+		Data<Integer> d200 = new Data<Integer>(200);
+		Data<Integer> d300 = new Data<Integer>(300);
+		listIt.next();
+		listIt.set(d200);
+		listIt.add(d300);
+		assertTrue(listIt.next().id == 6);
+		assertNull(list.getByMapKey(2));
+		assertTrue(list.getFirstByMapKey(200) == list.get(0));
+		assertTrue(list.getFirstByMapKey(300) == list.get(1));
+		assertTrue(list.size() == 21);
+
+		// Sub list
+		List<Data<Integer>> sub = list.subList(2, 12);
+		assertTrue(sub.get(0).id == 6);
+		sub.remove(0);
+		sub.set(0, new Data<Integer>(400));
+		assertNull(list.getByMapKey(6));
+		assertNull(list.getByMapKey(10));
+		assertTrue(list.getFirstByMapKey(400) == list.get(2));
+		sub.clear();
+		assertTrue(sub.isEmpty());
+		assertTrue(list.size() == 11);
+
+		for (int i = 0; i < 100; i++) {
+			Data<Integer> d = list.getFirstByMapKey(i);
+			assertTrue(d == null || list.contains(d));
+		}
+		for (Data<Integer> d : list) {
+			assertTrue(list.getFirstByMapKey(d.id) == d);
+		}
+	}
+
+	@Test
+	public void keyCaching() {
+
+		ArrayListMap<Integer, Data<Integer>> list = new ArrayListMap<Integer, Data<Integer>>();
+		for (int i = 0; i < 10; i++) {
+			list.add(new Data<Integer>(i));
+		}
+
+		list.setKeyCaching(true);
+		assertTrue(list.isKeyCaching());
+
+		List<Data<Integer>> batch = new ArrayList<Data<Integer>>();
+		for (int i = 10; i < 20; i++) {
+			batch.add(new Data<Integer>(i));
+		}
+		list.addAll(5, batch);
+		list.add(3, new Data<Integer>(20));
+
+		// The keys change while the elements are in the list
+		for (Data<Integer> d : list) {
+			d.id = d.id + 100;
+		}
+
+		Data<Integer> d3 = list.getFirstByMapKey(3);
+		assertTrue(list.remove(d3));
+		assertNull(list.getByMapKey(3));
+
+		list.remove(0);
+		assertNull(list.getByMapKey(0));
+
+		list.removeAll(new ArrayList<Data<Integer>>(list.subList(0, 5)));
+		list.subList(0, 2).clear();
+		list.add(0, new Data<Integer>(30));
+		list.removeByMapKey(19);
+
+		assertTrue(list.size() == 12);
+		for (int i = 0; i < 30; i++) {
+			Data<Integer> d = list.getFirstByMapKey(i);
+			assertTrue(d == null || list.contains(d));
+		}
+
+		list.clear();
+		list.setKeyCaching(false);
+		assertFalse(list.isKeyCaching());
+		assertTrue(list.isEmpty());
+	}
+
+	@Test
+	public void set() {
+
+		ArrayListMap<Integer, Data<Integer>> list = new ArrayListMap<Integer, Data<Integer>>();
+		for (int i = 0; i < 10; i++) {
+			list.add(new Data<Integer>(i % 5));
+		}
+
+		Data<Integer> d20 = new Data<Integer>(20);
+		Data<Integer> previous = list.get(3);
+		assertTrue(list.set(3, d20) == previous);
+		assertTrue(list.size() == 10);
+		assertTrue(list.get(3) == d20);
+		assertTrue(list.getByMapKey(3).size() == 1);
+		assertFalse(list.getByMapKey(3).contains(previous));
+		assertTrue(list.getFirstByMapKey(20) == d20);
+
+		Data<Integer> d4 = new Data<Integer>(4);
+		list.set(0, d4);
+		assertTrue(list.getByMapKey(4).size() == 3);
+		assertTrue(list.getByMapKey(0).size() == 1);
+		assertTrue(list.getByMapKey(4).contains(d4));
+
+		list.setKeyCaching(true);
+		d4.id = 100;
+		list.set(0, new Data<Integer>(7));
+		assertTrue(list.getByMapKey(4).size() == 2);
+		assertNull(list.getByMapKey(100));
+	}
+
+	@Test
+	public void serialization() throws Exception {
+
+		ArrayListMap<Integer, Data<Integer>> list = new ArrayListMap<Integer, Data<Integer>>();
+		for (int i = 0; i < 1000; i++) {
+			list.add(new Data<Integer>(i % 100));
+		}
+		list.add(new Data<Integer>(null));
+		list.setKeyCaching(true);
+
+		ArrayListMap<Integer, Data<Integer>> read = TestUtils
+				.serializeAndRead(list);
+		assertTrue(read.size() == list.size());
+		assertTrue(read.isKeyCaching());
+		for (int i = 0; i < list.size(); i++) {
+			assertTrue(read.get(i).id == list.get(i).id
+					|| read.get(i).id.equals(list.get(i).id));
+		}
+		assertTrue(read.getByMapKey(7).size() == 10);
+		assertTrue(read.getFirstByMapKey(7) == read.get(7));
+		assertNull(read.getByMapKey(100));
+
+		// The read list is fully functional
+		read.remove(7);
+		assertTrue(read.getByMapKey(7).size() == 9);
+		read.add(new Data<Integer>(100));
+		assertTrue(read.getFirstByMapKey(100) == read.get(read.size() - 1));
+
+		list.setKeyCaching(false);
+		read = TestUtils.serializeAndRead(list);
+		assertFalse(read.isKeyCaching());
+		assertTrue(read.getByMapKey(99).size() == 10);
+	}
+
+	@Test
+	public void lazyIndex() throws Exception {
+
+		List<Data<Integer>> items = new ArrayList<Data<Integer>>();
+		for (int i = 0; i < 100; i++) {
+			items.add(new Data<Integer>(i % 10));
+		}
+
+		ArrayListMap<Integer, Data<Integer>> list = new ArrayListMap<Integer, Data<Integer>>(
+				items, true);
+		assertTrue(list.isLazyIndex());
+		assertTrue(list.size() == 100);
+
+		// Modifications before the key index is built
+		list.remove(0);
+		list.add(new Data<Integer>(20));
+		list.add(0, new Data<Integer>(21));
+		list.set(1, new Data<Integer>(22));
+		list.subList(90, 95).clear();
+		list.removeAll(new ArrayList<Data<Integer>>(list.subList(80, 85)));
+
+		// First lookup builds the key index
+		assertTrue(list.getByMapKey(20).size() == 1);
+		assertTrue(list.getFirstByMapKey(21) == list.get(0));
+		assertTrue(list.getFirstByMapKey(22) == list.get(1));
+		for (int i = 0; i < list.size(); i++) {
+			assertTrue(list.getByMapKey(list.get(i).id).contains(list.get(i)));
+		}
+
+		// The key index is kept up to date from now on
+		Data<Integer> d = new Data<Integer>(30);
+		list.add(d);
+		assertTrue(list.contains(d));
+		assertTrue(list.getFirstByMapKey(30) == d);
+		list.remove(d);
+		assertNull(list.getByMapKey(30));
+		assertTrue(list.removeByMapKey(20).size() == 1);
+		assertNull(list.getByMapKey(20));
+
+		list.setLazyIndex(false);
+		assertFalse(list.isLazyIndex());
+		assertTrue(list.getFirstByMapKey(22) == list.get(1));
+
+		// Lazy key index with cached keys and serialization
+		list.setLazyIndex(true);
+		list.setKeyCaching(true);
+		list.get(1).id = 40;
+		list.remove(1);
+		assertNull(list.getByMapKey(22));
+		assertNull(list.getByMapKey(40));
+
+		list.setLazyIndex(true);
+		ArrayListMap<Integer, Data<Integer>> read = TestUtils
+				.serializeAndRead(list);
+		assertTrue(read.isLazyIndex());
+		assertTrue(read.isKeyCaching());
+		assertTrue(read.size() == list.size());
+		assertTrue(read.getFirstByMapKey(21) == read.get(0));
+	}
+
+	@Test
+	public void parallelAddAll() throws Exception {
+
+		List<Data<Integer>> items = new ArrayList<Data<Integer>>();
+		for (int i = 0; i < 50000; i++) {
+			items.add(new Data<Integer>(i % 1000));
+		}
+		items.add(new Data<Integer>(null));
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			ArrayListMap<Integer, Data<Integer>> list = new ArrayListMap<Integer, Data<Integer>>(
+					items, executor);
+			assertTrue(list.size() == items.size());
+
+			for (int key = 0; key < 1000; key++) {
+				Set<Data<Integer>> values = list.getByMapKey(key);
+				assertTrue(values.size() == 50);
+				assertTrue(list.getFirstByMapKey(key) == items.get(key));
+
+				// Same order as in the list
+				int i = key;
+				for (Data<Integer> d : values) {
+					assertTrue(d == items.get(i));
+					i += 1000;
+				}
+			}
+
+			List<Data<Integer>> batch = new ArrayList<Data<Integer>>();
+			for (int i = 0; i < 10; i++) {
+				batch.add(new Data<Integer>(i));
+			}
+			list.setKeyCaching(true);
+			list.addAll(batch, executor);
+			assertTrue(list.size() == items.size() + 10);
+			assertTrue(list.getByMapKey(9).size() == 51);
+			assertTrue(list.get(list.size() - 1) == batch.get(9));
+			assertTrue(list.remove(list.size() - 1) == batch.get(9));
+			assertTrue(list.getByMapKey(9).size() == 50);
+
+			assertFalse(list.addAll(new ArrayList<Data<Integer>>(), executor));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Checks that the secondary index contains exactly the elements of the
+	 * list with the given remainder
+	 */
+	private static void assertIndexed(
+			ArrayListMap<Integer, Data<Integer>> list, int remainder) {
+
+		Set<Data<Integer>> expected = new HashSet<Data<Integer>>();
+		for (Data<Integer> d : list) {
+			if (d.id != null && d.id % 3 == remainder) {
+				expected.add(d);
+			}
+		}
+
+		Set<Data<Integer>> indexed = list.getByIndex("remainder", remainder);
+		if (expected.isEmpty()) {
+			assertNull(indexed);
+		} else {
+			assertTrue(expected.equals(indexed));
+		}
+	}
+
+	@Test
+	public void secondaryIndex() {
+
+		IndexKey<Integer, Data<Integer>> remainder = new IndexKey<Integer, Data<Integer>>() {
+			@Override
+			public Integer getIndexKey(Data<Integer> value) {
+				return value.id == null ? null : value.id % 3;
+			}
+		};
+
+		ArrayListMap<Integer, Data<Integer>> list = new ArrayListMap<Integer, Data<Integer>>();
+		for (int i = 0; i < 10; i++) {
+			list.add(new Data<Integer>(i));
+		}
+		list.add(new Data<Integer>(null));
+
+		list.addIndex("remainder", remainder);
+		assertTrue(list.getByIndex("remainder", 0).size() == 4);
+		assertTrue(list.getByIndex("remainder", 1).contains(list.get(7)));
+		assertNull(list.getByIndex("remainder", 5));
+
+		try {
+			list.addIndex("remainder", remainder);
+			assertTrue(false);
+		} catch (IllegalArgumentException e) {
+		}
+
+		// Every operation keeps the index up to date, also with a lazy key
+		// index that is not built yet
+		list.setLazyIndex(true);
+		Random random = new Random(7);
+		for (int i = 0; i < 2000; i++) {
+			Data<Integer> d = new Data<Integer>(random.nextInt(30));
+			int op = random.nextInt(10);
+
+			if (op < 3 || list.isEmpty()) {
+				list.add(random.nextInt(list.size() + 1), d);
+			} else if (op < 4) {
+				List<Data<Integer>> batch = new ArrayList<Data<Integer>>();
+				batch.add(d);
+				batch.add(new Data<Integer>(random.nextInt(30)));
+				list.addAll(random.nextInt(list.size() + 1), batch);
+			} else if (op < 5) {
+				list.remove(random.nextInt(list.size()));
+			} else if (op < 6) {
+				list.set(random.nextInt(list.size()), d);
+			} else if (op < 7) {
+				list.removeByMapKey(d.id);
+			} else if (op < 8) {
+				int from = random.nextInt(list.size());
+				list.subList(from, Math.min(list.size(), from + 3)).clear();
+			} else if (op < 9) {
+				list.removeAll(new ArrayList<Data<Integer>>(list.subList(0,
+						Math.min(2, list.size()))));
+			} else {
+				Iterator<Data<Integer>> iterator = list.iterator();
+				iterator.next();
+				iterator.remove();
+			}
+
+			for (int r = 0; r < 3; r++) {
+				assertIndexed(list, r);
+			}
+		}
+
+		// Applying a diff
+		list.clear();
+		List<Data<Integer>> newList = new ArrayList<Data<Integer>>();
+		for (int i = 0; i < 10; i++) {
+			list.add(new Data<Integer>(i));
+			newList.add(i % 2 == 0 ? list.get(i) : new Data<Integer>(i + 10));
+		}
+		ListMapDiff.calculate(list, newList).applyTo(list);
+		assertTrue(list.equals(newList));
+		for (int r = 0; r < 3; r++) {
+			assertIndexed(list, r);
+		}
+
+		list.clear();
+		assertNull(list.getByIndex("remainder", 0));
+
+		assertTrue(list.removeIndex("remainder"));
+		assertFalse(list.removeIndex("remainder"));
+		try {
+			list.getByIndex("remainder", 0);
+			assertTrue(false);
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	@Test
+	public void indexOf() {
+
+		ArrayListMap<Integer, Data<Integer>> list = new ArrayListMap<Integer, Data<Integer>>();
+		List<Data<Integer>> all = new ArrayList<Data<Integer>>();
+		for (int i = 0; i < 100; i++) {
+			Data<Integer> d = new Data<Integer>(i % 7 == 0 ? null : i % 10);
+			all.add(d);
+			list.add(d);
+		}
+		// The same element twice
+		list.add(all.get(3));
+
+		for (Data<Integer> d : all) {
+			assertTrue(list.contains(d));
+			assertTrue(list.indexOf(d) == all.indexOf(d));
+		}
+		assertTrue(list.lastIndexOf(all.get(3)) == 100);
+		assertTrue(list.lastIndexOf(all.get(7)) == 7);
+
+		// Not in the list, with and without a key
+		assertFalse(list.contains(new Data<Integer>(3)));
+		assertTrue(list.indexOf(new Data<Integer>(3)) == -1);
+		assertTrue(list.lastIndexOf(new Data<Integer>(42)) == -1);
+		assertFalse(list.contains(new Data<Integer>(null)));
+		assertFalse(list.contains("3"));
+		assertFalse(list.remove(new Data<Integer>(3)));
+
+		// With key caching the key of an element may change
+		list.setKeyCaching(true);
+		Data<Integer> changed = all.get(5);
+		changed.id = 42;
+		assertTrue(list.contains(changed));
+		assertTrue(list.indexOf(changed) == 5);
+	}
+
+	@Test
+	public void duplicateElements() {
+
+		List<ArrayListMap<Integer, Data<Integer>>> lists = new ArrayList<ArrayListMap<Integer, Data<Integer>>>();
+		lists.add(new ArrayListMap<Integer, Data<Integer>>());
+		lists.add(new ObservableListMap<Integer, Data<Integer>>());
+
+		for (ArrayListMap<Integer, Data<Integer>> list : lists) {
+			Data<Integer> a = new Data<Integer>(1);
+			Data<Integer> b = new Data<Integer>(1);
+
+			list.add(a);
+			list.add(b);
+			list.add(a);
+
+			// One copy of a is still in the list
+			assertTrue(list.remove(a));
+			assertTrue(list.contains(a));
+			assertTrue(list.indexOf(a) == 1);
+			assertTrue(list.lastIndexOf(a) == 1);
+			assertTrue(list.getByMapKey(1).contains(a));
+
+			assertTrue(list.remove(a));
+			assertFalse(list.contains(a));
+			assertTrue(list.indexOf(a) == -1);
+			assertFalse(list.remove(a));
+			assertTrue(list.getByMapKey(1).size() == 1);
+
+			// Only one value with the key left, contained twice
+			list.remove(b);
+			list.add(b);
+			list.add(0, b);
+			list.remove(0);
+			assertTrue(list.contains(b));
+			assertTrue(list.getFirstByMapKey(1) == b);
+			list.remove(b);
+			assertTrue(list.isEmpty());
+			assertNull(list.getByMapKey(1));
+
+			// More values than fit into the array of a bucket
+			List<Data<Integer>> values = new ArrayList<Data<Integer>>();
+			for (int i = 0; i < 20; i++) {
+				Data<Integer> d = new Data<Integer>(2);
+				values.add(d);
+				list.add(d);
+				list.add(d);
+			}
+			assertTrue(list.indexOf(values.get(7)) == 14);
+			assertTrue(list.lastIndexOf(values.get(7)) == 15);
+			for (Data<Integer> d : values) {
+				assertTrue(list.remove(d));
+				assertTrue(list.contains(d));
+			}
+			assertTrue(list.getByMapKey(2).size() == 20);
+			assertTrue(list.indexOf(values.get(7)) == 7);
+			for (Data<Integer> d : values) {
+				assertTrue(list.remove(d));
+				assertFalse(list.contains(d));
+			}
+			assertNull(list.getByMapKey(2));
+		}
+	}
+
+	@Test
+	public void indexOfShiftedElements() {
+
+		ArrayListMap<Integer, Data<Integer>> list = new ArrayListMap<Integer, Data<Integer>>();
+		List<Data<Integer>> all = new ArrayList<Data<Integer>>();
+		for (int i = 0; i < 100; i++) {
+			Data<Integer> d = new Data<Integer>(i % 10);
+			all.add(d);
+			list.add(d);
+		}
+
+		list.setStatisticsEnabled(true);
+		for (Data<Integer> d : all) {
+			assertTrue(list.indexOf(d) == all.indexOf(d));
+		}
+
+		// The positions are remembered
+		list.resetStatistics();
+		for (Data<Integer> d : all) {
+			assertTrue(list.lastIndexOf(d) == all.indexOf(d));
+		}
+		assertTrue(list.getStatistics().getLinearScanCount() == 0);
+
+		// Shift the elements away from their remembered positions
+		list.add(0, new Data<Integer>(3));
+		list.remove(50);
+		all.add(0, list.get(0));
+		all.remove(50);
+		for (Data<Integer> d : all) {
+			assertTrue(list.indexOf(d) == all.indexOf(d));
+		}
+
+		list.removeByMapKey(3);
+		assertTrue(list.indexOf(all.get(4)) == -1);
+		assertTrue(list.indexOf(all.get(5)) == 3);
+	}
+
+	@Test
+	public void statistics() {
+
+		ArrayListMap<Integer, Data<Integer>> list = new ArrayListMap<Integer, Data<Integer>>();
+		assertFalse(list.isStatisticsEnabled());
+		try {
+			list.getStatistics();
+			assertTrue(false);
+		} catch (IllegalStateException e) {
+		}
+
+		list.setStatisticsEnabled(true);
+		for (int i = 0; i < 10; i++) {
+			list.add(new Data<Integer>(i % 4));
+		}
+		list.add(0, new Data<Integer>(4));
+		list.remove(5);
+		list.set(0, new Data<Integer>(5));
+		list.getFirstByMapKey(1);
+		list.getByMapKey(42);
+		assertFalse(list.contains(new Data<Integer>(1)));
+		list.removeByMapKey(0);
+
+		ListMapStatistics statistics = list.getStatistics();
+		assertTrue(statistics.getAddCount() == 11);
+		assertTrue(statistics.getRemoveCount() == 3);
+		assertTrue(statistics.getSetCount() == 1);
+		assertTrue(statistics.getLookupCount() == 4);
+		assertTrue(statistics.getIndexHitCount() == 2);
+		assertTrue(statistics.getIndexMissCount() == 2);
+		// The miss of contains() doesn't search the list
+		assertTrue(statistics.getLinearScanCount() == 1);
+		assertTrue(statistics.getShiftedElementCount() == 10 + 5);
+		assertTrue(statistics.getMovedElementCount() == 7);
+		assertTrue(statistics.getDuplicateKeyCount() == 0);
+
+		// Key 1 has 3 values, keys 2 and 3 have 2 values, key 5 has one value
+		assertTrue(statistics.getKeyCount() == 4);
+		int[] histogram = statistics.getKeyHistogram();
+		assertTrue(histogram.length == 2);
+		assertTrue(histogram[0] == 1);
+		assertTrue(histogram[1] == 3);
+
+		// The snapshot doesn't change
+		list.add(new Data<Integer>(1));
+		assertTrue(statistics.getAddCount() == 11);
+		assertTrue(list.getStatistics().getAddCount() == 12);
+
+		list.resetStatistics();
+		assertTrue(list.getStatistics().getAddCount() == 0);
+
+		list.setStatisticsEnabled(false);
+		assertFalse(list.isStatisticsEnabled());
+	}
+
+	@Test
+	public void removeIfReplaceAllAndSort() {
+
+		for (int caching = 0; caching < 2; caching++) {
+			ArrayListMap<Integer, Data<Integer>> list = new ArrayListMap<Integer, Data<Integer>>();
+			list.setKeyCaching(caching == 1);
+			for (int i = 0; i < 10; i++) {
+				list.add(new Data<Integer>(i));
+			}
+			assertTrue(list.indexOf(list.get(3)) == 3);
+
+			assertTrue(list.removeIf(new Predicate<Data<Integer>>() {
+				@Override
+				public boolean test(Data<Integer> d) {
+					return d.id % 2 == 1;
+				}
+			}));
+			assertTrue(list.size() == 5);
+			for (int i = 0; i < 10; i++) {
+				assertTrue((list.getFirstByMapKey(i) == null) == (i % 2 == 1));
+			}
+
+			// The list is unchanged, if the predicate throws an exception
+			try {
+				list.removeIf(new Predicate<Data<Integer>>() {
+					@Override
+					public boolean test(Data<Integer> d) {
+						if (d.id == 8) {
+							throw new IllegalStateException();
+						}
+						return true;
+					}
+				});
+				fail();
+			} catch (IllegalStateException e) {
+			}
+			assertTrue(list.size() == 5);
+
+			list.replaceAll(new UnaryOperator<Data<Integer>>() {
+				@Override
+				public Data<Integer> apply(Data<Integer> d) {
+					return new Data<Integer>(d.id + 1);
+				}
+			});
+			for (int i = 0; i < 10; i++) {
+				assertTrue((list.getFirstByMapKey(i) == null) == (i % 2 == 0));
+			}
+			for (int i = 0; i < list.size(); i++) {
+				assertTrue(list.indexOf(list.get(i)) == i);
+			}
+
+			Iterator<Data<Integer>> it = list.iterator();
+			list.sort(new Comparator<Data<Integer>>() {
+				@Override
+				public int compare(Data<Integer> lhs, Data<Integer> rhs) {
+					return rhs.id - lhs.id;
+				}
+			});
+			try {
+				it.next();
+				fail();
+			} catch (ConcurrentModificationException e) {
+			}
+
+			for (int i = 0; i < list.size(); i++) {
+				Data<Integer> d = list.get(i);
+				assertTrue(d.id == 9 - 2 * i);
+				assertTrue(list.indexOf(d) == i);
+				assertTrue(list.getFirstByMapKey(d.id) == d);
+			}
+
+			// The cached keys have been moved along with their elements
+			list.remove(0);
+			assertNull(list.getByMapKey(9));
+			assertTrue(list.getFirstByMapKey(7) == list.get(0));
+			list.removeAll(new ArrayList<Data<Integer>>(list.subList(0, 2)));
+			assertNull(list.getByMapKey(7));
+			assertNull(list.getByMapKey(5));
+			assertTrue(list.getFirstByMapKey(3) == list.get(0));
+		}
+	}
 }
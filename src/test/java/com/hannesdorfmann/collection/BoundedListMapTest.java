@@ -0,0 +1,225 @@
+package com.hannesdorfmann.collection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class BoundedListMapTest {
+
+	@Test
+	public void insertionOrder() {
+
+		BoundedListMap<Integer, Data<Integer>> list = new BoundedListMap<Integer, Data<Integer>>(
+				100);
+		final List<Data<Integer>> evicted = new ArrayList<Data<Integer>>();
+		list.setEvictionListener(new BoundedListMap.EvictionListener<Data<Integer>>() {
+			@Override
+			public void onEvicted(Data<Integer> e) {
+				evicted.add(e);
+			}
+		});
+
+		List<Data<Integer>> all = new ArrayList<Data<Integer>>();
+		for (int i = 0; i < 250; i++) {
+			Data<Integer> d = new Data<Integer>(i);
+			all.add(d);
+			list.add(d);
+		}
+
+		assertTrue(list.size() == 100);
+		assertEquals(all.subList(0, 150), evicted);
+		assertEquals(all.subList(150, 250), list);
+		assertTrue(list.getEvictionCount() == 150);
+
+		// Lookups don't change the order
+		assertTrue(list.getFirstByMapKey(200) == all.get(200));
+		assertTrue(list.getByMapKey(150).contains(all.get(150)));
+		assertNull(list.getFirstByMapKey(10));
+		assertTrue(list.getHitCount() == 2);
+		assertTrue(list.getMissCount() == 1);
+		assertTrue(list.get(0) == all.get(150));
+
+		// Replacing moves the element to the end
+		Data<Integer> replaced = new Data<Integer>(150);
+		list.add(replaced);
+		assertTrue(list.size() == 100);
+		assertTrue(list.get(99) == replaced);
+		assertTrue(list.get(0) == all.get(151));
+		assertFalse(list.contains(all.get(150)));
+		assertTrue(list.indexOf(replaced) == 99);
+
+		// Removal
+		assertTrue(list.remove(all.get(160)));
+		assertTrue(list.removeByMapKey(170).contains(all.get(170)));
+		assertTrue(list.remove(0) == all.get(151));
+		assertTrue(list.size() == 97);
+		assertTrue(list.indexOf(all.get(152)) == 0);
+		assertTrue(list.indexOf(all.get(161)) == 8);
+
+		// Shrinking evicts
+		evicted.clear();
+		list.setMaxSize(10);
+		assertTrue(list.size() == 10);
+		assertTrue(evicted.size() == 87);
+		assertTrue(list.get(9) == replaced);
+
+		Iterator<Data<Integer>> it = list.iterator();
+		it.next();
+		it.remove();
+		assertTrue(list.size() == 9);
+
+		list.clear();
+		assertTrue(list.isEmpty());
+		assertNull(list.getFirstByMapKey(249));
+
+		try {
+			list.add(new Data<Integer>(null));
+			assertTrue(false);
+		} catch (NullPointerException e) {
+		}
+	}
+
+	@Test
+	public void accessOrder() {
+
+		Random random = new Random(42);
+		int maxSize = 50;
+		BoundedListMap<Integer, Data<Integer>> list = new BoundedListMap<Integer, Data<Integer>>(
+				maxSize, BoundedListMap.EvictionPolicy.ACCESS_ORDER);
+
+		// LinkedHashMap in access order as reference
+		LinkedHashMap<Integer, Data<Integer>> expected = new LinkedHashMap<Integer, Data<Integer>>(
+				16, 0.75f, true);
+
+		for (int i = 0; i < 20000; i++) {
+			int key = random.nextInt(100);
+
+			if (random.nextBoolean()) {
+				assertTrue(list.getFirstByMapKey(key) == expected.get(key));
+			} else if (random.nextInt(10) == 0) {
+				assertTrue((list.removeByMapKey(key) != null) == (expected
+						.remove(key) != null));
+			} else {
+				Data<Integer> d = new Data<Integer>(key);
+				list.add(d);
+				expected.remove(key);
+				expected.put(key, d);
+				if (expected.size() > maxSize) {
+					expected.remove(expected.keySet().iterator().next());
+				}
+			}
+
+			if (i % 100 == 0) {
+				assertEquals(new ArrayList<Data<Integer>>(expected.values()),
+						list);
+			}
+		}
+
+		assertEquals(new ArrayList<Data<Integer>>(expected.values()), list);
+	}
+
+	@Test
+	public void positionalAccessWithEmptySlots() {
+
+		Random random = new Random(42);
+		int maxSize = 200;
+		BoundedListMap<Integer, Data<Integer>> list = new BoundedListMap<Integer, Data<Integer>>(
+				maxSize, BoundedListMap.EvictionPolicy.ACCESS_ORDER);
+		List<Data<Integer>> expected = new ArrayList<Data<Integer>>();
+
+		for (int i = 0; i < 50000; i++) {
+			int op = random.nextInt(10);
+			int key = random.nextInt(400);
+
+			if (op < 3 || expected.isEmpty()) {
+				Data<Integer> d = new Data<Integer>(key);
+				list.add(d);
+				Data<Integer> old = findByKey(expected, key);
+				if (old != null) {
+					expected.remove(old);
+				}
+				expected.add(d);
+				if (expected.size() > maxSize) {
+					expected.remove(0);
+				}
+			} else if (op < 5) {
+				// Moves the element to the end and leaves an empty slot
+				Data<Integer> found = findByKey(expected, key);
+				assertTrue(list.getFirstByMapKey(key) == found);
+				if (found != null) {
+					expected.remove(found);
+					expected.add(found);
+				}
+			} else if (op < 7) {
+				int index = random.nextInt(expected.size());
+				assertTrue(list.get(index) == expected.get(index));
+			} else if (op < 8) {
+				Data<Integer> d = expected.get(random.nextInt(expected.size()));
+				assertTrue(list.indexOf(d) == expected.indexOf(d));
+			} else if (op < 9) {
+				int index = random.nextInt(expected.size());
+				assertTrue(list.remove(index) == expected.remove(index));
+			} else {
+				Data<Integer> found = findByKey(expected, key);
+				assertTrue((list.removeByMapKey(key) != null) == (found != null));
+				expected.remove(found);
+			}
+
+			assertTrue(list.size() == expected.size());
+		}
+
+		assertEquals(expected, list);
+	}
+
+	private static Data<Integer> findByKey(List<Data<Integer>> list, int key) {
+		for (Data<Integer> d : list) {
+			if (d.id == key) {
+				return d;
+			}
+		}
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void serialization() throws Exception {
+
+		BoundedListMap<Integer, Data<Integer>> list = new BoundedListMap<Integer, Data<Integer>>(
+				10, BoundedListMap.EvictionPolicy.ACCESS_ORDER);
+		for (int i = 0; i < 20; i++) {
+			list.add(new Data<Integer>(i));
+		}
+		list.getFirstByMapKey(12);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(list);
+		out.close();
+
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+				bytes.toByteArray()));
+		BoundedListMap<Integer, Data<Integer>> read = (BoundedListMap<Integer, Data<Integer>>) in
+				.readObject();
+		in.close();
+
+		assertTrue(read.size() == 10);
+		assertTrue(read.getMaxSize() == 10);
+		assertTrue(read.get(9).id == 12);
+		assertTrue(read.get(0).id == 10);
+		read.add(new Data<Integer>(30));
+		assertNull(read.getFirstByMapKey(10));
+	}
+}
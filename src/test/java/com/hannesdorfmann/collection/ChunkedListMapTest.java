@@ -0,0 +1,150 @@
+package com.hannesdorfmann.collection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ChunkedListMapTest {
+
+	/**
+	 * Applies random operations to a {@link ChunkedListMap} and to an
+	 * {@link ArrayListMap} and compares both
+	 */
+	@Test
+	public void sameAsArrayListMap() {
+
+		Random random = new Random(42);
+		ChunkedListMap<Integer, Data<Integer>> list = new ChunkedListMap<Integer, Data<Integer>>();
+		ArrayListMap<Integer, Data<Integer>> expected = new ArrayListMap<Integer, Data<Integer>>();
+
+		for (int i = 0; i < 30000; i++) {
+			int op = random.nextInt(10);
+			Data<Integer> d = new Data<Integer>(random.nextInt(2000));
+
+			if (op < 4 || expected.isEmpty()) {
+				int index = random.nextInt(expected.size() + 1);
+				list.add(index, d);
+				expected.add(index, d);
+			} else if (op < 5) {
+				list.add(d);
+				expected.add(d);
+			} else if (op < 7) {
+				int index = random.nextInt(expected.size());
+				assertTrue(list.remove(index) == expected.remove(index));
+			} else if (op < 8) {
+				int index = random.nextInt(expected.size());
+				assertTrue(list.set(index, d) == expected.set(index, d));
+			} else if (op < 9) {
+				assertEquals(expected.removeByMapKey(d.id),
+						list.removeByMapKey(d.id));
+			} else {
+				assertEquals(expected.getByMapKey(d.id), list.getByMapKey(d.id));
+				assertTrue(expected.getFirstByMapKey(d.id) == list
+						.getFirstByMapKey(d.id));
+			}
+
+			if (i % 1000 == 0) {
+				assertEquals(expected, list);
+			}
+		}
+
+		assertEquals(expected, list);
+
+		for (int key = 0; key < 2000; key++) {
+			assertEquals(expected.getByMapKey(key), list.getByMapKey(key));
+		}
+	}
+
+	@Test
+	public void test() {
+
+		ChunkedListMap<Integer, Data<Integer>> list = new ChunkedListMap<Integer, Data<Integer>>();
+		List<Data<Integer>> all = new ArrayList<Data<Integer>>();
+
+		// Insert at the head
+		for (int i = 0; i < 10000; i++) {
+			Data<Integer> d = new Data<Integer>(i % 100);
+			all.add(0, d);
+			list.add(0, d);
+		}
+
+		assertEquals(all, list);
+		assertTrue(list.getByMapKey(7).size() == 100);
+		assertTrue(list.contains(all.get(1234)));
+		assertTrue(list.indexOf(all.get(1234)) == 1234);
+		assertTrue(list.lastIndexOf(all.get(1234)) == 1234);
+		assertFalse(list.contains(new Data<Integer>(7)));
+		assertTrue(list.indexOf(new Data<Integer>(7)) == -1);
+
+		// The same element twice
+		Data<Integer> twice = all.get(1234);
+		list.add(twice);
+		assertTrue(list.remove(twice));
+		assertTrue(list.contains(twice));
+		assertTrue(list.indexOf(twice) == 9999);
+		list.add(0, new Data<Integer>(7));
+		assertTrue(list.indexOf(twice) == 10000);
+		list.remove(0);
+		list.remove(9999);
+		list.add(1234, twice);
+		assertEquals(all, list);
+
+		assertTrue(list.removeByMapKey(7).size() == 100);
+		assertNull(list.getByMapKey(7));
+		assertTrue(list.size() == 9900);
+
+		Iterator<Data<Integer>> it = list.iterator();
+		while (it.hasNext()) {
+			if (it.next().id % 2 == 0) {
+				it.remove();
+			}
+		}
+		assertTrue(list.size() == 4900);
+		assertNull(list.getFirstByMapKey(2));
+		assertTrue(list.getByMapKey(3).size() == 100);
+
+		list.subList(0, 100).clear();
+		assertTrue(list.size() == 4800);
+
+		list.clear();
+		assertTrue(list.isEmpty());
+		assertNull(list.getFirstByMapKey(3));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void serialization() throws Exception {
+
+		ChunkedListMap<Integer, Data<Integer>> list = new ChunkedListMap<Integer, Data<Integer>>();
+		for (int i = 0; i < 1000; i++) {
+			list.add(new Data<Integer>(i % 10));
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(list);
+		out.close();
+
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+				bytes.toByteArray()));
+		ChunkedListMap<Integer, Data<Integer>> read = (ChunkedListMap<Integer, Data<Integer>>) in
+				.readObject();
+		in.close();
+
+		assertTrue(read.size() == 1000);
+		assertTrue(read.getByMapKey(3).size() == 100);
+		assertTrue(read.getFirstByMapKey(3) == read.get(3));
+	}
+}
@@ -0,0 +1,315 @@
+package com.hannesdorfmann.collection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+import org.junit.Test;
+
+import com.hannesdorfmann.collection.UniqueArrayListMap.DuplicateKeyPolicy;
+
+public class CopyOnWriteListMapTest {
+
+	@Test
+	public void test() {
+
+		CopyOnWriteListMap<String, Data<String>> list = new CopyOnWriteListMap<String, Data<String>>();
+
+		for (int i = 0; i < 10; i++) {
+			Data<String> d = new Data<String>(Integer.toString(i));
+			list.add(d);
+			assertTrue(list.contains(d));
+			assertTrue(list.getFirstByMapKey(d.getMapKey()) == d);
+			assertTrue(list.getByMapKey(d.getMapKey()).contains(d));
+		}
+
+		// Move to end
+		Data<String> d = new Data<String>("3");
+		list.add(d);
+		assertTrue(list.size() == 10);
+		assertTrue(list.get(9) == d);
+		assertTrue(list.get(3).getMapKey().equals("4"));
+
+		// Replace in place
+		list.setDuplicateKeyPolicy(DuplicateKeyPolicy.REPLACE_IN_PLACE);
+		Data<String> d2 = new Data<String>("5");
+		list.add(d2);
+		assertTrue(list.size() == 10);
+		assertTrue(list.get(4) == d2);
+		assertTrue(list.getFirstByMapKey("5") == d2);
+
+		// Iterators work on a snapshot
+		Iterator<Data<String>> it = list.iterator();
+		list.clear();
+		assertTrue(list.isEmpty());
+		assertNull(list.getFirstByMapKey("5"));
+		int count = 0;
+		while (it.hasNext()) {
+			it.next();
+			count++;
+		}
+		assertTrue(count == 10);
+
+		// addAll with duplicates in the batch and in the list
+		list.setDuplicateKeyPolicy(DuplicateKeyPolicy.MOVE_TO_END);
+		list.add(new Data<String>("a"));
+		list.add(new Data<String>("b"));
+		List<Data<String>> batch = new ArrayList<Data<String>>();
+		Data<String> b1 = new Data<String>("b");
+		Data<String> c1 = new Data<String>("c");
+		Data<String> c2 = new Data<String>("c");
+		batch.add(b1);
+		batch.add(c1);
+		batch.add(c2);
+		list.addAll(batch);
+
+		assertTrue(list.size() == 3);
+		assertTrue(list.get(0).getMapKey().equals("a"));
+		assertTrue(list.get(1) == b1);
+		assertTrue(list.get(2) == c2);
+		assertTrue(list.getFirstByMapKey("c") == c2);
+		assertFalse(list.contains(c1));
+
+		// set() removes the other element with the same key
+		Data<String> a2 = new Data<String>("c");
+		assertTrue(list.set(0, a2).getMapKey().equals("a"));
+		assertTrue(list.size() == 2);
+		assertTrue(list.get(0) == a2);
+		assertNull(list.getFirstByMapKey("a"));
+		assertTrue(list.getFirstByMapKey("c") == a2);
+
+		assertTrue(list.removeByMapKey("c").contains(a2));
+		assertNull(list.removeByMapKey("c"));
+		assertTrue(list.size() == 1);
+		assertTrue(list.remove(b1));
+		assertTrue(list.isEmpty());
+
+		// null keys are not indexed
+		list.add(new Data<String>(null));
+		list.add(new Data<String>(null));
+		assertTrue(list.size() == 2);
+
+		// set() is a structural modification for sub lists
+		List<Data<String>> sub = list.subList(0, 2);
+		list.set(0, new Data<String>("x"));
+		try {
+			sub.size();
+			assertTrue(false);
+		} catch (ConcurrentModificationException e) {
+		}
+
+		// A key repeated in the batch ends up where add() would put it
+		list.clear();
+		list.setDuplicateKeyPolicy(DuplicateKeyPolicy.REPLACE_IN_PLACE);
+		batch.clear();
+		Data<String> a7 = new Data<String>("7");
+		Data<String> b7 = new Data<String>("7");
+		batch.add(a7);
+		batch.add(new Data<String>("3"));
+		batch.add(b7);
+		batch.add(new Data<String>("1"));
+		list.addAll(batch);
+		assertTrue(list.size() == 3);
+		assertTrue(list.get(0) == b7);
+		assertTrue(list.get(1).getMapKey().equals("3"));
+		assertTrue(list.getFirstByMapKey("7") == b7);
+
+		// add() at the end, with the old element in front of the index
+		Data<String> c7 = new Data<String>("7");
+		list.add(3, c7);
+		assertTrue(list.size() == 3);
+		assertTrue(list.get(2) == c7);
+	}
+
+	/**
+	 * Applies random operations to a {@link CopyOnWriteListMap} and to a
+	 * {@link UniqueArrayListMap} and compares both
+	 */
+	private static void sameAsUniqueArrayListMap(DuplicateKeyPolicy policy) {
+
+		Random random = new Random(7);
+		CopyOnWriteListMap<Integer, Data<Integer>> list = new CopyOnWriteListMap<Integer, Data<Integer>>(
+				policy);
+		UniqueArrayListMap<Integer, Data<Integer>> expected = new UniqueArrayListMap<Integer, Data<Integer>>(
+				policy);
+
+		for (int i = 0; i < 5000; i++) {
+			int op = random.nextInt(6);
+			Data<Integer> d = new Data<Integer>(random.nextInt(50));
+
+			if (op < 1 || expected.isEmpty()) {
+				list.add(d);
+				expected.add(d);
+			} else if (op < 2) {
+				int index = random.nextInt(expected.size() + 1);
+				list.add(index, d);
+				expected.add(index, d);
+			} else if (op < 4) {
+				List<Data<Integer>> batch = new ArrayList<Data<Integer>>();
+				for (int j = 0; j < 6; j++) {
+					batch.add(new Data<Integer>(random.nextInt(50)));
+				}
+				if (op < 3) {
+					list.addAll(batch);
+					expected.addAll(batch);
+				} else {
+					int index = random.nextInt(expected.size() + 1);
+					list.addAll(index, batch);
+					expected.addAll(index, batch);
+				}
+			} else if (op < 5) {
+				int index = random.nextInt(expected.size());
+				assertTrue(list.set(index, d) == expected.set(index, d));
+			} else {
+				int index = random.nextInt(expected.size());
+				assertTrue(list.remove(index) == expected.remove(index));
+			}
+
+			assertEquals(expected, list);
+		}
+
+		for (int key = 0; key < 50; key++) {
+			assertTrue(list.getFirstByMapKey(key) == expected
+					.getFirstByMapKey(key));
+		}
+	}
+
+	@Test
+	public void sameAsUniqueArrayListMap() {
+		sameAsUniqueArrayListMap(DuplicateKeyPolicy.MOVE_TO_END);
+		sameAsUniqueArrayListMap(DuplicateKeyPolicy.REPLACE_IN_PLACE);
+	}
+
+	@Test
+	public void removeIfReplaceAllAndSort() {
+
+		for (DuplicateKeyPolicy policy : DuplicateKeyPolicy.values()) {
+			CopyOnWriteListMap<Integer, Data<Integer>> list = new CopyOnWriteListMap<Integer, Data<Integer>>(
+					policy);
+			UniqueArrayListMap<Integer, Data<Integer>> expected = new UniqueArrayListMap<Integer, Data<Integer>>(
+					policy);
+			for (int i = 0; i < 20; i++) {
+				Data<Integer> d = new Data<Integer>(i);
+				list.add(d);
+				expected.add(d);
+			}
+
+			Predicate<Data<Integer>> odd = new Predicate<Data<Integer>>() {
+				@Override
+				public boolean test(Data<Integer> d) {
+					return d.id % 2 == 1;
+				}
+			};
+			assertTrue(list.removeIf(odd));
+			assertTrue(expected.removeIf(odd));
+			assertFalse(list.removeIf(odd));
+			assertEquals(expected, list);
+			assertNull(list.getFirstByMapKey(3));
+
+			// Some replacements have the same key: 0, 2, 4, ... become 0, 0,
+			// 1, 1, ...
+			final List<Data<Integer>> replacements = new ArrayList<Data<Integer>>();
+			for (int i = 0; i < 10; i++) {
+				replacements.add(new Data<Integer>(i / 2));
+			}
+			UnaryOperator<Data<Integer>> half = new UnaryOperator<Data<Integer>>() {
+				@Override
+				public Data<Integer> apply(Data<Integer> d) {
+					return replacements.get(d.id / 2);
+				}
+			};
+			list.replaceAll(half);
+			expected.replaceAll(half);
+			assertEquals(expected, list);
+			assertTrue(list.size() == 5);
+			assertNull(list.getFirstByMapKey(8));
+			for (Data<Integer> d : expected) {
+				assertTrue(list.getFirstByMapKey(d.id) == d);
+			}
+
+			Iterator<Data<Integer>> snapshot = list.iterator();
+			list.sort(new Comparator<Data<Integer>>() {
+				@Override
+				public int compare(Data<Integer> lhs, Data<Integer> rhs) {
+					return rhs.id - lhs.id;
+				}
+			});
+			assertTrue(snapshot.next().id == 0);
+			for (int i = 0; i < 5; i++) {
+				assertTrue(list.get(i).id == 4 - i);
+				assertTrue(list.getFirstByMapKey(i) == list.get(4 - i));
+			}
+		}
+	}
+
+	@Test
+	public void concurrentReadersAndWriter() throws InterruptedException {
+
+		final CopyOnWriteListMap<String, Data<String>> list = new CopyOnWriteListMap<String, Data<String>>(
+				DuplicateKeyPolicy.REPLACE_IN_PLACE);
+		final int keys = 1000;
+
+		for (int i = 0; i < keys; i++) {
+			list.add(new Data<String>(Integer.toString(i)));
+		}
+
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+		List<Thread> readers = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			Thread reader = new Thread() {
+				@Override
+				public void run() {
+					try {
+						int i = 0;
+						while (running.get()) {
+							String key = Integer.toString(i++ % keys);
+							Data<String> found = list.getFirstByMapKey(key);
+							if (found == null || !key.equals(found.getMapKey())) {
+								throw new AssertionError("Wrong element for "
+										+ key);
+							}
+							if (list.size() != keys) {
+								throw new AssertionError("Wrong size");
+							}
+							for (Data<String> d : list) {
+								if (d == null) {
+									throw new AssertionError("null element");
+								}
+							}
+						}
+					} catch (Throwable t) {
+						error.set(t);
+					}
+				}
+			};
+			readers.add(reader);
+			reader.start();
+		}
+
+		for (int i = 0; i < 20000; i++) {
+			list.add(new Data<String>(Integer.toString(i % keys)));
+		}
+
+		running.set(false);
+		for (Thread reader : readers) {
+			reader.join();
+		}
+
+		assertNull(error.get());
+		assertTrue(list.size() == keys);
+	}
+}
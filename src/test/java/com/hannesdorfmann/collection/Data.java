@@ -1,12 +1,16 @@
 package com.hannesdorfmann.collection;
 
+import java.io.Serializable;
+
 /**
  * Simple class to do some unit testing on {@link ListMap} implementations
  * 
  * @author Hannes Dorfmann
  * 
  */
-public class Data<T> implements Mappable<T> {
+public class Data<T> implements Mappable<T>, Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	public T id;
 
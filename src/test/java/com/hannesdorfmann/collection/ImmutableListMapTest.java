@@ -0,0 +1,188 @@
+package com.hannesdorfmann.collection;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class ImmutableListMapTest {
+
+	@Test
+	public void test() {
+
+		ArrayListMap<Integer, Data<Integer>> source = new ArrayListMap<Integer, Data<Integer>>();
+		int tests = 10000;
+		for (int i = 0; i < tests; i++) {
+			source.add(new Data<Integer>(i % 1000));
+		}
+		source.add(new Data<Integer>(null));
+
+		ImmutableListMap<Integer, Data<Integer>> list = source.toImmutable();
+		assertTrue(list.size() == tests + 1);
+		assertTrue(list.equals(source));
+
+		for (int key = 0; key < 1000; key++) {
+			Set<Data<Integer>> values = list.getByMapKey(key);
+			assertTrue(values.size() == 10);
+			assertTrue(list.getFirstByMapKey(key) == source.get(key));
+
+			// Same order as in the list
+			int i = key;
+			for (Data<Integer> d : values) {
+				assertTrue(d == source.get(i));
+				i += 1000;
+			}
+		}
+
+		assertNull(list.getByMapKey(1000));
+		assertNull(list.getFirstByMapKey(-1));
+		assertNull(list.getByMapKey(null));
+		assertTrue(list.contains(source.get(1234)));
+		assertTrue(list.contains(source.get(tests)));
+		assertFalse(list.contains(new Data<Integer>(5)));
+		assertTrue(list.indexOf(source.get(1234)) == 1234);
+		assertTrue(list.lastIndexOf(source.get(1234)) == 1234);
+		assertTrue(list.indexOf(source.get(tests)) == tests);
+		assertTrue(list.indexOf(new Data<Integer>(5)) == -1);
+		assertTrue(list.lastIndexOf(new Data<Integer>(null)) == -1);
+
+		// The same element twice
+		List<Data<Integer>> twice = new ArrayList<Data<Integer>>(source);
+		twice.add(source.get(1234));
+		twice.add(new Data<Integer>(null));
+		twice.add(source.get(tests));
+		ImmutableListMap<Integer, Data<Integer>> twiceList = new ImmutableListMap<Integer, Data<Integer>>(
+				twice);
+		assertTrue(twiceList.indexOf(source.get(1234)) == 1234);
+		assertTrue(twiceList.lastIndexOf(source.get(1234)) == tests + 1);
+		assertTrue(twiceList.lastIndexOf(source.get(tests)) == tests + 3);
+		assertTrue(twiceList.indexOf(source.get(5)) == 5);
+		assertTrue(twiceList.lastIndexOf(source.get(5)) == 5);
+
+		// The snapshot doesn't change with the source
+		source.clear();
+		assertTrue(list.size() == tests + 1);
+		assertTrue(list.getByMapKey(7).size() == 10);
+
+		// Unique keys
+		UniqueArrayListMap<Integer, Data<Integer>> unique = new UniqueArrayListMap<Integer, Data<Integer>>();
+		for (int i = 0; i < 100; i++) {
+			unique.add(new Data<Integer>(i));
+		}
+		unique.setKeyCaching(true);
+		ImmutableListMap<Integer, Data<Integer>> uniqueList = unique.toImmutable();
+		assertTrue(uniqueList.size() == 100);
+		for (int i = 0; i < 100; i++) {
+			assertTrue(uniqueList.getFirstByMapKey(i) == unique.get(i));
+			assertTrue(uniqueList.getByMapKey(i).contains(unique.get(i)));
+		}
+
+		// Empty
+		ImmutableListMap<Integer, Data<Integer>> empty = new ImmutableListMap<Integer, Data<Integer>>(
+				new ArrayList<Data<Integer>>());
+		assertTrue(empty.isEmpty());
+		assertNull(empty.getFirstByMapKey(1));
+	}
+
+	@Test
+	public void modificationsThrow() {
+
+		List<Data<Integer>> items = new ArrayList<Data<Integer>>();
+		items.add(new Data<Integer>(1));
+		items.add(new Data<Integer>(2));
+
+		ImmutableListMap<Integer, Data<Integer>> list = new ImmutableListMap<Integer, Data<Integer>>(
+				items);
+
+		try {
+			list.add(new Data<Integer>(3));
+			assertFalse(true);
+		} catch (UnsupportedOperationException e) {
+		}
+
+		try {
+			list.set(0, new Data<Integer>(3));
+			assertFalse(true);
+		} catch (UnsupportedOperationException e) {
+		}
+
+		try {
+			list.removeByMapKey(1);
+			assertFalse(true);
+		} catch (UnsupportedOperationException e) {
+		}
+
+		try {
+			list.clear();
+			assertFalse(true);
+		} catch (UnsupportedOperationException e) {
+		}
+
+		try {
+			list.subList(0, 1).clear();
+			assertFalse(true);
+		} catch (UnsupportedOperationException e) {
+		}
+
+		try {
+			Iterator<Data<Integer>> it = list.iterator();
+			it.next();
+			it.remove();
+			assertFalse(true);
+		} catch (UnsupportedOperationException e) {
+		}
+
+		try {
+			list.getByMapKey(1).clear();
+			assertFalse(true);
+		} catch (UnsupportedOperationException e) {
+		}
+
+		try {
+			list.get(2);
+			assertFalse(true);
+		} catch (IndexOutOfBoundsException e) {
+		}
+
+		assertTrue(list.size() == 2);
+		assertTrue(list.getFirstByMapKey(1) == items.get(0));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void serialization() throws Exception {
+
+		List<Data<Integer>> items = new ArrayList<Data<Integer>>();
+		for (int i = 0; i < 100; i++) {
+			items.add(new Data<Integer>(i % 10));
+		}
+
+		ImmutableListMap<Integer, Data<Integer>> list = new ImmutableListMap<Integer, Data<Integer>>(
+				items);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(list);
+		out.close();
+
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+				bytes.toByteArray()));
+		ImmutableListMap<Integer, Data<Integer>> read = (ImmutableListMap<Integer, Data<Integer>>) in
+				.readObject();
+		in.close();
+
+		assertTrue(read.size() == 100);
+		assertTrue(read.getByMapKey(3).size() == 10);
+		assertTrue(read.getFirstByMapKey(3) == read.get(3));
+	}
+}
@@ -0,0 +1,44 @@
+package com.hannesdorfmann.collection;
+
+import java.util.Set;
+
+public class IntArrayListMapTest extends
+		AbstractPrimitiveListMapTest<Integer, IntData,
+		IntArrayListMap<IntData>> {
+
+	@Override
+	protected IntArrayListMap<IntData> newList() {
+		return new IntArrayListMap<IntData>();
+	}
+
+	@Override
+	protected IntData newData(long id) {
+		return new IntData((int) id);
+	}
+
+	@Override
+	protected long id(IntData d) {
+		return d.id;
+	}
+
+	@Override
+	protected long keyStep() {
+		return 7919;
+	}
+
+	@Override
+	protected Set<IntData> getByMapKey(IntArrayListMap<IntData> list, long id) {
+		return list.getByMapKey((int) id);
+	}
+
+	@Override
+	protected IntData getFirstByMapKey(IntArrayListMap<IntData> list, long id) {
+		return list.getFirstByMapKey((int) id);
+	}
+
+	@Override
+	protected Set<IntData> removeByMapKey(
+			IntArrayListMap<IntData> list, long id) {
+		return list.removeByMapKey((int) id);
+	}
+}
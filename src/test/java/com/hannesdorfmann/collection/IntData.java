@@ -0,0 +1,37 @@
+package com.hannesdorfmann.collection;
+
+import java.io.Serializable;
+
+/**
+ * Simple class to do some unit testing on {@link ListMap} implementations with
+ * primitive int keys
+ * 
+ * @author Hannes Dorfmann
+ * 
+ */
+public class IntData implements IntMappable, Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public int id;
+
+	public IntData(int id) {
+		this.id = id;
+	}
+
+	@Override
+	public Integer getMapKey() {
+		return id;
+	}
+
+	@Override
+	public int getIntMapKey() {
+		return id;
+	}
+
+	@Override
+	public String toString() {
+		return "" + id;
+	}
+
+}
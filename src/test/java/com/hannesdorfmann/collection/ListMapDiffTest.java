@@ -0,0 +1,269 @@
+package com.hannesdorfmann.collection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ListMapDiffTest {
+
+	private static class RecordingListener implements
+			ObservableListMap.Listener {
+
+		List<String> events = new ArrayList<String>();
+
+		@Override
+		public void onInserted(int position, int count) {
+			events.add("inserted " + position + " " + count);
+		}
+
+		@Override
+		public void onRemoved(int position, int count) {
+			events.add("removed " + position + " " + count);
+		}
+
+		@Override
+		public void onMoved(int fromPosition, int toPosition) {
+			events.add("moved " + fromPosition + " " + toPosition);
+		}
+
+		@Override
+		public void onChanged(int position, int count) {
+			events.add("changed " + position + " " + count);
+		}
+	}
+
+	/**
+	 * Applies the events to a list
+	 */
+	private static class ApplyingListener implements
+			ObservableListMap.Listener {
+
+		final List<Data<Integer>> list;
+		final List<Data<Integer>> newList;
+
+		ApplyingListener(List<Data<Integer>> list, List<Data<Integer>> newList) {
+			this.list = list;
+			this.newList = newList;
+		}
+
+		@Override
+		public void onInserted(int position, int count) {
+			list.addAll(position, newList.subList(position, position + count));
+		}
+
+		@Override
+		public void onRemoved(int position, int count) {
+			list.subList(position, position + count).clear();
+		}
+
+		@Override
+		public void onMoved(int fromPosition, int toPosition) {
+			list.add(toPosition, list.remove(fromPosition));
+		}
+
+		@Override
+		public void onChanged(int position, int count) {
+			for (int i = position; i < position + count; i++) {
+				list.set(i, newList.get(i));
+			}
+		}
+	}
+
+	@Test
+	public void test() {
+
+		UniqueArrayListMap<Integer, Data<Integer>> list = new UniqueArrayListMap<Integer, Data<Integer>>();
+		for (int i = 0; i < 10; i++) {
+			list.add(new Data<Integer>(i));
+		}
+
+		List<Data<Integer>> newList = new ArrayList<Data<Integer>>();
+		newList.add(new Data<Integer>(20));
+		newList.add(list.get(9));
+		newList.add(list.get(0));
+		newList.add(list.get(1));
+		newList.add(list.get(4));
+		newList.add(new Data<Integer>(5));
+		newList.addAll(list.subList(6, 9));
+
+		ListMapDiff<Integer, Data<Integer>> diff = ListMapDiff.calculate(list,
+				newList);
+		assertFalse(diff.isEmpty());
+
+		RecordingListener listener = new RecordingListener();
+		diff.dispatchTo(listener);
+		assertEquals(Arrays.asList("removed 2 2", "moved 7 0",
+				"inserted 0 1", "changed 5 1"), listener.events);
+
+		diff.applyTo(list);
+		assertEquals(newList, list);
+		assertNull(list.getByMapKey(2));
+		assertNull(list.getByMapKey(3));
+		assertTrue(list.getFirstByMapKey(5) == newList.get(5));
+		assertTrue(list.getFirstByMapKey(20) == newList.get(0));
+
+		// Nothing changed
+		diff = ListMapDiff.calculate(list, new ArrayList<Data<Integer>>(list));
+		assertTrue(diff.isEmpty());
+		listener = new RecordingListener();
+		diff.dispatchTo(listener);
+		assertTrue(listener.events.isEmpty());
+
+		// Keys must be unique
+		newList.add(new Data<Integer>(20));
+		try {
+			ListMapDiff.calculate(list, newList);
+			assertTrue(false);
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	@Test
+	public void applyTo() {
+
+		Random random = new Random(42);
+
+		for (int round = 0; round < 50; round++) {
+
+			List<Data<Integer>> oldList = new ArrayList<Data<Integer>>();
+			int size = random.nextInt(200);
+			for (int i = 0; i < size; i++) {
+				oldList.add(new Data<Integer>(i));
+			}
+			oldList.add(new Data<Integer>(null));
+
+			// Remove, replace, insert and shuffle some elements
+			List<Data<Integer>> newList = new ArrayList<Data<Integer>>();
+			for (Data<Integer> d : oldList) {
+				int r = random.nextInt(10);
+				if (r == 0) {
+					continue;
+				} else if (r == 1) {
+					newList.add(new Data<Integer>(d.id));
+				} else {
+					newList.add(d);
+				}
+
+				if (random.nextInt(10) == 0) {
+					newList.add(new Data<Integer>(1000 + newList.size()));
+				}
+			}
+			for (int i = 0; i < newList.size() / 20; i++) {
+				Collections.swap(newList, random.nextInt(newList.size()),
+						random.nextInt(newList.size()));
+			}
+
+			ListMapDiff<Integer, Data<Integer>> diff = ListMapDiff.calculate(
+					oldList, newList);
+
+			// Events
+			List<Data<Integer>> events = new ArrayList<Data<Integer>>(oldList);
+			diff.dispatchTo(new ApplyingListener(events, newList));
+			assertEquals(newList, events);
+
+			// Plain list
+			List<Data<Integer>> plain = new ArrayList<Data<Integer>>(oldList);
+			diff.applyTo(plain);
+			assertEquals(newList, plain);
+
+			// ArrayListMap
+			ArrayListMap<Integer, Data<Integer>> arrayListMap = new ArrayListMap<Integer, Data<Integer>>(
+					oldList);
+			arrayListMap.setKeyCaching(true);
+			diff.applyTo(arrayListMap);
+			assertEquals(newList, arrayListMap);
+
+			// UniqueArrayListMap
+			UniqueArrayListMap<Integer, Data<Integer>> unique = new UniqueArrayListMap<Integer, Data<Integer>>();
+			unique.addAll(oldList);
+			diff.applyTo(unique);
+			assertEquals(newList, unique);
+
+			for (int key = 0; key < size + 1000 + newList.size(); key++) {
+				Data<Integer> expected = null;
+				for (Data<Integer> d : newList) {
+					if (d.id != null && d.id == key) {
+						expected = d;
+					}
+				}
+				assertTrue(arrayListMap.getFirstByMapKey(key) == expected);
+				assertTrue(unique.getFirstByMapKey(key) == expected);
+				if (expected != null) {
+					assertTrue(unique.indexOf(expected) == newList
+							.indexOf(expected));
+				}
+			}
+
+			// ObservableListMap
+			ObservableListMap<Integer, Data<Integer>> observable = new ObservableListMap<Integer, Data<Integer>>(
+					oldList);
+			List<Data<Integer>> mirror = new ArrayList<Data<Integer>>(oldList);
+			observable.addListener(new ApplyingListener(mirror, newList));
+			diff.applyTo(observable);
+			assertEquals(newList, observable);
+			assertEquals(newList, mirror);
+		}
+	}
+
+	@Test
+	public void manyMoves() {
+
+		Random random = new Random(42);
+		List<Data<Integer>> oldList = new ArrayList<Data<Integer>>();
+		for (int i = 0; i < 2000; i++) {
+			oldList.add(new Data<Integer>(i));
+		}
+
+		List<List<Data<Integer>>> newLists = new ArrayList<List<Data<Integer>>>();
+
+		List<Data<Integer>> shuffled = new ArrayList<Data<Integer>>(oldList);
+		Collections.shuffle(shuffled, random);
+		newLists.add(shuffled);
+
+		List<Data<Integer>> reversed = new ArrayList<Data<Integer>>(oldList);
+		Collections.reverse(reversed);
+		newLists.add(reversed);
+
+		List<Data<Integer>> rotated = new ArrayList<Data<Integer>>(oldList);
+		Collections.rotate(rotated, 700);
+		newLists.add(rotated);
+
+		// Shuffled blocks with removed and inserted elements
+		List<Data<Integer>> blocks = new ArrayList<Data<Integer>>();
+		for (int b = 0; b < 20; b++) {
+			blocks.addAll(oldList.subList(b * 100, b * 100 + 90));
+			blocks.add(new Data<Integer>(5000 + b));
+		}
+		Collections.shuffle(blocks.subList(0, 900), random);
+		newLists.add(blocks);
+
+		for (List<Data<Integer>> newList : newLists) {
+			ListMapDiff<Integer, Data<Integer>> diff = ListMapDiff.calculate(
+					oldList, newList);
+
+			List<Data<Integer>> events = new ArrayList<Data<Integer>>(oldList);
+			diff.dispatchTo(new ApplyingListener(events, newList));
+			assertEquals(newList, events);
+
+			List<Data<Integer>> chunked = new ChunkedListMap<Integer, Data<Integer>>(
+					oldList);
+			diff.applyTo(chunked);
+			assertEquals(newList, chunked);
+		}
+
+		// Every element but one is moved
+		RecordingListener recorder = new RecordingListener();
+		ListMapDiff.calculate(oldList, reversed).dispatchTo(recorder);
+		assertTrue(recorder.events.size() == oldList.size() - 1);
+		assertEquals("moved 1998 1999", recorder.events.get(0));
+	}
+}
@@ -0,0 +1,161 @@
+package com.hannesdorfmann.collection;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class ListMapLoaderTest {
+
+	@Test
+	public void test() {
+
+		ListMapLoader<Integer, Data<Integer>> loader = new ListMapLoader<Integer, Data<Integer>>();
+		assertTrue(loader.getPublished().isEmpty());
+
+		List<Data<Integer>> all = new ArrayList<Data<Integer>>();
+		for (int i = 0; i < 3000; i++) {
+			Data<Integer> d = new Data<Integer>(i % 1000);
+			all.add(d);
+			loader.add(d);
+		}
+		Data<Integer> noKey = new Data<Integer>(null);
+		all.add(noKey);
+		loader.add(noKey);
+
+		// Not published yet
+		assertTrue(loader.getPublished().isEmpty());
+		assertTrue(loader.size() == 3001);
+
+		ListMap<Integer, Data<Integer>> prefix = loader.publish();
+		assertTrue(loader.getPublished() == prefix);
+		assertTrue(prefix.equals(all));
+
+		Set<Data<Integer>> values = prefix.getByMapKey(7);
+		assertTrue(values.size() == 3);
+		Iterator<Data<Integer>> it = values.iterator();
+		assertTrue(it.next() == all.get(7));
+		assertTrue(it.next() == all.get(1007));
+		assertTrue(it.next() == all.get(2007));
+		assertTrue(prefix.getFirstByMapKey(7) == all.get(7));
+		assertNull(prefix.getByMapKey(1000));
+		assertNull(prefix.getFirstByMapKey(null));
+
+		assertTrue(prefix.indexOf(all.get(1007)) == 1007);
+		assertTrue(prefix.lastIndexOf(all.get(1007)) == 1007);
+		assertTrue(prefix.indexOf(noKey) == 3000);
+		assertFalse(prefix.contains(new Data<Integer>(7)));
+		assertFalse(prefix.contains(new Data<Integer>(null)));
+
+		// The prefix doesn't change, when more elements are added
+		Data<Integer> d7 = new Data<Integer>(7);
+		Data<Integer> d5000 = new Data<Integer>(5000);
+		loader.add(d7);
+		loader.add(d5000);
+		assertTrue(prefix.size() == 3001);
+		assertTrue(prefix.getByMapKey(7).size() == 3);
+		assertNull(prefix.getFirstByMapKey(5000));
+		assertFalse(prefix.contains(d7));
+
+		ListMap<Integer, Data<Integer>> finished = loader.finish();
+		assertTrue(loader.isFinished());
+		assertTrue(finished.size() == 3003);
+		assertTrue(finished.getByMapKey(7).size() == 4);
+		assertTrue(finished.getFirstByMapKey(5000) == d5000);
+		assertTrue(finished.lastIndexOf(d7) == 3001);
+		assertTrue(loader.publish() == finished);
+
+		try {
+			loader.add(new Data<Integer>(1));
+			assertTrue(false);
+		} catch (IllegalStateException e) {
+		}
+
+		try {
+			finished.add(new Data<Integer>(1));
+			assertTrue(false);
+		} catch (UnsupportedOperationException e) {
+		}
+
+		try {
+			finished.removeByMapKey(1);
+			assertTrue(false);
+		} catch (UnsupportedOperationException e) {
+		}
+	}
+
+	@Test
+	public void load() throws Exception {
+
+		final int count = 200000;
+		final ListMapLoader<Integer, Data<Integer>> loader = new ListMapLoader<Integer, Data<Integer>>(
+				count);
+		final AtomicReference<AssertionError> failure = new AtomicReference<AssertionError>();
+
+		// Reads the published prefixes, while they are loaded
+		Thread consumer = new Thread() {
+			@Override
+			public void run() {
+				try {
+					int lastSize = 0;
+					while (lastSize < count) {
+						ListMap<Integer, Data<Integer>> prefix = loader
+								.getPublished();
+						int size = prefix.size();
+						assertTrue(size >= lastSize);
+						assertTrue(size % 1000 == 0);
+
+						if (size > 0) {
+							Data<Integer> last = prefix.get(size - 1);
+							assertTrue(last.id == size - 1);
+							assertTrue(prefix.getFirstByMapKey(size - 1) == last);
+							assertTrue(prefix.indexOf(last) == size - 1);
+						}
+						assertNull(prefix.getFirstByMapKey(size));
+
+						lastSize = size;
+					}
+				} catch (AssertionError e) {
+					failure.set(e);
+				}
+			}
+		};
+		consumer.start();
+
+		Iterator<Data<Integer>> elements = new Iterator<Data<Integer>>() {
+
+			private int next;
+
+			@Override
+			public boolean hasNext() {
+				return next < count;
+			}
+
+			@Override
+			public Data<Integer> next() {
+				return new Data<Integer>(next++);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+
+		assertTrue(loader.load(elements, 1000) == count);
+		consumer.join(10000);
+
+		if (failure.get() != null) {
+			throw failure.get();
+		}
+		assertFalse(consumer.isAlive());
+		assertTrue(loader.getPublished().size() == count);
+	}
+}
@@ -0,0 +1,46 @@
+package com.hannesdorfmann.collection;
+
+import java.util.Set;
+
+public class LongArrayListMapTest extends
+		AbstractPrimitiveListMapTest<Long, LongData,
+		LongArrayListMap<LongData>> {
+
+	@Override
+	protected LongArrayListMap<LongData> newList() {
+		return new LongArrayListMap<LongData>();
+	}
+
+	@Override
+	protected LongData newData(long id) {
+		return new LongData(id);
+	}
+
+	@Override
+	protected long id(LongData d) {
+		return d.id;
+	}
+
+	@Override
+	protected long keyStep() {
+		return Integer.MAX_VALUE;
+	}
+
+	@Override
+	protected Set<LongData> getByMapKey(
+			LongArrayListMap<LongData> list, long id) {
+		return list.getByMapKey(id);
+	}
+
+	@Override
+	protected LongData getFirstByMapKey(
+			LongArrayListMap<LongData> list, long id) {
+		return list.getFirstByMapKey(id);
+	}
+
+	@Override
+	protected Set<LongData> removeByMapKey(
+			LongArrayListMap<LongData> list, long id) {
+		return list.removeByMapKey(id);
+	}
+}
@@ -0,0 +1,37 @@
+package com.hannesdorfmann.collection;
+
+import java.io.Serializable;
+
+/**
+ * Simple class to do some unit testing on {@link ListMap} implementations with
+ * primitive long keys
+ * 
+ * @author Hannes Dorfmann
+ * 
+ */
+public class LongData implements LongMappable, Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public long id;
+
+	public LongData(long id) {
+		this.id = id;
+	}
+
+	@Override
+	public Long getMapKey() {
+		return id;
+	}
+
+	@Override
+	public long getLongMapKey() {
+		return id;
+	}
+
+	@Override
+	public String toString() {
+		return "" + id;
+	}
+
+}
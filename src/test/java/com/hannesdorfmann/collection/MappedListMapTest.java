@@ -0,0 +1,236 @@
+package com.hannesdorfmann.collection;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class MappedListMapTest {
+
+	private static class IntDataCodec implements
+			MappedListMap.Codec<Data<Integer>> {
+
+		@Override
+		public byte[] encode(Data<Integer> value) {
+			if (value.id == null) {
+				return new byte[0];
+			}
+			return ByteBuffer.allocate(4).putInt(value.id).array();
+		}
+
+		@Override
+		public Data<Integer> decode(ByteBuffer data) {
+			if (!data.hasRemaining()) {
+				return new Data<Integer>(null);
+			}
+			return new Data<Integer>(data.getInt());
+		}
+	}
+
+	/**
+	 * A key with a hash code that changes, when {@link #salt} changes, like the
+	 * identity hash code in the next run of the application
+	 */
+	private static class SaltedKey {
+
+		static int salt;
+
+		final int id;
+
+		SaltedKey(int id) {
+			this.id = id;
+		}
+
+		@Override
+		public int hashCode() {
+			return id ^ salt;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof SaltedKey && ((SaltedKey) o).id == id;
+		}
+	}
+
+	private static class SaltedKeyCodec implements
+			MappedListMap.Codec<Data<SaltedKey>> {
+
+		@Override
+		public byte[] encode(Data<SaltedKey> value) {
+			return ByteBuffer.allocate(4).putInt(value.id.id).array();
+		}
+
+		@Override
+		public Data<SaltedKey> decode(ByteBuffer data) {
+			return new Data<SaltedKey>(new SaltedKey(data.getInt()));
+		}
+	}
+
+	@Test
+	public void test() {
+
+		MappedListMap<Integer, Data<Integer>> list = new MappedListMap<Integer, Data<Integer>>(
+				new IntDataCodec());
+
+		int tests = 10000;
+		for (int i = 0; i < tests; i++) {
+			list.add(new Data<Integer>(i % 1000));
+		}
+
+		assertTrue(list.size() == tests);
+		assertTrue(list.get(1234).id == 234);
+		assertTrue(list.getByMapKey(7).size() == 10);
+		assertTrue(list.getFirstByMapKey(7).id == 7);
+		assertNull(list.getByMapKey(1000));
+
+		// Insert, replace and remove
+		list.add(0, new Data<Integer>(2000));
+		assertTrue(list.get(0).id == 2000);
+		assertTrue(list.get(1).id == 0);
+
+		assertTrue(list.set(1, new Data<Integer>(2001)).id == 0);
+		assertTrue(list.getByMapKey(0).size() == 9);
+		assertTrue(list.getFirstByMapKey(2001).id == 2001);
+
+		assertTrue(list.remove(0).id == 2000);
+		assertNull(list.getByMapKey(2000));
+
+		Set<Data<Integer>> removed = list.removeByMapKey(5);
+		assertTrue(removed.size() == 10);
+		assertNull(list.getByMapKey(5));
+		assertTrue(list.size() == tests - 10);
+
+		list.subList(0, 1000).clear();
+		assertTrue(list.size() == tests - 1010);
+		assertTrue(list.get(0).id == 1);
+		assertTrue(list.getByMapKey(2001) == null);
+		assertTrue(list.getByMapKey(7).size() == 9);
+
+		for (int i = 0; i < list.size(); i++) {
+			Data<Integer> d = list.get(i);
+			assertTrue(list.getFirstByMapKey(d.id).id.equals(d.id));
+		}
+
+		// Null keys
+		list.add(new Data<Integer>(null));
+		assertTrue(list.get(list.size() - 1).id == null);
+
+		list.clear();
+		assertTrue(list.isEmpty());
+		assertNull(list.getByMapKey(7));
+		list.add(new Data<Integer>(7));
+		assertTrue(list.getFirstByMapKey(7).id == 7);
+
+		// An element that fails to be written doesn't change the list
+		try {
+			list.set(0, new Data<Integer>(8) {
+
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				public Integer getMapKey() {
+					throw new IllegalStateException();
+				}
+			});
+			assertTrue(false);
+		} catch (IllegalStateException e) {
+		}
+		assertTrue(list.size() == 1);
+		assertTrue(list.getFirstByMapKey(7).id == 7);
+		assertNull(list.getByMapKey(8));
+	}
+
+	@Test
+	public void reopen() throws IOException {
+
+		File file = File.createTempFile("MappedListMapTest", ".data");
+		File positions = new File(file.getPath() + ".positions");
+		File keys = new File(file.getPath() + ".keys");
+
+		try {
+			MappedListMap<Integer, Data<Integer>> list = new MappedListMap<Integer, Data<Integer>>(
+					file, new IntDataCodec());
+
+			List<Integer> expected = new ArrayList<Integer>();
+			for (int i = 0; i < 5000; i++) {
+				list.add(new Data<Integer>(i));
+				expected.add(i);
+			}
+			list.remove(10);
+			expected.remove(10);
+			list.close();
+
+			list = new MappedListMap<Integer, Data<Integer>>(file,
+					new IntDataCodec());
+			assertTrue(list.size() == expected.size());
+			for (int i = 0; i < expected.size(); i++) {
+				assertTrue(list.get(i).id.equals(expected.get(i)));
+			}
+			assertNull(list.getByMapKey(10));
+			assertTrue(list.getFirstByMapKey(4999).id == 4999);
+
+			list.add(new Data<Integer>(10));
+			assertTrue(list.getFirstByMapKey(10).id == 10);
+			list.close();
+
+			try {
+				new MappedListMap<Integer, Data<Integer>>(positions,
+						new IntDataCodec());
+				assertFalse(true);
+			} catch (IOException e) {
+			}
+
+		} finally {
+			file.delete();
+			positions.delete();
+			keys.delete();
+			new File(positions.getPath() + ".positions").delete();
+			new File(positions.getPath() + ".keys").delete();
+		}
+	}
+
+	@Test
+	public void unstableKeyHash() throws IOException {
+
+		File file = File.createTempFile("MappedListMapTest", ".data");
+		File positions = new File(file.getPath() + ".positions");
+		File keys = new File(file.getPath() + ".keys");
+
+		try {
+			SaltedKey.salt = 0;
+			MappedListMap<SaltedKey, Data<SaltedKey>> list = new MappedListMap<SaltedKey, Data<SaltedKey>>(
+					file, new SaltedKeyCodec());
+			for (int i = 0; i < 100; i++) {
+				list.add(new Data<SaltedKey>(new SaltedKey(i)));
+			}
+			list.close();
+
+			list = new MappedListMap<SaltedKey, Data<SaltedKey>>(file,
+					new SaltedKeyCodec());
+			assertTrue(list.getFirstByMapKey(new SaltedKey(50)) != null);
+			list.close();
+
+			SaltedKey.salt = 12345;
+			try {
+				new MappedListMap<SaltedKey, Data<SaltedKey>>(file,
+						new SaltedKeyCodec());
+				assertFalse(true);
+			} catch (IOException e) {
+			}
+
+		} finally {
+			SaltedKey.salt = 0;
+			file.delete();
+			positions.delete();
+			keys.delete();
+		}
+	}
+}
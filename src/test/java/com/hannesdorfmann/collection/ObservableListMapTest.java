@@ -0,0 +1,228 @@
+package com.hannesdorfmann.collection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+import org.junit.Test;
+
+public class ObservableListMapTest {
+
+	private static class RecordingListener implements
+			ObservableListMap.Listener {
+
+		List<String> events = new ArrayList<String>();
+
+		@Override
+		public void onInserted(int position, int count) {
+			events.add("inserted " + position + " " + count);
+		}
+
+		@Override
+		public void onRemoved(int position, int count) {
+			events.add("removed " + position + " " + count);
+		}
+
+		@Override
+		public void onMoved(int fromPosition, int toPosition) {
+			events.add("moved " + fromPosition + " " + toPosition);
+		}
+
+		@Override
+		public void onChanged(int position, int count) {
+			events.add("changed " + position + " " + count);
+		}
+
+		List<String> take() {
+			List<String> taken = events;
+			events = new ArrayList<String>();
+			return taken;
+		}
+	}
+
+	private static ObservableListMap<Integer, Data<Integer>> create(int size) {
+		ObservableListMap<Integer, Data<Integer>> list = new ObservableListMap<Integer, Data<Integer>>();
+		for (int i = 0; i < size; i++) {
+			list.add(new Data<Integer>(i % 5));
+		}
+		return list;
+	}
+
+	@Test
+	public void test() {
+
+		ObservableListMap<Integer, Data<Integer>> list = create(10);
+		RecordingListener listener = new RecordingListener();
+		list.addListener(listener);
+
+		list.add(new Data<Integer>(5));
+		list.add(0, new Data<Integer>(6));
+		list.set(3, new Data<Integer>(7));
+		list.remove(0);
+		list.move(0, 4);
+		assertEquals(Arrays.asList("inserted 10 1", "inserted 0 1",
+				"changed 3 1", "removed 0 1", "moved 0 4"), listener.take());
+		assertTrue(list.getByMapKey(0).contains(list.get(4)));
+
+		List<Data<Integer>> batch = new ArrayList<Data<Integer>>();
+		batch.add(new Data<Integer>(8));
+		batch.add(new Data<Integer>(9));
+		list.addAll(2, batch);
+		list.subList(0, 2).clear();
+		assertEquals(Arrays.asList("inserted 2 2", "removed 0 2"),
+				listener.take());
+
+		// Bulk removals are reported as ranges
+		list = create(10);
+		list.addListener(listener);
+		assertTrue(list.removeByMapKey(1).size() == 2);
+		assertEquals(Arrays.asList("removed 1 1", "removed 5 1"),
+				listener.take());
+
+		list.removeAll(new ArrayList<Data<Integer>>(list.subList(2, 5)));
+		assertEquals(Arrays.asList("removed 2 3"), listener.take());
+
+		list.clear();
+		assertEquals(Arrays.asList("removed 0 5"), listener.take());
+
+		// Iterator
+		list = create(4);
+		list.addListener(listener);
+		Iterator<Data<Integer>> it = list.iterator();
+		it.next();
+		it.remove();
+		assertEquals(Arrays.asList("removed 0 1"), listener.take());
+
+		list.removeListener(listener);
+		list.add(new Data<Integer>(1));
+		assertTrue(listener.take().isEmpty());
+	}
+
+	@Test
+	public void batchedUpdates() {
+
+		ObservableListMap<Integer, Data<Integer>> list = create(10);
+		RecordingListener listener = new RecordingListener();
+		list.addListener(listener);
+
+		list.beginBatchedUpdates();
+		for (int i = 0; i < 5; i++) {
+			list.add(new Data<Integer>(i));
+		}
+		for (int i = 0; i < 3; i++) {
+			list.remove(2);
+		}
+		list.set(4, new Data<Integer>(20));
+		list.set(5, new Data<Integer>(21));
+		list.set(3, new Data<Integer>(22));
+		list.move(0, 1);
+
+		list.beginBatchedUpdates();
+		list.add(0, new Data<Integer>(30));
+		list.endBatchedUpdates();
+
+		assertTrue(listener.take().isEmpty());
+		list.endBatchedUpdates();
+
+		assertEquals(Arrays.asList("inserted 10 5", "removed 2 3",
+				"changed 3 3", "moved 0 1", "inserted 0 1"), listener.take());
+
+		// Removing towards the head of the list
+		list.beginBatchedUpdates();
+		list.remove(5);
+		list.remove(4);
+		list.remove(3);
+		list.endBatchedUpdates();
+		assertEquals(Arrays.asList("removed 3 3"), listener.take());
+
+		try {
+			list.endBatchedUpdates();
+			assertTrue(false);
+		} catch (IllegalStateException e) {
+		}
+	}
+
+	@Test
+	public void eventsReproduceList() {
+
+		ObservableListMap<Integer, Data<Integer>> list = create(100);
+		final List<Data<Integer>> mirror = new ArrayList<Data<Integer>>(list);
+
+		list.addListener(new ObservableListMap.Listener() {
+
+			@Override
+			public void onInserted(int position, int count) {
+				throw new AssertionError();
+			}
+
+			@Override
+			public void onRemoved(int position, int count) {
+				mirror.subList(position, position + count).clear();
+			}
+
+			@Override
+			public void onMoved(int fromPosition, int toPosition) {
+				throw new AssertionError();
+			}
+
+			@Override
+			public void onChanged(int position, int count) {
+				throw new AssertionError();
+			}
+		});
+
+		List<Data<Integer>> retain = new ArrayList<Data<Integer>>();
+		for (int i = 0; i < list.size(); i += 3) {
+			retain.add(list.get(i));
+		}
+		list.removeByMapKey(2);
+		list.retainAll(retain);
+
+		assertEquals(mirror, list);
+	}
+
+	@Test
+	public void removeIfReplaceAllAndSort() {
+
+		ObservableListMap<Integer, Data<Integer>> list = create(10);
+		RecordingListener listener = new RecordingListener();
+		list.addListener(listener);
+
+		list.removeIf(new Predicate<Data<Integer>>() {
+			@Override
+			public boolean test(Data<Integer> d) {
+				return d.id == 1 || d.id == 2;
+			}
+		});
+		assertEquals(Arrays.asList("removed 1 2", "removed 4 2"),
+				listener.take());
+		assertTrue(list.getByMapKey(1) == null);
+
+		list.replaceAll(new UnaryOperator<Data<Integer>>() {
+			@Override
+			public Data<Integer> apply(Data<Integer> d) {
+				return new Data<Integer>(d.id + 10);
+			}
+		});
+		assertEquals(Arrays.asList("changed 0 6"), listener.take());
+		assertTrue(list.getByMapKey(0) == null);
+		assertTrue(list.getByMapKey(13).size() == 2);
+
+		list.sort(new Comparator<Data<Integer>>() {
+			@Override
+			public int compare(Data<Integer> lhs, Data<Integer> rhs) {
+				return rhs.id - lhs.id;
+			}
+		});
+		assertEquals(Arrays.asList("changed 0 6"), listener.take());
+		assertTrue(list.get(0).id == 14);
+		assertTrue(list.indexOf(list.get(5)) == 5);
+	}
+}
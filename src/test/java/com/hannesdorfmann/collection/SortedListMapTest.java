@@ -0,0 +1,279 @@
+package com.hannesdorfmann.collection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.UnaryOperator;
+
+import org.junit.Test;
+
+public class SortedListMapTest {
+
+	private static class Message implements Mappable<Integer> {
+
+		final Integer id;
+		long timestamp;
+
+		Message(Integer id, long timestamp) {
+			this.id = id;
+			this.timestamp = timestamp;
+		}
+
+		@Override
+		public Integer getMapKey() {
+			return id;
+		}
+
+		@Override
+		public String toString() {
+			return id + "@" + timestamp;
+		}
+	}
+
+	private static final Comparator<Message> BY_TIMESTAMP = new Comparator<Message>() {
+		@Override
+		public int compare(Message lhs, Message rhs) {
+			return lhs.timestamp < rhs.timestamp ? -1
+					: (lhs.timestamp == rhs.timestamp ? 0 : 1);
+		}
+	};
+
+	private static void assertSorted(SortedListMap<Integer, Message> list,
+			Map<Integer, Message> expected) {
+
+		assertTrue(list.size() == expected.size());
+
+		for (int i = 1; i < list.size(); i++) {
+			assertTrue(list.get(i - 1).timestamp <= list.get(i).timestamp);
+		}
+
+		for (Message m : expected.values()) {
+			assertTrue(list.getFirstByMapKey(m.id) == m);
+		}
+	}
+
+	@Test
+	public void test() {
+
+		SortedListMap<Integer, Message> list = new SortedListMap<Integer, Message>(
+				BY_TIMESTAMP);
+
+		Message a = new Message(1, 10);
+		Message b = new Message(2, 30);
+		Message c = new Message(3, 20);
+		Message d = new Message(4, 20);
+		list.add(a);
+		list.add(b);
+		list.add(c);
+		list.add(d);
+
+		// Equal elements keep their insertion order
+		assertTrue(list.get(0) == a);
+		assertTrue(list.get(1) == c);
+		assertTrue(list.get(2) == d);
+		assertTrue(list.get(3) == b);
+
+		// Upsert in place
+		Message c2 = new Message(3, 15);
+		list.add(c2);
+		assertTrue(list.get(1) == c2);
+		assertTrue(list.size() == 4);
+
+		// Upsert to another position
+		Message a2 = new Message(1, 40);
+		list.add(a2);
+		assertTrue(list.get(3) == a2);
+		assertTrue(list.getFirstByMapKey(1) == a2);
+		assertFalse(list.contains(a));
+
+		// Relocate
+		b.timestamp = 5;
+		assertTrue(list.relocate(b));
+		assertTrue(list.get(0) == b);
+		assertTrue(list.getFirstByMapKey(2) == b);
+		assertFalse(list.relocate(a));
+
+		// Ranges
+		assertEquals(list.subList(0, 2), list.headList(new Message(null, 20)));
+		assertEquals(list.subList(2, 4), list.tailList(new Message(null, 20)));
+		assertEquals(list.subList(1, 3), list.subList(new Message(null, 15),
+				new Message(null, 40)));
+		assertTrue(list.headList(new Message(null, 0)).isEmpty());
+		assertTrue(list.tailList(new Message(null, 100)).isEmpty());
+
+		list.tailList(new Message(null, 20)).clear();
+		assertTrue(list.size() == 2);
+		assertNull(list.getFirstByMapKey(1));
+		assertNull(list.getFirstByMapKey(4));
+
+		try {
+			list.subList(new Message(null, 20), new Message(null, 10));
+			assertTrue(false);
+		} catch (IllegalArgumentException e) {
+		}
+
+		try {
+			list.add(0, new Message(5, 1));
+			assertTrue(false);
+		} catch (UnsupportedOperationException e) {
+		}
+
+		try {
+			list.set(0, new Message(5, 1));
+			assertTrue(false);
+		} catch (UnsupportedOperationException e) {
+		}
+	}
+
+	@Test
+	public void randomUpserts() {
+
+		Random random = new Random(42);
+		SortedListMap<Integer, Message> list = new SortedListMap<Integer, Message>(
+				BY_TIMESTAMP);
+		Map<Integer, Message> expected = new HashMap<Integer, Message>();
+
+		for (int i = 0; i < 5000; i++) {
+			int id = random.nextInt(500);
+			int op = random.nextInt(10);
+
+			if (op < 6) {
+				Message m = new Message(id, random.nextInt(1000));
+				list.add(m);
+				expected.put(id, m);
+			} else if (op < 9) {
+				Message m = expected.get(id);
+				if (m != null) {
+					m.timestamp = random.nextInt(1000);
+					assertTrue(list.relocate(m));
+				}
+			} else {
+				Message m = expected.remove(id);
+				assertTrue(list.remove(m) == (m != null));
+			}
+
+			if (i % 100 == 0) {
+				assertSorted(list, expected);
+			}
+		}
+
+		assertSorted(list, expected);
+
+		// Copy
+		SortedListMap<Integer, Message> copy = new SortedListMap<Integer, Message>(
+				BY_TIMESTAMP, new ArrayList<Message>(expected.values()));
+		assertSorted(copy, expected);
+
+		// Diff
+		List<Message> newList = new ArrayList<Message>(list);
+		newList.remove(0);
+		ListMapDiff.calculate(copy, newList).applyTo(copy);
+		assertEquals(newList, copy);
+
+		newList.add(0, new Message(1000, Long.MAX_VALUE));
+		try {
+			ListMapDiff.calculate(copy, newList).applyTo(copy);
+			assertTrue(false);
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	@Test
+	public void addAll() {
+
+		Random random = new Random(7);
+		SortedListMap<Integer, Message> list = new SortedListMap<Integer, Message>(
+				BY_TIMESTAMP);
+		Map<Integer, Message> expected = new HashMap<Integer, Message>();
+
+		for (int i = 0; i < 300; i++) {
+			List<Message> batch = new ArrayList<Message>();
+			int batchSize = 1 + random.nextInt(i % 10 == 0 ? 200 : 10);
+			for (int j = 0; j < batchSize; j++) {
+				// Few timestamps, so there are many equal elements
+				Message m = new Message(random.nextInt(500),
+						random.nextInt(50));
+				batch.add(m);
+				expected.put(m.id, m);
+			}
+
+			if (i == 150) {
+				list.setKeyCaching(true);
+			}
+
+			assertTrue(list.addAll(batch));
+			assertSorted(list, expected);
+		}
+
+		assertFalse(list.addAll(new ArrayList<Message>()));
+
+		// New elements are inserted behind the equal ones in the order of the
+		// collection, the last element of a key wins and an element, that
+		// fits at the position of the old one, replaces it in place
+		list.clear();
+		Message a = new Message(1, 10);
+		Message b = new Message(2, 20);
+		Message c = new Message(3, 30);
+		list.add(a);
+		list.add(b);
+		list.add(c);
+
+		Message d = new Message(4, 20);
+		Message e = new Message(5, 20);
+		Message a2 = new Message(1, 25);
+		Message c2 = new Message(3, 35);
+		List<Message> batch = new ArrayList<Message>();
+		batch.add(e);
+		batch.add(new Message(3, 0));
+		batch.add(d);
+		batch.add(a2);
+		batch.add(c2);
+		assertTrue(list.addAll(batch));
+		assertTrue(list.size() == 5);
+		assertTrue(list.get(0) == b);
+		assertTrue(list.get(1) == e);
+		assertTrue(list.get(2) == d);
+		assertTrue(list.get(3) == a2);
+		assertTrue(list.get(4) == c2);
+	}
+
+	@Test
+	public void replaceAllAndSort() {
+
+		SortedListMap<Integer, Message> list = new SortedListMap<Integer, Message>(
+				BY_TIMESTAMP);
+		for (int i = 0; i < 10; i++) {
+			list.add(new Message(i, i));
+		}
+
+		// The replacements are sorted
+		list.replaceAll(new UnaryOperator<Message>() {
+			@Override
+			public Message apply(Message m) {
+				return new Message(m.id, -m.timestamp);
+			}
+		});
+		Map<Integer, Message> expected = new HashMap<Integer, Message>();
+		for (Message m : list) {
+			expected.put(m.id, m);
+		}
+		assertSorted(list, expected);
+		assertTrue(list.get(0).id == 9);
+
+		try {
+			list.sort(BY_TIMESTAMP);
+			fail();
+		} catch (UnsupportedOperationException e) {
+		}
+		assertSorted(list, expected);
+	}
+}
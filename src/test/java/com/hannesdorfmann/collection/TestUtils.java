@@ -0,0 +1,46 @@
+package com.hannesdorfmann.collection;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Helper methods that are shared by the {@link ListMap} unit tests
+ *
+ * @author Hannes Dorfmann
+ *
+ */
+public class TestUtils {
+
+	private TestUtils() {
+	}
+
+	/**
+	 * Writes the given object with an {@link ObjectOutputStream} and reads it
+	 * back
+	 *
+	 * @param object
+	 * @return The read copy of the object
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T serializeAndRead(T object) throws IOException,
+			ClassNotFoundException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(object);
+		out.close();
+
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+				bytes.toByteArray()));
+		try {
+			return (T) in.readObject();
+		} finally {
+			in.close();
+		}
+	}
+
+}
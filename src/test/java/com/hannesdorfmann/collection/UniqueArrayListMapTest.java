@@ -5,8 +5,16 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.ListIterator;
+import java.util.Random;
 import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
 import org.junit.Test;
 
@@ -114,9 +122,12 @@ public class UniqueArrayListMapTest {
 			assertTrue(list.get(i) == d);
 		}
 
-		// Test the set() method
-		list.set(10, d);
-		assertTrue(list.get(10) == d);
+		// Test the set() method: d (at 9) replaces "9" (at 10), the old d is
+		// removed
+		assertTrue(list.set(10, d).getMapKey().equals("9"));
+		assertTrue(list.size() == 10);
+		assertTrue(list.get(9) == d);
+		assertNull(list.getByMapKey("9"));
 
 		list.set(2, d);
 		assertTrue(list.get(2) == d);
@@ -137,4 +148,681 @@ public class UniqueArrayListMapTest {
 		}
 
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void duplicateKeyPolicy() {
+
+		UniqueArrayListMap<String, Data<String>> list = new UniqueArrayListMap<String, Data<String>>();
+		for (int i = 0; i < 10; i++) {
+			list.add(new Data<String>(Integer.toString(i)));
+		}
+
+		// Default: move to end
+		Data<String> d = new Data<String>("3");
+		list.add(d);
+		assertTrue(list.size() == 10);
+		assertTrue(list.get(9) == d);
+		assertTrue(list.get(3).getMapKey().equals("4"));
+		assertTrue(list.getFirstByMapKey("3") == d);
+
+		// Replace in place
+		list.setDuplicateKeyPolicy(UniqueArrayListMap.DuplicateKeyPolicy.REPLACE_IN_PLACE);
+		Data<String> d2 = new Data<String>("5");
+		list.add(d2);
+		assertTrue(list.size() == 10);
+		assertTrue(list.get(4) == d2);
+		assertTrue(list.getFirstByMapKey("5") == d2);
+		assertTrue(list.contains(d2));
+
+		// positions must be found after shifting the elements
+		list.remove(0);
+		list.add(0, new Data<String>("a"));
+		list.add(0, new Data<String>("b"));
+		Data<String> d3 = new Data<String>("9");
+		list.add(d3);
+		assertTrue(list.size() == 11);
+		assertTrue(list.get(9) == d3);
+		assertTrue(list.indexOf(d3) == 9);
+
+		list.removeByMapKey("9");
+		assertTrue(list.size() == 10);
+		assertNull(list.getFirstByMapKey("9"));
+		assertFalse(list.contains(d3));
+	}
+
+	@Test
+	public void getByMapKey() {
+
+		UniqueArrayListMap<String, Data<String>> list = new UniqueArrayListMap<String, Data<String>>();
+		Data<String> d = new Data<String>("1");
+		list.add(d);
+
+		// The same read only view is returned every time
+		Set<Data<String>> found = list.getByMapKey("1");
+		assertTrue(found == list.getByMapKey("1"));
+		assertTrue(found.size() == 1);
+		assertTrue(found.contains(d));
+		assertTrue(found.iterator().next() == d);
+
+		try {
+			found.add(new Data<String>("1"));
+			assertTrue(false);
+		} catch (UnsupportedOperationException e) {
+		}
+
+		assertNull(list.removeByMapKey("2"));
+
+		Set<Data<String>> removed = list.removeByMapKey("1");
+		assertTrue(removed.size() == 1);
+		assertTrue(removed.contains(d));
+		assertTrue(list.isEmpty());
+	}
+
+	@Test
+	public void addAll() {
+
+		UniqueArrayListMap<Integer, Data<Integer>> list = new UniqueArrayListMap<Integer, Data<Integer>>();
+		for (int i = 0; i < 10; i++) {
+			list.add(new Data<Integer>(i));
+		}
+
+		// Duplicates against the list and inside of the batch
+		List<Data<Integer>> batch = new ArrayList<Data<Integer>>();
+		Data<Integer> d2 = new Data<Integer>(2);
+		Data<Integer> d10 = new Data<Integer>(10);
+		Data<Integer> d5 = new Data<Integer>(5);
+		batch.add(new Data<Integer>(5));
+		batch.add(d2);
+		batch.add(d10);
+		batch.add(d5);
+
+		assertTrue(list.addAll(batch));
+		assertTrue(list.size() == 11);
+		assertTrue(list.get(8) == d2);
+		assertTrue(list.get(9) == d10);
+		assertTrue(list.get(10) == d5);
+		assertTrue(list.get(2).id == 3);
+		assertTrue(list.getFirstByMapKey(5) == d5);
+		assertTrue(list.getFirstByMapKey(2) == d2);
+
+		// Insert at position, the old elements are removed first and the
+		// index is a position in the list afterwards, like in add(int, V)
+		Data<Integer> d0 = new Data<Integer>(0);
+		Data<Integer> d11 = new Data<Integer>(11);
+		batch.clear();
+		batch.add(d11);
+		batch.add(d0);
+		list.addAll(3, batch);
+		assertTrue(list.size() == 12);
+		assertTrue(list.get(0).id == 1);
+		assertTrue(list.get(2).id == 4);
+		assertTrue(list.get(3) == d11);
+		assertTrue(list.get(4) == d0);
+		assertTrue(list.get(5).id == 6);
+		assertTrue(list.get(11) == d5);
+
+		// Replace in place
+		list.setDuplicateKeyPolicy(UniqueArrayListMap.DuplicateKeyPolicy.REPLACE_IN_PLACE);
+		Data<Integer> r4 = new Data<Integer>(4);
+		Data<Integer> r20 = new Data<Integer>(20);
+		Data<Integer> r1 = new Data<Integer>(1);
+		batch.clear();
+		batch.add(new Data<Integer>(4));
+		batch.add(r20);
+		batch.add(r1);
+		batch.add(r4);
+		list.addAll(batch);
+		assertTrue(list.size() == 13);
+		assertTrue(list.get(0) == r1);
+		assertTrue(list.get(2) == r4);
+		assertTrue(list.get(12) == r20);
+		assertTrue(list.getFirstByMapKey(4) == r4);
+		assertTrue(list.getFirstByMapKey(20) == r20);
+
+		for (int i = 0; i < list.size(); i++) {
+			Data<Integer> d = list.get(i);
+			assertTrue(list.getFirstByMapKey(d.id) == d);
+		}
+
+		// More than one old element in front of the position
+		list.clear();
+		for (int i = 0; i < 10; i++) {
+			list.add(new Data<Integer>(i));
+		}
+		Data<Integer> m1 = new Data<Integer>(1);
+		Data<Integer> m4 = new Data<Integer>(4);
+		batch.clear();
+		batch.add(m1);
+		batch.add(m4);
+		list.addAll(5, batch);
+		assertTrue(list.size() == 10);
+		assertTrue(list.get(4).id == 6);
+		assertTrue(list.get(5) == m1);
+		assertTrue(list.get(6) == m4);
+		assertTrue(list.get(7).id == 7);
+
+		// addAll() with one element inserts it where add() does
+		Random random = new Random(3);
+		UniqueArrayListMap<Integer, Data<Integer>> single = new UniqueArrayListMap<Integer, Data<Integer>>();
+		single.addAll(list);
+		for (int i = 0; i < 500; i++) {
+			Data<Integer> d = new Data<Integer>(random.nextInt(20));
+			int index = random.nextInt(list.size() + 1);
+			list.addAll(index, Collections.singletonList(d));
+			single.add(index, d);
+			assertTrue(list.equals(single));
+		}
+	}
+
+	@Test
+	public void bulkRemoval() {
+
+		UniqueArrayListMap<Integer, Data<Integer>> list = new UniqueArrayListMap<Integer, Data<Integer>>();
+		List<Data<Integer>> odd = new ArrayList<Data<Integer>>();
+		for (int i = 0; i < 100; i++) {
+			Data<Integer> d = new Data<Integer>(i);
+			list.add(d);
+			if (i % 2 == 1) {
+				odd.add(d);
+			}
+		}
+
+		// removeAll and retainAll
+		assertTrue(list.removeAll(new HashSet<Data<Integer>>(odd)));
+		assertFalse(list.removeAll(odd));
+		assertTrue(list.size() == 50);
+		assertNull(list.getByMapKey(1));
+		assertTrue(list.getFirstByMapKey(2) == list.get(1));
+
+		assertTrue(list.retainAll(list.subList(0, 40)));
+		assertTrue(list.size() == 40);
+		assertNull(list.getByMapKey(80));
+		assertTrue(list.getFirstByMapKey(78) == list.get(39));
+
+		// Iterator
+		Iterator<Data<Integer>> it = list.iterator();
+		while (it.hasNext()) {
+			if (it.next().id % 4 == 0) {
+				it.remove();
+			}
+		}
+		assertTrue(list.size() == 20);
+		assertNull(list.getByMapKey(0));
+		assertNull(list.getByMapKey(76));
+
+		ListIterator<Data<Integer>> listIt = list.listIterator();
+		Data<Integer> d300 = new Data<Integer>(300);
+		listIt.next();
+		listIt.add(d300);
+		assertTrue(listIt.next().id == 6);
+		assertTrue(list.getFirstByMapKey(2) == list.get(0));
+		assertTrue(list.getFirstByMapKey(300) == list.get(1));
+		assertTrue(list.size() == 21);
+
+		// Sub list
+		List<Data<Integer>> sub = list.subList(2, 12);
+		assertTrue(sub.get(0).id == 6);
+		sub.remove(0);
+		sub.add(0, new Data<Integer>(400));
+		assertNull(list.getByMapKey(6));
+		assertTrue(list.getFirstByMapKey(400) == list.get(2));
+		sub.clear();
+		assertTrue(sub.isEmpty());
+		assertTrue(list.size() == 11);
+
+		for (int i = 0; i < 100; i++) {
+			Data<Integer> d = list.getFirstByMapKey(i);
+			assertTrue(d == null || list.contains(d));
+		}
+		for (Data<Integer> d : list) {
+			assertTrue(list.getFirstByMapKey(d.id) == d);
+		}
+	}
+
+	@Test
+	public void keyCaching() {
+
+		UniqueArrayListMap<Integer, Data<Integer>> list = new UniqueArrayListMap<Integer, Data<Integer>>();
+		for (int i = 0; i < 10; i++) {
+			list.add(new Data<Integer>(i));
+		}
+
+		list.setKeyCaching(true);
+		assertTrue(list.isKeyCaching());
+
+		List<Data<Integer>> batch = new ArrayList<Data<Integer>>();
+		for (int i = 10; i < 20; i++) {
+			batch.add(new Data<Integer>(i));
+		}
+		list.addAll(5, batch);
+		list.add(3, new Data<Integer>(20));
+
+		// The keys change while the elements are in the list
+		for (Data<Integer> d : list) {
+			d.id = d.id + 100;
+		}
+
+		Data<Integer> d3 = list.getFirstByMapKey(3);
+		assertTrue(list.remove(d3));
+		assertNull(list.getByMapKey(3));
+
+		list.remove(0);
+		assertNull(list.getByMapKey(0));
+
+		list.removeAll(new ArrayList<Data<Integer>>(list.subList(0, 5)));
+		list.subList(0, 2).clear();
+		list.add(0, new Data<Integer>(30));
+		list.removeByMapKey(19);
+
+		assertTrue(list.size() == 12);
+		for (int i = 0; i < 30; i++) {
+			Data<Integer> d = list.getFirstByMapKey(i);
+			assertTrue(d == null || list.contains(d));
+		}
+
+		list.clear();
+		list.setKeyCaching(false);
+		assertFalse(list.isKeyCaching());
+		assertTrue(list.isEmpty());
+	}
+
+	@Test
+	public void set() {
+
+		UniqueArrayListMap<Integer, Data<Integer>> list = new UniqueArrayListMap<Integer, Data<Integer>>();
+		for (int i = 0; i < 10; i++) {
+			list.add(new Data<Integer>(i));
+		}
+
+		// New key
+		Data<Integer> d20 = new Data<Integer>(20);
+		assertTrue(list.set(3, d20).id == 3);
+		assertTrue(list.size() == 10);
+		assertTrue(list.get(3) == d20);
+		assertNull(list.getByMapKey(3));
+		assertTrue(list.getFirstByMapKey(20) == d20);
+
+		// Same key
+		Data<Integer> other20 = new Data<Integer>(20);
+		list.set(3, other20);
+		assertTrue(list.get(3) == other20);
+		assertTrue(list.getFirstByMapKey(20) == other20);
+
+		// Key of another element behind and in front of the position
+		Data<Integer> d8 = new Data<Integer>(8);
+		assertTrue(list.set(5, d8).id == 5);
+		assertTrue(list.size() == 9);
+		assertTrue(list.get(5) == d8);
+		assertTrue(list.get(8).id == 9);
+
+		Data<Integer> d0 = new Data<Integer>(0);
+		assertTrue(list.set(5, d0).id == 8);
+		assertTrue(list.size() == 8);
+		assertTrue(list.get(4) == d0);
+		assertTrue(list.get(0).id == 1);
+
+		// Through iterator and sub list
+		ListIterator<Data<Integer>> it = list.listIterator();
+		it.next();
+		Data<Integer> d30 = new Data<Integer>(30);
+		it.set(d30);
+		list.subList(1, 3).set(0, new Data<Integer>(31));
+
+		for (int i = 0; i < list.size(); i++) {
+			assertTrue(list.getFirstByMapKey(list.get(i).id) == list.get(i));
+		}
+		assertNull(list.getByMapKey(1));
+		assertNull(list.getByMapKey(2));
+		assertNull(list.getByMapKey(5));
+
+		// The sub list shrinks, if the other element has been in its range
+		list.clear();
+		for (int i = 0; i < 6; i++) {
+			list.add(new Data<Integer>(i));
+		}
+		List<Data<Integer>> sub = list.subList(1, 4);
+		Data<Integer> other2 = new Data<Integer>(2);
+		sub.set(0, other2);
+		assertTrue(list.size() == 5);
+		assertTrue(sub.size() == 2);
+		assertTrue(sub.get(0) == other2);
+		assertTrue(sub.get(1).id == 3);
+
+		// Outside of the range the elements of the sub list stay the same
+		Data<Integer> other5 = new Data<Integer>(5);
+		sub.set(1, other5);
+		assertTrue(sub.size() == 2);
+		assertTrue(sub.get(1) == other5);
+		assertTrue(list.get(3).id == 4);
+
+		Data<Integer> other0 = new Data<Integer>(0);
+		sub.set(1, other0);
+		assertTrue(list.size() == 3);
+		assertTrue(sub.size() == 2);
+		assertTrue(sub.get(0) == other2);
+		assertTrue(sub.get(1) == other0);
+		assertTrue(list.get(2).id == 4);
+
+		// The iterator moves along with the element
+		it = list.listIterator(2);
+		it.next();
+		it.set(new Data<Integer>(2));
+		assertTrue(list.size() == 2);
+		assertFalse(it.hasNext());
+		assertTrue(it.previous().id == 2);
+	}
+
+	@Test
+	public void addAtIndex() {
+
+		UniqueArrayListMap<Integer, Data<Integer>> list = new UniqueArrayListMap<Integer, Data<Integer>>();
+		for (int i = 0; i < 10; i++) {
+			list.add(new Data<Integer>(i));
+		}
+
+		// At the end, with the old element in front of it
+		Data<Integer> d3 = new Data<Integer>(3);
+		list.add(10, d3);
+		assertTrue(list.size() == 10);
+		assertTrue(list.get(9) == d3);
+		assertTrue(list.getFirstByMapKey(3) == d3);
+
+		// Invalid index, the list must not be changed
+		try {
+			list.add(11, new Data<Integer>(4));
+			assertTrue(false);
+		} catch (IndexOutOfBoundsException e) {
+		}
+		assertTrue(list.size() == 10);
+		assertTrue(list.get(3).id == 4);
+		assertTrue(list.getFirstByMapKey(4) == list.get(3));
+
+		// The index is the position of the new element
+		Data<Integer> d1 = new Data<Integer>(1);
+		list.add(5, d1);
+		assertTrue(list.size() == 10);
+		assertTrue(list.get(5) == d1);
+		assertTrue(list.get(4).id == 6);
+
+		// Through the iterator at the end of the list
+		ListIterator<Data<Integer>> it = list.listIterator(list.size());
+		Data<Integer> d0 = new Data<Integer>(0);
+		it.add(d0);
+		assertFalse(it.hasNext());
+		assertTrue(list.size() == 10);
+		assertTrue(list.get(9) == d0);
+
+		for (int i = 0; i < list.size(); i++) {
+			assertTrue(list.getFirstByMapKey(list.get(i).id) == list.get(i));
+		}
+	}
+
+	@Test
+	public void serialization() throws Exception {
+
+		UniqueArrayListMap<Integer, Data<Integer>> list = new UniqueArrayListMap<Integer, Data<Integer>>();
+		list.setDuplicateKeyPolicy(UniqueArrayListMap.DuplicateKeyPolicy.MOVE_TO_END);
+		for (int i = 0; i < 1000; i++) {
+			list.add(new Data<Integer>(i));
+		}
+		list.setKeyCaching(true);
+
+		UniqueArrayListMap<Integer, Data<Integer>> read = TestUtils
+				.serializeAndRead(list);
+		assertTrue(read.size() == 1000);
+		assertTrue(read.isKeyCaching());
+		assertTrue(read.getDuplicateKeyPolicy() == UniqueArrayListMap.DuplicateKeyPolicy.MOVE_TO_END);
+		for (int i = 0; i < read.size(); i++) {
+			assertTrue(read.get(i).id == i);
+			assertTrue(read.getFirstByMapKey(i) == read.get(i));
+		}
+
+		// Positions in the rebuilt index are correct
+		read.add(new Data<Integer>(5));
+		assertTrue(read.size() == 1000);
+		assertTrue(read.get(999).id == 5);
+		assertTrue(read.get(5).id == 6);
+		assertTrue(read.remove(read.getFirstByMapKey(998)));
+		assertNull(read.getFirstByMapKey(998));
+	}
+
+	@Test
+	public void lazyIndex() throws Exception {
+
+		UniqueArrayListMap<Integer, Data<Integer>> list = new UniqueArrayListMap<Integer, Data<Integer>>();
+		for (int i = 0; i < 100; i++) {
+			list.add(new Data<Integer>(i));
+		}
+
+		list.setLazyIndex(true);
+		assertTrue(list.isLazyIndex());
+
+		UniqueArrayListMap<Integer, Data<Integer>> read = TestUtils
+				.serializeAndRead(list);
+		assertTrue(read.isLazyIndex());
+		assertTrue(read.size() == 100);
+
+		// Removing before the key index is built
+		read.remove(0);
+		read.subList(0, 9).clear();
+		read.removeAll(new ArrayList<Data<Integer>>(read.subList(80, 85)));
+		assertTrue(read.size() == 85);
+		assertTrue(read.get(0).id == 10);
+
+		// Adding an element with a key builds the key index
+		read.add(new Data<Integer>(50));
+		assertTrue(read.size() == 85);
+		assertTrue(read.get(84).id == 50);
+		assertNull(read.getFirstByMapKey(5));
+		for (int i = 0; i < read.size(); i++) {
+			assertTrue(read.getFirstByMapKey(read.get(i).id) == read.get(i));
+		}
+
+		// Lookup builds the key index
+		list.setLazyIndex(true);
+		list.set(0, new Data<Integer>(200));
+		assertTrue(list.getFirstByMapKey(200) == list.get(0));
+		list.setLazyIndex(true);
+		list.clear();
+		assertNull(list.getFirstByMapKey(200));
+		list.setLazyIndex(true);
+		for (int i = 0; i < 100; i++) {
+			list.add(new Data<Integer>(i));
+		}
+		list.setLazyIndex(true);
+		assertTrue(list.contains(list.get(50)));
+		assertTrue(list.removeByMapKey(50) != null);
+		assertFalse(list.contains(new Data<Integer>(50)));
+
+		list.setLazyIndex(false);
+		assertFalse(list.isLazyIndex());
+		assertTrue(list.getFirstByMapKey(51) == list.get(50));
+
+		// Lazy constructor, the last element of a key wins when the key index
+		// is built, like with the eager constructor
+		List<Data<Integer>> items = new ArrayList<Data<Integer>>();
+		for (int i = 0; i < 30; i++) {
+			items.add(new Data<Integer>(i % 20));
+		}
+		UniqueArrayListMap<Integer, Data<Integer>> eager = new UniqueArrayListMap<Integer, Data<Integer>>(
+				items);
+		UniqueArrayListMap<Integer, Data<Integer>> lazy = new UniqueArrayListMap<Integer, Data<Integer>>(
+				items, true);
+		assertTrue(lazy.isLazyIndex());
+		assertTrue(lazy.size() == 30);
+		assertTrue(lazy.get(29) == items.get(29));
+
+		assertTrue(lazy.getFirstByMapKey(5) == items.get(25));
+		assertTrue(lazy.size() == 20);
+		assertTrue(lazy.equals(eager));
+		for (int i = 0; i < lazy.size(); i++) {
+			assertTrue(lazy.indexOf(lazy.get(i)) == i);
+		}
+	}
+
+	@Test
+	public void indexOf() {
+
+		UniqueArrayListMap<Integer, Data<Integer>> list = new UniqueArrayListMap<Integer, Data<Integer>>();
+		List<Data<Integer>> all = new ArrayList<Data<Integer>>();
+		for (int i = 0; i < 100; i++) {
+			Data<Integer> d = new Data<Integer>(i % 7 == 0 ? null : i);
+			all.add(d);
+			list.add(d);
+		}
+
+		// Shift the elements away from their remembered positions
+		list.add(0, new Data<Integer>(1000));
+		all.add(0, list.get(0));
+		list.remove(50);
+		all.remove(50);
+
+		for (Data<Integer> d : all) {
+			assertTrue(list.contains(d));
+			assertTrue(list.indexOf(d) == all.indexOf(d));
+			assertTrue(list.lastIndexOf(d) == all.lastIndexOf(d));
+		}
+
+		// Not in the list, with and without a key
+		assertFalse(list.contains(new Data<Integer>(3)));
+		assertTrue(list.indexOf(new Data<Integer>(3)) == -1);
+		assertTrue(list.lastIndexOf(new Data<Integer>(3)) == -1);
+		assertFalse(list.contains(new Data<Integer>(null)));
+		assertFalse(list.contains("3"));
+
+		// With key caching the key of an element may change
+		list.setKeyCaching(true);
+		Data<Integer> changed = all.get(5);
+		changed.id = 4242;
+		assertTrue(list.contains(changed));
+		assertTrue(list.indexOf(changed) == 5);
+	}
+
+	@Test
+	public void statistics() {
+
+		UniqueArrayListMap<Integer, Data<Integer>> list = new UniqueArrayListMap<Integer, Data<Integer>>();
+		list.setStatisticsEnabled(true);
+		for (int i = 0; i < 10; i++) {
+			list.add(new Data<Integer>(i));
+		}
+
+		// Moved to the end
+		list.add(new Data<Integer>(3));
+		// Not at its remembered position anymore
+		list.add(0, new Data<Integer>(5));
+		list.getFirstByMapKey(9);
+		list.removeByMapKey(9);
+		list.getByMapKey(42);
+
+		ListMapStatistics statistics = list.getStatistics();
+		assertTrue(statistics.getAddCount() == 12);
+		assertTrue(statistics.getDuplicateKeyCount() == 2);
+		assertTrue(statistics.getRemoveCount() == 1);
+		assertTrue(statistics.getLookupCount() == 3);
+		assertTrue(statistics.getIndexHitCount() == 2);
+		assertTrue(statistics.getIndexMissCount() == 1);
+		assertTrue(statistics.getLinearScanCount() == 2);
+		assertTrue(statistics.getShiftedElementCount() == 6 + 5 + 9 + 1);
+		assertTrue(statistics.getKeyCount() == 9);
+		assertTrue(statistics.getKeyHistogram().length == 1);
+		assertTrue(statistics.getKeyHistogram()[0] == 9);
+
+		list.resetStatistics();
+		assertTrue(list.getStatistics().getDuplicateKeyCount() == 0);
+	}
+
+	@Test
+	public void containsWithoutPosition() {
+
+		UniqueArrayListMap<Integer, Data<Integer>> list = new UniqueArrayListMap<Integer, Data<Integer>>();
+		list.setStatisticsEnabled(true);
+		List<Data<Integer>> inserted = new ArrayList<Data<Integer>>();
+		for (int i = 0; i < 10; i++) {
+			Data<Integer> d = new Data<Integer>(i);
+			inserted.add(d);
+			list.add(d);
+		}
+
+		// Moves every remembered position
+		for (int i = 10; i < 20; i++) {
+			Data<Integer> d = new Data<Integer>(i);
+			inserted.add(d);
+			list.add(0, d);
+		}
+
+		for (Data<Integer> d : inserted) {
+			assertTrue(list.contains(d));
+		}
+		assertFalse(list.contains(new Data<Integer>(5)));
+		assertFalse(list.contains(new Data<Integer>(20)));
+		assertTrue(list.getStatistics().getLinearScanCount() == 0);
+
+		list.setKeyCaching(true);
+		assertTrue(list.contains(inserted.get(5)));
+		assertFalse(list.contains(new Data<Integer>(20)));
+		assertTrue(list.getStatistics().getLinearScanCount() == 1);
+	}
+
+	@Test
+	public void removeIfReplaceAllAndSort() {
+
+		for (int caching = 0; caching < 2; caching++) {
+			UniqueArrayListMap<Integer, Data<Integer>> list = new UniqueArrayListMap<Integer, Data<Integer>>();
+			list.setKeyCaching(caching == 1);
+			for (int i = 0; i < 10; i++) {
+				list.add(new Data<Integer>(i));
+			}
+
+			assertTrue(list.removeIf(new Predicate<Data<Integer>>() {
+				@Override
+				public boolean test(Data<Integer> d) {
+					return d.id % 2 == 1;
+				}
+			}));
+			assertTrue(list.size() == 5);
+			for (int i = 0; i < 10; i++) {
+				assertTrue((list.getFirstByMapKey(i) == null) == (i % 2 == 1));
+			}
+
+			// 0, 2, 4, 6, 8 are replaced by elements with the keys 0, 0, 1,
+			// 1, 2, the elements with the same key are moved to the end
+			list.replaceAll(new UnaryOperator<Data<Integer>>() {
+				@Override
+				public Data<Integer> apply(Data<Integer> d) {
+					return new Data<Integer>(d.id / 4);
+				}
+			});
+			assertTrue(list.size() == 3);
+			for (int i = 0; i < list.size(); i++) {
+				assertTrue(list.get(i).id == i);
+				assertTrue(list.getFirstByMapKey(i) == list.get(i));
+				assertTrue(list.indexOf(list.get(i)) == i);
+			}
+
+			list.sort(new Comparator<Data<Integer>>() {
+				@Override
+				public int compare(Data<Integer> lhs, Data<Integer> rhs) {
+					return rhs.id - lhs.id;
+				}
+			});
+			for (int i = 0; i < list.size(); i++) {
+				Data<Integer> d = list.get(i);
+				assertTrue(d.id == 2 - i);
+				assertTrue(list.indexOf(d) == i);
+				assertTrue(list.getFirstByMapKey(d.id) == d);
+			}
+
+			// The cached keys have been moved along with their elements
+			list.remove(0);
+			assertNull(list.getByMapKey(2));
+			assertTrue(list.getFirstByMapKey(1) == list.get(0));
+
+			// Replacing an element updates the right entry of the key index
+			list.add(new Data<Integer>(1));
+			assertTrue(list.size() == 2);
+			assertTrue(list.get(1).id == 1);
+			assertTrue(list.indexOf(list.getFirstByMapKey(0)) == 0);
+		}
+	}
+}
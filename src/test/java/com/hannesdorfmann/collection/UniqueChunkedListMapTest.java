@@ -0,0 +1,195 @@
+package com.hannesdorfmann.collection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.UnaryOperator;
+
+import org.junit.Test;
+
+import com.hannesdorfmann.collection.UniqueArrayListMap.DuplicateKeyPolicy;
+
+public class UniqueChunkedListMapTest {
+
+	private static final Comparator<Data<Integer>> BY_KEY_DESCENDING = new Comparator<Data<Integer>>() {
+		@Override
+		public int compare(Data<Integer> lhs, Data<Integer> rhs) {
+			return rhs.id - lhs.id;
+		}
+	};
+
+	/**
+	 * Maps every element to an element with half of its key, so some
+	 * replacements have the same key. Both lists get the same replacements.
+	 */
+	private static class HalfKey implements UnaryOperator<Data<Integer>> {
+
+		private final Map<Data<Integer>, Data<Integer>> replacements = new IdentityHashMap<Data<Integer>, Data<Integer>>();
+
+		@Override
+		public Data<Integer> apply(Data<Integer> d) {
+			Data<Integer> replacement = replacements.get(d);
+			if (replacement == null) {
+				replacement = new Data<Integer>(d.id / 2);
+				replacements.put(d, replacement);
+			}
+			return replacement;
+		}
+	}
+
+	/**
+	 * Applies random operations to a {@link UniqueChunkedListMap} and to a
+	 * {@link UniqueArrayListMap} and compares both
+	 */
+	private static void sameAsUniqueArrayListMap(DuplicateKeyPolicy policy) {
+
+		Random random = new Random(42);
+		UniqueChunkedListMap<Integer, Data<Integer>> list = new UniqueChunkedListMap<Integer, Data<Integer>>();
+		list.setDuplicateKeyPolicy(policy);
+		UniqueArrayListMap<Integer, Data<Integer>> expected = new UniqueArrayListMap<Integer, Data<Integer>>(
+				policy);
+
+		for (int i = 0; i < 30000; i++) {
+			int op = random.nextInt(11);
+			Data<Integer> d = new Data<Integer>(random.nextInt(3000));
+
+			if (i % 1000 == 300) {
+				list.sort(BY_KEY_DESCENDING);
+				expected.sort(BY_KEY_DESCENDING);
+			} else if (i % 1000 == 600) {
+				HalfKey operator = new HalfKey();
+				list.replaceAll(operator);
+				expected.replaceAll(operator);
+			} else if (op < 4 || expected.isEmpty()) {
+				int index = random.nextInt(expected.size() + 1);
+				list.add(index, d);
+				expected.add(index, d);
+			} else if (op < 5) {
+				list.add(d);
+				expected.add(d);
+			} else if (op < 6) {
+				List<Data<Integer>> batch = new ArrayList<Data<Integer>>();
+				for (int j = 0; j < 5; j++) {
+					batch.add(new Data<Integer>(random.nextInt(3000)));
+				}
+				int index = random.nextInt(expected.size() + 1);
+				list.addAll(index, batch);
+				expected.addAll(index, batch);
+			} else if (op < 8) {
+				int index = random.nextInt(expected.size());
+				assertTrue(list.remove(index) == expected.remove(index));
+			} else if (op < 9) {
+				int index = random.nextInt(expected.size());
+				assertTrue(list.set(index, d) == expected.set(index, d));
+			} else if (op < 10) {
+				assertEquals(expected.removeByMapKey(d.id),
+						list.removeByMapKey(d.id));
+			} else {
+				Data<Integer> found = expected.getFirstByMapKey(d.id);
+				assertTrue(found == list.getFirstByMapKey(d.id));
+				if (found != null) {
+					assertTrue(list.indexOf(found) == expected.indexOf(found));
+				}
+			}
+
+			if (i % 1000 == 0) {
+				assertEquals(expected, list);
+			}
+		}
+
+		assertEquals(expected, list);
+
+		for (int key = 0; key < 3000; key++) {
+			Data<Integer> found = expected.getFirstByMapKey(key);
+			assertTrue(found == list.getFirstByMapKey(key));
+			if (found != null) {
+				assertTrue(list.indexOf(found) == expected.indexOf(found));
+			}
+		}
+	}
+
+	@Test
+	public void sameAsUniqueArrayListMap() {
+		sameAsUniqueArrayListMap(DuplicateKeyPolicy.MOVE_TO_END);
+		sameAsUniqueArrayListMap(DuplicateKeyPolicy.REPLACE_IN_PLACE);
+	}
+
+	@Test
+	public void test() {
+
+		UniqueChunkedListMap<Integer, Data<Integer>> list = new UniqueChunkedListMap<Integer, Data<Integer>>();
+		List<Data<Integer>> all = new ArrayList<Data<Integer>>();
+
+		// Insert at the head
+		for (int i = 0; i < 10000; i++) {
+			Data<Integer> d = new Data<Integer>(i);
+			all.add(0, d);
+			list.add(0, d);
+		}
+
+		assertEquals(all, list);
+
+		// Remove from the middle
+		for (int i = 0; i < 5000; i++) {
+			assertTrue(list.removeByMapKey(i * 2).contains(all.get(9999 - i * 2)));
+		}
+		assertTrue(list.size() == 5000);
+		assertNull(list.getByMapKey(2));
+		assertTrue(list.indexOf(all.get(0)) == 0);
+		assertTrue(list.indexOf(all.get(9998)) == 4999);
+
+		// Replace
+		Data<Integer> replaced = new Data<Integer>(9999);
+		list.add(replaced);
+		assertTrue(list.size() == 5000);
+		assertTrue(list.get(4999) == replaced);
+
+		list.add(new Data<Integer>(null));
+		assertTrue(list.size() == 5001);
+
+		list.clear();
+		assertTrue(list.isEmpty());
+		assertNull(list.getFirstByMapKey(9999));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void serialization() throws Exception {
+
+		UniqueChunkedListMap<Integer, Data<Integer>> list = new UniqueChunkedListMap<Integer, Data<Integer>>();
+		list.setDuplicateKeyPolicy(DuplicateKeyPolicy.REPLACE_IN_PLACE);
+		for (int i = 0; i < 1000; i++) {
+			list.add(new Data<Integer>(i));
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(list);
+		out.close();
+
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+				bytes.toByteArray()));
+		UniqueChunkedListMap<Integer, Data<Integer>> read = (UniqueChunkedListMap<Integer, Data<Integer>>) in
+				.readObject();
+		in.close();
+
+		assertTrue(read.size() == 1000);
+		assertTrue(read.getFirstByMapKey(3) == read.get(3));
+		assertTrue(read.getDuplicateKeyPolicy() == DuplicateKeyPolicy.REPLACE_IN_PLACE);
+
+		Data<Integer> d = new Data<Integer>(3);
+		read.add(d);
+		assertTrue(read.get(3) == d);
+	}
+}
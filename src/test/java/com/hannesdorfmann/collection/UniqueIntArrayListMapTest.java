@@ -0,0 +1,55 @@
+package com.hannesdorfmann.collection;
+
+import java.util.Set;
+
+import com.hannesdorfmann.collection.UniqueArrayListMap.DuplicateKeyPolicy;
+
+public class UniqueIntArrayListMapTest extends
+		AbstractUniquePrimitiveListMapTest<Integer, IntData,
+		UniqueIntArrayListMap<IntData>> {
+
+	@Override
+	protected UniqueIntArrayListMap<IntData> newList() {
+		return new UniqueIntArrayListMap<IntData>();
+	}
+
+	@Override
+	protected IntData newData(long id) {
+		return new IntData((int) id);
+	}
+
+	@Override
+	protected long id(IntData d) {
+		return d.id;
+	}
+
+	@Override
+	protected long keyStep() {
+		return 7919;
+	}
+
+	@Override
+	protected Set<IntData> getByMapKey(
+			UniqueIntArrayListMap<IntData> list, long id) {
+		return list.getByMapKey((int) id);
+	}
+
+	@Override
+	protected IntData getFirstByMapKey(
+			UniqueIntArrayListMap<IntData> list, long id) {
+		return list.getFirstByMapKey((int) id);
+	}
+
+	@Override
+	protected Set<IntData> removeByMapKey(
+			UniqueIntArrayListMap<IntData> list, long id) {
+		return list.removeByMapKey((int) id);
+	}
+
+	@Override
+	protected void setDuplicateKeyPolicy(
+			UniqueIntArrayListMap<IntData> list,
+			DuplicateKeyPolicy policy) {
+		list.setDuplicateKeyPolicy(policy);
+	}
+}
@@ -0,0 +1,55 @@
+package com.hannesdorfmann.collection;
+
+import java.util.Set;
+
+import com.hannesdorfmann.collection.UniqueArrayListMap.DuplicateKeyPolicy;
+
+public class UniqueLongArrayListMapTest extends
+		AbstractUniquePrimitiveListMapTest<Long, LongData,
+		UniqueLongArrayListMap<LongData>> {
+
+	@Override
+	protected UniqueLongArrayListMap<LongData> newList() {
+		return new UniqueLongArrayListMap<LongData>();
+	}
+
+	@Override
+	protected LongData newData(long id) {
+		return new LongData(id);
+	}
+
+	@Override
+	protected long id(LongData d) {
+		return d.id;
+	}
+
+	@Override
+	protected long keyStep() {
+		return Integer.MAX_VALUE;
+	}
+
+	@Override
+	protected Set<LongData> getByMapKey(
+			UniqueLongArrayListMap<LongData> list, long id) {
+		return list.getByMapKey(id);
+	}
+
+	@Override
+	protected LongData getFirstByMapKey(
+			UniqueLongArrayListMap<LongData> list, long id) {
+		return list.getFirstByMapKey(id);
+	}
+
+	@Override
+	protected Set<LongData> removeByMapKey(
+			UniqueLongArrayListMap<LongData> list, long id) {
+		return list.removeByMapKey(id);
+	}
+
+	@Override
+	protected void setDuplicateKeyPolicy(
+			UniqueLongArrayListMap<LongData> list,
+			DuplicateKeyPolicy policy) {
+		list.setDuplicateKeyPolicy(policy);
+	}
+}